@@ -68,6 +68,15 @@ public class MetricsConstant {
   public static final String HS2_FAILED_QUERIES = "hs2_failed_queries";
   public static final String HS2_SUCCEEDED_QUERIES = "hs2_succeeded_queries";
 
+  // The sizes of the fetched results before and after compression, for the compression ratio
+  public static final String HS2_FETCH_UNCOMPRESSED_BYTES = "hs2_fetch_uncompressed_bytes";
+  public static final String HS2_FETCH_COMPRESSED_BYTES = "hs2_fetch_compressed_bytes";
+  public static final String HS2_FETCH_COMPRESSION_TIME_NS = "hs2_fetch_compression_time_ns";
+
+  public static final String HS2_METADATA_CACHE_HITS = "hs2_metadata_cache_hits";
+  public static final String HS2_METADATA_CACHE_MISSES = "hs2_metadata_cache_misses";
+  public static final String HS2_METADATA_CACHE_ENTRIES = "hs2_metadata_cache_entries";
+
   public static final String QC_MAX_SIZE = "qc_max_size";
   public static final String QC_CURRENT_SIZE = "qc_current_size";
   public static final String QC_VALID_ENTRIES = "qc_valid_entries";
@@ -357,11 +357,21 @@ private static void populateLlapDaemonVarsSet(Set<String> llapDaemonVarsSetLocal
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_ALLOCATOR_DIRECT.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_USE_LRFU.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_LRFU_LAMBDA.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_LRFU_SHARDS.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_CACHE_QUOTAS.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_CACHE_ADMISSION_ENABLED.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_CACHE_ADMISSION_MIN_FREQUENCY.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_CACHE_ADMISSION_SKETCH_ENTRIES.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_DECODED_CACHE_SIZE.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_DECODED_CACHE_MIN_FREQUENCY.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_CACHE_ENABLE_ORC_RG_STATS_CACHE.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_CACHE_ALLOW_SYNTHETIC_FILEID.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_USE_FILEID_PATH.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_DECODING_METRICS_PERCENTILE_INTERVALS.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_ORC_ENABLE_TIME_COUNTERS.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_THREADPOOL_SIZE.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_READ_AHEAD_THREADS.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_READ_AHEAD_MAX_QUERY_BYTES.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_KERBEROS_PRINCIPAL.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_KERBEROS_KEYTAB_FILE.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_ZKSM_ZK_CONNECTION_STRING.varname);
@@ -1737,6 +1747,14 @@ public static enum ConfVars {
         "joins unnecessary memory will be allocated and then trimmed."),
     HIVEHYBRIDGRACEHASHJOINBLOOMFILTER("hive.mapjoin.hybridgrace.bloomfilter", true, "Whether to " +
         "use BloomFilter in Hybrid grace hash join to minimize unnecessary spilling."),
+    HIVEHYBRIDGRACEHASHJOINADAPTIVE("hive.mapjoin.hybridgrace.adaptive", false,
+        "Whether a Tez mapjoin that was not planned as a hybrid grace hash join, e.g. because LLAP\n" +
+        "disables it, switches to one when its hash table outgrows the memory it may use while it is\n" +
+        "loaded. The hash table is partitioned and partitions are spilled to local disk as needed, so\n" +
+        "a join planned from stale statistics completes in the running task instead of failing the\n" +
+        "task and re-executing the query. Not used for cross products and FULL OUTER mapjoins.\n" +
+        "Native vector mapjoin fast hash tables that may spill are built by one thread and kept on\n" +
+        "the heap."),
     HIVEMAPJOINFULLOUTER("hive.mapjoin.full.outer", true,
         "Whether to use MapJoin for FULL OUTER JOINs."),
     HIVE_TEST_MAPJOINFULLOUTER_OVERRIDE(
@@ -3428,6 +3446,14 @@ public static enum ConfVars {
         new TimeValidator(TimeUnit.SECONDS),
         "Keepalive time (in seconds) for an idle worker thread. When the number of workers exceeds min workers, " +
         "excessive threads are killed after this time interval."),
+    HIVE_SERVER2_THRIFT_BINARY_SERVER("hive.server2.thrift.binary.server", "threadpool",
+        new StringSet("threadpool", "selector"),
+        "The Thrift server used in the binary transport mode. \"threadpool\" dedicates a worker\n" +
+        "thread to each connection for its whole lifetime. \"selector\" parks the idle connections\n" +
+        "on a selector between requests and only uses a worker thread while a request is being\n" +
+        "processed, so that many mostly idle connections do not need as many threads. In that\n" +
+        "mode, up to hive.server2.thrift.max.worker.threads requests run at once, and the rest\n" +
+        "wait in a queue. \"selector\" is not supported with SSL, and falls back to \"threadpool\"."),
 
     // Configuration for async thread pool in SessionManager
     HIVE_SERVER2_ASYNC_EXEC_THREADS("hive.server2.async.exec.threads", 100,
@@ -3564,6 +3590,16 @@ public static enum ConfVars {
         "  HIVE : Exposes Hive's native table types like MANAGED_TABLE, EXTERNAL_TABLE, VIRTUAL_VIEW\n" +
         "  CLASSIC : More generic types like TABLE and VIEW"),
     HIVE_SERVER2_SESSION_HOOK("hive.server2.session.hook", "", ""),
+    HIVE_SERVER2_METADATA_CACHE_TTL("hive.server2.metadata.cache.ttl", "0s",
+        new TimeValidator(TimeUnit.SECONDS),
+        "How long HiveServer2 caches the results of the GetSchemas, GetTables and GetColumns\n" +
+        "metadata operations, per user and per set of arguments. BI tools call these all the time.\n" +
+        "The entries are also invalidated by the metastore notification events when the\n" +
+        "notification event poll is enabled; HiveServer2 adds its event consumer to\n" +
+        "hive.notification.event.consumers. The authorization checks are still done for every\n" +
+        "call. A nonpositive value disables the cache."),
+    HIVE_SERVER2_METADATA_CACHE_MAX_ROWS("hive.server2.metadata.cache.max.rows", 1000000L,
+        "The maximum total number of rows in the HiveServer2 metadata operation cache."),
 
     // SSL settings
     HIVE_SERVER2_USE_SSL("hive.server2.use.SSL", false,
@@ -3628,6 +3664,22 @@ public static enum ConfVars {
     HIVE_SERVER2_THRIFT_RESULTSET_DEFAULT_FETCH_SIZE("hive.server2.thrift.resultset.default.fetch.size", 1000,
         "The number of rows sent in one Fetch RPC call by the server to the client, if not\n" +
         "specified by the client."),
+    HIVE_SERVER2_THRIFT_RESULTSET_FORMAT("hive.server2.thrift.resultset.format", "thrift",
+        new StringSet("thrift", "arrow"),
+        "The format of the query results sent in Fetch RPC calls. \"thrift\" sends TColumns;\n" +
+        "\"arrow\" has the tasks write the results as Arrow IPC streams, that the clients read\n" +
+        "from Arrow vectors. Clients that support it set this when they open the session (e.g.\n" +
+        "JDBC with resultFormat=arrow in the URL), and the server confirms the format. Only those\n" +
+        "sessions get Arrow results; the value set on the server or later in a session is ignored,\n" +
+        "since older clients cannot read them. The results with types that Arrow streams do not\n" +
+        "support, and the queries converted to fetch tasks, are sent as TColumns."),
+    HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION("hive.server2.thrift.resultset.compression", "none",
+        new StringSet("none", "lz4", "zlib"),
+        "The compression of the query results sent in Fetch RPC calls, for slow networks. lz4 is\n" +
+        "cheap to compress, zlib has a better ratio. Clients that support it set this when they\n" +
+        "open the session (e.g. JDBC with resultCompression=lz4 in the URL), and the server\n" +
+        "confirms the codec. Only those sessions get compressed results; the value set on the\n" +
+        "server or later in a session is ignored, since older clients cannot read them."),
     HIVE_SERVER2_XSRF_FILTER_ENABLED("hive.server2.xsrf.filter.enabled",false,
         "If enabled, HiveServer2 will block any requests made to it over http " +
         "if an X-XSRF-HEADER header is not present"),
@@ -3741,6 +3793,58 @@ public static enum ConfVars {
          "This flag should be set to true to enable use of native fast vector map join hash tables in\n" +
          "queries using MapJoin.\n" +
          "The default value is false."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_LOAD_THREADS(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.load.threads", 1,
+         "The number of threads used to build a native fast vector map join hash table from the\n" +
+         "broadcast edge. When larger than 1, the keys are hash partitioned into that many hash tables\n" +
+         "(rounded up to a power of 2) that are built concurrently while the input is read on the loader\n" +
+         "thread. Not used for FULL OUTER MapJoin. The default value of 1 builds a single hash table."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_OFFHEAP_ENABLED(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.offheap.enabled", false,
+         "Whether to allocate the slot arrays of native fast vector map join hash tables in direct\n" +
+         "memory outside of the Java heap. The slot arrays are the largest single allocations of a\n" +
+         "hash table; off heap they do not add to GC work, and hash tables cached in the LLAP object\n" +
+         "cache are shared across fragments the same way. Keys and values stay on the heap. The direct\n" +
+         "memory is bounded by -XX:MaxDirectMemorySize and is not included in hash table memory\n" +
+         "estimates."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_ENABLED(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.bloom.filter.enabled", false,
+         "Whether to build a Bloom filter over the keys of a native fast vector map join hash table.\n" +
+         "Single long and string key INNER, INNER big-only and LEFT SEMI MapJoins test each big table\n" +
+         "batch against the filter and drop the rows it rules out before probing the hash table, which\n" +
+         "saves the cache misses of the probe when most keys do not match."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_MIN_KEYS(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.bloom.filter.min.keys", 100000L,
+         "The minimum number of small table keys for the native fast vector map join Bloom filter to\n" +
+         "be built. Smaller hash tables stay cache resident and probing them directly is cheaper."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_FPP(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.bloom.filter.fpp", 0.05f,
+         "The false positive probability of the native fast vector map join Bloom filter."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_SPILL_ENABLED(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.spill.enabled", false,
+         "Whether native fast vector map join hash tables support Hybrid Grace Hash Join. When the\n" +
+         "hash table outgrows its memory budget while loading, its largest hash partitions are spilled\n" +
+         "to local disk along with the big table rows that probe them, and are joined after the big\n" +
+         "table has been read, instead of failing the query. Otherwise Hybrid Grace Hash Join MapJoins\n" +
+         "use the optimized hash table. Not used for FULL OUTER MapJoin. Spilling hash tables are built\n" +
+         "by one thread and kept on the heap."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_ENABLED(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.dense.enabled", false,
+         "Whether a native fast vector map join hash table with a single integer key builds a direct\n" +
+         "addressed index over its keys once it is loaded, when the keys are dense within their min / max\n" +
+         "range, e.g. surrogate keys of a dimension table. Lookups then read the slot of a key from the\n" +
+         "index instead of hashing and probing for it, and the min / max range is used to skip big table\n" +
+         "keys, and whole batches for INNER, INNER big-only and LEFT SEMI MapJoins, that cannot match.\n" +
+         "No Bloom filter is built for a dense hash table. Not used for hash tables built by multiple\n" +
+         "threads or that may spill."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_MAX_RANGE(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.dense.max.range", 16777216L,
+         "The largest min / max key range of a dense native fast vector map join hash table. The index\n" +
+         "takes 4 bytes per key in the range."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_MIN_DENSITY(
+        "hive.vectorized.execution.mapjoin.native.fast.hashtable.dense.min.density", 0.5f,
+         "The smallest fraction of the keys in the min / max key range that must be in a native fast\n" +
+         "vector map join hash table for it to be dense."),
     HIVE_VECTORIZATION_GROUPBY_CHECKINTERVAL("hive.vectorized.groupby.checkinterval", 100000,
         "Number of entries added to the group by aggregation hash before a recomputation of average entry size is performed."),
     HIVE_VECTORIZATION_GROUPBY_MAXENTRIES("hive.vectorized.groupby.maxentries", 1000000,
@@ -3748,6 +3852,16 @@ public static enum ConfVars {
         "Exceeding this will trigger a flush irrelevant of memory pressure condition."),
     HIVE_VECTORIZATION_GROUPBY_FLUSH_PERCENT("hive.vectorized.groupby.flush.percent", (float) 0.1,
         "Percent of entries in the group by aggregation hash flushed when the memory threshold is exceeded."),
+    HIVE_VECTORIZATION_GROUPBY_SPILL_ENABLED("hive.vectorized.groupby.spill.enabled", false,
+        "Whether the vector group by hash aggregation spills hash partitions of its key space to local disk\n" +
+        "instead of flushing partial results when the memory threshold is exceeded. The spilled partitions\n" +
+        "are merged back at close, so each group is emitted only once."),
+    HIVE_VECTORIZATION_GROUPBY_SPILL_PARTITIONS("hive.vectorized.groupby.spill.partitions", 16,
+        "Number of hash partitions the vector group by aggregation key space is divided into for spilling."),
+    HIVE_VECTORIZATION_GROUPBY_FAST_HASHTABLE_ENABLED("hive.vectorized.groupby.fast.hashtable.enabled", false,
+        "Whether the vector group by hash aggregation uses an open addressing hash table specialized for\n" +
+        "one long, two long, or one string key instead of the generic key wrapper hash map. Not used\n" +
+        "with grouping sets or when spilling is enabled."),
     HIVE_VECTORIZATION_REDUCESINK_NEW_ENABLED("hive.vectorized.execution.reducesink.new.enabled", true,
         "This flag should be set to true to enable the new vectorization\n" +
         "of queries using ReduceSink.\ni" +
@@ -4039,6 +4153,12 @@ public static enum ConfVars {
     LLAP_ALLOCATOR_MAPPED_PATH("hive.llap.io.allocator.mmap.path", "/tmp",
         new WritableDirectoryValidator(),
         "The directory location for mapping NVDIMM/NVMe flash storage into the ORC low-level cache."),
+    LLAP_ALLOCATOR_MAPPED_PERSISTENT("hive.llap.io.allocator.mmap.persistent", false,
+        "Whether the memory mapped ORC low-level cache is kept across daemon restarts. The arenas\n" +
+        "are kept in files under hive.llap.io.allocator.mmap.path, and the cache index is saved\n" +
+        "next to them when the daemon shuts down. On startup, the saved index is checked against\n" +
+        "the allocator settings and the cached data is re-admitted, so the cache is warm right\n" +
+        "after a restart. The directory must not be shared between daemons."),
     LLAP_ALLOCATOR_DISCARD_METHOD("hive.llap.io.allocator.discard.method", "both",
         new StringSet("freelist", "brute", "both"),
         "Which method to use to force-evict blocks to deal with fragmentation:\n" +
@@ -4058,6 +4178,45 @@ public static enum ConfVars {
         "The meaning of this parameter is the inverse of the number of time ticks (cache\n" +
         " operations, currently) that cause the combined recency-frequency of a block in cache\n" +
         " to be halved."),
+    LLAP_LRFU_SHARDS("hive.llap.io.lrfu.shards", 1,
+        "The number of shards of the LRFU cache policy, rounded up to a power of 2. Each shard\n" +
+        "has its own heap, list and locks and tracks a part of the buffers, so that IO elevator\n" +
+        "and executor threads touching different buffers do not contend for one lock. Eviction\n" +
+        "drains the lists of all the shards before their heaps, so it stays close to a single\n" +
+        "LRFU policy. The default value of 1 uses a single policy."),
+    LLAP_IO_CACHE_QUOTAS("hive.llap.io.cache.quotas", "",
+        "Comma-separated list of LLAP cache quotas, as tag:min:max, where the tag is a table\n" +
+        "(db.table) or a partition (db.table/partition) as reported by the cache usage tracking,\n" +
+        "and min and max are fractions of the cache size. The LRFU policy does not evict the\n" +
+        "buffers of a table that uses less than its minimum while it can evict other buffers,\n" +
+        "and evicts the buffers of a table that uses more than its maximum before any others.\n" +
+        "Requires hive.llap.io.track.cache.usage. Empty means no quotas."),
+    LLAP_IO_CACHE_ADMISSION_ENABLED("hive.llap.io.cache.admission.enabled", false,
+        "Whether to put a frequency based (TinyLFU) admission filter in front of the ORC\n" +
+        "low-level cache. Once the cache is full, the data read from disk is only cached if it\n" +
+        "has been read at least hive.llap.io.cache.admission.min.frequency times recently, so\n" +
+        "that large one-off scans do not evict the data that is used often."),
+    LLAP_IO_CACHE_ADMISSION_MIN_FREQUENCY("hive.llap.io.cache.admission.min.frequency", 2,
+        "The number of recent reads of a cache block from disk, including the current one,\n" +
+        "needed for the admission filter to let it into a full cache. At most 15."),
+    LLAP_IO_CACHE_ADMISSION_SKETCH_ENTRIES("hive.llap.io.cache.admission.sketch.entries", 262144,
+        "The approximate number of distinct cache blocks the admission filter keeps the read\n" +
+        "frequencies of. The frequencies are halved every 10 times that many reads, so that\n" +
+        "the filter follows the changes in the workload. The sketch uses about 8 bytes per entry."),
+    LLAP_IO_DECODED_CACHE_SIZE("hive.llap.io.decoded.cache.size", "0Mb", new SizeValidator(),
+        "The maximum size of the decoded column cache, that keeps the column vectors of the ORC\n" +
+        "row groups that are read often, so that they are not decoded again for every query.\n" +
+        "The vectors are kept on the Java heap, but also count towards hive.llap.io.memory.size,\n" +
+        "and are evicted by the same policy as the rest of the cache. Only the primitive columns\n" +
+        "are cached. 0 disables the decoded cache."),
+    LLAP_IO_DECODED_CACHE_MIN_FREQUENCY("hive.llap.io.decoded.cache.min.frequency", 3,
+        "The number of recent reads of a column in a row group, including the current one,\n" +
+        "needed to put its decoded vectors into the decoded column cache. At most 15."),
+    LLAP_IO_NO_CACHE("hive.llap.io.nocache", false,
+        "Whether the data that the query reads through LLAP IO from disk is kept out of the\n" +
+        "low-level cache (ORC data, and Parquet column chunks). Meant to be set for the known\n" +
+        "large one-off queries, such as ETL or exports, so that they do not evict the data of\n" +
+        "the other queries. The query still uses the data that is already cached."),
     LLAP_CACHE_ALLOW_SYNTHETIC_FILEID("hive.llap.cache.allow.synthetic.fileid", true,
         "Whether LLAP cache should use synthetic file ID if real one is not available. Systems\n" +
         "like HDFS, Isilon, etc. provide a unique file/inode ID. On other FSes (e.g. local\n" +
@@ -4074,6 +4233,11 @@ public static enum ConfVars {
         "Whether LLAP cache for ORC should remember gaps in ORC compression buffer read\n" +
         "estimates, to avoid re-reading the data that was read once and discarded because it\n" +
         "is unneeded. This is only necessary for ORC files written before HIVE-9660."),
+    LLAP_CACHE_ENABLE_ORC_RG_STATS_CACHE("hive.llap.orc.rg.stats.cache", false,
+        "Whether LLAP metadata cache for ORC should keep the row group statistics of the\n" +
+        "columns used in predicates in a compact pre-parsed form, so that row group filtering\n" +
+        "does not need to read and parse the row index for stripes it eliminates entirely.\n" +
+        "Only the integer and floating point columns without bloom filters are cached."),
     LLAP_IO_USE_FILEID_PATH("hive.llap.io.use.fileid.path", true,
         "Whether LLAP should use fileId (inode)-based path to ensure better consistency for the\n" +
         "cases of file overwrites. This is supported on HDFS. Disabling this also turns off any\n" +
@@ -4139,12 +4303,39 @@ public static enum ConfVars {
         " formats. 'none' will not disable LLAP IO for any formats."),
     LLAP_OBJECT_CACHE_ENABLED("hive.llap.object.cache.enabled", true,
         "Cache objects (plans, hashtables, etc) in llap"),
+    LLAP_MAPJOIN_SHARED_CACHE_ENABLED("hive.llap.mapjoin.shared.cache.enabled", false,
+        "Whether LLAP daemons share map join hash tables across queries. Only map joins whose\n" +
+        "small table is a scan, filter and projection of transactional tables qualify; the hash\n" +
+        "table is keyed on the tables, their partitions, the snapshot write ids and the key/value\n" +
+        "schema, so a query only reuses a hash table built over exactly the same data."),
+    LLAP_MAPJOIN_SHARED_CACHE_MAX_EXECUTOR_MEMORY_FRACTION(
+        "hive.llap.mapjoin.shared.cache.max.executor.memory.fraction", 0.1f, new RatioValidator(),
+        "Fraction of the LLAP daemon executor memory, as the daemon reports it, that map join hash\n" +
+        "tables shared across queries may use. Hash tables that are no longer referenced by a\n" +
+        "running query are evicted in LRU order to make room for new ones, and are released by an\n" +
+        "LLAP purge. The hash table memory monitor of each executor does not subtract the shared\n" +
+        "hash tables from its own share, so this memory comes on top of what the executors use."),
     LLAP_IO_DECODING_METRICS_PERCENTILE_INTERVALS("hive.llap.io.decoding.metrics.percentiles.intervals", "30",
         "Comma-delimited set of integers denoting the desired rollover intervals (in seconds)\n" +
         "for percentile latency metrics on the LLAP daemon IO decoding time.\n" +
         "hive.llap.queue.metrics.percentiles.intervals"),
     LLAP_IO_THREADPOOL_SIZE("hive.llap.io.threadpool.size", 10,
         "Specify the number of threads to use for low-level IO thread pool."),
+    LLAP_IO_READ_AHEAD_THREADS("hive.llap.io.read.ahead.threads", 0,
+        "The number of threads that read the data of the next ORC stripe ahead, while LLAP IO\n" +
+        "reads and decodes the current one. Only the stripes that are read entirely (i.e. the\n" +
+        "ones not filtered by the row group index) are read ahead, and only the data that is\n" +
+        "not cached. Mostly useful on object stores, where every read waits for a round trip.\n" +
+        "0 disables reading ahead."),
+    LLAP_IO_READ_AHEAD_MAX_QUERY_BYTES("hive.llap.io.read.ahead.max.query.bytes", "256Mb",
+        new SizeValidator(),
+        "The maximum amount of data that is read ahead and not yet used, per query, on one LLAP\n" +
+        "daemon. The stripes that do not fit are not read ahead."),
+    LLAP_IO_READ_COALESCE_GAP("hive.llap.io.read.coalesce.gap", "0Kb", new SizeValidator(),
+        "The maximum gap between two disk ranges that LLAP IO reads from an ORC file in one\n" +
+        "request, together with the gap. Larger values mean fewer requests, at the cost of\n" +
+        "reading the data in the gaps for nothing; on object stores, a value in the order of\n" +
+        "1Mb is usually cheaper than the extra round trips. 0 disables coalescing."),
     LLAP_KERBEROS_PRINCIPAL(HIVE_LLAP_DAEMON_SERVICE_PRINCIPAL_NAME, "",
         "The name of the LLAP daemon's service principal."),
     LLAP_KERBEROS_KEYTAB_FILE("hive.llap.daemon.keytab.file", "",
@@ -4389,6 +4580,17 @@ public static enum ConfVars {
         "preferring one of the locations provided by the split itself. If there is no llap daemon " +
         "running on any of those locations (or on the cloud), fall back to a cache affinity to" + 
         " an LLAP node. This is effective only if hive.execution.mode is llap."),
+    LLAP_CLIENT_CONSISTENT_SPLITS_HASHING("hive.llap.client.consistent.splits.hashing", "jump",
+        new StringSet("jump", "rendezvous"),
+        "The hashing used to map the splits to the LLAP nodes, when hive.llap.client.consistent.splits\n" +
+        "is enabled. 'jump' uses jump consistent hashing over the ordered list of the LLAP slots;\n" +
+        "'rendezvous' uses rendezvous hashing over the LLAP hosts, so that only the splits of the\n" +
+        "nodes that are added or removed move, regardless of the order of the nodes."),
+    LLAP_CLIENT_CONSISTENT_SPLITS_MAX_LOAD_FACTOR("hive.llap.client.consistent.splits.max.load.factor",
+        1.25f,
+        "With rendezvous hashing, the maximum number of splits of a job that are mapped to one LLAP\n" +
+        "node, as a multiple of the average; the splits over the limit go to the node with the next\n" +
+        "highest weight. 0 disables the limit. Must be 0 or at least 1."),
     LLAP_VALIDATE_ACLS("hive.llap.validate.acls", true,
         "Whether LLAP should reject permissive ACLs in some cases (e.g. its own management\n" +
         "protocol or ZK paths), similar to how ssh refuses a key with bad access permissions."),
@@ -5614,6 +5816,8 @@ private static String[] convertVarsToRegex(String[] paramList) {
     ConfVars.HIVE_SCHEMA_EVOLUTION.varname,
     ConfVars.HIVE_SERVER2_LOGGING_OPERATION_LEVEL.varname,
     ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_SERIALIZE_IN_TASKS.varname,
+    ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_FORMAT.varname,
+    ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION.varname,
     ConfVars.HIVE_SUPPORT_SPECICAL_CHARACTERS_IN_TABLE_NAMES.varname,
     ConfVars.JOB_DEBUG_CAPTURE_STACKTRACES.varname,
     ConfVars.JOB_DEBUG_TIMEOUT.varname,
@@ -5629,6 +5833,8 @@ private static String[] convertVarsToRegex(String[] paramList) {
     ConfVars.LLAP_AUTO_MAX_OUTPUT.varname,
     ConfVars.LLAP_SKIP_COMPILE_UDF_CHECK.varname,
     ConfVars.LLAP_CLIENT_CONSISTENT_SPLITS.varname,
+    ConfVars.LLAP_CLIENT_CONSISTENT_SPLITS_HASHING.varname,
+    ConfVars.LLAP_CLIENT_CONSISTENT_SPLITS_MAX_LOAD_FACTOR.varname,
     ConfVars.LLAP_ENABLE_GRACE_JOIN_IN_LLAP.varname,
     ConfVars.LLAP_ALLOW_PERMANENT_FNS.varname,
     ConfVars.MAXCREATEDFILES.varname,
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.common.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Frees the memory of a direct ByteBuffer right away, instead of when the buffer is garbage
+ * collected. The JDK internals are only reached through reflection, so that this compiles without
+ * the internal API warnings and works on JDK 8 (DirectByteBuffer.cleaner()) as well as on JDK 9
+ * and later (Unsafe.invokeCleaner). When neither is available, the buffers are left to the GC.
+ */
+public final class DirectBufferCleaner {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DirectBufferCleaner.class.getName());
+
+  // JDK 9 and later: Unsafe.invokeCleaner(ByteBuffer) on the Unsafe instance.
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+  // JDK 8: DirectByteBuffer.cleaner() and then Cleaner.clean().
+  private static final Method CLEANER;
+  private static final Method CLEAN;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null, cleaner = null, clean = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+    } catch (Exception | LinkageError e) {
+      invokeCleaner = null;
+      try {
+        cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+        cleaner.setAccessible(true);
+        clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      } catch (Exception | LinkageError e2) {
+        LOG.warn("Cannot free direct buffers explicitly; leaving them to the GC", e2);
+        cleaner = null;
+        clean = null;
+      }
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+    CLEANER = cleaner;
+    CLEAN = clean;
+  }
+
+  private DirectBufferCleaner() {
+  }
+
+  /**
+   * @return Whether the direct buffers can be freed explicitly on this JVM.
+   */
+  public static boolean isSupported() {
+    return INVOKE_CLEANER != null || CLEAN != null;
+  }
+
+  /**
+   * Frees the memory of the direct buffer. The buffer, and any view or slice of it, must not be
+   * used afterwards.
+   *
+   * @param buffer A direct buffer allocated by ByteBuffer.allocateDirect; not a slice or a view.
+   * @return Whether the memory was freed; otherwise, it is freed when the buffer is collected.
+   */
+  public static boolean clean(ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("Not a direct buffer");
+    }
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        return true;
+      }
+      if (CLEAN != null) {
+        Object cleaner = CLEANER.invoke(buffer);
+        if (cleaner != null) {
+          CLEAN.invoke(cleaner);
+          return true;
+        }
+      }
+    } catch (ReflectiveOperationException e) {
+      LOG.warn("Cannot free a direct buffer; leaving it to the GC", e);
+    }
+    return false;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestDirectBufferCleaner {
+
+  private static long getDirectMemoryUsed() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if (pool.getName().equals("direct")) {
+        return pool.getMemoryUsed();
+      }
+    }
+    throw new IllegalStateException("No direct buffer pool");
+  }
+
+  @Test
+  public void testClean() {
+    assertTrue(DirectBufferCleaner.isSupported());
+    long before = getDirectMemoryUsed();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    assertEquals(before + (1 << 20), getDirectMemoryUsed());
+    assertTrue(DirectBufferCleaner.clean(buffer));
+    assertEquals(before, getDirectMemoryUsed());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHeapBuffer() {
+    DirectBufferCleaner.clean(ByteBuffer.allocate(16));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.llap;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.llap.cache.EvictionListener;
+import org.apache.hadoop.hive.llap.cache.LlapCacheableBuffer;
+import org.apache.hadoop.hive.llap.cache.LlapDataBuffer;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheImpl;
+import org.apache.hadoop.hive.llap.cache.LowLevelCachePolicy;
+import org.apache.hadoop.hive.llap.cache.LowLevelLrfuCachePolicy;
+import org.apache.hadoop.hive.llap.cache.LowLevelShardedLrfuCachePolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * LLAP IO cache policy benchmark under concurrent buffer lock / unlock notifications, the way
+ * the IO elevator and the executors use cached buffers.
+ *
+ * All the buffers are cached up front and none is evicted, so only the notifications are
+ * measured.  Each operation picks a random buffer, locks it and unlocks it again.
+ *
+ *   LRFU          -- LowLevelLrfuCachePolicy, one heap and list lock.
+ *   SHARDED_LRFU  -- LowLevelShardedLrfuCachePolicy with the given number of shards.
+ *
+ * Build with "mvn clean install -DskipTests -Pdist,itests" at main hive directory.
+ *
+ * From itests/hive-jmh directory, run:
+ *     java -jar target/benchmarks.jar org.apache.hive.benchmark.llap.LlapCachePolicyBench
+ *
+ * To compare different thread counts and shard counts, e.g.:
+ *     java -jar target/benchmarks.jar LlapCachePolicyBench -t 8 -p shards=4,16,64
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class LlapCachePolicyBench {
+
+  @Param({"LRFU", "SHARDED_LRFU"})
+  public String policyType;
+
+  @Param({"16"})
+  public int shards;
+
+  @Param({"65536"})
+  public int bufferCount;
+
+  private LowLevelCachePolicy policy;
+  private LlapDataBuffer[] buffers;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Configuration conf = new Configuration();
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.LLAP_LRFU_SHARDS, shards);
+    // The buffers are 1 byte, so the cache holds all of them.
+    switch (policyType) {
+    case "LRFU":
+      policy = new LowLevelLrfuCachePolicy(1, bufferCount, conf);
+      break;
+    case "SHARDED_LRFU":
+      policy = new LowLevelShardedLrfuCachePolicy(1, bufferCount, conf);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown policy type " + policyType);
+    }
+    policy.setEvictionListener(new EvictionListener() {
+      @Override
+      public void notifyEvicted(LlapCacheableBuffer buffer) {
+      }
+    });
+
+    buffers = new LlapDataBuffer[bufferCount];
+    for (int i = 0; i < bufferCount; i++) {
+      LlapDataBuffer buffer = LowLevelCacheImpl.allocateFake();
+      buffer.incRef();
+      policy.cache(buffer, Priority.NORMAL);
+      buffer.decRef();
+      policy.notifyUnlock(buffer);
+      buffers[i] = buffer;
+    }
+  }
+
+  @Benchmark
+  @Threads(32)
+  public void lockUnlock() {
+    LlapDataBuffer buffer = buffers[ThreadLocalRandom.current().nextInt(buffers.length)];
+    buffer.incRef();
+    policy.notifyLock(buffer);
+    buffer.decRef();
+    policy.notifyUnlock(buffer);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + LlapCachePolicyBench.class.getSimpleName() + ".*")
+        .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,406 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.vectorization.mapjoin;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.persistence.BytesBytesMultiHashMap;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinBytesTableContainer;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast.VectorMapJoinFastHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast.VectorMapJoinFastLongHashMap;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast.VectorMapJoinFastStringHashMap;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBytesHashMap;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashMapResult;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinLongHashMap;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.optimized.VectorMapJoinOptimizedLongHashMap;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.optimized.VectorMapJoinOptimizedStringHashMap;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.ByteStream.RandomAccessOutput;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.binarysortable.fast.BinarySortableSerializeWrite;
+import org.apache.hadoop.hive.serde2.lazybinary.fast.LazyBinarySerializeWrite;
+import org.apache.hadoop.io.BytesWritable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Map join small table hash table build (load) and probe benchmarks.
+ *
+ * Each benchmark builds the hash table the way VectorMapJoinFastHashTableLoader (FAST_*) or
+ * HashTableLoader with the native vector optimized hash table (OPTIMIZED_*) does: one put per
+ * BinarySortable key and LazyBinary value pair read from the broadcast edge.  The key value
+ * pairs are generated in memory up front, so only the build is measured.
+ *
+ *   build       -- average time to build the whole table; rows / time is the build throughput.
+ *   probe       -- average time of one lookup of a random key present in the table.
+ *   probeMiss   -- average time of one lookup of a key not in the table.
+ *
+ * The estimated memory size of the built table and the bytes per distinct key are printed at the
+ * end of each trial.
+ *
+ * Build with "mvn clean install -DskipTests -Pdist,itests" at main hive directory.
+ *
+ * From itests/hive-jmh directory, run:
+ *     java -jar target/benchmarks.jar org.apache.hive.benchmark.vectorization.mapjoin.MapJoinHashTableLoadBench
+ *
+ * The defaults keep the generated rows small enough for the default heap.  For the large tables,
+ * raise the heap and set the parameters, e.g.:
+ *     java -jar target/benchmarks.jar MapJoinHashTableLoadBench.build -jvmArgsAppend -Xmx48g \
+ *         -p keyCount=1000000,10000000,100000000 -p duplicatePercent=0,100 -p skew=zipf
+ *
+ *  {FAST_LONG_HASH_MAP, FAST_STRING_HASH_MAP, OPTIMIZED_LONG_HASH_MAP, OPTIMIZED_STRING_HASH_MAP}
+ *    X
+ *  keyCount X keyWidth X valueWidth X duplicatePercent X {uniform, zipf}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class MapJoinHashTableLoadBench {
+
+  public enum HashTableImplementation {
+    FAST_LONG_HASH_MAP,
+    FAST_STRING_HASH_MAP,
+    OPTIMIZED_LONG_HASH_MAP,
+    OPTIMIZED_STRING_HASH_MAP;
+
+    boolean isLongKey() {
+      return this == FAST_LONG_HASH_MAP || this == OPTIMIZED_LONG_HASH_MAP;
+    }
+  }
+
+  private static final int PROBE_BATCH_SIZE = 1024;
+
+  @Param({"FAST_LONG_HASH_MAP", "FAST_STRING_HASH_MAP",
+      "OPTIMIZED_LONG_HASH_MAP", "OPTIMIZED_STRING_HASH_MAP"})
+  public HashTableImplementation implementation;
+
+  // Number of distinct small table keys.
+  @Param({"1000000"})
+  public int keyCount;
+
+  // Width in bytes of string keys (long keys are always 8 bytes).
+  @Param({"16"})
+  public int keyWidth;
+
+  // Width in bytes of the value of each small table row.
+  @Param({"8", "64"})
+  public int valueWidth;
+
+  // Extra rows, as a percent of keyCount, that repeat an existing key (i.e. values per key > 1).
+  @Param({"0", "100"})
+  public int duplicatePercent;
+
+  // How the duplicate rows pick their key: uniform, or zipf (a few keys get most of the rows).
+  @Param({"uniform", "zipf"})
+  public String skew;
+
+  private HiveConf hiveConf;
+
+  private BytesWritable[] keys;
+  private BytesWritable[] values;
+
+  private long[] probeLongKeys;
+  private byte[][] probeStringKeys;
+  private long[] missLongKeys;
+  private byte[][] missStringKeys;
+
+  private Object builtTable;
+  private VectorMapJoinLongHashMap probeLongHashMap;
+  private VectorMapJoinBytesHashMap probeBytesHashMap;
+  private VectorMapJoinHashMapResult hashMapResult;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    hiveConf = new HiveConf();
+
+    Random random = new Random(8723);
+
+    final int rowCount = (int) (keyCount + (long) keyCount * duplicatePercent / 100);
+    keys = new BytesWritable[rowCount];
+    values = new BytesWritable[rowCount];
+
+    long[] distinctLongKeys = null;
+    byte[][] distinctStringKeys = null;
+    if (implementation.isLongKey()) {
+      distinctLongKeys = new long[keyCount];
+    } else {
+      distinctStringKeys = new byte[keyCount][];
+    }
+
+    BinarySortableSerializeWrite keySerializeWrite = new BinarySortableSerializeWrite(1);
+    LazyBinarySerializeWrite valueSerializeWrite = new LazyBinarySerializeWrite(1);
+    Output output = new Output();
+    byte[] valueBytes = new byte[valueWidth];
+
+    for (int row = 0; row < rowCount; row++) {
+      final int keyIndex =
+          (row < keyCount ? row : duplicateKeyIndex(random));
+
+      output.reset();
+      keySerializeWrite.set(output);
+      if (implementation.isLongKey()) {
+        if (row < keyCount) {
+          distinctLongKeys[row] = random.nextLong();
+        }
+        keySerializeWrite.writeLong(distinctLongKeys[keyIndex]);
+      } else {
+        if (row < keyCount) {
+          distinctStringKeys[row] = randomBytes(random, keyWidth);
+        }
+        byte[] keyBytes = distinctStringKeys[keyIndex];
+        keySerializeWrite.writeString(keyBytes, 0, keyBytes.length);
+      }
+      keys[row] = copyOf(output);
+
+      output.reset();
+      valueSerializeWrite.set(output);
+      fillRandomBytes(random, valueBytes);
+      valueSerializeWrite.writeString(valueBytes, 0, valueBytes.length);
+      values[row] = copyOf(output);
+    }
+
+    // Probe keys: present keys in random order, and keys that are (almost surely) not present.
+    if (implementation.isLongKey()) {
+      probeLongKeys = new long[PROBE_BATCH_SIZE];
+      missLongKeys = new long[PROBE_BATCH_SIZE];
+      for (int i = 0; i < PROBE_BATCH_SIZE; i++) {
+        probeLongKeys[i] = distinctLongKeys[random.nextInt(keyCount)];
+        missLongKeys[i] = random.nextLong();
+      }
+    } else {
+      probeStringKeys = new byte[PROBE_BATCH_SIZE][];
+      missStringKeys = new byte[PROBE_BATCH_SIZE][];
+      for (int i = 0; i < PROBE_BATCH_SIZE; i++) {
+        probeStringKeys[i] = distinctStringKeys[random.nextInt(keyCount)];
+        missStringKeys[i] = randomBytes(random, keyWidth + 1);
+      }
+    }
+
+    // Build once for the probe benchmarks and the memory report.
+    builtTable = buildTable();
+    if (builtTable instanceof VectorMapJoinFastHashTable) {
+      if (implementation.isLongKey()) {
+        probeLongHashMap = (VectorMapJoinLongHashMap) builtTable;
+      } else {
+        probeBytesHashMap = (VectorMapJoinBytesHashMap) builtTable;
+      }
+    } else {
+      MapJoinBytesTableContainer tableContainer = (MapJoinBytesTableContainer) builtTable;
+      if (implementation.isLongKey()) {
+        probeLongHashMap = new VectorMapJoinOptimizedLongHashMap(
+            /* minMaxEnabled */ false, /* isOuterJoin */ false, HashTableKeyType.LONG,
+            tableContainer, tableContainer.createGetter(null));
+      } else {
+        probeBytesHashMap = new VectorMapJoinOptimizedStringHashMap(
+            /* isOuterJoin */ false, tableContainer, tableContainer.createGetter(null));
+      }
+    }
+    hashMapResult = (implementation.isLongKey() ?
+        probeLongHashMap.createHashMapResult() : probeBytesHashMap.createHashMapResult());
+  }
+
+  @TearDown(Level.Trial)
+  public void reportMemory() {
+    final long memorySize = (builtTable instanceof VectorMapJoinFastHashTable ?
+        ((VectorMapJoinFastHashTable) builtTable).getEstimatedMemorySize() :
+        ((MapJoinBytesTableContainer) builtTable).getEstimatedMemorySize());
+    System.out.println(String.format(
+        "%n%s keyCount %d rows %d keyWidth %d valueWidth %d skew %s:" +
+            " estimated memory %d bytes, %.1f bytes per key, %.1f bytes per row",
+        implementation, keyCount, keys.length, keyWidth, valueWidth, skew,
+        memorySize, (double) memorySize / keyCount, (double) memorySize / keys.length));
+  }
+
+  private int duplicateKeyIndex(Random random) {
+    if (skew.equals("zipf")) {
+      // Approximately zipfian: the rank is exponentially distributed over [0, keyCount).
+      final double u = random.nextDouble();
+      return (int) Math.min(keyCount - 1, Math.floor(Math.pow(keyCount, u)) - 1);
+    }
+    return random.nextInt(keyCount);
+  }
+
+  private static byte[] randomBytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    fillRandomBytes(random, bytes);
+    return bytes;
+  }
+
+  private static void fillRandomBytes(Random random, byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) ('a' + random.nextInt(26));
+    }
+  }
+
+  private static BytesWritable copyOf(Output output) {
+    BytesWritable bytesWritable = new BytesWritable();
+    bytesWritable.set(output.getData(), 0, output.getLength());
+    return bytesWritable;
+  }
+
+  /*
+   * Writes the already serialized key and value, like LazyBinaryKvWriter does for the
+   * BinarySortable / LazyBinary pairs HashTableLoader reads (without a filter tag).
+   */
+  private static class BytesKvSource implements BytesBytesMultiHashMap.KvSource {
+
+    private BytesWritable key;
+    private BytesWritable value;
+
+    void set(BytesWritable key, BytesWritable value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    public void writeKey(RandomAccessOutput dest) throws SerDeException {
+      dest.write(key.getBytes(), 0, key.getLength());
+    }
+
+    @Override
+    public void writeValue(RandomAccessOutput dest) throws SerDeException {
+      dest.write(value.getBytes(), 0, value.getLength());
+    }
+
+    @Override
+    public byte updateStateByte(Byte previousValue) {
+      return (byte) 0xff;
+    }
+  }
+
+  private Object buildTable() throws Exception {
+    final float keyCountAdj =
+        HiveConf.getFloatVar(hiveConf, HiveConf.ConfVars.HIVEHASHTABLEKEYCOUNTADJUSTMENT);
+    final int threshold = HiveConf.getIntVar(hiveConf, HiveConf.ConfVars.HIVEHASHTABLETHRESHOLD);
+    final float loadFactor =
+        HiveConf.getFloatVar(hiveConf, HiveConf.ConfVars.HIVEHASHTABLELOADFACTOR);
+    final int writeBufferSize = HiveConf.getIntVar(hiveConf, HiveConf.ConfVars.HIVEHASHTABLEWBSIZE);
+
+    final int rowCount = keys.length;
+    switch (implementation) {
+    case FAST_LONG_HASH_MAP:
+    case FAST_STRING_HASH_MAP:
+      {
+        final int newThreshold =
+            HashMapWrapper.calculateTableSize(keyCountAdj, threshold, loadFactor, keyCount);
+        if (implementation == HashTableImplementation.FAST_LONG_HASH_MAP) {
+          VectorMapJoinFastLongHashMap hashMap = new VectorMapJoinFastLongHashMap(
+              /* isFullOuter */ false, /* minMaxEnabled */ false, HashTableKeyType.LONG,
+              newThreshold, loadFactor, writeBufferSize, keyCount);
+          for (int row = 0; row < rowCount; row++) {
+            hashMap.putRow(keys[row], values[row]);
+          }
+          return hashMap;
+        }
+        VectorMapJoinFastStringHashMap hashMap = new VectorMapJoinFastStringHashMap(
+            /* isFullOuter */ false, newThreshold, loadFactor, writeBufferSize, keyCount);
+        for (int row = 0; row < rowCount; row++) {
+          hashMap.putRow(keys[row], values[row]);
+        }
+        return hashMap;
+      }
+    case OPTIMIZED_LONG_HASH_MAP:
+    case OPTIMIZED_STRING_HASH_MAP:
+      {
+        final int newThreshold =
+            HashMapWrapper.calculateTableSize(keyCountAdj, threshold, loadFactor, keyCount);
+        BytesBytesMultiHashMap hashMap =
+            new BytesBytesMultiHashMap(newThreshold, loadFactor, writeBufferSize, 0);
+        BytesKvSource kvSource = new BytesKvSource();
+        for (int row = 0; row < rowCount; row++) {
+          kvSource.set(keys[row], values[row]);
+          hashMap.put(kvSource, -1);
+        }
+        hashMap.seal();
+        return new MapJoinBytesTableContainer(hashMap);
+      }
+    default:
+      throw new RuntimeException("Unexpected hash table implementation " + implementation);
+    }
+  }
+
+  @Benchmark
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 5)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public Object build() throws Exception {
+    return buildTable();
+  }
+
+  @Benchmark
+  @Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+  @Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @OperationsPerInvocation(PROBE_BATCH_SIZE)
+  public void probe(Blackhole blackhole) throws Exception {
+    if (probeLongHashMap != null) {
+      for (int i = 0; i < PROBE_BATCH_SIZE; i++) {
+        blackhole.consume(probeLongHashMap.lookup(probeLongKeys[i], hashMapResult));
+      }
+    } else {
+      for (int i = 0; i < PROBE_BATCH_SIZE; i++) {
+        byte[] key = probeStringKeys[i];
+        blackhole.consume(probeBytesHashMap.lookup(key, 0, key.length, hashMapResult));
+      }
+    }
+  }
+
+  @Benchmark
+  @Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+  @Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @OperationsPerInvocation(PROBE_BATCH_SIZE)
+  public void probeMiss(Blackhole blackhole) throws Exception {
+    if (probeLongHashMap != null) {
+      for (int i = 0; i < PROBE_BATCH_SIZE; i++) {
+        blackhole.consume(probeLongHashMap.lookup(missLongKeys[i], hashMapResult));
+      }
+    } else {
+      for (int i = 0; i < PROBE_BATCH_SIZE; i++) {
+        byte[] key = missStringKeys[i];
+        blackhole.consume(probeBytesHashMap.lookup(key, 0, key.length, hashMapResult));
+      }
+    }
+  }
+
+  //-----------------------------------------------------------------------------------------------
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + MapJoinHashTableLoadBench.class.getSimpleName() + ".*")
+        .build();
+    new Runner(opt).run();
+  }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.hive.jdbc;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -1524,6 +1525,68 @@ public void testFetchSize() throws Exception {
     fsConn.close();
   }
 
+  @Test
+  public void testArrowResultFormat() throws Exception {
+    // The tasks write the results, in several fetches of 100 rows
+    String query = "select int_col, value, cast(int_col as bigint) * 1000000000, int_col / 3, "
+        + "cast(int_col / 7 as float), int_col % 2 = 0, cast(int_col as tinyint), "
+        + "cast(int_col as smallint), cast(int_col / 9 as decimal(10,3)), "
+        + "date_add('2018-01-01', int_col), "
+        + "cast(concat('1969-12-31 23:59:59.', int_col) as timestamp), "
+        + "cast(value as binary), if(int_col % 3 = 0, null, int_col) from " + tableName;
+    String[] sessionConfs = { "fetchSize=100;resultFormat=arrow",
+        "fetchSize=100;resultFormat=arrow;resultCompression=lz4" };
+    try (Connection thriftConn = getConnection(miniHS2.getJdbcURL(testDbName, "fetchSize=100", ""),
+        System.getProperty("user.name"), "bar")) {
+      for (String sessionConf : sessionConfs) {
+        try (Connection arrowConn = getConnection(
+            miniHS2.getJdbcURL(testDbName, sessionConf, ""), System.getProperty("user.name"), "bar");
+            Statement thriftStmt = thriftConn.createStatement();
+            Statement arrowStmt = arrowConn.createStatement()) {
+          assertTrue(((HiveConnection) arrowConn).isArrowResultFormat());
+          thriftStmt.execute("set hive.fetch.task.conversion=none");
+          arrowStmt.execute("set hive.fetch.task.conversion=none");
+          assertSameResults(thriftStmt.executeQuery(query), arrowStmt.executeQuery(query));
+          // The types that Arrow does not hold, and the fetch task results, are sent as TColumns
+          String fallbackQuery = "select cast(value as char(10)), array(int_col) from " + tableName;
+          assertSameResults(thriftStmt.executeQuery(fallbackQuery),
+              arrowStmt.executeQuery(fallbackQuery));
+          arrowStmt.execute("set hive.fetch.task.conversion=more");
+          assertSameResults(thriftStmt.executeQuery(query), arrowStmt.executeQuery(query));
+        }
+      }
+    }
+  }
+
+  private static void assertSameResults(ResultSet expected, ResultSet actual) throws Exception {
+    int numColumns = expected.getMetaData().getColumnCount();
+    assertEquals(numColumns, actual.getMetaData().getColumnCount());
+    int rows = 0;
+    while (expected.next()) {
+      assertTrue(actual.next());
+      for (int i = 1; i <= numColumns; ++i) {
+        Object value = expected.getObject(i);
+        if (value instanceof byte[]) {
+          assertArrayEquals((byte[]) value, (byte[]) actual.getObject(i));
+          continue;
+        }
+        assertEquals("row " + rows + " column " + i, value, actual.getObject(i));
+        assertEquals(expected.getString(i), actual.getString(i));
+        if (value instanceof Number) {
+          assertEquals(expected.getLong(i), actual.getLong(i));
+          assertEquals(expected.getInt(i), actual.getInt(i));
+          assertEquals(expected.getDouble(i), actual.getDouble(i), 0);
+          assertEquals(expected.wasNull(), actual.wasNull());
+        }
+      }
+      ++rows;
+    }
+    assertFalse(actual.next());
+    assertEquals(500, rows);
+    expected.close();
+    actual.close();
+  }
+
   /**
    * A test that checks that Lineage is correct when a multiple concurrent
    * requests are make on a connection
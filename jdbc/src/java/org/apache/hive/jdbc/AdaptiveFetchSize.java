@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.jdbc;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.hive.service.rpc.thrift.TColumn;
+import org.apache.hive.service.rpc.thrift.TRow;
+import org.apache.hive.service.rpc.thrift.TRowSet;
+
+/**
+ * Adapts the fetch size of a result set to the network and to the row width. The fixed cost of a
+ * fetch, mostly the round trip, is estimated as the time of the fastest fetch so far; while a full
+ * fetch takes less than twice that, most of it is spent waiting on the round trip, so the fetch
+ * size is doubled. The fetch size is capped so that a batch stays below MAX_BATCH_BYTES, based on
+ * the average row width, and never goes below the configured fetch size.
+ */
+class AdaptiveFetchSize {
+  static final long MAX_BATCH_BYTES = 32L * 1024 * 1024;
+  private static final int MAX_FETCH_SIZE = Integer.MAX_VALUE / 2;
+
+  private final int minFetchSize;
+  private int fetchSize;
+  private long minTimeNs = Long.MAX_VALUE;
+  private double rowBytes = 0;
+
+  AdaptiveFetchSize(int fetchSize) {
+    this.minFetchSize = Math.max(fetchSize, 1);
+    this.fetchSize = this.minFetchSize;
+  }
+
+  int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * @param requestedRows the fetch size of the fetch
+   * @param rows the number of rows returned
+   * @param bytes the size of the rows, as returned by {@link #estimateSize}
+   * @param timeNs the time of the fetch
+   */
+  void update(int requestedRows, int rows, long bytes, long timeNs) {
+    if (rows <= 0) return;
+    double batchRowBytes = Math.max((double) bytes / rows, 1);
+    rowBytes = (rowBytes == 0) ? batchRowBytes : (0.8 * rowBytes + 0.2 * batchRowBytes);
+    minTimeNs = Math.min(minTimeNs, timeNs);
+    long newFetchSize = fetchSize;
+    // Fewer rows than requested means the server capped the fetch size, or the end of the results.
+    if (rows >= requestedRows && timeNs < 2 * minTimeNs) {
+      newFetchSize = 2L * fetchSize;
+    }
+    newFetchSize = Math.min(newFetchSize, (long) (MAX_BATCH_BYTES / rowBytes));
+    fetchSize = (int) Math.max(minFetchSize, Math.min(newFetchSize, MAX_FETCH_SIZE));
+  }
+
+  /** @return a cheap estimate of the size of the (uncompressed) row set. */
+  static long estimateSize(TRowSet rowSet) {
+    long size = 0;
+    if (rowSet.isSetBinaryColumns()) {
+      size += size(rowSet.bufferForBinaryColumns());
+    }
+    if (rowSet.isSetColumns()) {
+      for (TColumn column : rowSet.getColumns()) {
+        size += estimateSize(column);
+      }
+    }
+    List<TRow> rows = rowSet.getRows();
+    if (rows != null) {
+      for (TRow row : rows) {
+        size += 16L * row.getColValsSize(); // Rows are only used by very old servers.
+      }
+    }
+    return size;
+  }
+
+  private static long estimateSize(TColumn column) {
+    switch (column.getSetField()) {
+    case BOOL_VAL:
+      return column.getBoolVal().getValuesSize() + size(column.getBoolVal().bufferForNulls());
+    case BYTE_VAL:
+      return column.getByteVal().getValuesSize() + size(column.getByteVal().bufferForNulls());
+    case I16_VAL:
+      return 2L * column.getI16Val().getValuesSize() + size(column.getI16Val().bufferForNulls());
+    case I32_VAL:
+      return 4L * column.getI32Val().getValuesSize() + size(column.getI32Val().bufferForNulls());
+    case I64_VAL:
+      return 8L * column.getI64Val().getValuesSize() + size(column.getI64Val().bufferForNulls());
+    case DOUBLE_VAL:
+      return 8L * column.getDoubleVal().getValuesSize()
+          + size(column.getDoubleVal().bufferForNulls());
+    case STRING_VAL:
+      long stringSize = size(column.getStringVal().bufferForNulls());
+      for (String value : column.getStringVal().getValues()) {
+        stringSize += 4 + value.length();
+      }
+      return stringSize;
+    case BINARY_VAL:
+      long binarySize = size(column.getBinaryVal().bufferForNulls());
+      for (ByteBuffer value : column.getBinaryVal().getValues()) {
+        binarySize += 4 + value.remaining();
+      }
+      return binarySize;
+    default:
+      return 0;
+    }
+  }
+
+  private static int size(ByteBuffer buffer) {
+    return buffer == null ? 0 : buffer.remaining();
+  }
+}
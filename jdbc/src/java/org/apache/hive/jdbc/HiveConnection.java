@@ -149,6 +149,11 @@ public class HiveConnection implements java.sql.Connection {
   private int fetchSize = HiveStatement.DEFAULT_FETCH_SIZE;
   private String initFile = null;
   private String wmPool = null, wmApp = null;
+  private boolean requestArrowResultFormat = false, isArrowResultFormat = false;
+  private String requestResultCompression = null;
+  private boolean isCompressedResults = false;
+  private int prefetchBatches = 0;
+  private boolean isAdaptiveFetchSize = false;
   private Properties clientInfo;
   private Subject loggedInSubject;
 
@@ -267,10 +272,18 @@ public HiveConnection(String uri, Properties info) throws SQLException {
     if (sessConfMap.containsKey(JdbcConnectionParams.FETCH_SIZE)) {
       fetchSize = Integer.parseInt(sessConfMap.get(JdbcConnectionParams.FETCH_SIZE));
     }
+    if (sessConfMap.containsKey(JdbcConnectionParams.PREFETCH_BATCHES)) {
+      prefetchBatches = Integer.parseInt(sessConfMap.get(JdbcConnectionParams.PREFETCH_BATCHES));
+    }
+    isAdaptiveFetchSize = Boolean.parseBoolean(
+        sessConfMap.get(JdbcConnectionParams.ADAPTIVE_FETCH_SIZE));
     if (sessConfMap.containsKey(JdbcConnectionParams.INIT_FILE)) {
       initFile = sessConfMap.get(JdbcConnectionParams.INIT_FILE);
     }
     wmPool = sessConfMap.get(JdbcConnectionParams.WM_POOL);
+    requestArrowResultFormat = JdbcConnectionParams.RESULT_FORMAT_ARROW.equalsIgnoreCase(
+        sessConfMap.get(JdbcConnectionParams.RESULT_FORMAT));
+    requestResultCompression = sessConfMap.get(JdbcConnectionParams.RESULT_COMPRESSION);
     for (String application : JdbcConnectionParams.APPLICATION) {
       wmApp = sessConfMap.get(application);
       if (wmApp != null) break;
@@ -828,6 +841,14 @@ private void openSession() throws SQLException {
     // set the fetchSize
     openConf.put("set:hiveconf:hive.server2.thrift.resultset.default.fetch.size",
       Integer.toString(fetchSize));
+    if (requestArrowResultFormat) {
+      openConf.put("set:hiveconf:hive.server2.thrift.resultset.format",
+          JdbcConnectionParams.RESULT_FORMAT_ARROW);
+    }
+    if (requestResultCompression != null) {
+      openConf.put("set:hiveconf:hive.server2.thrift.resultset.compression",
+          requestResultCompression);
+    }
     if (wmPool != null) {
       openConf.put("set:hivevar:wmpool", wmPool);
     }
@@ -866,6 +887,13 @@ private void openSession() throws SQLException {
       if (serverFetchSize != null) {
         fetchSize = Integer.parseInt(serverFetchSize);
       }
+      // Only use Arrow or compression if the server confirms them; older servers ignore them
+      isArrowResultFormat = requestArrowResultFormat && JdbcConnectionParams.RESULT_FORMAT_ARROW
+          .equalsIgnoreCase(openResp.getConfiguration().get("hive.server2.thrift.resultset.format"));
+      String compression =
+          openResp.getConfiguration().get("hive.server2.thrift.resultset.compression");
+      isCompressedResults = requestResultCompression != null && compression != null
+          && !"none".equalsIgnoreCase(compression);
     } catch (TException e) {
       LOG.error("Error opening session", e);
       throw new SQLException("Could not establish connection to "
@@ -1690,6 +1718,22 @@ public TProtocolVersion getProtocol() {
     return protocol;
   }
 
+  public boolean isArrowResultFormat() {
+    return isArrowResultFormat;
+  }
+
+  public boolean isCompressedResults() {
+    return isCompressedResults;
+  }
+
+  public int getPrefetchBatches() {
+    return prefetchBatches;
+  }
+
+  public boolean isAdaptiveFetchSize() {
+    return isAdaptiveFetchSize;
+  }
+
   public static TCLIService.Iface newSynchronizedClient(
       TCLIService.Iface client) {
     return (TCLIService.Iface) Proxy.newProxyInstance(
@@ -30,9 +30,18 @@
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hive.service.cli.ArrowBasedSet;
 import org.apache.hive.service.cli.RowSet;
+import org.apache.hive.service.cli.RowSetCompression;
 import org.apache.hive.service.cli.RowSetFactory;
 import org.apache.hive.service.cli.TableSchema;
 import org.apache.hive.service.rpc.thrift.TCLIService;
@@ -64,14 +73,24 @@ public class HiveQueryResultSet extends HiveBaseResultSet {
 
   public static final Logger LOG = LoggerFactory.getLogger(HiveQueryResultSet.class);
 
+  private static final ExecutorService PREFETCH_POOL = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "HiveQueryResultSet-Prefetch");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   private TCLIService.Iface client;
   private TOperationHandle stmtHandle;
   private int maxRows;
-  private int fetchSize;
+  private volatile int fetchSize;
   private int rowsFetched = 0;
 
   private RowSet fetchedRows;
   private Iterator<Object[]> fetchedRowsItr;
+  // Set if the fetched rows are an Arrow based set, whose values are read straight from the
+  // vectors, with the current row
+  private ArrowBasedSet arrowRows;
+  private int arrowRow;
   private boolean isClosed = false;
   private boolean emptyResultSet = false;
   private boolean isScrollable = false;
@@ -79,6 +98,11 @@ public class HiveQueryResultSet extends HiveBaseResultSet {
   private TGetOperationStatusResp operationStatus = null;
 
   private final TProtocolVersion protocol;
+  private final boolean isArrowResultFormat;
+  private final boolean isCompressedResults;
+  private final int prefetchBatches;
+  private volatile AdaptiveFetchSize adaptiveFetchSize = null;
+  private Prefetcher prefetcher = null;
 
   public static class Builder {
 
@@ -164,6 +188,22 @@ public HiveQueryResultSet build() throws SQLException {
     public TProtocolVersion getProtocolVersion() throws SQLException {
       return ((HiveConnection)connection).getProtocol();
     }
+
+    public boolean isArrowResultFormat() {
+      return ((HiveConnection)connection).isArrowResultFormat();
+    }
+
+    public boolean isCompressedResults() {
+      return ((HiveConnection)connection).isCompressedResults();
+    }
+
+    public int getPrefetchBatches() {
+      return ((HiveConnection)connection).getPrefetchBatches();
+    }
+
+    public boolean isAdaptiveFetchSize() {
+      return ((HiveConnection)connection).isAdaptiveFetchSize();
+    }
   }
 
   protected HiveQueryResultSet(Builder builder) throws SQLException {
@@ -187,6 +227,12 @@ protected HiveQueryResultSet(Builder builder) throws SQLException {
     }
     this.isScrollable = builder.isScrollable;
     this.protocol = builder.getProtocolVersion();
+    this.isArrowResultFormat = builder.isArrowResultFormat();
+    this.isCompressedResults = builder.isCompressedResults();
+    this.prefetchBatches = builder.getPrefetchBatches();
+    if (builder.isAdaptiveFetchSize()) {
+      this.adaptiveFetchSize = new AdaptiveFetchSize(fetchSize);
+    }
   }
 
   /**
@@ -273,6 +319,7 @@ private void setSchema(List<String> colNames, List<String> colTypes,
 
   @Override
   public void close() throws SQLException {
+    stopPrefetcher();
     if (this.statement != null && (this.statement instanceof HiveStatement)) {
       HiveStatement s = (HiveStatement) this.statement;
       s.closeClientOperation();
@@ -281,6 +328,7 @@ public void close() throws SQLException {
       closeOperationHandle(stmtHandle);
     }
 
+    closeFetchedRows();
     // Need reset during re-open when needed
     client = null;
     stmtHandle = null;
@@ -288,6 +336,172 @@ public void close() throws SQLException {
     operationStatus = null;
   }
 
+  private void closeFetchedRows() {
+    closeRowSet(fetchedRows);
+    fetchedRows = null;
+    arrowRows = null;
+  }
+
+  private boolean hasNextFetchedRow() {
+    return (arrowRows != null) ? arrowRow + 1 < arrowRows.numRows() : fetchedRowsItr.hasNext();
+  }
+
+  private static void closeRowSet(Object rowSet) {
+    if (rowSet instanceof ArrowBasedSet) {
+      ((ArrowBasedSet) rowSet).close();
+    }
+  }
+
+  private void stopPrefetcher() throws SQLException {
+    if (prefetcher != null) {
+      Prefetcher stopped = prefetcher;
+      prefetcher = null;
+      stopped.stop();
+    }
+  }
+
+  /**
+   * Fetches and decodes the next batch of rows. Called from the prefetch thread, if any.
+   */
+  private RowSet fetchBatch(TCLIService.Iface client, TOperationHandle stmtHandle,
+      TFetchOrientation orientation) throws Exception {
+    AdaptiveFetchSize adaptiveFetchSize = this.adaptiveFetchSize;
+    int size = (adaptiveFetchSize != null) ? adaptiveFetchSize.getFetchSize() : fetchSize;
+    TFetchResultsReq fetchReq = new TFetchResultsReq(stmtHandle, orientation, size);
+    long startNs = System.nanoTime();
+    TFetchResultsResp fetchResp = client.FetchResults(fetchReq);
+    long timeNs = System.nanoTime() - startNs;
+    Utils.verifySuccessWithInfo(fetchResp.getStatus());
+
+    TRowSet results = fetchResp.getResults();
+    if (isCompressedResults) {
+      results = RowSetCompression.decompress(results);
+    }
+    long bytes = (adaptiveFetchSize != null) ? AdaptiveFetchSize.estimateSize(results) : 0;
+    RowSet rowSet;
+    if (isArrowResultFormat && results.isSetBinaryColumns()) {
+      rowSet = new ArrowBasedSet(results);
+    } else {
+      rowSet = RowSetFactory.create(results, protocol);
+    }
+    if (adaptiveFetchSize != null) {
+      adaptiveFetchSize.update(size, rowSet.numRows(), bytes, timeNs);
+    }
+    return rowSet;
+  }
+
+  /**
+   * Fetches the next batches in the background, while the rows of the current batch are processed.
+   * Up to prefetchBatches batches are kept ahead of the reader. The client is synchronized, so the
+   * fetches are still serialized with the other calls on the connection; but a fetch that is in
+   * flight would still advance the server cursor, so stop() waits for it before any other call on
+   * the operation.
+   */
+  private final class Prefetcher implements Runnable {
+    private final TCLIService.Iface client;
+    private final TOperationHandle stmtHandle;
+    private final BlockingQueue<Object> batches;
+    private final Future<?> future;
+    private volatile boolean isStopped = false;
+    private TFetchOrientation orientation;
+    private boolean isDone = false;
+    private Exception error = null;
+
+    Prefetcher(TCLIService.Iface client, TOperationHandle stmtHandle,
+        TFetchOrientation orientation) {
+      this.client = client;
+      this.stmtHandle = stmtHandle;
+      this.orientation = orientation;
+      this.batches = new ArrayBlockingQueue<>(prefetchBatches);
+      this.future = PREFETCH_POOL.submit(this);
+    }
+
+    @Override
+    public void run() {
+      long rows = 0;
+      try {
+        while (!isStopped) {
+          RowSet batch = fetchBatch(client, stmtHandle, orientation);
+          orientation = TFetchOrientation.FETCH_NEXT;
+          rows += batch.numRows();
+          if (!offer(batch) || batch.numRows() == 0 || (maxRows > 0 && rows >= maxRows)) {
+            return;
+          }
+        }
+      } catch (Exception e) {
+        try {
+          offer(e);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    private boolean offer(Object batch) throws InterruptedException {
+      while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+        if (isStopped) {
+          closeRowSet(batch);
+          return false;
+        }
+      }
+      if (isStopped) {
+        drain(); // The reader may have drained the queue already.
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * @return the next batch, or null after the last one.
+     */
+    RowSet take() throws Exception {
+      if (error != null) {
+        throw error;
+      }
+      if (isDone) {
+        return null;
+      }
+      Object batch = batches.take();
+      if (batch instanceof Exception) {
+        error = (Exception) batch;
+        throw error;
+      }
+      RowSet rowSet = (RowSet) batch;
+      if (rowSet.numRows() == 0) {
+        isDone = true;
+        closeRowSet(rowSet);
+        return null;
+      }
+      return rowSet;
+    }
+
+    /**
+     * Stops the prefetching, and waits for the fetch in flight, if any.
+     */
+    void stop() throws SQLException {
+      isStopped = true;
+      drain(); // Unblocks the prefetch thread if the queue is full.
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while stopping the prefetch", e);
+      } catch (ExecutionException e) {
+        // Not expected; run() hands the errors over to the reader.
+        LOG.warn("The prefetch failed", e.getCause());
+      } finally {
+        drain();
+      }
+    }
+
+    private void drain() {
+      Object batch;
+      while ((batch = batches.poll()) != null) {
+        closeRowSet(batch);
+      }
+    }
+  }
+
   private void closeOperationHandle(TOperationHandle stmtHandle) throws SQLException {
     try {
       if (stmtHandle != null) {
@@ -333,27 +547,42 @@ public boolean next() throws SQLException {
       if (fetchFirst) {
         // If we are asked to start from begining, clear the current fetched resultset
         orientation = TFetchOrientation.FETCH_FIRST;
-        fetchedRows = null;
+        stopPrefetcher();
+        closeFetchedRows();
         fetchedRowsItr = null;
         fetchFirst = false;
       }
-      if (fetchedRows == null || !fetchedRowsItr.hasNext()) {
-        TFetchResultsReq fetchReq = new TFetchResultsReq(stmtHandle,
-            orientation, fetchSize);
-        TFetchResultsResp fetchResp;
-        fetchResp = client.FetchResults(fetchReq);
-        Utils.verifySuccessWithInfo(fetchResp.getStatus());
-
-        TRowSet results = fetchResp.getResults();
-        fetchedRows = RowSetFactory.create(results, protocol);
-        fetchedRowsItr = fetchedRows.iterator();
+      if (fetchedRows == null || !hasNextFetchedRow()) {
+        closeFetchedRows();
+        if (prefetchBatches > 0) {
+          if (prefetcher == null) {
+            prefetcher = new Prefetcher(client, stmtHandle, orientation);
+          }
+          fetchedRows = prefetcher.take();
+          if (fetchedRows == null) {
+            return false;
+          }
+        } else {
+          fetchedRows = fetchBatch(client, stmtHandle, orientation);
+        }
+        if (fetchedRows instanceof ArrowBasedSet) {
+          arrowRows = (ArrowBasedSet) fetchedRows;
+          arrowRow = -1;
+          fetchedRowsItr = null;
+        } else {
+          fetchedRowsItr = fetchedRows.iterator();
+        }
       }
 
-      if (!fetchedRowsItr.hasNext()) {
+      if (!hasNextFetchedRow()) {
         return false;
       }
 
-      row = fetchedRowsItr.next();
+      if (arrowRows != null) {
+        arrowRow++;
+      } else {
+        row = fetchedRowsItr.next();
+      }
       rowsFetched++;
     } catch (SQLException eS) {
       throw eS;
@@ -378,6 +607,9 @@ public void setFetchSize(int rows) throws SQLException {
       throw new SQLException("Resultset is closed");
     }
     fetchSize = rows;
+    if (adaptiveFetchSize != null) {
+      adaptiveFetchSize = new AdaptiveFetchSize(rows);
+    }
   }
 
   @Override
@@ -399,6 +631,122 @@ public int getFetchSize() throws SQLException {
     return fetchSize;
   }
 
+  /**
+   * Checks the column of the current row of the Arrow based set, and sets wasNull.
+   * @return the index of the column in the set
+   */
+  private int getArrowColumn(int columnIndex) throws SQLException {
+    if (arrowRow < 0) {
+      throw new SQLException("No row found.");
+    }
+    if (columnIndex < 1 || columnIndex > arrowRows.numColumns()) {
+      throw new SQLException("Invalid columnIndex: " + columnIndex);
+    }
+    int column = columnIndex - 1;
+    wasNull = arrowRows.isNull(arrowRow, column);
+    return column;
+  }
+
+  /**
+   * @return whether the value of the column is a number read straight from the Arrow vectors,
+   * with {@link #getArrowLong} or {@link #getArrowDouble}
+   */
+  private boolean isArrowNumber(int columnIndex) throws SQLException {
+    return arrowRows != null && arrowRows.isNumeric(getArrowColumn(columnIndex));
+  }
+
+  private long getArrowLong(int columnIndex) {
+    return wasNull ? 0 : arrowRows.getLong(arrowRow, columnIndex - 1);
+  }
+
+  private double getArrowDouble(int columnIndex) {
+    return wasNull ? 0 : arrowRows.getDouble(arrowRow, columnIndex - 1);
+  }
+
+  @Override
+  public Object getObject(int columnIndex) throws SQLException {
+    if (arrowRows == null) {
+      return super.getObject(columnIndex);
+    }
+    int column = getArrowColumn(columnIndex);
+    try {
+      return arrowRows.getObject(arrowRow, column);
+    } catch (Exception e) {
+      throw new SQLException("Unrecognized column type of column " + columnIndex, e);
+    }
+  }
+
+  @Override
+  public String getString(int columnIndex) throws SQLException {
+    if (arrowRows == null) {
+      return super.getString(columnIndex);
+    }
+    Object value = getObject(columnIndex);
+    if (wasNull) {
+      return null;
+    }
+    if (value instanceof byte[]) {
+      return new String((byte[]) value);
+    }
+    return value.toString();
+  }
+
+  @Override
+  public boolean getBoolean(int columnIndex) throws SQLException {
+    if (isArrowNumber(columnIndex)) {
+      return (int) getArrowLong(columnIndex) != 0;
+    }
+    return super.getBoolean(columnIndex);
+  }
+
+  @Override
+  public byte getByte(int columnIndex) throws SQLException {
+    if (isArrowNumber(columnIndex)) {
+      return (byte) getArrowLong(columnIndex);
+    }
+    return super.getByte(columnIndex);
+  }
+
+  @Override
+  public short getShort(int columnIndex) throws SQLException {
+    if (isArrowNumber(columnIndex)) {
+      return (short) getArrowLong(columnIndex);
+    }
+    return super.getShort(columnIndex);
+  }
+
+  @Override
+  public int getInt(int columnIndex) throws SQLException {
+    if (isArrowNumber(columnIndex)) {
+      return (int) getArrowLong(columnIndex);
+    }
+    return super.getInt(columnIndex);
+  }
+
+  @Override
+  public long getLong(int columnIndex) throws SQLException {
+    if (isArrowNumber(columnIndex)) {
+      return getArrowLong(columnIndex);
+    }
+    return super.getLong(columnIndex);
+  }
+
+  @Override
+  public float getFloat(int columnIndex) throws SQLException {
+    if (isArrowNumber(columnIndex)) {
+      return (float) getArrowDouble(columnIndex);
+    }
+    return super.getFloat(columnIndex);
+  }
+
+  @Override
+  public double getDouble(int columnIndex) throws SQLException {
+    if (isArrowNumber(columnIndex)) {
+      return getArrowDouble(columnIndex);
+    }
+    return super.getDouble(columnIndex);
+  }
+
   public <T> T getObject(String columnLabel, Class<T> type)  throws SQLException {
     //JDK 1.7
     throw new SQLFeatureNotSupportedException("Method not supported");
@@ -128,6 +128,15 @@ public static class JdbcConnectionParams {
     static final String HTTP_HEADER_PREFIX = "http.header.";
     // Set the fetchSize
     static final String FETCH_SIZE = "fetchSize";
+    // Set the number of batches to fetch in the background, ahead of the reader; 0 disables it
+    static final String PREFETCH_BATCHES = "prefetchBatches";
+    // Grow the fetch size when the fetches are dominated by the round trip time
+    static final String ADAPTIVE_FETCH_SIZE = "adaptiveFetchSize";
+    // Set the result format, "thrift" or "arrow"; the server has to support it
+    static final String RESULT_FORMAT = "resultFormat";
+    static final String RESULT_FORMAT_ARROW = "arrow";
+    // Set the result compression, "none", "lz4" or "zlib"; the server has to support it
+    static final String RESULT_COMPRESSION = "resultCompression";
     static final String INIT_FILE = "initFile";
     static final String WM_POOL = "wmPool";
     // Cookie prefix
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hive.service.rpc.thrift.TCLIService;
+import org.apache.hive.service.rpc.thrift.TCloseOperationReq;
+import org.apache.hive.service.rpc.thrift.TCloseOperationResp;
+import org.apache.hive.service.rpc.thrift.TColumn;
+import org.apache.hive.service.rpc.thrift.TColumnDesc;
+import org.apache.hive.service.rpc.thrift.TFetchOrientation;
+import org.apache.hive.service.rpc.thrift.TFetchResultsReq;
+import org.apache.hive.service.rpc.thrift.TFetchResultsResp;
+import org.apache.hive.service.rpc.thrift.TGetResultSetMetadataReq;
+import org.apache.hive.service.rpc.thrift.TGetResultSetMetadataResp;
+import org.apache.hive.service.rpc.thrift.TI32Column;
+import org.apache.hive.service.rpc.thrift.TOperationHandle;
+import org.apache.hive.service.rpc.thrift.TPrimitiveTypeEntry;
+import org.apache.hive.service.rpc.thrift.TProtocolVersion;
+import org.apache.hive.service.rpc.thrift.TRow;
+import org.apache.hive.service.rpc.thrift.TRowSet;
+import org.apache.hive.service.rpc.thrift.TStatus;
+import org.apache.hive.service.rpc.thrift.TStatusCode;
+import org.apache.hive.service.rpc.thrift.TTableSchema;
+import org.apache.hive.service.rpc.thrift.TTypeDesc;
+import org.apache.hive.service.rpc.thrift.TTypeEntry;
+import org.apache.hive.service.rpc.thrift.TTypeId;
+import org.junit.Test;
+
+public class TestHiveQueryResultSet {
+  private static final int ROWS = 10000;
+
+  /**
+   * Returns the numbers from 0 to ROWS - 1, and fails after failAfter rows. Like the server
+   * cursor, it is not thread safe; overlapping calls are recorded.
+   */
+  private static class FakeClient {
+    final TCLIService.Iface client = mock(TCLIService.Iface.class);
+    final List<Integer> fetchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    final AtomicBoolean isOverlapped = new AtomicBoolean(false);
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private int next = 0;
+
+    FakeClient(int failAfter) throws Exception {
+      this(failAfter, 0);
+    }
+
+    FakeClient(int failAfter, long delayMs) throws Exception {
+      when(client.FetchResults(any(TFetchResultsReq.class))).thenAnswer(invocation -> {
+        if (inFlight.incrementAndGet() > 1) {
+          isOverlapped.set(true);
+        }
+        try {
+          Thread.sleep(delayMs);
+          return fetchResults((TFetchResultsReq) invocation.getArguments()[0], failAfter);
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      });
+      when(client.CloseOperation(any(TCloseOperationReq.class))).thenAnswer(invocation -> {
+        if (inFlight.get() > 0) {
+          isOverlapped.set(true);
+        }
+        return new TCloseOperationResp(new TStatus(TStatusCode.SUCCESS_STATUS));
+      });
+      TTableSchema schema = new TTableSchema();
+      schema.addToColumns(new TColumnDesc("i", new TTypeDesc(Collections.singletonList(
+          TTypeEntry.primitiveEntry(new TPrimitiveTypeEntry(TTypeId.INT_TYPE)))), 1));
+      TGetResultSetMetadataResp metadataResp =
+          new TGetResultSetMetadataResp(new TStatus(TStatusCode.SUCCESS_STATUS));
+      metadataResp.setSchema(schema);
+      when(client.GetResultSetMetadata(any(TGetResultSetMetadataReq.class)))
+          .thenReturn(metadataResp);
+    }
+
+    private TFetchResultsResp fetchResults(TFetchResultsReq req, int failAfter) {
+      fetchSizes.add((int) req.getMaxRows());
+      if (req.getOrientation() == TFetchOrientation.FETCH_FIRST) {
+        next = 0;
+      }
+      if (next >= failAfter) {
+        return new TFetchResultsResp(new TStatus(TStatusCode.ERROR_STATUS));
+      }
+      List<Integer> values = new ArrayList<>();
+      while (values.size() < req.getMaxRows() && next < ROWS) {
+        values.add(next++);
+      }
+      TRowSet rowSet = new TRowSet(0, new ArrayList<TRow>());
+      rowSet.addToColumns(TColumn.i32Val(new TI32Column(values, ByteBuffer.allocate(0))));
+      TFetchResultsResp resp = new TFetchResultsResp(new TStatus(TStatusCode.SUCCESS_STATUS));
+      resp.setResults(rowSet);
+      return resp;
+    }
+  }
+
+  private static HiveQueryResultSet createResultSet(TCLIService.Iface client, int prefetchBatches,
+      boolean isAdaptiveFetchSize, int maxRows) throws SQLException {
+    HiveConnection connection = mock(HiveConnection.class);
+    when(connection.getProtocol()).thenReturn(TProtocolVersion.HIVE_CLI_SERVICE_PROTOCOL_V10);
+    when(connection.getPrefetchBatches()).thenReturn(prefetchBatches);
+    when(connection.isAdaptiveFetchSize()).thenReturn(isAdaptiveFetchSize);
+    return new HiveQueryResultSet.Builder(connection).setClient(client)
+        .setStmtHandle(new TOperationHandle()).setMaxRows(maxRows).setFetchSize(100)
+        .setScrollable(true).build();
+  }
+
+  private static void assertRows(HiveQueryResultSet resultSet, int rows) throws SQLException {
+    assertRows(resultSet, rows, true);
+  }
+
+  private static void assertRows(HiveQueryResultSet resultSet, int rows, boolean isEnd)
+      throws SQLException {
+    for (int i = 0; i < rows; ++i) {
+      assertTrue(resultSet.next());
+      assertEquals(i, resultSet.getInt(1));
+    }
+    if (isEnd) {
+      assertFalse(resultSet.next());
+      assertFalse(resultSet.next());
+    }
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    FakeClient fake = new FakeClient(Integer.MAX_VALUE);
+    HiveQueryResultSet resultSet = createResultSet(fake.client, 3, false, 0);
+    assertRows(resultSet, ROWS);
+    assertEquals(ROWS / 100 + 1, fake.fetchSizes.size());
+    // Starting over stops the prefetching, and restarts it from the first row.
+    resultSet.beforeFirst();
+    assertRows(resultSet, ROWS);
+    resultSet.close();
+  }
+
+  @Test
+  public void testPrefetchRestartWaitsForFetch() throws Exception {
+    // The fetches are slow, so the prefetch thread is in the middle of one on the restart.
+    FakeClient fake = new FakeClient(Integer.MAX_VALUE, 20);
+    HiveQueryResultSet resultSet = createResultSet(fake.client, 2, false, 0);
+    for (int i = 0; i < 150; ++i) {
+      assertTrue(resultSet.next());
+    }
+    resultSet.beforeFirst();
+    assertRows(resultSet, 1000, false);
+    resultSet.beforeFirst();
+    for (int i = 0; i < 150; ++i) {
+      assertTrue(resultSet.next());
+    }
+    resultSet.close();
+    assertFalse(fake.isOverlapped.get());
+  }
+
+  @Test
+  public void testPrefetchMaxRows() throws Exception {
+    FakeClient fake = new FakeClient(Integer.MAX_VALUE);
+    HiveQueryResultSet resultSet = createResultSet(fake.client, 2, false, 250);
+    assertRows(resultSet, 250);
+    resultSet.close();
+    assertEquals(3, fake.fetchSizes.size());
+  }
+
+  @Test
+  public void testPrefetchError() throws Exception {
+    FakeClient fake = new FakeClient(500);
+    HiveQueryResultSet resultSet = createResultSet(fake.client, 2, false, 0);
+    for (int i = 0; i < 500; ++i) {
+      assertTrue(resultSet.next());
+    }
+    for (int i = 0; i < 2; ++i) {
+      try {
+        resultSet.next();
+        fail("Expected the fetch error");
+      } catch (SQLException e) {
+        // Expected; the error is not lost on the later calls.
+      }
+    }
+    resultSet.close();
+  }
+
+  @Test
+  public void testAdaptiveFetchSize() throws Exception {
+    FakeClient fake = new FakeClient(Integer.MAX_VALUE);
+    HiveQueryResultSet resultSet = createResultSet(fake.client, 0, true, 0);
+    assertRows(resultSet, ROWS);
+    resultSet.close();
+    // The fake fetches cost next to nothing, so the fetch size grows until the end of the rows.
+    assertEquals(100, (int) fake.fetchSizes.get(0));
+    assertTrue(fake.fetchSizes.toString(), fake.fetchSizes.size() < ROWS / 100);
+  }
+
+  @Test
+  public void testAdaptiveFetchSizeLimits() {
+    AdaptiveFetchSize adaptive = new AdaptiveFetchSize(100);
+    // Twice the fastest fetch or more is no longer dominated by the round trip.
+    adaptive.update(100, 100, 100 * 10, 1000);
+    assertEquals(200, adaptive.getFetchSize());
+    adaptive.update(200, 200, 200 * 10, 1500);
+    assertEquals(400, adaptive.getFetchSize());
+    adaptive.update(400, 400, 400 * 10, 2000);
+    assertEquals(400, adaptive.getFetchSize());
+    // Fewer rows than requested; the server caps the fetch size.
+    adaptive.update(400, 300, 300 * 10, 1000);
+    assertEquals(400, adaptive.getFetchSize());
+
+    // Wide rows cap the size of a batch, but never below the configured fetch size.
+    adaptive = new AdaptiveFetchSize(10);
+    long rowBytes = AdaptiveFetchSize.MAX_BATCH_BYTES / 15;
+    adaptive.update(10, 10, 10 * rowBytes, 1000);
+    assertEquals(15, adaptive.getFetchSize());
+    adaptive = new AdaptiveFetchSize(10);
+    adaptive.update(10, 10, 10 * AdaptiveFetchSize.MAX_BATCH_BYTES, 1000);
+    assertEquals(10, adaptive.getFetchSize());
+  }
+}
@@ -38,7 +38,11 @@ public enum LlapIOCounters {
   HDFS_TIME_NS(false),
   CONSUMER_TIME_NS(false),
   IO_CPU_NS(false),
-  IO_USER_NS(false);
+  IO_USER_NS(false),
+  COALESCE_WASTED_BYTES(false),
+  READ_AHEAD_BYTES(false),
+  READ_AHEAD_WASTED_BYTES(false),
+  DECODED_CACHE_HITS(false);
 
   // flag to indicate if these counters are subject to change across different test runs
   private boolean testSafe;
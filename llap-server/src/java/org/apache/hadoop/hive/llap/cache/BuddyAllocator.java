@@ -27,7 +27,11 @@
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -65,7 +69,10 @@
   private final long maxSize;
   private final boolean isDirect;
   private final boolean isMapped;
+  private final boolean isPersistent;
   private final Path cacheDir;
+  // Held for the lifetime of the allocator, so that two daemons never share persistent arenas.
+  private FileChannel persistentLockChannel;
 
   // These are only used for tests.
   private boolean enableDefragShortcut = true, oomLogging = true;
@@ -102,7 +109,8 @@ public BuddyAllocator(Configuration conf, MemoryManager mm, LlapDaemonCacheMetri
         HiveConf.getSizeVar(conf, ConfVars.LLAP_ALLOCATOR_DEFRAG_HEADROOM),
         HiveConf.getVar(conf, ConfVars.LLAP_ALLOCATOR_MAPPED_PATH),
         mm, metrics, HiveConf.getVar(conf, ConfVars.LLAP_ALLOCATOR_DISCARD_METHOD),
-        HiveConf.getBoolVar(conf, ConfVars.LLAP_ALLOCATOR_PREALLOCATE)
+        HiveConf.getBoolVar(conf, ConfVars.LLAP_ALLOCATOR_PREALLOCATE),
+        HiveConf.getBoolVar(conf, ConfVars.LLAP_ALLOCATOR_MAPPED_PERSISTENT)
         );
   }
 
@@ -128,6 +136,15 @@ public BuddyAllocator(boolean isDirectVal, boolean isMappedVal, int minAllocVal,
       int arenaCount, long maxSizeVal, long defragHeadroom, String mapPath,
       MemoryManager memoryManager, LlapDaemonCacheMetrics metrics, String discardMethod,
       boolean doPreallocate) {
+    this(isDirectVal, isMappedVal, minAllocVal, maxAllocVal, arenaCount, maxSizeVal,
+        defragHeadroom, mapPath, memoryManager, metrics, discardMethod, doPreallocate, false);
+  }
+
+  @VisibleForTesting
+  public BuddyAllocator(boolean isDirectVal, boolean isMappedVal, int minAllocVal, int maxAllocVal,
+      int arenaCount, long maxSizeVal, long defragHeadroom, String mapPath,
+      MemoryManager memoryManager, LlapDaemonCacheMetrics metrics, String discardMethod,
+      boolean doPreallocate, boolean isPersistentVal) {
     isDirect = isDirectVal;
     isMapped = isMappedVal;
     minAllocation = minAllocVal;
@@ -138,7 +155,9 @@ public BuddyAllocator(boolean isDirectVal, boolean isMappedVal, int minAllocVal,
         if (!Files.exists(path)) {
           Files.createDirectory(path);
         }
-        cacheDir = Files.createTempDirectory(path, "llap-", RWX);
+        Path persistentDir = isPersistentVal ? lockPersistentCacheDir(path) : null;
+        cacheDir = (persistentDir != null)
+            ? persistentDir : Files.createTempDirectory(path, "llap-", RWX);
       } catch (IOException ioe) {
         // conf validator already checks this, so it will never trigger usually
         throw new AssertionError("Configured mmap directory should be writable", ioe);
@@ -146,6 +165,7 @@ public BuddyAllocator(boolean isDirectVal, boolean isMappedVal, int minAllocVal,
     } else {
       cacheDir = null;
     }
+    isPersistent = persistentLockChannel != null;
 
     arenaSize = validateAndDetermineArenaSize(arenaCount, maxSizeVal);
     maxSize = validateAndDetermineMaxSize(maxSizeVal);
@@ -176,6 +196,36 @@ public BuddyAllocator(boolean isDirectVal, boolean isMappedVal, int minAllocVal,
     doUseBruteDiscard = isBoth || "brute".equalsIgnoreCase(discardMethod);
   }
 
+  /**
+   * Locks the persistent cache directory under the mmap path for this allocator.
+   * @return The directory; null if another process holds it, in which case the arenas are not
+   *         persisted.
+   */
+  private Path lockPersistentCacheDir(Path path) throws IOException {
+    Path dir = path.resolve("llap-cache");
+    if (!Files.exists(dir)) {
+      Files.createDirectory(dir, RWX);
+    }
+    FileChannel channel = new RandomAccessFile(dir.resolve("lock").toFile(), "rw").getChannel();
+    FileLock lock = null;
+    try {
+      lock = channel.tryLock();
+    } catch (IOException | OverlappingFileLockException ex) {
+      LlapIoImpl.LOG.warn("Failed to lock " + dir, ex);
+    } finally {
+      if (lock == null) {
+        IOUtils.closeQuietly(channel);
+      }
+    }
+    if (lock == null) {
+      LlapIoImpl.LOG.warn("Persistent cache directory " + dir + " is in use by another process;"
+          + " the cache will not be persisted");
+      return null;
+    }
+    persistentLockChannel = channel;
+    return dir;
+  }
+
   public long determineMaxMmSize(long defragHeadroom, long maxMmSize) {
     if (defragHeadroom > 0) {
       long maxHeadroom = (long) Math.floor(maxSize * MAX_DEFRAG_HEADROOM_FRACTION);
@@ -727,13 +777,69 @@ public boolean isDirectAlloc() {
     return isDirect;
   }
 
-  private ByteBuffer preallocateArenaBuffer(int arenaSize) {
+  /**
+   * @return The directory of the memory mapped arenas that are kept across restarts; null if
+   *         the arenas are not persistent.
+   */
+  public Path getPersistentCacheDir() {
+    return isPersistent ? cacheDir : null;
+  }
+
+  /** Lets another allocator use the persistent arenas, as if this process had exited. */
+  @VisibleForTesting
+  void closePersistentCacheDir() {
+    IOUtils.closeQuietly(persistentLockChannel);
+  }
+
+  /** Writes the contents of the persistent arenas back to their files. */
+  public void syncPersistentArenas() {
+    if (!isPersistent) return;
+    for (Arena arena : arenas) {
+      if (arena.data != null) {
+        ((MappedByteBuffer)arena.data).force();
+      }
+    }
+  }
+
+  /**
+   * Re-allocates a block of a persistent arena that a cache checkpoint says was allocated at
+   * shutdown, keeping the data that is already there. Only meant to be called at startup, before
+   * the allocator is used by anything else; the memory must have been reserved by the caller.
+   * Note that the first 8 bytes of the block may have been overwritten by the free lists; the
+   * caller is expected to restore them.
+   * @param dest The unallocated buffer to allocate.
+   * @param arenaIx The arena of the block.
+   * @param offset The offset of the block in the arena.
+   * @param allocSize The size of the block.
+   * @return Whether the block was free and has been allocated to dest.
+   */
+  public boolean restoreAllocation(
+      LlapAllocatorBuffer dest, int arenaIx, int offset, int allocSize) {
+    Preconditions.checkState(isPersistent, "The arenas are not persistent");
+    if (arenaIx < 0 || arenaIx >= arenas.length || allocSize < minAllocation
+        || allocSize > maxAllocation || Integer.bitCount(allocSize) != 1
+        || offset < 0 || (offset & (allocSize - 1)) != 0 || offset > arenaSize - allocSize) {
+      return false;
+    }
+    int arenaCount = allocatedArenas.get();
+    assert arenaCount > 0;
+    for (; arenaCount <= arenaIx; ++arenaCount) {
+      arenas[arenaCount].init(arenaCount);
+      metrics.incrAllocatedArena();
+      allocatedArenas.set(arenaCount + 1);
+    }
+    return arenas[arenaIx].allocateAt(dest, offset, freeListFromAllocSize(allocSize));
+  }
+
+  private ByteBuffer preallocateArenaBuffer(int arenaIx, int arenaSize) {
     if (isMapped) {
       RandomAccessFile rwf = null;
       File rf = null;
       Preconditions.checkArgument(isDirect, "All memory mapped allocations have to be direct buffers");
       try {
-        rf = File.createTempFile("arena-", ".cache", cacheDir.toFile());
+        // Persistent arenas keep their data in the same file across restarts.
+        rf = isPersistent ? cacheDir.resolve("arena-" + arenaIx + ".cache").toFile()
+            : File.createTempFile("arena-", ".cache", cacheDir.toFile());
         rwf = new RandomAccessFile(rf, "rw");
         rwf.setLength(arenaSize); // truncate (TODO: posix_fallocate?)
         // Use RW, not PRIVATE because the copy-on-write is irrelevant for a deleted file
@@ -748,7 +854,7 @@ private ByteBuffer preallocateArenaBuffer(int arenaSize) {
         // A mapping, once established, is not dependent upon the file channel that was used to
         // create it. delete file and hold onto the map
         IOUtils.closeQuietly(rwf);
-        if (rf != null) {
+        if (rf != null && !isPersistent) {
           rf.delete();
         }
       }
@@ -772,7 +878,7 @@ private class Arena {
     void init(int arenaIx) {
       this.arenaIx = arenaIx;
       try {
-        data = preallocateArenaBuffer(arenaSize);
+        data = preallocateArenaBuffer(arenaIx, arenaSize);
       } catch (OutOfMemoryError oom) {
         throw new OutOfMemoryError("Cannot allocate " + arenaSize + " bytes: " + oom.getMessage()
             + "; make sure your xmx and process size are set correctly.");
@@ -1342,6 +1448,53 @@ private int allocateWithExpand(
       }
     }
 
+    /**
+     * Allocates the block at a given offset, splitting the free block that contains it.
+     * See restoreAllocation; this is not safe to call concurrently with other allocations.
+     */
+    boolean allocateAt(LlapAllocatorBuffer dest, int offset, int freeListIx) {
+      int headerIx = offset >>> minAllocLog2;
+      // Find the free block that contains the one we need.
+      int blockListIx = freeListIx, blockHeaderIx = -1;
+      for (; blockListIx < freeLists.length; ++blockListIx) {
+        int candidateIx = headerIx & ~((1 << blockListIx) - 1);
+        if (headers[candidateIx] == makeHeader(blockListIx, false)) {
+          blockHeaderIx = candidateIx;
+          break;
+        }
+      }
+      if (blockHeaderIx < 0) return false; // Overlaps with something already allocated.
+      FreeList freeList = freeLists[blockListIx];
+      freeList.lock.lock();
+      try {
+        removeBlockFromFreeList(freeList, blockHeaderIx, blockListIx);
+      } finally {
+        freeList.lock.unlock();
+      }
+      // Split the block, returning the halves that do not contain our block to the free lists.
+      while (blockListIx > freeListIx) {
+        --blockListIx;
+        int halfHeaderIx = blockHeaderIx + (1 << blockListIx);
+        int freeHeaderIx = blockHeaderIx;
+        if (headerIx >= halfHeaderIx) {
+          blockHeaderIx = halfHeaderIx;
+        } else {
+          freeHeaderIx = halfHeaderIx;
+        }
+        freeList = freeLists[blockListIx];
+        freeList.lock.lock();
+        try {
+          addBlockToFreeListUnderLock(freeList, freeHeaderIx, blockListIx);
+          setHeaderFree(freeHeaderIx, blockListIx, CasLog.Src.RESTORE);
+        } finally {
+          freeList.lock.unlock();
+        }
+      }
+      initializeNewlyAllocated(dest, allocSizeFromFreeList(freeListIx), headerIx, offset);
+      setHeaderAlloc(headerIx, freeListIx, dest, CasLog.Src.RESTORE);
+      return true;
+    }
+
     public int allocateFromFreeListUnderLock(FreeList freeList, int freeListIx,
         MemoryBuffer[] dest, long[] destHeaders, int destIx, int destCount, int allocSize) {
       int current = freeList.listHead;
@@ -1626,7 +1779,8 @@ public enum Src {
       ABANDON_NESTED,
       DEALLOC,
       ALLOC_FREE_DEFRAG,
-      ALLOC_FREE_BUF
+      ALLOC_FREE_BUF,
+      RESTORE
     }
     private final int size;
     private final long[] log;
@@ -19,6 +19,7 @@
 package org.apache.hadoop.hive.llap.cache;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.apache.hadoop.hive.llap.LlapUtil;
@@ -33,6 +34,7 @@ public class CacheContentsTracker implements LowLevelCachePolicy, EvictionListen
   private final ConcurrentSkipListMap<String, TagState> tagInfo = new ConcurrentSkipListMap<>();
   private EvictionListener evictionListener;
   private LowLevelCachePolicy realPolicy;
+  private volatile CacheQuotas quotas;
   private final Thread cleanupThread;
 
   public CacheContentsTracker(LowLevelCachePolicy realPolicy) {
@@ -161,6 +163,10 @@ private TagState getTagState(String tag) {
   public void cache(LlapCacheableBuffer buffer, Priority priority) {
     realPolicy.cache(buffer, priority);
     reportCached(buffer);
+    CacheQuotas quotas = this.quotas;
+    if (quotas != null) {
+      quotas.reportCached(buffer);
+    }
   }
 
   @Override
@@ -173,11 +179,30 @@ public void notifyUnlock(LlapCacheableBuffer buffer) {
     realPolicy.notifyUnlock(buffer);
   }
 
+  @Override
+  public void notifyLockAll(List<? extends LlapCacheableBuffer> buffers) {
+    realPolicy.notifyLockAll(buffers);
+  }
+
+  @Override
+  public void notifyUnlockAll(List<? extends LlapCacheableBuffer> buffers) {
+    realPolicy.notifyUnlockAll(buffers);
+  }
+
   @Override
   public void setEvictionListener(EvictionListener listener) {
     evictionListener = listener;
   }
 
+  /**
+   * Sets the quotas, and keeps their sizes up to date; should be set before anything is cached.
+   */
+  @Override
+  public void setQuotas(CacheQuotas quotas) {
+    this.quotas = quotas;
+    realPolicy.setQuotas(quotas);
+  }
+
   @Override
   public long purge() {
     return realPolicy.purge();
@@ -199,11 +224,19 @@ public void debugDumpShort(StringBuilder sb) {
           .append(state.maxSize);
       }
     }
+    CacheQuotas quotas = this.quotas;
+    if (quotas != null) {
+      quotas.debugDumpShort(sb);
+    }
   }
 
   @Override
   public void notifyEvicted(LlapCacheableBuffer buffer) {
     evictionListener.notifyEvicted(buffer);
     reportRemoved(buffer);
+    CacheQuotas quotas = this.quotas;
+    if (quotas != null) {
+      quotas.reportRemoved(buffer);
+    }
   }
 }
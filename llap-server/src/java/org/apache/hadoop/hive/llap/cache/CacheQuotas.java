@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.hive.llap.LlapUtil;
+import org.apache.hadoop.hive.llap.metrics.MetricsUtils;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.impl.MsInfo;
+
+/**
+ * Cache quotas for the tagged cache contents (see {@link CacheContentsTracker}). Each quota
+ * partition is a table or a partition tag, with a guaranteed minimum and a soft maximum size.
+ * The buffers of a partition below its minimum are protected from eviction as long as the
+ * policy can evict something else; the buffers of a partition above its maximum are evicted
+ * before any others. The buffers with no quota are only subject to the normal eviction order.
+ * The sizes are updated by the tracker, so they lag slightly behind the policy during eviction.
+ */
+@Metrics(about = "LLAP Cache Quota Metrics", context = "cache")
+public class CacheQuotas implements MetricsSource, LlapIoDebugDump {
+  private static final class Partition {
+    final String tag;
+    final long minSize, maxSize;
+    final AtomicLong usedSize = new AtomicLong(0), overMaxEvicted = new AtomicLong(0);
+
+    Partition(String tag, long minSize, long maxSize) {
+      this.tag = tag;
+      this.minSize = minSize;
+      this.maxSize = maxSize;
+    }
+  }
+
+  /** Immutable after construction. */
+  private final Map<String, Partition> partitions = new HashMap<>();
+  private final Partition[] partitionArray;
+  private final String session;
+
+  /**
+   * @param quotas the quota specification, as in hive.llap.io.cache.quotas
+   * @param cacheSize the total size of the cache
+   * @param session the LLAP daemon identifier for the metrics
+   */
+  public CacheQuotas(String quotas, long cacheSize, String session) {
+    this.session = session;
+    for (String quota : StringUtils.split(quotas, ',')) {
+      quota = quota.trim();
+      if (quota.isEmpty()) continue;
+      int maxIx = quota.lastIndexOf(':'), minIx = quota.lastIndexOf(':', maxIx - 1);
+      if (minIx <= 0) {
+        throw new IllegalArgumentException("Invalid cache quota " + quota
+            + "; expected tag:min:max");
+      }
+      String tag = quota.substring(0, minIx);
+      double min = Double.parseDouble(quota.substring(minIx + 1, maxIx)),
+          max = Double.parseDouble(quota.substring(maxIx + 1));
+      if (min < 0 || max > 1 || min > max) {
+        throw new IllegalArgumentException("Invalid cache quota " + quota
+            + "; expected 0 <= min <= max <= 1");
+      }
+      if (partitions.put(tag, new Partition(
+          tag, (long)(min * cacheSize), (long)(max * cacheSize))) != null) {
+        throw new IllegalArgumentException("Duplicate cache quota for " + tag);
+      }
+    }
+    partitionArray = partitions.values().toArray(new Partition[partitions.size()]);
+  }
+
+  public boolean isEmpty() {
+    return partitionArray.length == 0;
+  }
+
+  /** Finds the quota partition of the buffer; partition tags fall back to their table. */
+  private Partition getPartition(LlapCacheableBuffer buffer) {
+    String tag = buffer.getTag();
+    if (tag == null) return null;
+    Partition result = partitions.get(tag);
+    if (result != null) return result;
+    int ix = tag.indexOf(LlapUtil.DERIVED_ENTITY_PARTITION_SEPARATOR);
+    return (ix <= 0) ? null : partitions.get(tag.substring(0, ix));
+  }
+
+  public void reportCached(LlapCacheableBuffer buffer) {
+    Partition p = getPartition(buffer);
+    if (p == null) return;
+    p.usedSize.addAndGet(buffer.getMemoryUsage());
+  }
+
+  public void reportRemoved(LlapCacheableBuffer buffer) {
+    Partition p = getPartition(buffer);
+    if (p == null) return;
+    p.usedSize.addAndGet(-buffer.getMemoryUsage());
+  }
+
+  /** @return whether any partition is above its maximum, i.e. there's anything to evict first. */
+  public boolean hasOverMax() {
+    for (Partition p : partitionArray) {
+      if (p.usedSize.get() > p.maxSize) return true;
+    }
+    return false;
+  }
+
+  /** @return whether the buffer belongs to a partition above its maximum. */
+  public boolean isOverMax(LlapCacheableBuffer buffer) {
+    Partition p = getPartition(buffer);
+    return p != null && p.usedSize.get() > p.maxSize;
+  }
+
+  /** @return whether the buffer belongs to a partition at or below its guaranteed minimum. */
+  public boolean isProtected(LlapCacheableBuffer buffer) {
+    Partition p = getPartition(buffer);
+    return p != null && p.usedSize.get() <= p.minSize;
+  }
+
+  /** Called by the policy for the buffers evicted because their partition is above maximum. */
+  public void reportEvictedOverMax(LlapCacheableBuffer buffer) {
+    Partition p = getPartition(buffer);
+    if (p == null) return;
+    p.overMaxEvicted.addAndGet(buffer.getMemoryUsage());
+  }
+
+  @Override
+  public void debugDumpShort(StringBuilder sb) {
+    sb.append("\nCache quotas: ");
+    for (Partition p : partitionArray) {
+      sb.append("\n").append(p.tag).append(": ").append(p.usedSize.get()).append(" in [")
+        .append(p.minSize).append(", ").append(p.maxSize).append("], evicted over max ")
+        .append(p.overMaxEvicted.get());
+    }
+  }
+
+  private enum QuotaInformation implements MetricsInfo {
+    CacheQuotaMetrics("LLAP cache quota metrics, per quota partition"),
+    QuotaPartition("The table or partition tag of the quota"),
+    UsedSize("Amount of bytes cached for the quota partition"),
+    MinSize("Guaranteed minimum size of the quota partition in bytes"),
+    MaxSize("Soft maximum size of the quota partition in bytes"),
+    OverMaxEvicted("Amount of bytes evicted because the quota partition was above maximum");
+
+    private final String description;
+
+    QuotaInformation(String description) {
+      this.description = description;
+    }
+
+    @Override
+    public String description() {
+      return description;
+    }
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    for (Partition p : partitionArray) {
+      collector.addRecord(QuotaInformation.CacheQuotaMetrics)
+          .setContext("cache")
+          .tag(MsInfo.ProcessName, MetricsUtils.METRICS_PROCESS_NAME)
+          .tag(MsInfo.SessionId, session)
+          .tag(QuotaInformation.QuotaPartition, p.tag)
+          .addGauge(QuotaInformation.UsedSize, p.usedSize.get())
+          .addGauge(QuotaInformation.MinSize, p.minSize)
+          .addGauge(QuotaInformation.MaxSize, p.maxSize)
+          .addCounter(QuotaInformation.OverMaxEvicted, p.overMaxEvicted.get());
+    }
+  }
+}
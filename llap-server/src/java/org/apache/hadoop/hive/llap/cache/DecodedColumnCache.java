@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The cache for the decoded column vectors of the row groups that are read often. The data cache
+ * keeps the ORC streams, so every read still decodes them (RLE, dictionaries, etc.); for small
+ * columns that most queries read, such as the keys of the dimension tables, the decoding can take
+ * most of the time. This cache keeps a copy of the vectors of one column in one row group, once
+ * the column has been read in that row group at least the minimum number of times recently.
+ *
+ * The vectors are Java objects, so they are never locked; their memory is reserved from the cache
+ * memory manager, so that the same policy evicts them along with the rest of the cache.
+ */
+public class DecodedColumnCache implements LlapIoDebugDump {
+  private static final long VECTOR_OVERHEAD = 64;
+
+  private final ConcurrentHashMap<Key, DecodedColumnBuffer> cache = new ConcurrentHashMap<>();
+  private final LowLevelCacheMemoryManager memoryManager;
+  private final LowLevelCachePolicy policy;
+  private final LowLevelCacheAdmissionFilter frequencyFilter;
+  private final long maxSize;
+  private final AtomicLong usedSize = new AtomicLong(0);
+
+  public DecodedColumnCache(Configuration conf, LowLevelCacheMemoryManager memoryManager,
+      LowLevelCachePolicy policy) {
+    this(HiveConf.getSizeVar(conf, HiveConf.ConfVars.LLAP_IO_DECODED_CACHE_SIZE),
+        HiveConf.getIntVar(conf, HiveConf.ConfVars.LLAP_IO_DECODED_CACHE_MIN_FREQUENCY),
+        memoryManager, policy);
+  }
+
+  @VisibleForTesting
+  DecodedColumnCache(long maxSize, int minFrequency, LowLevelCacheMemoryManager memoryManager,
+      LowLevelCachePolicy policy) {
+    this.maxSize = maxSize;
+    this.memoryManager = memoryManager;
+    this.policy = policy;
+    // Assume a few KB per column per row group, for the number of the entries to track.
+    int sketchEntries = (int) Math.min(1 << 24, Math.max(1024, maxSize >>> 12));
+    this.frequencyFilter = new LowLevelCacheAdmissionFilter(sketchEntries, minFrequency, null, null);
+    LlapIoImpl.LOG.info("Decoded column cache with {} bytes", maxSize);
+  }
+
+  /** The column in a row group of a stripe; the type is the type of the vectors. */
+  public static final class Key {
+    private final Object fileKey;
+    private final int stripeIx, rgIx, columnIx;
+    private final String type;
+
+    public Key(Object fileKey, int stripeIx, int rgIx, int columnIx, String type) {
+      this.fileKey = fileKey;
+      this.stripeIx = stripeIx;
+      this.rgIx = rgIx;
+      this.columnIx = columnIx;
+      this.type = type;
+    }
+
+    private long packedLocation() {
+      return ((((long) stripeIx << 20) | rgIx) << 20 | columnIx) * 31 + type.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return fileKey.hashCode() * 31 + Long.hashCode(packedLocation());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof Key)) return false;
+      Key other = (Key) obj;
+      return stripeIx == other.stripeIx && rgIx == other.rgIx && columnIx == other.columnIx
+          && type.equals(other.type) && fileKey.equals(other.fileKey);
+    }
+
+    @Override
+    public String toString() {
+      return fileKey + "@" + stripeIx + "/" + rgIx + "/" + columnIx + " " + type;
+    }
+  }
+
+  /** The decoded vectors for one key, in the cache policy. */
+  public static final class DecodedColumnBuffer extends LlapCacheableBuffer {
+    private final Key key;
+    private final ColumnVector[] vectors;
+    private final long memoryUsage;
+    private boolean isInvalid = false;
+
+    private DecodedColumnBuffer(Key key, ColumnVector[] vectors, long memoryUsage) {
+      this.key = key;
+      this.vectors = vectors;
+      this.memoryUsage = memoryUsage;
+    }
+
+    @Override
+    protected synchronized int invalidate() {
+      if (isInvalid) return INVALIDATE_ALREADY_INVALID;
+      isInvalid = true;
+      return INVALIDATE_OK;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+      return memoryUsage;
+    }
+
+    @Override
+    public void notifyEvicted(EvictionDispatcher evictionDispatcher) {
+      evictionDispatcher.notifyEvicted(this);
+    }
+
+    @Override
+    protected boolean isLocked() {
+      return false;
+    }
+
+    @Override
+    public String getTag() {
+      return "DecodedColumns";
+    }
+  }
+
+  /**
+   * Gets the cached vectors. The vectors must not be modified; use {@link #copyTo} to get the
+   * data into the vectors of a batch.
+   * @return The vectors for each batch of the row group, or null if they are not cached.
+   */
+  public ColumnVector[] get(Key key) {
+    DecodedColumnBuffer buffer = cache.get(key);
+    if (buffer == null) return null;
+    policy.notifyLock(buffer);
+    policy.notifyUnlock(buffer); // Never locked for eviction; Java object.
+    return buffer.vectors;
+  }
+
+  /**
+   * Records a read of the column in the row group that was not in the cache, and decides whether
+   * the decoded vectors should be cached.
+   */
+  public boolean shouldCache(Key key) {
+    return frequencyFilter.isFrequent(key.fileKey, key.packedLocation());
+  }
+
+  /**
+   * Caches the copies of the decoded vectors, made with {@link #copyOf}, if there is space.
+   * @return Whether the vectors were cached.
+   */
+  public boolean put(Key key, ColumnVector[] vectors) {
+    // Another reader may have cached the same vectors; don't evict anything for a duplicate.
+    if (cache.containsKey(key)) return false;
+    long memUsage = VECTOR_OVERHEAD;
+    for (ColumnVector cv : vectors) {
+      memUsage += estimateMemoryUsage(cv);
+    }
+    if (usedSize.addAndGet(memUsage) > maxSize) {
+      usedSize.addAndGet(-memUsage);
+      return false;
+    }
+    if (!memoryManager.reserveMemory(memUsage, false, null)) {
+      usedSize.addAndGet(-memUsage);
+      return false;
+    }
+    DecodedColumnBuffer buffer = new DecodedColumnBuffer(key, vectors, memUsage);
+    if (cache.putIfAbsent(key, buffer) != null) {
+      memoryManager.releaseMemory(memUsage);
+      usedSize.addAndGet(-memUsage);
+      return false;
+    }
+    policy.cache(buffer, Priority.NORMAL);
+    policy.notifyUnlock(buffer);
+    return true;
+  }
+
+  public void notifyEvicted(DecodedColumnBuffer buffer) {
+    if (cache.remove(buffer.key, buffer)) {
+      usedSize.addAndGet(-buffer.memoryUsage);
+    }
+  }
+
+  /**
+   * Makes a compact copy of the first size rows of the vector, that does not share any arrays
+   * with it, to cache.
+   */
+  public static ColumnVector copyOf(ColumnVector cv, int size) {
+    int length = cv.isRepeating ? 1 : size;
+    ColumnVector result;
+    if (cv instanceof LongColumnVector) {
+      LongColumnVector dest = new LongColumnVector(length);
+      System.arraycopy(((LongColumnVector) cv).vector, 0, dest.vector, 0, length);
+      result = dest;
+    } else if (cv instanceof DoubleColumnVector) {
+      DoubleColumnVector dest = new DoubleColumnVector(length);
+      System.arraycopy(((DoubleColumnVector) cv).vector, 0, dest.vector, 0, length);
+      result = dest;
+    } else if (cv instanceof TimestampColumnVector) {
+      TimestampColumnVector src = (TimestampColumnVector) cv;
+      TimestampColumnVector dest = new TimestampColumnVector(length);
+      System.arraycopy(src.time, 0, dest.time, 0, length);
+      System.arraycopy(src.nanos, 0, dest.nanos, 0, length);
+      result = dest;
+    } else if (cv instanceof BytesColumnVector) {
+      BytesColumnVector src = (BytesColumnVector) cv;
+      BytesColumnVector dest = new BytesColumnVector(length);
+      int totalLength = 0;
+      for (int i = 0; i < length; ++i) {
+        if (src.noNulls || !src.isNull[i]) {
+          totalLength += src.length[i];
+        }
+      }
+      byte[] data = new byte[totalLength];
+      int offset = 0;
+      for (int i = 0; i < length; ++i) {
+        if (src.noNulls || !src.isNull[i]) {
+          System.arraycopy(src.vector[i], src.start[i], data, offset, src.length[i]);
+          dest.setRef(i, data, offset, src.length[i]);
+          offset += src.length[i];
+        }
+      }
+      result = dest;
+    } else {
+      throw new AssertionError("Unsupported vector " + cv.getClass());
+    }
+    result.noNulls = cv.noNulls;
+    result.isRepeating = cv.isRepeating;
+    if (!cv.noNulls) {
+      System.arraycopy(cv.isNull, 0, result.isNull, 0, length);
+    }
+    return result;
+  }
+
+  /**
+   * Copies the cached vector to the vector of a batch, that has been reset. The variable length
+   * values are not copied; the batch refers to the cached data.
+   */
+  public static void copyTo(ColumnVector cached, ColumnVector dest, int size) {
+    int length = cached.isRepeating ? 1 : size;
+    if (cached instanceof LongColumnVector) {
+      System.arraycopy(((LongColumnVector) cached).vector, 0,
+          ((LongColumnVector) dest).vector, 0, length);
+    } else if (cached instanceof DoubleColumnVector) {
+      System.arraycopy(((DoubleColumnVector) cached).vector, 0,
+          ((DoubleColumnVector) dest).vector, 0, length);
+    } else if (cached instanceof TimestampColumnVector) {
+      TimestampColumnVector src = (TimestampColumnVector) cached;
+      System.arraycopy(src.time, 0, ((TimestampColumnVector) dest).time, 0, length);
+      System.arraycopy(src.nanos, 0, ((TimestampColumnVector) dest).nanos, 0, length);
+    } else {
+      BytesColumnVector src = (BytesColumnVector) cached, target = (BytesColumnVector) dest;
+      for (int i = 0; i < length; ++i) {
+        if (src.noNulls || !src.isNull[i]) {
+          target.setRef(i, src.vector[i], src.start[i], src.length[i]);
+        }
+      }
+    }
+    dest.noNulls = cached.noNulls;
+    dest.isRepeating = cached.isRepeating;
+    if (!cached.noNulls) {
+      System.arraycopy(cached.isNull, 0, dest.isNull, 0, length);
+    }
+  }
+
+  private static long estimateMemoryUsage(ColumnVector cv) {
+    long length = cv.isNull.length, result = VECTOR_OVERHEAD + length;
+    if (cv instanceof LongColumnVector || cv instanceof DoubleColumnVector) {
+      result += 8 * length;
+    } else if (cv instanceof TimestampColumnVector) {
+      result += 12 * length;
+    } else if (cv instanceof BytesColumnVector) {
+      // The references, the starts and the lengths, and the data that all the values share.
+      BytesColumnVector bcv = (BytesColumnVector) cv;
+      result += 16 * length;
+      for (int i = 0; i < length; ++i) {
+        if (bcv.vector[i] != null) {
+          result += bcv.vector[i].length;
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  @VisibleForTesting
+  long getUsedSize() {
+    return usedSize.get();
+  }
+
+  @Override
+  public void debugDumpShort(StringBuilder sb) {
+    sb.append("\nDecoded column cache state: ").append(cache.size()).append(" entries, ")
+        .append(usedSize.get()).append(" bytes");
+  }
+}
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hive.llap.cache;
 
+import org.apache.hadoop.hive.llap.cache.DecodedColumnCache.DecodedColumnBuffer;
 import org.apache.hadoop.hive.llap.cache.SerDeLowLevelCacheImpl.LlapSerDeDataBuffer;
 import org.apache.hadoop.hive.llap.io.metadata.OrcFileEstimateErrors;
 import org.apache.hadoop.hive.llap.io.metadata.MetadataCache;
@@ -29,13 +30,16 @@ public final class EvictionDispatcher implements EvictionListener {
   private final LowLevelCache dataCache;
   private final SerDeLowLevelCacheImpl serdeCache;
   private final MetadataCache metadataCache;
+  private final DecodedColumnCache decodedCache;
   private final EvictionAwareAllocator allocator;
 
   public EvictionDispatcher(LowLevelCache dataCache, SerDeLowLevelCacheImpl serdeCache,
-      MetadataCache metadataCache, EvictionAwareAllocator allocator) {
+      MetadataCache metadataCache, DecodedColumnCache decodedCache,
+      EvictionAwareAllocator allocator) {
     this.dataCache = dataCache;
     this.metadataCache = metadataCache;
     this.serdeCache = serdeCache;
+    this.decodedCache = decodedCache;
     this.allocator = allocator;
   }
 
@@ -63,4 +67,8 @@ public void notifyEvicted(LlapMetadataBuffer<?> buffer) {
   public void notifyEvicted(OrcFileEstimateErrors buffer) {
     metadataCache.notifyEvicted(buffer);
   }
+
+  public void notifyEvicted(DecodedColumnBuffer buffer) {
+    decodedCache.notifyEvicted(buffer);
+  }
 }
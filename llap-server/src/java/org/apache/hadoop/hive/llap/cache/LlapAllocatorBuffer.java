@@ -407,7 +407,6 @@ public static String toFlagString(int state) {
     }
   }
 
-  @VisibleForTesting
   int getArenaIndex() {
     return State.getArena(state.get());
   }
@@ -52,6 +52,15 @@ public enum Priority {
   DiskRangeList getFileData(Object fileKey, DiskRangeList range, long baseOffset,
       DiskRangeListFactory factory, LowLevelCacheCounters qfCounters, BooleanRef gotAllData);
 
+  /**
+   * Estimates which parts of the ranges are not in cache, e.g. to read them ahead of time.
+   * Unlike getFileData, nothing is locked and nothing is counted as a cache access; the result
+   * may already be stale when it is returned.
+   * @param baseOffset base offset for the ranges (stripe/stream offset in case of ORC).
+   * @return A new list of the ranges, or parts of the ranges, that are not cached.
+   */
+  DiskRangeList getMissingRanges(Object fileKey, DiskRangeList range, long baseOffset);
+
   /**
    * Puts file data into cache.
    * @return null if all data was put; bitmask indicating which chunks were not put otherwise;
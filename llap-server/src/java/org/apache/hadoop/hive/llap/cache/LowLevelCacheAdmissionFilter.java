@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * TinyLFU style admission filter for the low-level cache. Every time a cache block is read from
+ * disk and about to be cached, the filter counts it in a count-min sketch of 4-bit counters;
+ * once the cache is full, only the blocks that have been read at least the minimum number of
+ * times recently are admitted. A one-off scan reads each block once, so it cannot push the data
+ * that is used often out of the cache; the blocks it does not cache are deallocated once used.
+ * The counters are halved periodically, so that old frequencies fade out. The counters are
+ * updated with CAS, without a lock, because every IO thread that caches data goes through here.
+ */
+public class LowLevelCacheAdmissionFilter {
+  private static final long[] SEEDS = new long[] {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  // Clears the top bit of every counter after the counters are shifted right by one.
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int MAX_FREQUENCY = 15;
+
+  private final AtomicLongArray table;
+  private final int tableMask, sampleSize, minFrequency;
+  private final LowLevelCacheMemoryManager memoryManager;
+  private final LlapDaemonCacheMetrics metrics;
+  private final AtomicInteger additions = new AtomicInteger(0);
+
+  public LowLevelCacheAdmissionFilter(Configuration conf,
+      LowLevelCacheMemoryManager memoryManager, LlapDaemonCacheMetrics metrics) {
+    this(HiveConf.getIntVar(conf, HiveConf.ConfVars.LLAP_IO_CACHE_ADMISSION_SKETCH_ENTRIES),
+        HiveConf.getIntVar(conf, HiveConf.ConfVars.LLAP_IO_CACHE_ADMISSION_MIN_FREQUENCY),
+        memoryManager, metrics);
+  }
+
+  LowLevelCacheAdmissionFilter(int entries, int minFrequency,
+      LowLevelCacheMemoryManager memoryManager, LlapDaemonCacheMetrics metrics) {
+    int tableSize = Integer.highestOneBit(Math.max(entries, 16) - 1) << 1;
+    this.table = new AtomicLongArray(tableSize);
+    this.tableMask = tableSize - 1;
+    this.sampleSize = 10 * tableSize;
+    this.minFrequency = Math.max(1, Math.min(minFrequency, MAX_FREQUENCY));
+    this.memoryManager = memoryManager;
+    this.metrics = metrics;
+    LlapIoImpl.LOG.info("Cache admission filter for {} entries, minimum frequency {}",
+        tableSize, this.minFrequency);
+  }
+
+  /**
+   * Records a read of the block from disk, and decides whether it should be cached.
+   * @param fileKey The file of the block.
+   * @param offset The offset of the block in the file.
+   * @param size The size of the buffer for the block, for the metrics.
+   * @return Whether the block should be cached.
+   */
+  public boolean admit(Object fileKey, long offset, int size) {
+    if (isFrequent(fileKey, offset)
+        || (memoryManager != null && memoryManager.getFreeMemory() > 0)) {
+      return true;
+    }
+    if (metrics != null) {
+      metrics.incrCacheAdmissionRejects(size);
+    }
+    return false;
+  }
+
+  /**
+   * Records a read of the block, and checks whether it has been read at least the minimum number
+   * of times recently, regardless of the free memory.
+   */
+  public boolean isFrequent(Object fileKey, long offset) {
+    return incrementAndEstimate(hash(fileKey, offset)) >= minFrequency;
+  }
+
+  @VisibleForTesting
+  int incrementAndEstimate(int hash) {
+    int start = (hash & 3) << 2, frequency = MAX_FREQUENCY;
+    for (int i = 0; i < 4; ++i) {
+      frequency = Math.min(frequency, increment(indexOf(hash, i), (start + i) << 2));
+    }
+    // Only the thread that reaches the sample size halves the counters; the increments made by
+    // the other threads meanwhile may or may not be halved, which the sketch can tolerate.
+    if (additions.incrementAndGet() == sampleSize) {
+      for (int i = 0; i < table.length(); ++i) {
+        long value, halved;
+        do {
+          value = table.get(i);
+          halved = (value >>> 1) & RESET_MASK;
+        } while (!table.compareAndSet(i, value, halved));
+      }
+      additions.addAndGet(-(sampleSize >>> 1));
+    }
+    return frequency;
+  }
+
+  /** Increments the 4-bit counter at the shift in the table element, up to the maximum. */
+  private int increment(int index, int shift) {
+    while (true) {
+      long value = table.get(index);
+      int count = (int)((value >>> shift) & 0xfL);
+      if (count >= MAX_FREQUENCY) return count;
+      if (table.compareAndSet(index, value, value + (1L << shift))) return count + 1;
+    }
+  }
+
+  private int indexOf(int hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += (h >>> 32);
+    return ((int) h) & tableMask;
+  }
+
+  private static int hash(Object fileKey, long offset) {
+    int h = fileKey.hashCode() * 31 + (int)(offset ^ (offset >>> 32));
+    h *= 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.ql.io.SyntheticFileId;
+
+/**
+ * Saves the index of the ORC data cache when the daemon shuts down, and re-admits the cached data
+ * on startup, for the allocator with persistent memory mapped arenas; see
+ * hive.llap.io.allocator.mmap.persistent.
+ *
+ * The checkpoint is written after the arenas have been synced to their files, while all the
+ * buffers are locked, and is deleted as soon as it is read; a daemon that was not shut down
+ * cleanly starts with an empty cache. The checkpoint is discarded if the allocator settings have
+ * changed. The file keys identify the file versions (HDFS file ids, or synthetic ids made of the
+ * path, the modification time and the length), so the data of the files that have changed since
+ * is restored under keys that are never looked up again, and is evicted as usual. The buffers
+ * under any other kinds of keys are not saved.
+ */
+public final class LowLevelCacheCheckpoint {
+  private static final String FILE_NAME = "index.checkpoint";
+  private static final int MAGIC = 0x4c4c4350, VERSION = 1;
+  private static final byte KEY_END = 0, KEY_FILE_ID = 1, KEY_SYNTHETIC = 2;
+
+  private LowLevelCacheCheckpoint() {
+  }
+
+  /**
+   * Saves the index of the cache next to the persistent arenas of the allocator.
+   * @return The number of buffers saved.
+   */
+  public static int save(LowLevelCacheImpl cache, BuddyAllocator allocator) throws IOException {
+    Path dir = allocator.getPersistentCacheDir();
+    if (dir == null) return 0;
+    Path file = dir.resolve(FILE_NAME), tmpFile = dir.resolve(FILE_NAME + ".tmp");
+    Map<Object, Map<Long, LlapDataBuffer>> buffers = cache.lockAllBuffers();
+    int count = 0;
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmpFile.toFile())))) {
+        writeLayout(out, allocator);
+        for (Map.Entry<Object, Map<Long, LlapDataBuffer>> e : buffers.entrySet()) {
+          if (!writeKey(out, e.getKey())) continue;
+          out.writeInt(e.getValue().size());
+          for (Map.Entry<Long, LlapDataBuffer> e2 : e.getValue().entrySet()) {
+            LlapDataBuffer buffer = e2.getValue();
+            int offset = buffer.byteBuffer.position();
+            out.writeLong(e2.getKey());
+            out.writeInt(buffer.declaredCachedLength);
+            out.writeInt(buffer.getArenaIndex());
+            out.writeInt(offset);
+            out.writeInt(buffer.allocSize);
+            // The allocator may overwrite these with the free lists before the restore.
+            out.writeLong(buffer.byteBuffer.getLong(offset));
+            String tag = buffer.getTag();
+            out.writeBoolean(tag != null);
+            if (tag != null) {
+              out.writeUTF(tag);
+            }
+            ++count;
+          }
+        }
+        out.writeByte(KEY_END);
+      }
+      allocator.syncPersistentArenas();
+      Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      for (Map<Long, LlapDataBuffer> fileBuffers : buffers.values()) {
+        for (LlapDataBuffer buffer : fileBuffers.values()) {
+          cache.decRefBuffer(buffer);
+        }
+      }
+    }
+    LlapIoImpl.LOG.info("Saved a checkpoint of {} cached buffers to {}", count, file);
+    return count;
+  }
+
+  /**
+   * Re-admits the data in the persistent arenas of the allocator to the cache, according to the
+   * checkpoint saved at shutdown. Must be called at startup, before the cache is used.
+   * @return The number of buffers restored.
+   */
+  public static int restore(LowLevelCacheImpl cache, BuddyAllocator allocator,
+      MemoryManager memoryManager) throws IOException {
+    Path dir = allocator.getPersistentCacheDir();
+    if (dir == null) return 0;
+    Path file = dir.resolve(FILE_NAME);
+    if (!Files.exists(file)) {
+      LlapIoImpl.LOG.info("No cache checkpoint in {}; starting with an empty cache", dir);
+      return 0;
+    }
+    int restored = 0, skipped = 0;
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file.toFile())))) {
+      // The arenas are going to change; never restore the same checkpoint twice.
+      Files.delete(file);
+      if (!checkLayout(in, allocator)) {
+        LlapIoImpl.LOG.warn("Cache checkpoint in {} does not match the allocator settings;"
+            + " starting with an empty cache", dir);
+        return 0;
+      }
+      while (true) {
+        Object fileKey = readKey(in);
+        if (fileKey == null) break;
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i) {
+          long offset = in.readLong();
+          int declaredLength = in.readInt(), arenaIx = in.readInt(), bufferOffset = in.readInt(),
+              allocSize = in.readInt();
+          long prefix = in.readLong();
+          String tag = in.readBoolean() ? in.readUTF() : null;
+          LlapDataBuffer buffer = new LlapDataBuffer();
+          if (!allocator.restoreAllocation(buffer, arenaIx, bufferOffset, allocSize)) {
+            ++skipped;
+            continue;
+          }
+          memoryManager.reserveMemory(allocSize, null);
+          buffer.byteBuffer.putLong(bufferOffset, prefix);
+          if (cache.restoreFileData(fileKey, offset, buffer, declaredLength, tag)) {
+            ++restored;
+          } else {
+            ++skipped;
+          }
+        }
+      }
+    }
+    LlapIoImpl.LOG.info("Restored {} cached buffers from the checkpoint in {}; skipped {}",
+        restored, dir, skipped);
+    return restored;
+  }
+
+  private static void writeLayout(DataOutputStream out, BuddyAllocator allocator)
+      throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(allocator.getMinAllocation());
+    out.writeInt(allocator.getMaxAllocation());
+    out.writeInt(allocator.getArenaSize());
+    out.writeLong(allocator.getMaxCacheSize());
+  }
+
+  private static boolean checkLayout(DataInputStream in, BuddyAllocator allocator)
+      throws IOException {
+    return in.readInt() == MAGIC && in.readInt() == VERSION
+        && in.readInt() == allocator.getMinAllocation()
+        && in.readInt() == allocator.getMaxAllocation()
+        && in.readInt() == allocator.getArenaSize()
+        && in.readLong() == allocator.getMaxCacheSize();
+  }
+
+  private static boolean writeKey(DataOutputStream out, Object fileKey) throws IOException {
+    if (fileKey instanceof Long) {
+      out.writeByte(KEY_FILE_ID);
+      out.writeLong((Long)fileKey);
+    } else if (fileKey instanceof SyntheticFileId) {
+      out.writeByte(KEY_SYNTHETIC);
+      ((SyntheticFileId)fileKey).write(out);
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private static Object readKey(DataInputStream in) throws IOException {
+    byte keyType = in.readByte();
+    switch (keyType) {
+    case KEY_END:
+      return null;
+    case KEY_FILE_ID:
+      return in.readLong();
+    case KEY_SYNTHETIC:
+      SyntheticFileId fileId = new SyntheticFileId();
+      fileId.readFields(in);
+      return fileId;
+    default:
+      throw new IOException("Unknown file key type " + keyType);
+    }
+  }
+}
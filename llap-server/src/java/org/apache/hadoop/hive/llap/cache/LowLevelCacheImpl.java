@@ -21,9 +21,11 @@
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -33,6 +35,7 @@
 import org.apache.hadoop.hive.common.io.DiskRangeList;
 import org.apache.hadoop.hive.common.io.DataCache.BooleanRef;
 import org.apache.hadoop.hive.common.io.DataCache.DiskRangeListFactory;
+import org.apache.hadoop.hive.common.io.DiskRangeList.CreateHelper;
 import org.apache.hadoop.hive.common.io.DiskRangeList.MutateHelper;
 import org.apache.hadoop.hive.common.io.encoded.MemoryBuffer;
 import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
@@ -58,6 +61,7 @@ public class LowLevelCacheImpl implements LowLevelCache, BufferUsageManager, Lla
   private final long cleanupInterval;
   private final LlapDaemonCacheMetrics metrics;
   private final boolean doAssumeGranularBlocks;
+  private LowLevelCacheAdmissionFilter admissionFilter = null;
 
   private static final Function<Void, ConcurrentSkipListMap<Long, LlapDataBuffer>> CACHE_CTOR =
       new Function<Void, ConcurrentSkipListMap<Long, LlapDataBuffer>>() {
@@ -83,6 +87,10 @@ public LowLevelCacheImpl(LlapDaemonCacheMetrics metrics, LowLevelCachePolicy cac
     this.doAssumeGranularBlocks = doAssumeGranularBlocks;
   }
 
+  public void setAdmissionFilter(LowLevelCacheAdmissionFilter admissionFilter) {
+    this.admissionFilter = admissionFilter;
+  }
+
   public void startThreads() {
     if (cleanupInterval < 0) return;
     cleanupThread = new CleanupThread(cache, newEvictions, cleanupInterval);
@@ -114,13 +122,19 @@ public DiskRangeList getFileData(Object fileKey, DiskRangeList ranges, long base
         gotAllData.value = true;
       }
       DiskRangeList current = ranges;
+      List<LlapDataBuffer> newlyLocked = new ArrayList<>();
       while (current != null) {
         metrics.incrCacheRequestedBytes(current.getLength());
         // We assume ranges in "ranges" are non-overlapping; thus, we will save next in advance.
         DiskRangeList next = current.next;
-        getOverlappingRanges(baseOffset, current, subCache.getCache(), factory, gotAllData);
+        getOverlappingRanges(baseOffset, current, subCache.getCache(), factory, gotAllData,
+            newlyLocked);
         current = next;
       }
+      // Notify the policy about all the buffers we have locked at once, rather than per buffer.
+      if (!newlyLocked.isEmpty()) {
+        cachePolicy.notifyLockAll(newlyLocked);
+      }
     } finally {
       subCache.decRef();
     }
@@ -177,9 +191,41 @@ public DiskRangeList getFileData(Object fileKey, DiskRangeList ranges, long base
     return prev.next;
   }
 
+  @Override
+  public DiskRangeList getMissingRanges(Object fileKey, DiskRangeList ranges, long baseOffset) {
+    CreateHelper result = new CreateHelper();
+    FileCache<ConcurrentSkipListMap<Long, LlapDataBuffer>> subCache = cache.get(fileKey);
+    boolean hasCache = subCache != null && subCache.incRef();
+    try {
+      for (DiskRangeList current = ranges; current != null; current = current.next) {
+        long offset = current.getOffset(), end = current.getEnd();
+        if (hasCache) {
+          // Include the buffer that starts before the range, if any, in case it covers the start.
+          Long from = subCache.getCache().floorKey(offset + baseOffset);
+          for (Map.Entry<Long, LlapDataBuffer> e : subCache.getCache().subMap(
+              from == null ? offset + baseOffset : from, end + baseOffset).entrySet()) {
+            long cachedOffset = e.getKey() - baseOffset;
+            if (cachedOffset > offset) {
+              result.addOrMerge(offset, cachedOffset, true, false);
+            }
+            offset = Math.max(offset, cachedOffset + e.getValue().declaredCachedLength);
+          }
+        }
+        if (offset < end) {
+          result.addOrMerge(offset, end, true, false);
+        }
+      }
+    } finally {
+      if (hasCache) {
+        subCache.decRef();
+      }
+    }
+    return result.get();
+  }
+
   private void getOverlappingRanges(long baseOffset, DiskRangeList currentNotCached,
       ConcurrentSkipListMap<Long, LlapDataBuffer> cache, DiskRangeListFactory factory,
-      BooleanRef gotAllData) {
+      BooleanRef gotAllData, List<LlapDataBuffer> newlyLocked) {
     long absOffset = currentNotCached.getOffset() + baseOffset;
     if (!doAssumeGranularBlocks) {
       // This currently only happens in tests. See getFileData comment on the interface.
@@ -202,7 +248,10 @@ private void getOverlappingRanges(long baseOffset, DiskRangeList currentNotCache
         LlapIoImpl.LOCKING_LOGGER.trace("Locking {} during get", buffer);
       }
 
-      if (!lockBuffer(buffer, true)) {
+      int rc = incRefAndCount(buffer);
+      if (rc == 1) {
+        newlyLocked.add(buffer);
+      } else if (rc <= 0) {
         // If we cannot lock, remove this from cache and continue.
         matches.remove();
         if (gotAllData != null) {
@@ -277,10 +326,7 @@ private DiskRangeList addCachedBufferToIter(
   }
 
   private boolean lockBuffer(LlapDataBuffer buffer, boolean doNotifyPolicy) {
-    int rc = buffer.incRef();
-    if (rc > 0) {
-      metrics.incrCacheNumLockedBuffers();
-    }
+    int rc = incRefAndCount(buffer);
     if (doNotifyPolicy && rc == 1) {
       // We have just locked a buffer that wasn't previously locked.
       cachePolicy.notifyLock(buffer);
@@ -288,6 +334,18 @@ private boolean lockBuffer(LlapDataBuffer buffer, boolean doNotifyPolicy) {
     return rc > 0;
   }
 
+  /**
+   * Increments the refcount without notifying the policy; the caller is responsible for that.
+   * @return The new refcount; non-positive if the buffer could not be locked.
+   */
+  private int incRefAndCount(LlapDataBuffer buffer) {
+    int rc = buffer.incRef();
+    if (rc > 0) {
+      metrics.incrCacheNumLockedBuffers();
+    }
+    return rc;
+  }
+
   @Override
   public long[] putFileData(Object fileKey, DiskRange[] ranges, MemoryBuffer[] buffers,
       long baseOffset, Priority priority, LowLevelCacheCounters qfCounters, String tag) {
@@ -305,6 +363,14 @@ public long[] putFileData(Object fileKey, DiskRange[] ranges, MemoryBuffer[] buf
         assert canLock;
         long offset = ranges[i].getOffset() + baseOffset;
         assert buffer.declaredCachedLength == LlapDataBuffer.UNKNOWN_CACHED_LENGTH;
+        if (admissionFilter != null && !admissionFilter.admit(fileKey, offset, buffer.allocSize)) {
+          // Not cached; the buffer will be deallocated when the caller unlocks it.
+          if (LlapIoImpl.CACHE_LOGGER.isTraceEnabled()) {
+            LlapIoImpl.CACHE_LOGGER.trace("Not admitting {} for {}@{} to cache",
+                buffer, fileKey, offset);
+          }
+          continue;
+        }
         buffer.declaredCachedLength = ranges[i].getLength();
         buffer.setTag(tag);
         while (true) { // Overwhelmingly executes once, or maybe twice (replacing stale value).
@@ -357,6 +423,57 @@ public long[] putFileData(Object fileKey, DiskRange[] ranges, MemoryBuffer[] buf
     return result;
   }
 
+  /**
+   * Adds a buffer restored from a cache checkpoint to the cache; see LowLevelCacheCheckpoint.
+   * The buffer is deallocated if the range is already cached.
+   * @return Whether the buffer has been cached.
+   */
+  boolean restoreFileData(Object fileKey, long offset, LlapDataBuffer buffer,
+      int declaredLength, String tag) {
+    FileCache<ConcurrentSkipListMap<Long, LlapDataBuffer>> subCache =
+        FileCache.getOrAddFileSubCache(cache, fileKey, CACHE_CTOR);
+    try {
+      lockBuffer(buffer, false);
+      if (subCache.getCache().putIfAbsent(offset, buffer) != null) {
+        unlockBuffer(buffer, true);
+        return false;
+      }
+      buffer.declaredCachedLength = declaredLength;
+      buffer.setTag(tag);
+      cachePolicy.cache(buffer, Priority.NORMAL);
+      unlockBuffer(buffer, true);
+      return true;
+    } finally {
+      subCache.decRef();
+    }
+  }
+
+  /**
+   * Locks all the cached buffers that are still valid, for a checkpoint of the cache.
+   * @return The locked buffers by offset, by file key; the caller unlocks them via decRefBuffer.
+   */
+  Map<Object, Map<Long, LlapDataBuffer>> lockAllBuffers() {
+    Map<Object, Map<Long, LlapDataBuffer>> result = new HashMap<>();
+    for (Map.Entry<Object, FileCache<ConcurrentSkipListMap<Long, LlapDataBuffer>>> e :
+        cache.entrySet()) {
+      if (!e.getValue().incRef()) continue;
+      try {
+        Map<Long, LlapDataBuffer> fileBuffers = new TreeMap<>();
+        for (Map.Entry<Long, LlapDataBuffer> e2 : e.getValue().getCache().entrySet()) {
+          if (lockBuffer(e2.getValue(), true)) {
+            fileBuffers.put(e2.getKey(), e2.getValue());
+          }
+        }
+        if (!fileBuffers.isEmpty()) {
+          result.put(e.getKey(), fileBuffers);
+        }
+      } finally {
+        e.getValue().decRef();
+      }
+    }
+    return result;
+  }
+
   private static int align64(int number) {
     return ((number + 63) & ~63);
   }
@@ -368,28 +485,49 @@ public void decRefBuffer(MemoryBuffer buffer) {
 
   @Override
   public void decRefBuffers(List<MemoryBuffer> cacheBuffers) {
-    for (MemoryBuffer b : cacheBuffers) {
-      unlockBuffer((LlapDataBuffer)b, true);
+    // Unlock all the buffers, and notify the policy about the cached ones in one batch.
+    List<LlapDataBuffer> unlocked = null;
+    for (int i = 0; i < cacheBuffers.size(); ++i) {
+      LlapDataBuffer buffer = (LlapDataBuffer)cacheBuffers.get(i);
+      if (!decRefAndCheckCached(buffer)) continue;
+      if (unlocked == null) {
+        unlocked = new ArrayList<>(cacheBuffers.size() - i);
+      }
+      unlocked.add(buffer);
+    }
+    if (unlocked != null) {
+      cachePolicy.notifyUnlockAll(unlocked);
     }
+    metrics.decrCacheNumLockedBuffers(cacheBuffers.size());
   }
 
   private void unlockBuffer(LlapDataBuffer buffer, boolean handleLastDecRef) {
-    boolean isLastDecref = (buffer.decRef() == 0);
-    if (handleLastDecRef && isLastDecref) {
-      // This is kind of not pretty, but this is how we detect whether buffer was cached.
-      // We would always set this for lookups at put time.
-      if (buffer.declaredCachedLength != LlapDataBuffer.UNKNOWN_CACHED_LENGTH) {
+    if (handleLastDecRef) {
+      if (decRefAndCheckCached(buffer)) {
         cachePolicy.notifyUnlock(buffer);
-      } else {
-        if (LlapIoImpl.CACHE_LOGGER.isTraceEnabled()) {
-          LlapIoImpl.CACHE_LOGGER.trace("Deallocating {} that was not cached", buffer);
-        }
-        allocator.deallocate(buffer);
       }
+    } else {
+      buffer.decRef();
     }
     metrics.decrCacheNumLockedBuffers();
   }
 
+  /**
+   * Decrements the refcount; deallocates the buffer if that was the last ref and it wasn't cached.
+   * @return Whether this was the last ref to a cached buffer, so the policy must be notified.
+   */
+  private boolean decRefAndCheckCached(LlapDataBuffer buffer) {
+    if (buffer.decRef() != 0) return false;
+    // This is kind of not pretty, but this is how we detect whether buffer was cached.
+    // We would always set this for lookups at put time.
+    if (buffer.declaredCachedLength != LlapDataBuffer.UNKNOWN_CACHED_LENGTH) return true;
+    if (LlapIoImpl.CACHE_LOGGER.isTraceEnabled()) {
+      LlapIoImpl.CACHE_LOGGER.trace("Deallocating {} that was not cached", buffer);
+    }
+    allocator.deallocate(buffer);
+    return false;
+  }
+
   private static final ByteBuffer fakeBuf = ByteBuffer.wrap(new byte[1]);
   public static LlapDataBuffer allocateFake() {
     LlapDataBuffer fake = new LlapDataBuffer();
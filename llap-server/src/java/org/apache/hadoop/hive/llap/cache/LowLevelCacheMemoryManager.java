@@ -138,6 +138,25 @@ public void releaseMemory(final long memoryToRelease) {
     metrics.incrCacheCapacityUsed(-memoryToRelease);
   }
 
+  /** @return The memory that can be reserved without evicting anything. */
+  public long getFreeMemory() {
+    return maxSize - usedMemory.get();
+  }
+
+  /**
+   * Reserves the memory only if it is free, without evicting anything from the cache.
+   * @return Whether the memory was reserved.
+   */
+  public boolean reserveFreeMemory(long memoryToReserve) {
+    while (true) {
+      long usedMem = usedMemory.get(), newUsedMem = usedMem + memoryToReserve;
+      if (newUsedMem > maxSize) return false;
+      if (usedMemory.compareAndSet(usedMem, newUsedMem)) break;
+    }
+    metrics.incrCacheCapacityUsed(memoryToReserve);
+    return true;
+  }
+
   @Override
   public void updateMaxSize(long maxSize) {
     this.maxSize = maxSize;
@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hive.llap.cache;
 
+import java.util.List;
+
 import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
 
 /**
@@ -51,6 +53,30 @@ public interface LowLevelCachePolicy extends LlapIoDebugDump {
    */
   void notifyUnlock(LlapCacheableBuffer buffer);
 
+  /**
+   * Same as {@link #notifyLock(LlapCacheableBuffer)} for a batch of buffers, e.g. all the buffers
+   * locked by a single cache lookup. Policies can override this to amortize the locking cost.
+   *
+   * @param buffers buffers that just got locked
+   */
+  default void notifyLockAll(List<? extends LlapCacheableBuffer> buffers) {
+    for (int i = 0; i < buffers.size(); ++i) {
+      notifyLock(buffers.get(i));
+    }
+  }
+
+  /**
+   * Same as {@link #notifyUnlock(LlapCacheableBuffer)} for a batch of buffers, e.g. all the buffers
+   * of a stripe that the reader is done with. The buffers are treated as accessed in list order.
+   *
+   * @param buffers buffers that just got unlocked
+   */
+  default void notifyUnlockAll(List<? extends LlapCacheableBuffer> buffers) {
+    for (int i = 0; i < buffers.size(); ++i) {
+      notifyUnlock(buffers.get(i));
+    }
+  }
+
   /**
    * Signals to the policy that it has to evict some pages to make room incoming buffers.
    * Policy has to at least evict the amount requested.
@@ -69,6 +95,15 @@ public interface LowLevelCachePolicy extends LlapIoDebugDump {
    */
   void setEvictionListener(EvictionListener listener);
 
+  /**
+   * Sets the cache quotas to take into account during eviction. Policies that don't support
+   * quotas ignore them.
+   *
+   * @param quotas cache quotas, kept up to date by the caller
+   */
+  default void setQuotas(CacheQuotas quotas) {
+  }
+
   /**
    * Signals to the policy to evict all the unlocked used buffers.
    *
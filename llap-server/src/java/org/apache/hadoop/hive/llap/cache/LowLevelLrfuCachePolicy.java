@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hive.llap.cache;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -75,15 +77,26 @@ private double expirePriority(long time, long lastAccess, double previous) {
   private final int maxHeapSize;
   private EvictionListener evictionListener;
   private final PolicyMetrics metrics;
+  private volatile CacheQuotas quotas;
 
   public LowLevelLrfuCachePolicy(int minBufferSize, long maxSize, Configuration conf) {
-    lambda = HiveConf.getFloatVar(conf, HiveConf.ConfVars.LLAP_LRFU_LAMBDA);
+    this(minBufferSize, maxSize, HiveConf.getFloatVar(conf, HiveConf.ConfVars.LLAP_LRFU_LAMBDA),
+        "LowLevelLrfuCachePolicy-" + MetricsUtils.getHostName(), conf);
+  }
+
+  /**
+   * @param lambda the LRFU lambda, in [0, 1]
+   * @param metricsName the name of the metrics source of the policy
+   */
+  LowLevelLrfuCachePolicy(int minBufferSize, long maxSize, double lambda, String metricsName,
+      Configuration conf) {
+    this.lambda = lambda;
     int maxBuffers = (int)Math.ceil((maxSize * 1.0) / minBufferSize);
     if (lambda == 0) {
-      maxHeapSize = maxBuffers; // lrfuThreshold is +inf in this case
+      maxHeapSize = Math.max(maxBuffers, 1); // lrfuThreshold is +inf in this case
     } else {
       int lrfuThreshold = (int)((Math.log(1 - Math.pow(0.5, lambda)) / Math.log(0.5)) / lambda);
-      maxHeapSize = Math.min(lrfuThreshold, maxBuffers);
+      maxHeapSize = Math.max(Math.min(lrfuThreshold, maxBuffers), 1);
     }
     LlapIoImpl.LOG.info("LRFU cache policy with min buffer size {} and lambda {} (heap size {})",
         minBufferSize, lambda, maxHeapSize);
@@ -99,8 +112,7 @@ public LowLevelLrfuCachePolicy(int minBufferSize, long maxSize, Configuration co
 
     // register new metrics provider for this cache policy
     metrics = new PolicyMetrics(sessID);
-    LlapMetricsSystem.instance().register("LowLevelLrfuCachePolicy-" + MetricsUtils.getHostName(),
-                                          null, metrics);
+    LlapMetricsSystem.instance().register(metricsName, null, metrics);
   }
 
   @Override
@@ -138,6 +150,24 @@ public void notifyLock(LlapCacheableBuffer buffer) {
     removeFromListAndUnlock(buffer);
   }
 
+  @Override
+  public void notifyLockAll(List<? extends LlapCacheableBuffer> buffers) {
+    // Same as notifyLock, but we only try to take the list lock once for the whole batch.
+    if (!listLock.tryLock()) {
+      return;
+    }
+    try {
+      for (int i = 0; i < buffers.size(); ++i) {
+        LlapCacheableBuffer buffer = buffers.get(i);
+        if (buffer.indexInHeap == LlapCacheableBuffer.IN_LIST) {
+          removeFromListUnderLock(buffer);
+        }
+      }
+    } finally {
+      listLock.unlock();
+    }
+  }
+
   @Override
   public void notifyUnlock(LlapCacheableBuffer buffer) {
     long time = timer.incrementAndGet();
@@ -145,50 +175,73 @@ public void notifyUnlock(LlapCacheableBuffer buffer) {
       LlapIoImpl.CACHE_LOGGER.trace("Touching {} at {}", buffer, time);
     }
     synchronized (heapLock) {
-      // First, update buffer priority - we have just been using it.
-      buffer.priority = (buffer.lastUpdate == -1) ? F0
-          : touchPriority(time, buffer.lastUpdate, buffer.priority);
-      buffer.lastUpdate = time;
-      // Then, if the buffer was in the list, remove it.
-      if (buffer.indexInHeap == LlapCacheableBuffer.IN_LIST) {
-        listLock.lock();
-        removeFromListAndUnlock(buffer);
+      notifyUnlockUnderHeapLock(buffer, time);
+    }
+  }
+
+  @Override
+  public void notifyUnlockAll(List<? extends LlapCacheableBuffer> buffers) {
+    int count = buffers.size();
+    if (count == 0) {
+      return;
+    }
+    // Reserve the timestamps for the whole batch, so that the buffers are touched in order,
+    // and update the heap under a single lock acquisition.
+    long firstTime = timer.addAndGet(count) - count + 1;
+    if (LlapIoImpl.CACHE_LOGGER.isTraceEnabled()) {
+      LlapIoImpl.CACHE_LOGGER.trace("Touching {} buffers at {}", count, firstTime);
+    }
+    synchronized (heapLock) {
+      for (int i = 0; i < count; ++i) {
+        notifyUnlockUnderHeapLock(buffers.get(i), firstTime + i);
       }
-      // The only concurrent change that can happen when we hold the heap lock is list removal;
-      // we have just ensured the item is not in the list, so we have a definite state now.
-      if (buffer.indexInHeap >= 0) {
-        // The buffer has lived in the heap all along. Restore heap property.
-        heapifyDownUnderLock(buffer, time);
-      } else if (heapSize == heap.length) {
-        // The buffer is not in the (full) heap. Demote the top item of the heap into the list.
-        LlapCacheableBuffer demoted = heap[0];
-        listLock.lock();
-        try {
-          assert demoted.indexInHeap == 0; // Noone could have moved it, we have the heap lock.
-          demoted.indexInHeap = LlapCacheableBuffer.IN_LIST;
-          demoted.prev = null;
-          if (listHead != null) {
-            demoted.next = listHead;
-            listHead.prev = demoted;
-            listHead = demoted;
-          } else {
-            listHead = demoted;
-            listTail = demoted;
-            demoted.next = null;
-          }
-        } finally {
-          listLock.unlock();
+    }
+  }
+
+  private void notifyUnlockUnderHeapLock(LlapCacheableBuffer buffer, long time) {
+    // First, update buffer priority - we have just been using it.
+    buffer.priority = (buffer.lastUpdate == -1) ? F0
+        : touchPriority(time, buffer.lastUpdate, buffer.priority);
+    buffer.lastUpdate = time;
+    // Then, if the buffer was in the list, remove it.
+    if (buffer.indexInHeap == LlapCacheableBuffer.IN_LIST) {
+      listLock.lock();
+      removeFromListAndUnlock(buffer);
+    }
+    // The only concurrent change that can happen when we hold the heap lock is list removal;
+    // we have just ensured the item is not in the list, so we have a definite state now.
+    if (buffer.indexInHeap >= 0) {
+      // The buffer has lived in the heap all along. Restore heap property.
+      heapifyDownUnderLock(buffer, time);
+    } else if (heapSize == heap.length) {
+      // The buffer is not in the (full) heap. Demote the top item of the heap into the list.
+      LlapCacheableBuffer demoted = heap[0];
+      listLock.lock();
+      try {
+        assert demoted.indexInHeap == 0; // Noone could have moved it, we have the heap lock.
+        demoted.indexInHeap = LlapCacheableBuffer.IN_LIST;
+        demoted.prev = null;
+        if (listHead != null) {
+          demoted.next = listHead;
+          listHead.prev = demoted;
+          listHead = demoted;
+        } else {
+          listHead = demoted;
+          listTail = demoted;
+          demoted.next = null;
         }
-        // Now insert the new buffer in its place and restore heap property.
-        buffer.indexInHeap = 0;
-        heapifyDownUnderLock(buffer, time);
-      } else {
-        // Heap is not full, add the buffer to the heap and restore heap property up.
-        assert heapSize < heap.length : heap.length + " < " + heapSize;
-        buffer.indexInHeap = heapSize;
-        heapifyUpUnderLock(buffer, time);
-        ++heapSize;
+      } finally {
+        listLock.unlock();
       }
+      // Now insert the new buffer in its place and restore heap property.
+      buffer.indexInHeap = 0;
+      heapifyDownUnderLock(buffer, time);
+    } else {
+      // Heap is not full, add the buffer to the heap and restore heap property up.
+      assert heapSize < heap.length : heap.length + " < " + heapSize;
+      buffer.indexInHeap = heapSize;
+      heapifyUpUnderLock(buffer, time);
+      ++heapSize;
     }
   }
 
@@ -274,15 +327,45 @@ private static LlapCacheableBuffer removeFromLocalList(
   }
 
 
+  @Override
+  public void setQuotas(CacheQuotas quotas) {
+    this.quotas = quotas;
+  }
+
   @Override
   public long evictSomeBlocks(long memoryToReserve) {
     // In normal case, we evict the items from the list.
-    long evicted = evictFromList(memoryToReserve);
+    CacheQuotas quotas = this.quotas;
+    long evicted;
+    if (quotas == null) {
+      evicted = evictFromList(memoryToReserve);
+    } else {
+      // Evict the partitions above their maximum first, then anything not below its minimum.
+      evicted = evictFromListWithQuotas(memoryToReserve, true);
+      if (evicted < memoryToReserve) {
+        evicted += evictFromListWithQuotas(memoryToReserve - evicted, false);
+      }
+    }
     if (evicted >= memoryToReserve) {
       return evicted;
     }
     // This should not happen unless we are evicting a lot at once, or buffers are large (so
     // there's a small number of buffers and they all live in the heap).
+    evicted += evictFromHeap(memoryToReserve - evicted);
+    if (evicted < memoryToReserve && quotas != null) {
+      // Only the protected buffers are left; the minimums are not guaranteed at any cost.
+      evicted += evictFromList(memoryToReserve - evicted);
+    }
+    return evicted;
+  }
+
+  /**
+   * Evicts buffers from the heap, lowest priority first, until at least memoryToReserve bytes
+   * are evicted or the heap is empty.
+   * @return the number of bytes evicted.
+   */
+  long evictFromHeap(long memoryToReserve) {
+    long evicted = 0;
     long time = timer.get();
     while (evicted < memoryToReserve) {
       LlapCacheableBuffer buffer = null;
@@ -298,7 +381,12 @@ public long evictSomeBlocks(long memoryToReserve) {
     return evicted;
   }
 
-  private long evictFromList(long memoryToReserve) {
+  /**
+   * Evicts buffers from the tail of the list until at least memoryToReserve bytes are evicted
+   * or the list is empty.
+   * @return the number of bytes evicted.
+   */
+  long evictFromList(long memoryToReserve) {
     long evicted = 0;
     LlapCacheableBuffer nextCandidate = null, firstCandidate = null;
     listLock.lock();
@@ -345,6 +433,49 @@ private long evictFromList(long memoryToReserve) {
     return evicted;
   }
 
+  /**
+   * Same as {@link #evictFromList(long)}, but takes the cache quotas into account. Unlike the
+   * former, the evicted buffers are not contiguous, so they are removed from the list one by one.
+   * The heap is not affected by quotas; it rarely needs to be evicted from.
+   * @param overMaxOnly whether to only evict the buffers of partitions above their maximum;
+   *                    otherwise, evicts all but the buffers of partitions below their minimum.
+   * @return the number of bytes evicted.
+   */
+  long evictFromListWithQuotas(long memoryToReserve, boolean overMaxOnly) {
+    CacheQuotas quotas = this.quotas;
+    if (overMaxOnly && !quotas.hasOverMax()) {
+      return 0;
+    }
+    long evicted = 0;
+    List<LlapCacheableBuffer> evictedBuffers = new ArrayList<>();
+    listLock.lock();
+    try {
+      LlapCacheableBuffer nextCandidate = listTail;
+      while (evicted < memoryToReserve && nextCandidate != null) {
+        LlapCacheableBuffer candidate = nextCandidate;
+        nextCandidate = candidate.prev;
+        if (overMaxOnly ? !quotas.isOverMax(candidate) : quotas.isProtected(candidate)) {
+          continue;
+        }
+        // Locked, or invalidated, buffers are just dropped; will be re-added on unlock.
+        if (LlapCacheableBuffer.INVALIDATE_OK == candidate.invalidate()) {
+          evicted += candidate.getMemoryUsage();
+          evictedBuffers.add(candidate);
+        }
+        removeFromListUnderLock(candidate);
+      }
+    } finally {
+      listLock.unlock();
+    }
+    for (LlapCacheableBuffer buffer : evictedBuffers) {
+      if (overMaxOnly) {
+        quotas.reportEvictedOverMax(buffer);
+      }
+      evictionListener.notifyEvicted(buffer);
+    }
+    return evicted;
+  }
+
   // Note: rarely called (unless buffers are very large or we evict a lot, or in LFU case).
   private LlapCacheableBuffer evictFromHeapUnderLock(long time) {
     while (true) {
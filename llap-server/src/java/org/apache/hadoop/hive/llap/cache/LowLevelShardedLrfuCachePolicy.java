@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.llap.LlapUtil;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.llap.metrics.MetricsUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * LRFU cache policy split into independent shards, so that concurrent lock and unlock
+ * notifications for different buffers do not contend on a single heap lock and list lock.
+ * Each buffer always goes to the same shard, chosen by its identity hash; each shard is a
+ * {@link LowLevelLrfuCachePolicy} over its share of the cache.
+ *
+ * Eviction is approximately global: the eviction lists of all the shards, which hold the buffers
+ * with the lowest priorities, are drained before any heap, and consecutive evictions start at
+ * different shards. As a shard only counts the accesses to its own buffers, its lambda is scaled
+ * by the number of shards so that priorities decay at about the same rate per cache access as
+ * with a single policy.
+ */
+public class LowLevelShardedLrfuCachePolicy implements LowLevelCachePolicy {
+  private final LowLevelLrfuCachePolicy[] shards;
+  private final int shardMask;
+  private final AtomicInteger nextEvictionShard = new AtomicInteger(0);
+  private volatile CacheQuotas quotas;
+
+  public LowLevelShardedLrfuCachePolicy(int minBufferSize, long maxSize, Configuration conf) {
+    this(minBufferSize, maxSize, HiveConf.getIntVar(conf, HiveConf.ConfVars.LLAP_LRFU_SHARDS),
+        conf);
+  }
+
+  @VisibleForTesting
+  LowLevelShardedLrfuCachePolicy(
+      int minBufferSize, long maxSize, int numShards, Configuration conf) {
+    // Round up to a power of 2 so that the shard is a mask of the hash.
+    int shardCount = Integer.highestOneBit(Math.max(numShards, 1));
+    if (shardCount < numShards) {
+      shardCount <<= 1;
+    }
+    double lambda = Math.min(
+        1.0, HiveConf.getFloatVar(conf, HiveConf.ConfVars.LLAP_LRFU_LAMBDA) * shardCount);
+    shards = new LowLevelLrfuCachePolicy[shardCount];
+    shardMask = shardCount - 1;
+    String hostName = MetricsUtils.getHostName();
+    for (int i = 0; i < shardCount; ++i) {
+      shards[i] = new LowLevelLrfuCachePolicy(minBufferSize,
+          (maxSize + shardCount - 1) / shardCount, lambda,
+          "LowLevelLrfuCachePolicy-" + hostName + "-" + i, conf);
+    }
+    LlapIoImpl.LOG.info("Sharded LRFU cache policy with {} shards", shardCount);
+  }
+
+  @VisibleForTesting
+  LowLevelLrfuCachePolicy getShard(LlapCacheableBuffer buffer) {
+    return shards[getShardIndex(buffer)];
+  }
+
+  private int getShardIndex(LlapCacheableBuffer buffer) {
+    int hash = System.identityHashCode(buffer);
+    return (hash ^ (hash >>> 16)) & shardMask;
+  }
+
+  @VisibleForTesting
+  int getShardCount() {
+    return shards.length;
+  }
+
+  @Override
+  public void cache(LlapCacheableBuffer buffer, Priority priority) {
+    getShard(buffer).cache(buffer, priority);
+  }
+
+  @Override
+  public void notifyLock(LlapCacheableBuffer buffer) {
+    getShard(buffer).notifyLock(buffer);
+  }
+
+  @Override
+  public void notifyUnlock(LlapCacheableBuffer buffer) {
+    getShard(buffer).notifyUnlock(buffer);
+  }
+
+  @Override
+  public void notifyLockAll(List<? extends LlapCacheableBuffer> buffers) {
+    List<LlapCacheableBuffer>[] perShard = splitByShard(buffers);
+    for (int i = 0; i < perShard.length; ++i) {
+      if (perShard[i] != null) {
+        shards[i].notifyLockAll(perShard[i]);
+      }
+    }
+  }
+
+  @Override
+  public void notifyUnlockAll(List<? extends LlapCacheableBuffer> buffers) {
+    List<LlapCacheableBuffer>[] perShard = splitByShard(buffers);
+    for (int i = 0; i < perShard.length; ++i) {
+      if (perShard[i] != null) {
+        shards[i].notifyUnlockAll(perShard[i]);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<LlapCacheableBuffer>[] splitByShard(List<? extends LlapCacheableBuffer> buffers) {
+    List<LlapCacheableBuffer>[] perShard = new List[shards.length];
+    for (int i = 0; i < buffers.size(); ++i) {
+      LlapCacheableBuffer buffer = buffers.get(i);
+      int shardIx = getShardIndex(buffer);
+      if (perShard[shardIx] == null) {
+        perShard[shardIx] = new ArrayList<>();
+      }
+      perShard[shardIx].add(buffer);
+    }
+    return perShard;
+  }
+
+  @Override
+  public long evictSomeBlocks(long memoryToReserve) {
+    int start = nextEvictionShard.getAndIncrement();
+    CacheQuotas quotas = this.quotas;
+    long evicted = 0;
+    // The lists first, in all shards; see LowLevelLrfuCachePolicy.evictSomeBlocks.
+    if (quotas == null) {
+      for (int i = 0; i < shards.length && evicted < memoryToReserve; ++i) {
+        evicted += shards[(start + i) & shardMask].evictFromList(memoryToReserve - evicted);
+      }
+    } else {
+      for (int pass = 0; pass < 2; ++pass) {
+        for (int i = 0; i < shards.length && evicted < memoryToReserve; ++i) {
+          evicted += shards[(start + i) & shardMask].evictFromListWithQuotas(
+              memoryToReserve - evicted, pass == 0);
+        }
+      }
+    }
+    for (int i = 0; i < shards.length && evicted < memoryToReserve; ++i) {
+      evicted += shards[(start + i) & shardMask].evictFromHeap(memoryToReserve - evicted);
+    }
+    if (quotas != null) {
+      for (int i = 0; i < shards.length && evicted < memoryToReserve; ++i) {
+        evicted += shards[(start + i) & shardMask].evictFromList(memoryToReserve - evicted);
+      }
+    }
+    return evicted;
+  }
+
+  @Override
+  public void setQuotas(CacheQuotas quotas) {
+    this.quotas = quotas;
+    for (LowLevelLrfuCachePolicy shard : shards) {
+      shard.setQuotas(quotas);
+    }
+  }
+
+  @Override
+  public void setEvictionListener(EvictionListener listener) {
+    for (LowLevelLrfuCachePolicy shard : shards) {
+      shard.setEvictionListener(listener);
+    }
+  }
+
+  @Override
+  public long purge() {
+    long evicted = 0;
+    for (LowLevelLrfuCachePolicy shard : shards) {
+      evicted += shard.purge();
+    }
+    LlapIoImpl.LOG.info("PURGE: evicted {} from sharded LRFU policy",
+        LlapUtil.humanReadableByteCount(evicted));
+    return evicted;
+  }
+
+  @Override
+  public void debugDumpShort(StringBuilder sb) {
+    for (int i = 0; i < shards.length; ++i) {
+      sb.append("\nLRFU shard ").append(i).append(":");
+      shards[i].debugDumpShort(sb);
+    }
+  }
+}
@@ -24,6 +24,7 @@
 import org.apache.hadoop.hive.common.io.DataCache.DiskRangeListFactory;
 import org.apache.hadoop.hive.common.io.DiskRange;
 import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.apache.hadoop.hive.common.io.DiskRangeList.CreateHelper;
 import org.apache.hadoop.hive.common.io.encoded.MemoryBuffer;
 import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
@@ -83,6 +84,15 @@ public DiskRangeList getFileData(Object fileKey, DiskRangeList range, long baseO
     return range; // Nothing changes - no cache.
   }
 
+  @Override
+  public DiskRangeList getMissingRanges(Object fileKey, DiskRangeList range, long baseOffset) {
+    CreateHelper result = new CreateHelper();
+    for (DiskRangeList current = range; current != null; current = current.next) {
+      result.addOrMerge(current.getOffset(), current.getEnd(), true, false);
+    }
+    return result.get();
+  }
+
   @Override
   public long[] putFileData(Object fileKey, DiskRange[] ranges, MemoryBuffer[] chunks,
       long baseOffset, Priority priority, LowLevelCacheCounters qfCounters, String tag) {
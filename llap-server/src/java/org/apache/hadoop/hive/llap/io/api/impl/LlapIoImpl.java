@@ -44,15 +44,20 @@
 import org.apache.hadoop.hive.llap.cache.BuddyAllocator;
 import org.apache.hadoop.hive.llap.cache.BufferUsageManager;
 import org.apache.hadoop.hive.llap.cache.CacheContentsTracker;
+import org.apache.hadoop.hive.llap.cache.CacheQuotas;
+import org.apache.hadoop.hive.llap.cache.DecodedColumnCache;
 import org.apache.hadoop.hive.llap.cache.EvictionDispatcher;
 import org.apache.hadoop.hive.llap.cache.LlapDataBuffer;
 import org.apache.hadoop.hive.llap.cache.LlapIoDebugDump;
 import org.apache.hadoop.hive.llap.cache.LowLevelCache;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheAdmissionFilter;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheCheckpoint;
 import org.apache.hadoop.hive.llap.cache.LowLevelCacheImpl;
 import org.apache.hadoop.hive.llap.cache.LowLevelCacheMemoryManager;
 import org.apache.hadoop.hive.llap.cache.LowLevelCachePolicy;
 import org.apache.hadoop.hive.llap.cache.LowLevelFifoCachePolicy;
 import org.apache.hadoop.hive.llap.cache.LowLevelLrfuCachePolicy;
+import org.apache.hadoop.hive.llap.cache.LowLevelShardedLrfuCachePolicy;
 import org.apache.hadoop.hive.llap.cache.SerDeLowLevelCacheImpl;
 import org.apache.hadoop.hive.llap.cache.SimpleAllocator;
 import org.apache.hadoop.hive.llap.cache.SimpleBufferManager;
@@ -61,10 +66,13 @@
 import org.apache.hadoop.hive.llap.io.decode.ColumnVectorProducer;
 import org.apache.hadoop.hive.llap.io.decode.GenericColumnVectorProducer;
 import org.apache.hadoop.hive.llap.io.decode.OrcColumnVectorProducer;
+import org.apache.hadoop.hive.llap.io.encoded.DiskRangeReadAhead;
 import org.apache.hadoop.hive.llap.io.metadata.MetadataCache;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonIOMetrics;
+import org.apache.hadoop.hive.llap.metrics.LlapMetricsSystem;
 import org.apache.hadoop.hive.llap.metrics.MetricsUtils;
+import org.apache.hadoop.hive.ql.exec.tez.LlapSharedHashTableCache;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.ql.io.LlapCacheOnlyInputFormatInterface;
 import org.apache.hadoop.hive.ql.io.orc.encoded.IoTrace;
@@ -94,6 +102,7 @@ public class LlapIoImpl implements LlapIo<VectorizedRowBatch>, LlapIoDebugDump {
   // TODO: later, we may have a map
   private final ColumnVectorProducer orcCvp, genericCvp;
   private final ExecutorService executor;
+  private final DiskRangeReadAhead readAhead;
   private final LlapDaemonCacheMetrics cacheMetrics;
   private final LlapDaemonIOMetrics ioMetrics;
   private ObjectName buddyAllocatorMXBean;
@@ -136,6 +145,7 @@ private LlapIoImpl(Configuration conf) throws IOException {
 
     MetadataCache metadataCache = null;
     SerDeLowLevelCacheImpl serdeCache = null; // TODO: extract interface when needed
+    DecodedColumnCache decodedCache = null;
     BufferUsageManager bufferManagerOrc = null, bufferManagerGeneric = null;
     boolean isEncodeEnabled = useLowLevelCache
         && HiveConf.getBoolVar(conf, ConfVars.LLAP_IO_ENCODE_ENABLED);
@@ -144,8 +154,14 @@ private LlapIoImpl(Configuration conf) throws IOException {
       boolean useLrfu = HiveConf.getBoolVar(conf, HiveConf.ConfVars.LLAP_USE_LRFU);
       long totalMemorySize = HiveConf.getSizeVar(conf, ConfVars.LLAP_IO_MEMORY_MAX_SIZE);
       int minAllocSize = (int)HiveConf.getSizeVar(conf, ConfVars.LLAP_ALLOCATOR_MIN_ALLOC);
-      LowLevelCachePolicy realCachePolicy = useLrfu ? new LowLevelLrfuCachePolicy(
-          minAllocSize, totalMemorySize, conf) : new LowLevelFifoCachePolicy();
+      LowLevelCachePolicy realCachePolicy;
+      if (!useLrfu) {
+        realCachePolicy = new LowLevelFifoCachePolicy();
+      } else if (HiveConf.getIntVar(conf, ConfVars.LLAP_LRFU_SHARDS) > 1) {
+        realCachePolicy = new LowLevelShardedLrfuCachePolicy(minAllocSize, totalMemorySize, conf);
+      } else {
+        realCachePolicy = new LowLevelLrfuCachePolicy(minAllocSize, totalMemorySize, conf);
+      }
       boolean trackUsage = HiveConf.getBoolVar(conf, HiveConf.ConfVars.LLAP_TRACK_CACHE_USAGE);
       LowLevelCachePolicy cachePolicyWrapper;
       if (trackUsage) {
@@ -153,6 +169,18 @@ private LlapIoImpl(Configuration conf) throws IOException {
       } else {
         cachePolicyWrapper = realCachePolicy;
       }
+      String quotaSpec = HiveConf.getVar(conf, ConfVars.LLAP_IO_CACHE_QUOTAS);
+      if (!quotaSpec.trim().isEmpty()) {
+        if (!trackUsage || !useLrfu) {
+          LOG.warn("Ignoring {}; cache quotas require the LRFU policy and {}",
+              ConfVars.LLAP_IO_CACHE_QUOTAS.varname, ConfVars.LLAP_TRACK_CACHE_USAGE.varname);
+        } else {
+          CacheQuotas quotas = new CacheQuotas(quotaSpec, totalMemorySize, sessionId);
+          cachePolicyWrapper.setQuotas(quotas);
+          LlapMetricsSystem.instance().register(
+              "LlapDaemonCacheQuotas-" + MetricsUtils.getHostName(), null, quotas);
+        }
+      }
       // Allocator uses memory manager to request memory, so create the manager next.
       this.memoryManager = new LowLevelCacheMemoryManager(
           totalMemorySize, cachePolicyWrapper, cacheMetrics);
@@ -162,6 +190,10 @@ private LlapIoImpl(Configuration conf) throws IOException {
       this.allocator = allocator;
       LowLevelCacheImpl cacheImpl = new LowLevelCacheImpl(
           cacheMetrics, cachePolicyWrapper, allocator, true);
+      if (HiveConf.getBoolVar(conf, ConfVars.LLAP_IO_CACHE_ADMISSION_ENABLED)) {
+        cacheImpl.setAdmissionFilter(
+            new LowLevelCacheAdmissionFilter(conf, memoryManager, cacheMetrics));
+      }
       dataCache = cacheImpl;
       if (isEncodeEnabled) {
         SerDeLowLevelCacheImpl serdeCacheImpl = new SerDeLowLevelCacheImpl(
@@ -174,10 +206,20 @@ private LlapIoImpl(Configuration conf) throws IOException {
       metadataCache = new MetadataCache(
           allocator, memoryManager, cachePolicyWrapper, useGapCache, cacheMetrics);
       fileMetadataCache = metadataCache;
+      if (HiveConf.getSizeVar(conf, ConfVars.LLAP_IO_DECODED_CACHE_SIZE) > 0) {
+        decodedCache = new DecodedColumnCache(conf, memoryManager, cachePolicyWrapper);
+      }
       // And finally cache policy uses cache to notify it of eviction. The cycle is complete!
       EvictionDispatcher e = new EvictionDispatcher(
-          dataCache, serdeCache, metadataCache, allocator);
+          dataCache, serdeCache, metadataCache, decodedCache, allocator);
       cachePolicyWrapper.setEvictionListener(e);
+      if (allocator.getPersistentCacheDir() != null) {
+        try {
+          LowLevelCacheCheckpoint.restore(cacheImpl, allocator, memoryManager);
+        } catch (IOException ex) {
+          LOG.warn("Failed to restore the cache from the checkpoint", ex);
+        }
+      }
 
       cacheImpl.startThreads(); // Start the cache threads.
       bufferManager = bufferManagerOrc = cacheImpl; // Cache also serves as buffer manager.
@@ -193,6 +235,9 @@ private LlapIoImpl(Configuration conf) throws IOException {
       if (metadataCache != null) {
         debugDumpComponents.add(metadataCache);
       }
+      if (decodedCache != null) {
+        debugDumpComponents.add(decodedCache);
+      }
       debugDumpComponents.add(allocator);
     } else {
       this.allocator = new SimpleAllocator(conf);
@@ -213,10 +258,12 @@ public void debugDumpShort(StringBuilder sb) {
     executor = new StatsRecordingThreadPool(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
         new LinkedBlockingQueue<Runnable>(),
         new ThreadFactoryBuilder().setNameFormat("IO-Elevator-Thread-%d").setDaemon(true).build());
+    this.readAhead = HiveConf.getIntVar(conf, HiveConf.ConfVars.LLAP_IO_READ_AHEAD_THREADS) > 0
+        ? new DiskRangeReadAhead(conf, memoryManager) : null;
     FixedSizedObjectPool<IoTrace> tracePool = IoTrace.createTracePool(conf);
     // TODO: this should depends on input format and be in a map, or something.
-    this.orcCvp = new OrcColumnVectorProducer(
-        metadataCache, dataCache, bufferManagerOrc, conf, cacheMetrics, ioMetrics, tracePool);
+    this.orcCvp = new OrcColumnVectorProducer(metadataCache, dataCache, bufferManagerOrc,
+        readAhead, decodedCache, conf, cacheMetrics, ioMetrics, tracePool);
     this.genericCvp = isEncodeEnabled ? new GenericColumnVectorProducer(
         serdeCache, bufferManagerGeneric, conf, cacheMetrics, ioMetrics, tracePool) : null;
     LOG.info("LLAP IO initialized");
@@ -237,10 +284,12 @@ public String getMemoryInfo() {
 
   @Override
   public long purge() {
+    // Map join hash tables shared across queries are released along with the unlocked buffers.
+    long purged = LlapSharedHashTableCache.getInstance().purge();
     if (memoryManager != null) {
-      return memoryManager.purge();
+      purged += memoryManager.purge();
     }
-    return 0;
+    return purged;
   }
 
   @Override
@@ -264,6 +313,17 @@ public void close() {
       buddyAllocatorMXBean = null;
     }
     executor.shutdownNow();
+    if (readAhead != null) {
+      readAhead.shutdown();
+    }
+    if (dataCache instanceof LowLevelCacheImpl && allocator instanceof BuddyAllocator
+        && ((BuddyAllocator)allocator).getPersistentCacheDir() != null) {
+      try {
+        LowLevelCacheCheckpoint.save((LowLevelCacheImpl)dataCache, (BuddyAllocator)allocator);
+      } catch (IOException ex) {
+        LOG.warn("Failed to save a checkpoint of the cache", ex);
+      }
+    }
   }
 
 
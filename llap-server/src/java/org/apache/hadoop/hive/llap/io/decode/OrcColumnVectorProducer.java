@@ -28,10 +28,12 @@
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
 import org.apache.hadoop.hive.llap.cache.BufferUsageManager;
+import org.apache.hadoop.hive.llap.cache.DecodedColumnCache;
 import org.apache.hadoop.hive.llap.cache.LowLevelCache;
 import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
 import org.apache.hadoop.hive.llap.io.api.impl.ColumnVectorBatch;
 import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.llap.io.encoded.DiskRangeReadAhead;
 import org.apache.hadoop.hive.llap.io.encoded.OrcEncodedDataReader;
 import org.apache.hadoop.hive.llap.io.metadata.MetadataCache;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
@@ -55,6 +57,8 @@ public class OrcColumnVectorProducer implements ColumnVectorProducer {
   private final MetadataCache metadataCache;
   private final LowLevelCache lowLevelCache;
   private final BufferUsageManager bufferManager;
+  private final DiskRangeReadAhead readAhead;
+  private final DecodedColumnCache decodedCache;
   private final Configuration conf;
   private boolean _skipCorrupt; // TODO: get rid of this
   private LlapDaemonCacheMetrics cacheMetrics;
@@ -64,14 +68,16 @@ public class OrcColumnVectorProducer implements ColumnVectorProducer {
   private final FixedSizedObjectPool<IoTrace> tracePool;
 
   public OrcColumnVectorProducer(MetadataCache metadataCache,
-      LowLevelCache lowLevelCache, BufferUsageManager bufferManager,
-      Configuration conf, LlapDaemonCacheMetrics cacheMetrics, LlapDaemonIOMetrics ioMetrics,
-      FixedSizedObjectPool<IoTrace> tracePool) {
+      LowLevelCache lowLevelCache, BufferUsageManager bufferManager, DiskRangeReadAhead readAhead,
+      DecodedColumnCache decodedCache, Configuration conf, LlapDaemonCacheMetrics cacheMetrics,
+      LlapDaemonIOMetrics ioMetrics, FixedSizedObjectPool<IoTrace> tracePool) {
     LlapIoImpl.LOG.info("Initializing ORC column vector producer");
 
     this.metadataCache = metadataCache;
     this.lowLevelCache = lowLevelCache;
     this.bufferManager = bufferManager;
+    this.readAhead = readAhead;
+    this.decodedCache = decodedCache;
     this.conf = conf;
     this._skipCorrupt = OrcConf.SKIP_CORRUPT_DATA.getBoolean(conf);
     this.cacheMetrics = cacheMetrics;
@@ -92,8 +98,9 @@ public ReadPipeline createReadPipeline(
     cacheMetrics.incrCacheReadRequests();
     OrcEncodedDataConsumer edc = new OrcEncodedDataConsumer(
         consumer, includes, _skipCorrupt, counters, ioMetrics);
+    edc.setDecodedCache(decodedCache);
     OrcEncodedDataReader reader = new OrcEncodedDataReader(lowLevelCache, bufferManager,
-        metadataCache, conf, job, split, includes, sarg, edc, counters, sef, tracePool);
+        readAhead, metadataCache, conf, job, split, includes, sarg, edc, counters, sef, tracePool);
     edc.init(reader, reader, reader.getTrace());
     return edc;
   }
@@ -23,6 +23,7 @@
 
 import org.apache.hadoop.hive.common.io.encoded.EncodedColumnBatch;
 import org.apache.hadoop.hive.llap.ConsumerFeedback;
+import org.apache.hadoop.hive.llap.cache.DecodedColumnCache;
 import org.apache.hadoop.hive.llap.counters.LlapIOCounters;
 import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
 import org.apache.hadoop.hive.llap.io.api.impl.ColumnVectorBatch;
@@ -74,6 +75,7 @@
   private final Includes includes;
   private TypeDescription[] batchSchemas;
   private boolean useDecimal64ColumnVectors;
+  private DecodedColumnCache decodedCache;
 
   public OrcEncodedDataConsumer(
     Consumer<ColumnVectorBatch> consumer, Includes includes, boolean skipCorrupt,
@@ -88,6 +90,10 @@ public void setUseDecimal64ColumnVectors(final boolean useDecimal64ColumnVectors
     this.useDecimal64ColumnVectors = useDecimal64ColumnVectors;
   }
 
+  public void setDecodedCache(DecodedColumnCache decodedCache) {
+    this.decodedCache = decodedCache;
+  }
+
   public void setFileMetadata(ConsumerFileMetadata f) {
     assert fileMetadata == null;
     fileMetadata = f;
@@ -142,6 +148,20 @@ protected void decodeBatch(OrcEncodedColumnBatch batch,
       }
       previousStripeIndex = currentStripeIndex;
 
+      // The decoded vectors of the columns that are cached, and of the ones that will be cached.
+      DecodedColumnCache.Key[] decodedKeys = null;
+      ColumnVector[][] cachedVectors = null, vectorsToCache = null;
+      if (decodedCache != null && rgIdx != OrcEncodedColumnBatch.ALL_RGS && !noIndex
+          && stripeMetadata.supportsRowIndexes() && !evolution.hasConversion()) {
+        int batchCount = (int) ((nonNullRowCount + VectorizedRowBatch.DEFAULT_SIZE - 1)
+            / VectorizedRowBatch.DEFAULT_SIZE);
+        decodedKeys = new DecodedColumnCache.Key[columnReaders.length];
+        cachedVectors = new ColumnVector[columnReaders.length][];
+        vectorsToCache = new ColumnVector[columnReaders.length][];
+        getDecodedVectors(batch.getBatchKey(), batchCount,
+            decodedKeys, cachedVectors, vectorsToCache);
+      }
+
       for (int i = 0; i < maxBatchesRG; i++) {
         // for last batch in row group, adjust the batch size
         if (i == maxBatchesRG - 1) {
@@ -199,13 +219,28 @@ protected void decodeBatch(OrcEncodedColumnBatch batch,
           ColumnVector cv = cvb.cols[idx];
           cv.reset();
           cv.ensureSize(batchSize, false);
+          if (cachedVectors != null && cachedVectors[idx] != null) {
+            // The reader is not used for this row group; it is repositioned for the next one.
+            DecodedColumnCache.copyTo(cachedVectors[idx][i], cv, batchSize);
+            continue;
+          }
           reader.nextVector(cv, null, batchSize);
+          if (vectorsToCache != null && vectorsToCache[idx] != null) {
+            vectorsToCache[idx][i] = DecodedColumnCache.copyOf(cv, batchSize);
+          }
         }
 
         // we are done reading a batch, send it to consumer for processing
         downstreamConsumer.consumeData(cvb);
         counters.incrCounter(LlapIOCounters.ROWS_EMITTED, batchSize);
       }
+      if (vectorsToCache != null) {
+        for (int idx = 0; idx < vectorsToCache.length; ++idx) {
+          if (vectorsToCache[idx] != null) {
+            decodedCache.put(decodedKeys[idx], vectorsToCache[idx]);
+          }
+        }
+      }
       LlapIoImpl.ORC_LOGGER.debug("Done with decode");
       counters.incrWallClockCounter(LlapIOCounters.DECODE_TIME_NS, startTime);
       counters.incrCounter(LlapIOCounters.NUM_VECTOR_BATCHES, maxBatchesRG);
@@ -216,6 +251,47 @@ protected void decodeBatch(OrcEncodedColumnBatch batch,
     }
   }
 
+  private void getDecodedVectors(OrcBatchKey batchKey, int batchCount,
+      DecodedColumnCache.Key[] keys, ColumnVector[][] cachedVectors,
+      ColumnVector[][] vectorsToCache) {
+    if (batchCount == 0 || batchKey.fileKey == null) return;
+    for (int idx = 0; idx < columnReaders.length; ++idx) {
+      TypeDescription type = batchSchemas[idx];
+      if (!isDecodedCacheSupported(type)) continue;
+      keys[idx] = new DecodedColumnCache.Key(
+          batchKey.fileKey, batchKey.stripeIx, batchKey.rgIx, type.getId(), type.toString());
+      ColumnVector[] vectors = decodedCache.get(keys[idx]);
+      if (vectors != null && vectors.length == batchCount) {
+        cachedVectors[idx] = vectors;
+        counters.incrCounter(LlapIOCounters.DECODED_CACHE_HITS);
+      } else if (decodedCache.shouldCache(keys[idx])) {
+        vectorsToCache[idx] = new ColumnVector[batchCount];
+      }
+    }
+  }
+
+  private static boolean isDecodedCacheSupported(TypeDescription type) {
+    // The types that are read into the basic vectors, with no state other than the values.
+    switch (type.getCategory()) {
+      case BOOLEAN:
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case DATE:
+      case FLOAT:
+      case DOUBLE:
+      case BINARY:
+      case STRING:
+      case CHAR:
+      case VARCHAR:
+      case TIMESTAMP:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   private void createColumnReaders(OrcEncodedColumnBatch batch,
       ConsumerStripeMetadata stripeMetadata, TypeDescription fileSchema) throws IOException {
     TreeReaderFactory.Context context = new TreeReaderFactory.ReaderContext()
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.io.encoded;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.apache.orc.impl.BufferChunk;
+
+/**
+ * Coalesces the disk ranges that are close to each other into one range before they are read,
+ * and splits the data back into the original ranges after the read. Each read on an object store
+ * is a round trip, so it is often cheaper to read the small gaps between the ranges for nothing.
+ */
+final class DiskRangeCoalescer {
+  // The readers read each range into a single array.
+  private static final long MAX_COALESCED_LENGTH = Integer.MAX_VALUE;
+
+  private final List<CoalescedRange> coalesced = new ArrayList<>();
+
+  private static final class CoalescedRange extends DiskRangeList {
+    // The offset and the end of each original range.
+    private final long[] parts;
+
+    private CoalescedRange(long offset, long end, long[] parts) {
+      super(offset, end);
+      this.parts = parts;
+    }
+
+    @Override
+    public String toString() {
+      return "coalesced range start: " + offset + " end: " + end + " (" + (parts.length / 2)
+          + " ranges)";
+    }
+  }
+
+  /**
+   * Replaces the runs of ranges that have no data, and are at most maxGap bytes apart, with
+   * single ranges.
+   * @param head The first range; the list must have a fixed element before it, such as
+   *             DiskRangeList.MutateHelper, because the first range can be replaced.
+   * @return The coalescer to split the data with after the read, or null if nothing was
+   *         coalesced.
+   */
+  static DiskRangeCoalescer coalesce(DiskRangeList head, long maxGap) {
+    assert head.prev != null;
+    DiskRangeCoalescer result = null;
+    DiskRangeList current = head;
+    while (current != null) {
+      DiskRangeList last = current;
+      int count = 1;
+      if (!current.hasData()) {
+        while (last.next != null && !last.next.hasData()
+            && last.next.getOffset() - last.getEnd() <= maxGap
+            && last.next.getEnd() - current.getOffset() <= MAX_COALESCED_LENGTH) {
+          last = last.next;
+          ++count;
+        }
+      }
+      if (count == 1) {
+        current = current.next;
+        continue;
+      }
+      long[] parts = new long[count * 2];
+      DiskRangeList part = current;
+      for (int i = 0; i < count; ++i) {
+        parts[i * 2] = part.getOffset();
+        parts[i * 2 + 1] = part.getEnd();
+        part = part.next;
+      }
+      for (int i = 1; i < count; ++i) {
+        current.removeAfter();
+      }
+      CoalescedRange range = new CoalescedRange(parts[0], parts[parts.length - 1], parts);
+      current.replaceSelfWith(range);
+      if (result == null) {
+        result = new DiskRangeCoalescer();
+      }
+      result.coalesced.add(range);
+      current = range.next;
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the data read for the coalesced ranges with the slices for the original ranges.
+   * @param head The first range, after the read.
+   * @return The number of bytes that were read in the gaps between the original ranges.
+   */
+  long split(DiskRangeList head) throws IOException {
+    long wasted = 0;
+    int ix = 0;
+    DiskRangeList current = head;
+    while (current != null && ix < coalesced.size()) {
+      CoalescedRange range = coalesced.get(ix);
+      if (current.getOffset() != range.getOffset()) {
+        current = current.next;
+        continue;
+      }
+      if (!current.hasData() || current.getEnd() != range.getEnd()) {
+        throw new IOException("Expected the data for " + range + ", but got " + current);
+      }
+      ByteBuffer data = current.getData();
+      long[] parts = range.parts;
+      DiskRangeList last = null;
+      for (int i = 0; i < parts.length; i += 2) {
+        ByteBuffer slice = data.duplicate();
+        slice.position(data.position() + (int) (parts[i] - range.getOffset()));
+        slice.limit(slice.position() + (int) (parts[i + 1] - parts[i]));
+        BufferChunk chunk = new BufferChunk(slice.slice(), parts[i]);
+        last = (last == null) ? current.replaceSelfWith(chunk) : last.insertAfter(chunk);
+        wasted -= parts[i + 1] - parts[i];
+      }
+      wasted += range.getLength();
+      current = last.next;
+      ++ix;
+    }
+    if (ix != coalesced.size()) {
+      throw new IOException("Cannot find the data for " + coalesced.get(ix));
+    }
+    return wasted;
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.io.encoded;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheMemoryManager;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.orc.impl.BufferChunk;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads disk ranges ahead of time on a separate thread pool, so that the IO thread can decode
+ * one stripe while the next one is being read. The data that has been read ahead, and not yet
+ * used, is limited per query, so that a query that reads many files at once cannot fill up the
+ * daemon memory. The direct buffers are also reserved against the LLAP IO memory manager, if any,
+ * because they count towards the same off-heap memory as the cache.
+ */
+public class DiskRangeReadAhead {
+  // The size of the array used to read into direct buffers from a stream without ByteBuffer reads.
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  private final ExecutorService executor;
+  private final long maxQueryBytes;
+  // The memory manager of the cache, to reserve the direct buffers against; null if no cache.
+  private final LowLevelCacheMemoryManager memoryManager;
+  // Query ID => the number of bytes being read ahead for the query.
+  private final ConcurrentHashMap<String, Long> queryBytes = new ConcurrentHashMap<>();
+
+  public DiskRangeReadAhead(Configuration conf, LowLevelCacheMemoryManager memoryManager) {
+    this(HiveConf.getIntVar(conf, ConfVars.LLAP_IO_READ_AHEAD_THREADS),
+        HiveConf.getSizeVar(conf, ConfVars.LLAP_IO_READ_AHEAD_MAX_QUERY_BYTES), memoryManager);
+  }
+
+  @VisibleForTesting
+  DiskRangeReadAhead(int threadCount, long maxQueryBytes,
+      LowLevelCacheMemoryManager memoryManager) {
+    this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+        .setNameFormat("IO-Read-Ahead-Thread-%d").setDaemon(true).build());
+    this.maxQueryBytes = maxQueryBytes;
+    this.memoryManager = memoryManager;
+    LlapIoImpl.LOG.info("Reading ahead with {} threads, up to {} bytes per query",
+        threadCount, maxQueryBytes);
+  }
+
+  /**
+   * Starts reading the ranges, unless the query already has too much data being read ahead.
+   * @param queryId The query to count the data for.
+   * @param ranges The ranges to read; all the ranges must have no data.
+   * @param baseOffset The offset to add to the ranges to get the file offsets.
+   * @param streamSupplier Opens a new stream to read from. The read owns the stream and closes it
+   *                       when it ends; a read that is cancelled before it starts does not open it.
+   * @param ugi The user to read as.
+   * @param isDirect Whether to read into direct buffers.
+   * @return The pending read, or null if the ranges are not read ahead.
+   */
+  public Request readAhead(String queryId, DiskRangeList ranges, long baseOffset,
+      Utilities.SupplierWithCheckedException<FSDataInputStream, IOException> streamSupplier,
+      UserGroupInformation ugi, boolean isDirect) {
+    int count = 0;
+    long totalBytes = 0;
+    for (DiskRangeList current = ranges; current != null; current = current.next) {
+      assert !current.hasData();
+      ++count;
+      totalBytes += current.getLength();
+    }
+    if (count == 0 || !reserve(queryId, totalBytes)) return null;
+    // The data may never be used, so only read ahead into the free memory; don't evict anything.
+    boolean isCharged = isDirect && memoryManager != null;
+    if (isCharged && !memoryManager.reserveFreeMemory(totalBytes)) {
+      release(queryId, totalBytes);
+      return null;
+    }
+    long[] offsets = new long[count], ends = new long[count];
+    int ix = 0;
+    for (DiskRangeList current = ranges; current != null; current = current.next, ++ix) {
+      offsets[ix] = current.getOffset();
+      ends[ix] = current.getEnd();
+    }
+    Request request = new Request(queryId, baseOffset, offsets, ends, totalBytes, isCharged);
+    try {
+      request.future = executor.submit(() -> {
+        if (!request.isStarted.compareAndSet(false, true)) return null;
+        try {
+          return ugi.doAs((PrivilegedExceptionAction<ByteBuffer[]>) () -> {
+            try (FSDataInputStream stream = streamSupplier.get()) {
+              return readRanges(stream, baseOffset, offsets, ends, isDirect);
+            }
+          });
+        } finally {
+          request.unref();
+        }
+      });
+    } catch (RuntimeException ex) {
+      request.release();
+      LlapIoImpl.LOG.warn("Cannot read ahead", ex);
+      return null;
+    }
+    return request;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @VisibleForTesting
+  long getQueryBytes(String queryId) {
+    Long bytes = queryBytes.get(queryId);
+    return bytes == null ? 0 : bytes;
+  }
+
+  private boolean reserve(String queryId, long bytes) {
+    boolean[] isReserved = new boolean[1];
+    queryBytes.compute(queryId, (key, value) -> {
+      long current = (value == null) ? 0 : value;
+      isReserved[0] = current + bytes <= maxQueryBytes;
+      return isReserved[0] ? current + bytes : value;
+    });
+    return isReserved[0];
+  }
+
+  private void release(String queryId, long bytes) {
+    queryBytes.computeIfPresent(queryId, (key, value) -> {
+      long remaining = value - bytes;
+      return remaining <= 0 ? null : remaining;
+    });
+  }
+
+  private static ByteBuffer[] readRanges(FSDataInputStream stream, long baseOffset,
+      long[] offsets, long[] ends, boolean isDirect) throws IOException {
+    ByteBuffer[] result = new ByteBuffer[offsets.length];
+    byte[] copyBuffer = null;
+    for (int i = 0; i < offsets.length; ++i) {
+      int len = (int) (ends[i] - offsets[i]);
+      long position = baseOffset + offsets[i];
+      if (!isDirect) {
+        byte[] buffer = new byte[len];
+        stream.readFully(position, buffer, 0, len);
+        result[i] = ByteBuffer.wrap(buffer);
+        continue;
+      }
+      ByteBuffer buffer = ByteBuffer.allocateDirect(len);
+      if (!readFullyDirect(stream, position, buffer)) {
+        // Positioned reads only take arrays; go through a small array rather than a whole copy.
+        buffer.clear();
+        if (copyBuffer == null) {
+          copyBuffer = new byte[Math.min(len, COPY_BUFFER_SIZE)];
+        }
+        while (buffer.hasRemaining()) {
+          int toRead = Math.min(buffer.remaining(), copyBuffer.length);
+          stream.readFully(position, copyBuffer, 0, toRead);
+          buffer.put(copyBuffer, 0, toRead);
+          position += toRead;
+        }
+      }
+      buffer.flip();
+      result[i] = buffer;
+    }
+    return result;
+  }
+
+  /**
+   * Reads straight into a direct buffer, if the stream supports ByteBuffer reads.
+   * @return Whether the data has been read.
+   */
+  private static boolean readFullyDirect(FSDataInputStream stream, long position,
+      ByteBuffer buffer) throws IOException {
+    stream.seek(position);
+    while (buffer.hasRemaining()) {
+      int read;
+      try {
+        read = stream.read(buffer);
+      } catch (UnsupportedOperationException ex) {
+        return false;
+      }
+      if (read < 0) {
+        throw new IOException("End of file at " + stream.getPos() + "; "
+            + buffer.remaining() + " bytes left to read");
+      }
+    }
+    return true;
+  }
+
+  /** The data for a set of ranges, being read ahead. */
+  public final class Request {
+    private final String queryId;
+    private final long baseOffset, totalBytes;
+    private final long[] offsets, ends;
+    // Whether the bytes are reserved against the memory manager.
+    private final boolean isCharged;
+    // Set by the read task when it starts, or by finish() to skip a read that has not started.
+    private final AtomicBoolean isStarted = new AtomicBoolean(false);
+    // The reservation for a started read is released when both the read task and the owner
+    // are done with the data.
+    private final AtomicInteger refCount = new AtomicInteger(2);
+    private Future<ByteBuffer[]> future;
+    private long usedBytes = 0;
+    private boolean isFinished = false;
+
+    private Request(String queryId, long baseOffset, long[] offsets, long[] ends,
+        long totalBytes, boolean isCharged) {
+      this.queryId = queryId;
+      this.isCharged = isCharged;
+      this.baseOffset = baseOffset;
+      this.offsets = offsets;
+      this.ends = ends;
+      this.totalBytes = totalBytes;
+    }
+
+    public long getBaseOffset() {
+      return baseOffset;
+    }
+
+    /**
+     * Gives the data that has been read ahead to the ranges without data that are within the
+     * ranges read ahead. Waits for the read if needed; if the read has failed, the ranges are
+     * left as they are, to be read as usual.
+     * @param head The first range; the list must have a fixed element before it, such as
+     *             DiskRangeList.MutateHelper, because the first range can be replaced.
+     * @return The number of bytes given to the ranges.
+     */
+    public long fill(DiskRangeList head) {
+      assert head.prev != null;
+      ByteBuffer[] data = null;
+      long filled = 0;
+      for (DiskRangeList current = head; current != null; current = current.next) {
+        if (current.hasData()) continue;
+        int ix = findContainingRange(current.getOffset(), current.getEnd());
+        if (ix < 0) continue;
+        if (data == null) {
+          data = waitForData();
+          if (data == null) break;
+        }
+        ByteBuffer slice = data[ix].duplicate();
+        slice.position((int) (current.getOffset() - offsets[ix]));
+        slice.limit(slice.position() + (int) current.getLength());
+        current = current.replaceSelfWith(new BufferChunk(slice.slice(), current.getOffset()));
+        filled += current.getLength();
+      }
+      usedBytes += filled;
+      return filled;
+    }
+
+    /**
+     * Releases the data. A read that has not started yet is cancelled; a read that has already
+     * started is not interrupted, so that it closes its stream, and its result is discarded.
+     * The bytes stay reserved for the query until the running read ends.
+     * @return The number of bytes that were read ahead and not used.
+     */
+    public long finish() {
+      if (isFinished) return 0;
+      isFinished = true;
+      if (isStarted.compareAndSet(false, true)) {
+        future.cancel(false);
+        release();
+        return 0;
+      }
+      boolean isDone = future.isDone();
+      unref();
+      if (!isDone) return 0;
+      try {
+        future.get();
+        return Math.max(0, totalBytes - usedBytes);
+      } catch (InterruptedException | ExecutionException | CancellationException ex) {
+        return 0;
+      }
+    }
+
+    private void unref() {
+      if (refCount.decrementAndGet() == 0) {
+        release();
+      }
+    }
+
+    private void release() {
+      DiskRangeReadAhead.this.release(queryId, totalBytes);
+      if (isCharged) {
+        memoryManager.releaseMemory(totalBytes);
+      }
+    }
+
+    private int findContainingRange(long offset, long end) {
+      for (int i = 0; i < offsets.length; ++i) {
+        if (offsets[i] <= offset && end <= ends[i]) return i;
+      }
+      return -1;
+    }
+
+    private ByteBuffer[] waitForData() {
+      try {
+        return future.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return null;
+      } catch (ExecutionException | CancellationException ex) {
+        LlapIoImpl.LOG.warn("Read ahead at " + baseOffset + " has failed; reading as usual", ex);
+        return null;
+      }
+    }
+  }
+}
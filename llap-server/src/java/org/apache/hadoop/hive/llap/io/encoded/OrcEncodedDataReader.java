@@ -35,6 +35,8 @@
 import org.apache.hadoop.hive.common.io.DataCache;
 import org.apache.hadoop.hive.common.io.DiskRange;
 import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.apache.hadoop.hive.common.io.DiskRangeList.CreateHelper;
+import org.apache.hadoop.hive.common.io.DiskRangeList.MutateHelper;
 import org.apache.hadoop.hive.common.io.encoded.EncodedColumnBatch.ColumnStreamData;
 import org.apache.hadoop.hive.common.io.encoded.MemoryBuffer;
 import org.apache.hadoop.hive.conf.HiveConf;
@@ -55,6 +57,7 @@
 import org.apache.hadoop.hive.llap.io.metadata.MetadataCache;
 import org.apache.hadoop.hive.llap.io.metadata.MetadataCache.LlapBufferOrBuffers;
 import org.apache.hadoop.hive.llap.io.metadata.OrcFileMetadata;
+import org.apache.hadoop.hive.llap.io.metadata.OrcRowGroupStats;
 import org.apache.hadoop.hive.llap.io.metadata.OrcStripeMetadata;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.io.HdfsUtils;
@@ -94,6 +97,7 @@
 import org.apache.orc.impl.ReaderImpl;
 import org.apache.orc.impl.RecordReaderUtils;
 import org.apache.orc.impl.SchemaEvolution;
+import org.apache.orc.impl.StreamName;
 import org.apache.orc.impl.WriterImpl;
 import org.apache.tez.common.CallableWithNdc;
 import org.apache.tez.common.counters.TezCounters;
@@ -156,6 +160,12 @@ public Pool<OrcEncodedColumnBatch> createEncodedColumnBatchPool() {
   private final UserGroupInformation ugi;
   private final SchemaEvolution evolution;
   private final boolean useCodecPool, useObjectPools;
+  // Whether the query asked for the data it reads not to be cached.
+  private final boolean isNoCache;
+  private final DiskRangeReadAhead readAhead;
+  private final long coalesceGap;
+  private final String queryId;
+  private final boolean useRgStatsCache;
 
   // Read state.
   private int stripeIxFrom;
@@ -176,6 +186,12 @@ public Pool<OrcEncodedColumnBatch> createEncodedColumnBatchPool() {
    * Contains only stripes that are read, and only columns included. null => read all RGs.
    */
   private boolean[][] stripeRgs;
+  /**
+   * The rg-s picked by SARG based on the cached row group statistics, for the stripes where all
+   * the statistics were cached; for those stripes, isStatsStripeRgs is set. null => no cache.
+   */
+  private boolean[][] statsStripeRgs;
+  private boolean[] isStatsStripeRgs;
   private AtomicBoolean isStopped = new AtomicBoolean(false);
   @SuppressWarnings("unused")
   private volatile boolean isPaused = false;
@@ -184,8 +200,11 @@ public Pool<OrcEncodedColumnBatch> createEncodedColumnBatchPool() {
   private final IoTrace trace;
   private Pool<IoTrace> tracePool;
 
+  // The data being read ahead for the current and the next stripe, if any.
+  private DiskRangeReadAhead.Request currentReadAhead, nextReadAhead;
+
   public OrcEncodedDataReader(LowLevelCache lowLevelCache, BufferUsageManager bufferManager,
-      MetadataCache metadataCache, Configuration daemonConf, Configuration jobConf,
+      DiskRangeReadAhead readAhead, MetadataCache metadataCache, Configuration daemonConf, Configuration jobConf,
       FileSplit split, Includes includes, SearchArgument sarg, OrcEncodedDataConsumer consumer,
       QueryFragmentCounters counters, SchemaEvolutionFactory sef, Pool<IoTrace> tracePool)
           throws IOException {
@@ -234,6 +253,14 @@ public OrcEncodedDataReader(LowLevelCache lowLevelCache, BufferUsageManager buff
       jobConf.setBoolean(OrcConf.USE_ZEROCOPY.getAttribute(), useZeroCopy);
     }
     this.jobConf = jobConf;
+    this.isNoCache = HiveConf.getBoolVar(jobConf, ConfVars.LLAP_IO_NO_CACHE);
+    // Zero-copy reads return the buffers of the file, that we cannot read ahead or split.
+    this.readAhead = useZeroCopy ? null : readAhead;
+    this.coalesceGap = useZeroCopy ? 0
+        : HiveConf.getSizeVar(jobConf, ConfVars.LLAP_IO_READ_COALESCE_GAP);
+    this.queryId = HiveConf.getVar(jobConf, ConfVars.HIVEQUERYID);
+    this.useRgStatsCache = HiveConf.getBoolVar(
+        daemonConf, ConfVars.LLAP_CACHE_ENABLE_ORC_RG_STATS_CACHE);
     // TODO: setFileMetadata could just create schema. Called in two places; clean up later.
     this.evolution = sef.createSchemaEvolution(fileMetadata.getSchema());
     consumer.setUseDecimal64ColumnVectors(HiveConf.getVar(jobConf,
@@ -320,7 +347,7 @@ protected Void performDataRead() throws IOException, InterruptedException {
         }
 
         // If SARG is present, get relevant stripe metadata from cache or readers.
-        stripeMetadatas = readStripesMetadata(fileIncludes, sargColumns);
+        stripeMetadatas = readStripesMetadata(fileIncludes, sargColumns, filterColumns, stride);
       }
 
       // Now, apply SARG if any; w/o sarg, this will just initialize stripeRgs.
@@ -402,6 +429,7 @@ protected Void performDataRead() throws IOException, InterruptedException {
       // 5.2. Finally, hand off to the stripe reader to produce the data.
       //      This is a sync call that will feed data to the consumer.
       try {
+        startReadAhead(stripeIxMod + 1, stripeMetadatas);
         // TODO: readEncodedColumns is not supposed to throw; errors should be propagated thru
         // consumer. It is potentially holding locked buffers, and must perform its own cleanup.
         // Also, currently readEncodedColumns is not stoppable. The consumer will discard the
@@ -413,6 +441,9 @@ protected Void performDataRead() throws IOException, InterruptedException {
         handleReaderError(startTime, t);
         return null;
       }
+      finishReadAhead(currentReadAhead);
+      currentReadAhead = nextReadAhead;
+      nextReadAhead = null;
     }
 
     // Done with all the things.
@@ -451,6 +482,62 @@ private void ensureDataReader() throws IOException {
     stripeReader.setStopped(isStopped);
   }
 
+  /**
+   * Starts reading the data of the next stripe that is not in cache, while the current stripe is
+   * being read and decoded. Only the stripes that are read in full are read ahead; the reads
+   * for the stripes filtered by row groups depend on the row index.
+   */
+  private void startReadAhead(int stripeIxMod, List<OrcStripeMetadata> stripeMetadatas) {
+    if (readAhead == null || fileKey == null || metadataCache == null
+        || stripeIxMod >= stripeRgs.length || stripeRgs[stripeIxMod] != null) {
+      return;
+    }
+    int stripeIx = stripeIxFrom + stripeIxMod;
+    try {
+      StripeInformation si = fileMetadata.getStripes().get(stripeIx);
+      List<OrcProto.Stream> streams = (stripeMetadatas != null)
+          ? stripeMetadatas.get(stripeIxMod).getStreams()
+          : getStripeFooterFromCacheOrDisk(si, new OrcBatchKey(fileKey, stripeIx, 0))
+              .getStreamsList();
+      CreateHelper ranges = new CreateHelper();
+      long offset = 0;
+      for (OrcProto.Stream stream : streams) {
+        long length = stream.getLength();
+        if (length > 0 && fileIncludes[stream.getColumn()]
+            && StreamName.getArea(stream.getKind()) == StreamName.Area.DATA) {
+          ranges.addOrMerge(offset, offset + length, true, false);
+        }
+        offset += length;
+      }
+      if (ranges.get() == null) return;
+      DiskRangeList missing = lowLevelCache.getMissingRanges(fileKey, ranges.get(), si.getOffset());
+      if (missing == null) return;
+      for (DiskRangeList current = missing; current.next != null; ) {
+        if (current.next.getOffset() - current.getEnd() > coalesceGap) {
+          current = current.next;
+          continue;
+        }
+        long end = current.next.getEnd();
+        current.removeAfter();
+        current.setEnd(end);
+      }
+      ensureOrcReader();
+      nextReadAhead = readAhead.readAhead(queryId, missing, si.getOffset(),
+          () -> fsSupplier.get().open(path), ugi, bufferManager.getAllocator().isDirectAlloc());
+      if (nextReadAhead == null) {
+        LlapIoImpl.LOG.debug("Not reading ahead stripe {}; over the limit for query {}",
+            stripeIx, queryId);
+      }
+    } catch (IOException ex) {
+      LOG.warn("Cannot read ahead stripe " + stripeIx + " of " + split.getPath(), ex);
+    }
+  }
+
+  private void finishReadAhead(DiskRangeReadAhead.Request request) {
+    if (request == null) return;
+    counters.incrCounter(LlapIOCounters.READ_AHEAD_WASTED_BYTES, request.finish());
+  }
+
   private void recordReaderTime(long startTime) {
     counters.incrWallClockCounter(LlapIOCounters.TOTAL_IO_TIME_NS, startTime);
   }
@@ -491,6 +578,9 @@ private static Object determineFileId(Utilities.SupplierWithCheckedException<Fil
    * Closes the stripe readers (on error).
    */
   private void cleanupReaders() {
+    finishReadAhead(currentReadAhead);
+    finishReadAhead(nextReadAhead);
+    currentReadAhead = nextReadAhead = null;
     if (stripeReader != null) {
       try {
         stripeReader.close();
@@ -613,17 +703,39 @@ private OrcProto.StripeFooter buildStripeFooter(
   }
 
   /**
-   * Reads the metadata for all stripes in the file.
+   * Reads the metadata for all stripes in the file. If the row group statistics for the SARG
+   * columns are cached, applies SARG based on them; the stripes where SARG eliminates all the
+   * row groups are skipped, and their metadata in the result is null.
    */
-  private ArrayList<OrcStripeMetadata> readStripesMetadata(
-      boolean[] includes, boolean[] sargColumns) throws IOException {
+  private ArrayList<OrcStripeMetadata> readStripesMetadata(boolean[] includes,
+      boolean[] sargColumns, int[] filterColumns, int rowIndexStride) throws IOException {
     ArrayList<OrcStripeMetadata> result = new ArrayList<OrcStripeMetadata>(stripeRgs.length);
     boolean hasFileId = this.fileKey != null;
     OrcBatchKey stripeKey = hasFileId ? new OrcBatchKey(fileKey, 0, 0) : null;
+    OrcRowGroupStatsSargApplier statsSargApp = null;
+    if (useRgStatsCache && hasFileId && metadataCache != null) {
+      statsSargApp = new OrcRowGroupStatsSargApplier(
+          sarg, filterColumns, rowIndexStride, evolution);
+      statsStripeRgs = new boolean[stripeRgs.length][];
+      isStatsStripeRgs = new boolean[stripeRgs.length];
+    }
     for (int stripeIxMod = 0; stripeIxMod < stripeRgs.length; ++stripeIxMod) {
       int stripeIx = stripeIxMod + stripeIxFrom;
       stripeKey.stripeIx = stripeIx;
       StripeInformation si = fileMetadata.getStripes().get(stripeIx);
+      if (statsSargApp != null) {
+        OrcRowGroupStats[] stats = getRowGroupStatsFromCache(
+            stripeKey, filterColumns, getRgCount(si, rowIndexStride));
+        if (stats != null) {
+          boolean[] rgs = statsSargApp.pickRowGroups(si, stats, true);
+          statsStripeRgs[stripeIxMod] = rgs;
+          isStatsStripeRgs[stripeIxMod] = true;
+          if (rgs == RecordReaderImpl.SargApplier.READ_NO_RGS) {
+            result.add(null); // We are not going to read this stripe, no need for the index.
+            continue;
+          }
+        }
+      }
       OrcProto.StripeFooter footer = getStripeFooterFromCacheOrDisk(si, stripeKey);
       OrcStripeMetadata osm = createOrcStripeMetadataObject(
           stripeIx, si, footer, includes, sargColumns);
@@ -633,10 +745,73 @@ private ArrayList<OrcStripeMetadata> readStripesMetadata(
       stripeReader.readIndexStreams(index, si, footer.getStreamsList(), includes, sargColumns);
       result.add(osm);
       consumer.setStripeMetadata(osm);
+      if (statsSargApp != null && !isStatsStripeRgs[stripeIxMod]) {
+        putRowGroupStatsToCache(stripeKey, footer, index.getRowGroupIndex(), filterColumns);
+      }
     }
     return result;
   }
 
+  /**
+   * @return The cached row group statistics for the stripe, by column; null if the statistics
+   *         for some of the filter columns are not cached.
+   */
+  private OrcRowGroupStats[] getRowGroupStatsFromCache(
+      OrcBatchKey stripeKey, int[] filterColumns, int rgCount) {
+    OrcRowGroupStats[] result = new OrcRowGroupStats[evolution.getFileSchema().getMaximumId() + 1];
+    for (int colIx : filterColumns) {
+      if (colIx < 0 || result[colIx] != null) continue;
+      LlapBufferOrBuffers buffers = metadataCache.getRowGroupStats(stripeKey, colIx);
+      if (buffers == null) return null;
+      try {
+        result[colIx] = new OrcRowGroupStats(copyToHeap(buffers));
+      } finally {
+        metadataCache.decRefBuffer(buffers);
+      }
+      if (result[colIx].getRgCount() < rgCount) return null;
+    }
+    return result;
+  }
+
+  private static ByteBuffer copyToHeap(LlapBufferOrBuffers buffers) {
+    MemoryBuffer singleBuffer = buffers.getSingleBuffer();
+    MemoryBuffer[] bufferArray = (singleBuffer != null)
+        ? new MemoryBuffer[] { singleBuffer } : buffers.getMultipleBuffers();
+    int length = 0;
+    for (MemoryBuffer buf : bufferArray) {
+      length += buf.getByteBufferDup().remaining();
+    }
+    ByteBuffer result = ByteBuffer.allocate(length);
+    for (MemoryBuffer buf : bufferArray) {
+      result.put(buf.getByteBufferDup());
+    }
+    result.flip();
+    return result;
+  }
+
+  private void putRowGroupStatsToCache(OrcBatchKey stripeKey, OrcProto.StripeFooter footer,
+      OrcProto.RowIndex[] indexes, int[] filterColumns) {
+    // The cached statistics are used without bloom filters; skip the columns that have them.
+    boolean[] hasBloomFilter = new boolean[indexes.length];
+    for (OrcProto.Stream stream : footer.getStreamsList()) {
+      if ((stream.getKind() == Stream.Kind.BLOOM_FILTER
+          || stream.getKind() == Stream.Kind.BLOOM_FILTER_UTF8)
+          && stream.getColumn() < hasBloomFilter.length) {
+        hasBloomFilter[stream.getColumn()] = true;
+      }
+    }
+    TypeDescription fileSchema = evolution.getFileSchema();
+    for (int colIx : filterColumns) {
+      if (colIx < 0 || colIx >= indexes.length || hasBloomFilter[colIx]) continue;
+      ByteBuffer stats = OrcRowGroupStats.encode(
+          indexes[colIx], fileSchema.findSubtype(colIx).getCategory());
+      if (stats == null) continue;
+      LlapBufferOrBuffers cacheBuf = metadataCache.putRowGroupStats(
+          stripeKey, colIx, stats, cacheTag, isStopped);
+      metadataCache.decRefBuffer(cacheBuf); // We don't use this one.
+    }
+  }
+
   private OrcStripeMetadata createOrcStripeMetadataObject(int stripeIx, StripeInformation si,
       OrcProto.StripeFooter footer, boolean[] includes, boolean[] sargColumns) throws IOException {
     Stream.Kind[] bks = sargColumns == null ? null : new Stream.Kind[includes.length];
@@ -749,6 +924,8 @@ private void ensureRawDataReader(boolean isOpen) throws IOException {
 
   @Override
   public void returnData(OrcEncodedColumnBatch ecb) {
+    // Unlock the buffers of all the columns at once, so the cache policy is notified in one batch.
+    List<MemoryBuffer> toUnlock = null;
     for (int colIx = 0; colIx < ecb.getTotalColCount(); ++colIx) {
       if (!ecb.hasData(colIx)) continue;
       ColumnStreamData[] datas = ecb.getColumnData(colIx);
@@ -759,12 +936,19 @@ public void returnData(OrcEncodedColumnBatch ecb) {
             LlapIoImpl.LOCKING_LOGGER.trace("Unlocking {} at the end of processing", buf);
           }
         }
-        bufferManager.decRefBuffers(data.getCacheBuffers());
+        if (toUnlock == null) {
+          toUnlock = new ArrayList<>();
+        }
+        // Copy the buffers out; the data object may be reused from the pool right away.
+        toUnlock.addAll(data.getCacheBuffers());
         if (useObjectPools) {
           CSD_POOL.offer(data);
         }
       }
     }
+    if (toUnlock != null) {
+      bufferManager.decRefBuffers(toUnlock);
+    }
     // We can offer ECB even with some streams not discarded; reset() will clear the arrays.
     if (useObjectPools) {
       ECB_POOL.offer(ecb);
@@ -791,7 +975,9 @@ private boolean determineRgsToRead(int rowIndexStride,
       StripeInformation stripe = fileMetadata.getStripes().get(stripeIx);
       int rgCount = getRgCount(stripe, rowIndexStride);
       boolean[] rgsToRead = null;
-      if (sargApp != null) {
+      if (isStatsStripeRgs != null && isStatsStripeRgs[stripeIxMod]) {
+        rgsToRead = statsStripeRgs[stripeIxMod];
+      } else if (sargApp != null) {
         OrcStripeMetadata stripeMetadata = metadata.get(stripeIxMod);
         rgsToRead = sargApp.pickRowGroups(stripe, stripeMetadata.getRowIndexes(),
             stripeMetadata.getBloomFilterKinds(),
@@ -928,7 +1114,13 @@ public long[] putFileData(Object fileKey, DiskRange[] ranges,
     @Override
     public long[] putFileData(Object fileKey, DiskRange[] ranges,
         MemoryBuffer[] data, long baseOffset, String tag) {
-      if (data != null) {
+      if (data != null && isNoCache) {
+        // Lock the buffers like the cache would; they are deallocated when they are unlocked.
+        for (MemoryBuffer buffer : data) {
+          bufferManager.incRefBuffer(buffer);
+        }
+        return null;
+      } else if (data != null) {
         return lowLevelCache.putFileData(
             fileKey, ranges, data, baseOffset, Priority.NORMAL, counters, tag);
       } else if (metadataCache != null) {
@@ -962,8 +1154,20 @@ public void close() throws IOException {
     public DiskRangeList readFileData(DiskRangeList range, long baseOffset,
         boolean doForceDirect) throws IOException {
       long startTime = counters.startTimeCounter();
-      DiskRangeList result = orcDataReaderRef.readFileData(range, baseOffset, doForceDirect);
+      // The first range can be replaced below, so make sure there's a fixed element before it.
+      MutateHelper helper = (range.prev == null) ? new MutateHelper(range) : null;
+      DiskRangeList prev = range.prev;
+      if (currentReadAhead != null && currentReadAhead.getBaseOffset() == baseOffset) {
+        counters.incrCounter(LlapIOCounters.READ_AHEAD_BYTES, currentReadAhead.fill(prev.next));
+      }
+      DiskRangeCoalescer coalescer = (coalesceGap > 0 && !isTrackingDiskRanges())
+          ? DiskRangeCoalescer.coalesce(prev.next, coalesceGap) : null;
+      orcDataReaderRef.readFileData(prev.next, baseOffset, doForceDirect);
+      if (coalescer != null) {
+        counters.incrCounter(LlapIOCounters.COALESCE_WASTED_BYTES, coalescer.split(prev.next));
+      }
       counters.recordHdfsTime(startTime);
+      DiskRangeList result = (helper != null) ? helper.extract() : prev.next;
       if (LlapIoImpl.ORC_LOGGER.isTraceEnabled()) {
         LlapIoImpl.ORC_LOGGER.trace("Disk ranges after disk read (file {}, base offset {}): {}",
             fileKey, baseOffset, RecordReaderUtils.stringifyDiskRanges(result));
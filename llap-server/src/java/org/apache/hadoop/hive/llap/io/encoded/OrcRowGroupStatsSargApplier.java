@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.io.encoded;
+
+import java.util.List;
+
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.llap.io.metadata.OrcRowGroupStats;
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument.TruthValue;
+import org.apache.orc.ColumnStatistics;
+import org.apache.orc.StripeInformation;
+import org.apache.orc.impl.RecordReaderImpl;
+import org.apache.orc.impl.SchemaEvolution;
+
+/**
+ * Picks the row groups to read in a stripe based on {@link OrcRowGroupStats}. This is the same
+ * logic as ORC SargApplier.pickRowGroups, minus bloom filters, without the parsed row index.
+ * The caller is responsible for only using it for the columns that don't have bloom filters.
+ */
+class OrcRowGroupStatsSargApplier {
+  private final SearchArgument sarg;
+  private final List<PredicateLeaf> sargLeaves;
+  private final int[] filterColumns;
+  private final long rowIndexStride;
+  private final SchemaEvolution evolution;
+
+  OrcRowGroupStatsSargApplier(SearchArgument sarg, int[] filterColumns,
+      long rowIndexStride, SchemaEvolution evolution) {
+    this.sarg = sarg;
+    this.sargLeaves = sarg.getLeaves();
+    this.filterColumns = filterColumns;
+    this.rowIndexStride = rowIndexStride;
+    this.evolution = evolution;
+  }
+
+  /**
+   * @param stats Row group statistics for the stripe, by column; must be present for all
+   *              the columns in filterColumns.
+   * @return Same as SargApplier.pickRowGroups - the row groups to read, or one of
+   *         READ_ALL_RGS and READ_NO_RGS.
+   */
+  boolean[] pickRowGroups(StripeInformation stripe, OrcRowGroupStats[] stats, boolean returnNone) {
+    long rowsInStripe = stripe.getNumberOfRows();
+    int groupsInStripe = (int) ((rowsInStripe + rowIndexStride - 1) / rowIndexStride);
+    boolean[] result = new boolean[groupsInStripe];
+    TruthValue[] leafValues = new TruthValue[sargLeaves.size()];
+    boolean hasSelected = false, hasSkipped = false;
+    for (int rowGroup = 0; rowGroup < result.length; ++rowGroup) {
+      for (int pred = 0; pred < leafValues.length; ++pred) {
+        int columnIx = filterColumns[pred];
+        if (columnIx == -1 || evolution == null || !evolution.isPPDSafeConversion(columnIx)) {
+          leafValues[pred] = TruthValue.YES_NO_NULL;
+          continue;
+        }
+        PredicateLeaf predicate = sargLeaves.get(pred);
+        ColumnStatistics cs = stats[columnIx].getStatistics(rowGroup);
+        try {
+          leafValues[pred] = RecordReaderImpl.evaluatePredicate(cs, predicate, null, false);
+        } catch (Exception e) {
+          // Same as ORC - we cannot evaluate the predicate, so we are not going to skip anything.
+          LlapIoImpl.ORC_LOGGER.debug("Cannot evaluate {} on {}", predicate, cs, e);
+          leafValues[pred] = (!cs.hasNull()
+              || predicate.getOperator() == PredicateLeaf.Operator.NULL_SAFE_EQUALS)
+              ? TruthValue.YES_NO : TruthValue.YES_NO_NULL;
+        }
+      }
+      result[rowGroup] = sarg.evaluate(leafValues).isNeeded();
+      hasSelected = hasSelected || result[rowGroup];
+      hasSkipped = hasSkipped || !result[rowGroup];
+    }
+    if (!hasSkipped) return RecordReaderImpl.SargApplier.READ_ALL_RGS;
+    return (hasSelected || !returnNone) ? result : RecordReaderImpl.SargApplier.READ_NO_RGS;
+  }
+}
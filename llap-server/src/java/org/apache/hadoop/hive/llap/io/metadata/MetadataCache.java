@@ -188,6 +188,17 @@ public LlapBufferOrBuffers putStripeTail(
     return putInternal(new StripeKey(stripeKey.fileKey, stripeKey.stripeIx), tailBuffer, tag, isStopped);
   }
 
+  /** Gets the compact row group statistics (see {@link OrcRowGroupStats}) for a column. */
+  public LlapBufferOrBuffers getRowGroupStats(OrcBatchKey stripeKey, int colIx) {
+    return getInternal(new RowGroupStatsKey(stripeKey.fileKey, stripeKey.stripeIx, colIx));
+  }
+
+  public LlapBufferOrBuffers putRowGroupStats(OrcBatchKey stripeKey, int colIx,
+      ByteBuffer statsBuffer, String tag, AtomicBoolean isStopped) {
+    return putInternal(new RowGroupStatsKey(stripeKey.fileKey, stripeKey.stripeIx, colIx),
+        statsBuffer, tag, isStopped);
+  }
+
   @Override
   public MemoryBufferOrBuffers putFileMetadata(Object fileKey, int length,
       InputStream is, String tag) throws IOException {
@@ -498,6 +509,34 @@ public boolean equals(Object obj) {
     }
   }
 
+  private final static class RowGroupStatsKey {
+    private final Object fileKey;
+    private final int stripeIx, colIx;
+
+    public RowGroupStatsKey(Object fileKey, int stripeIx, int colIx) {
+      this.fileKey = fileKey;
+      this.stripeIx = stripeIx;
+      this.colIx = colIx;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      return ((prime + ((fileKey == null) ? 0 : fileKey.hashCode())) * prime + stripeIx) * prime
+          + colIx;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof RowGroupStatsKey)) return false;
+      RowGroupStatsKey other = (RowGroupStatsKey)obj;
+      return ((fileKey == null) == (other.fileKey == null))
+          && (fileKey == null || fileKey.equals(other.fileKey)) && (stripeIx == other.stripeIx)
+          && (colIx == other.colIx);
+    }
+  }
+
   public static interface LlapBufferOrBuffers extends MemoryBufferOrBuffers {
     LlapAllocatorBuffer getSingleLlapBuffer();
     LlapAllocatorBuffer[] getMultipleLlapBuffers();
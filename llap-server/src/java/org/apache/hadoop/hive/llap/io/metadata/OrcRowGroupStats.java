@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.io.metadata;
+
+import java.nio.ByteBuffer;
+
+import org.apache.orc.ColumnStatistics;
+import org.apache.orc.DoubleColumnStatistics;
+import org.apache.orc.IntegerColumnStatistics;
+import org.apache.orc.OrcProto;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.impl.ColumnStatisticsImpl;
+
+/**
+ * Row group statistics of one column in one stripe, in a compact pre-parsed form that can be
+ * stored in the metadata cache and used for SARG evaluation without protobuf deserialization.
+ * The layout is the row group count, followed by a fixed-size entry per row group: flags,
+ * the number of values, the minimum, the maximum and the sum (raw long bits for doubles).
+ * Only the integer and floating point columns are supported; for them, the statistics are the
+ * same as what ORC deserializes from the row index, so SARG evaluation results are identical.
+ */
+public final class OrcRowGroupStats {
+  private static final byte HAS_NULL = 1, IS_INTEGER = 2, IS_DOUBLE = 4, IS_SUM_DEFINED = 8;
+  private static final int HEADER_SIZE = 4, ENTRY_SIZE = 1 + 8 + 8 + 8 + 8;
+
+  private final ByteBuffer data;
+
+  public OrcRowGroupStats(ByteBuffer data) {
+    this.data = data;
+  }
+
+  public static boolean isSupported(TypeDescription.Category category) {
+    switch (category) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case FLOAT:
+    case DOUBLE:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * @return The compact statistics for the row index of a column; null if they are not supported.
+   */
+  public static ByteBuffer encode(OrcProto.RowIndex index, TypeDescription.Category category) {
+    if (index == null || !isSupported(category)) return null;
+    int rgCount = index.getEntryCount();
+    ByteBuffer result = ByteBuffer.allocate(HEADER_SIZE + rgCount * ENTRY_SIZE);
+    result.putInt(rgCount);
+    for (int rgIx = 0; rgIx < rgCount; ++rgIx) {
+      // Deserialize the same way SargApplier does, so that we get the same min/max values.
+      ColumnStatistics cs = ColumnStatisticsImpl.deserialize(
+          null, index.getEntry(rgIx).getStatistics());
+      byte flags = cs.hasNull() ? HAS_NULL : 0;
+      long min = 0, max = 0, sum = 0;
+      if (cs instanceof IntegerColumnStatistics) {
+        IntegerColumnStatistics ics = (IntegerColumnStatistics) cs;
+        flags |= IS_INTEGER;
+        min = ics.getMinimum();
+        max = ics.getMaximum();
+        if (ics.isSumDefined()) {
+          flags |= IS_SUM_DEFINED;
+          sum = ics.getSum();
+        }
+      } else if (cs instanceof DoubleColumnStatistics) {
+        DoubleColumnStatistics dcs = (DoubleColumnStatistics) cs;
+        flags |= IS_DOUBLE;
+        min = Double.doubleToRawLongBits(dcs.getMinimum());
+        max = Double.doubleToRawLongBits(dcs.getMaximum());
+        sum = Double.doubleToRawLongBits(dcs.getSum());
+      } else if (cs.getClass() != ColumnStatisticsImpl.class) {
+        return null; // Some other kind of statistics; we don't expect this for numeric types.
+      }
+      result.put(flags);
+      result.putLong(cs.getNumberOfValues());
+      result.putLong(min);
+      result.putLong(max);
+      result.putLong(sum);
+    }
+    result.flip();
+    return result;
+  }
+
+  public int getRgCount() {
+    return data.getInt(data.position());
+  }
+
+  public ColumnStatistics getStatistics(int rgIx) {
+    int offset = data.position() + HEADER_SIZE + rgIx * ENTRY_SIZE;
+    byte flags = data.get(offset);
+    long numberOfValues = data.getLong(offset + 1);
+    boolean hasNull = (flags & HAS_NULL) != 0;
+    if ((flags & IS_INTEGER) != 0) {
+      return new IntegerStats(numberOfValues, hasNull, data.getLong(offset + 9),
+          data.getLong(offset + 17), (flags & IS_SUM_DEFINED) != 0, data.getLong(offset + 25));
+    } else if ((flags & IS_DOUBLE) != 0) {
+      return new DoubleStats(numberOfValues, hasNull,
+          Double.longBitsToDouble(data.getLong(offset + 9)),
+          Double.longBitsToDouble(data.getLong(offset + 17)),
+          Double.longBitsToDouble(data.getLong(offset + 25)));
+    }
+    return new Stats(numberOfValues, hasNull);
+  }
+
+  private static class Stats implements ColumnStatistics {
+    private final long numberOfValues;
+    private final boolean hasNull;
+
+    Stats(long numberOfValues, boolean hasNull) {
+      this.numberOfValues = numberOfValues;
+      this.hasNull = hasNull;
+    }
+
+    @Override
+    public long getNumberOfValues() {
+      return numberOfValues;
+    }
+
+    @Override
+    public boolean hasNull() {
+      return hasNull;
+    }
+
+    @Override
+    public long getBytesOnDisk() {
+      return 0; // Not stored.
+    }
+
+    @Override
+    public String toString() {
+      return "count: " + numberOfValues + " hasNull: " + hasNull;
+    }
+  }
+
+  private static final class IntegerStats extends Stats implements IntegerColumnStatistics {
+    private final long min, max, sum;
+    private final boolean isSumDefined;
+
+    IntegerStats(long numberOfValues, boolean hasNull, long min, long max,
+        boolean isSumDefined, long sum) {
+      super(numberOfValues, hasNull);
+      this.min = min;
+      this.max = max;
+      this.isSumDefined = isSumDefined;
+      this.sum = sum;
+    }
+
+    @Override
+    public long getMinimum() {
+      return min;
+    }
+
+    @Override
+    public long getMaximum() {
+      return max;
+    }
+
+    @Override
+    public boolean isSumDefined() {
+      return isSumDefined;
+    }
+
+    @Override
+    public long getSum() {
+      return sum;
+    }
+
+    @Override
+    public String toString() {
+      return super.toString() + " min: " + min + " max: " + max
+          + (isSumDefined ? " sum: " + sum : "");
+    }
+  }
+
+  private static final class DoubleStats extends Stats implements DoubleColumnStatistics {
+    private final double min, max, sum;
+
+    DoubleStats(long numberOfValues, boolean hasNull, double min, double max, double sum) {
+      super(numberOfValues, hasNull);
+      this.min = min;
+      this.max = max;
+      this.sum = sum;
+    }
+
+    @Override
+    public double getMinimum() {
+      return min;
+    }
+
+    @Override
+    public double getMaximum() {
+      return max;
+    }
+
+    @Override
+    public double getSum() {
+      return sum;
+    }
+
+    @Override
+    public String toString() {
+      return super.toString() + " min: " + min + " max: " + max + " sum: " + sum;
+    }
+  }
+}
@@ -36,7 +36,9 @@ public enum LlapDaemonCacheInfo implements MetricsInfo {
   CacheHitRatio("Ratio of disk ranges cached vs requested"),
   CacheReadRequests("Number of disk range requests to cache"),
   CacheAllocatedArena("Number of arenas allocated"),
-  CacheNumLockedBuffers("Number of locked buffers in cache");
+  CacheNumLockedBuffers("Number of locked buffers in cache"),
+  CacheAdmissionRejects("Number of buffers read from disk that the admission filter did not cache"),
+  CacheAdmissionRejectedBytes("Buffers read from disk that the admission filter did not cache in bytes");
 
   private final String desc;
 
@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.hive.llap.metrics;
 
+import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheAdmissionRejectedBytes;
+import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheAdmissionRejects;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheAllocatedArena;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheCapacityRemaining;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheCapacityRemainingPercentage;
@@ -66,6 +68,10 @@ public class LlapDaemonCacheMetrics implements MetricsSource {
   MutableCounterLong cacheAllocatedArena;
   @Metric
   MutableCounterLong cacheNumLockedBuffers;
+  @Metric
+  MutableCounterLong cacheAdmissionRejects;
+  @Metric
+  MutableCounterLong cacheAdmissionRejectedBytes;
 
   private LlapDaemonCacheMetrics(String name, String sessionId) {
     this.name = name;
@@ -111,6 +117,15 @@ public void decrCacheNumLockedBuffers() {
     cacheNumLockedBuffers.incr(-1);
   }
 
+  public void decrCacheNumLockedBuffers(long count) {
+    cacheNumLockedBuffers.incr(-count);
+  }
+
+  public void incrCacheAdmissionRejects(long bytes) {
+    cacheAdmissionRejects.incr();
+    cacheAdmissionRejectedBytes.incr(bytes);
+  }
+
   public String getName() {
     return name;
   }
@@ -125,6 +140,11 @@ public long getCacheHitBytes() {
     return cacheHitBytes.value();
   }
 
+  @VisibleForTesting
+  public long getCacheAdmissionRejects() {
+    return cacheAdmissionRejects.value();
+  }
+
   @Override
   public void getMetrics(MetricsCollector collector, boolean b) {
     MetricsRecordBuilder rb = collector.addRecord(CacheMetrics)
@@ -150,6 +170,8 @@ private void getCacheStats(MetricsRecordBuilder rb) {
         .addCounter(CacheHitBytes, cacheHitBytes.value())
         .addCounter(CacheAllocatedArena, cacheAllocatedArena.value())
         .addCounter(CacheNumLockedBuffers, cacheNumLockedBuffers.value())
+        .addCounter(CacheAdmissionRejects, cacheAdmissionRejects.value())
+        .addCounter(CacheAdmissionRejectedBytes, cacheAdmissionRejectedBytes.value())
         .addGauge(CacheHitRatio, cacheHitRatio);
   }
 
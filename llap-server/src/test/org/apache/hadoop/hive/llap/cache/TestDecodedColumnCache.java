@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.junit.Test;
+
+public class TestDecodedColumnCache {
+
+  @Test
+  public void testCopy() {
+    LongColumnVector longs = new LongColumnVector(1024);
+    longs.noNulls = false;
+    for (int i = 0; i < 10; ++i) {
+      longs.vector[i] = i * 100;
+      longs.isNull[i] = (i == 3);
+    }
+    LongColumnVector longsCopy = (LongColumnVector) DecodedColumnCache.copyOf(longs, 10);
+    assertEquals(10, longsCopy.vector.length);
+    longs.reset();
+    DecodedColumnCache.copyTo(longsCopy, longs, 10);
+    assertFalse(longs.noNulls);
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(i == 3, longs.isNull[i]);
+      assertEquals(i * 100, longs.vector[i]);
+    }
+
+    BytesColumnVector bytes = new BytesColumnVector(1024);
+    bytes.initBuffer();
+    for (int i = 0; i < 10; ++i) {
+      bytes.setVal(i, ("value" + i).getBytes(StandardCharsets.UTF_8));
+    }
+    BytesColumnVector bytesCopy = (BytesColumnVector) DecodedColumnCache.copyOf(bytes, 10);
+    // The batch vector is reused; the cached copy must not depend on it.
+    bytes.reset();
+    bytes.setVal(0, "other".getBytes(StandardCharsets.UTF_8));
+    BytesColumnVector target = new BytesColumnVector(1024);
+    DecodedColumnCache.copyTo(bytesCopy, target, 10);
+    assertTrue(target.noNulls);
+    for (int i = 0; i < 10; ++i) {
+      assertEquals("value" + i, target.toString(i));
+    }
+
+    LongColumnVector repeating = new LongColumnVector(1024);
+    repeating.fill(42);
+    LongColumnVector repeatingCopy = (LongColumnVector) DecodedColumnCache.copyOf(repeating, 1024);
+    assertEquals(1, repeatingCopy.vector.length);
+    longs.reset();
+    DecodedColumnCache.copyTo(repeatingCopy, longs, 1024);
+    assertTrue(longs.isRepeating);
+    assertEquals(42, longs.vector[0]);
+  }
+
+  @Test
+  public void testPutAndEvict() {
+    LlapDaemonCacheMetrics metrics = LlapDaemonCacheMetrics.create("test", "1");
+    LowLevelFifoCachePolicy policy = new LowLevelFifoCachePolicy();
+    // Enough memory for a single entry.
+    LowLevelCacheMemoryManager mm = new LowLevelCacheMemoryManager(15000, policy, metrics);
+    DecodedColumnCache cache = new DecodedColumnCache(100000, 2, mm, policy);
+    policy.setEvictionListener(new EvictionDispatcher(null, null, null, cache, null));
+
+    DecodedColumnCache.Key key1 = new DecodedColumnCache.Key(1L, 0, 0, 1, "int");
+    DecodedColumnCache.Key key2 = new DecodedColumnCache.Key(1L, 0, 1, 1, "int");
+    assertFalse(cache.shouldCache(key1));
+    assertTrue(cache.shouldCache(key1));
+    ColumnVector[] vectors1 = createVectors(), vectors2 = createVectors();
+    assertTrue(cache.put(key1, vectors1));
+    assertFalse(cache.put(key1, createVectors()));
+    assertSame(vectors1, cache.get(key1));
+    long entrySize = cache.getUsedSize();
+    assertTrue(entrySize > 8 * 1024);
+
+    // The second entry evicts the first one.
+    assertTrue(cache.put(key2, vectors2));
+    assertNull(cache.get(key1));
+    assertSame(vectors2, cache.get(key2));
+    assertEquals(entrySize, cache.getUsedSize());
+
+    // The decoded cache has its own limit.
+    DecodedColumnCache small = new DecodedColumnCache(1000, 2, mm, policy);
+    assertFalse(small.put(key1, createVectors()));
+    assertEquals(0, small.getUsedSize());
+  }
+
+  private static ColumnVector[] createVectors() {
+    return new ColumnVector[] { DecodedColumnCache.copyOf(new LongColumnVector(1024), 1024) };
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.junit.Test;
+
+public class TestLowLevelCacheAdmissionFilter {
+
+  @Test
+  public void testFrequency() {
+    LowLevelCacheAdmissionFilter filter = new LowLevelCacheAdmissionFilter(1024, 2, null, null);
+    for (int i = 1; i <= 20; ++i) {
+      assertEquals(Math.min(i, 15), filter.incrementAndEstimate(12345));
+    }
+    assertEquals(1, filter.incrementAndEstimate(54321));
+  }
+
+  @Test
+  public void testAging() {
+    // 16 entries; the counters are halved every 160 additions.
+    LowLevelCacheAdmissionFilter filter = new LowLevelCacheAdmissionFilter(16, 2, null, null);
+    for (int i = 0; i < 8; ++i) {
+      filter.incrementAndEstimate(1);
+    }
+    for (int i = 0; i < 151; ++i) {
+      filter.incrementAndEstimate(2);
+    }
+    // The 160th addition brings this one to 9, then halves it.
+    assertEquals(9, filter.incrementAndEstimate(1));
+    assertEquals(5, filter.incrementAndEstimate(1));
+    assertEquals(8, filter.incrementAndEstimate(2));
+  }
+
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    LowLevelCacheAdmissionFilter filter = new LowLevelCacheAdmissionFilter(1024, 2, null, null);
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[7];
+    for (int i = 0; i < threads.length; ++i) {
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ex) {
+          return;
+        }
+        filter.incrementAndEstimate(777);
+        filter.incrementAndEstimate(777);
+      });
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // No increment is lost without the lock.
+    assertEquals(15, filter.incrementAndEstimate(777));
+  }
+
+  @Test
+  public void testAdmit() {
+    LlapDaemonCacheMetrics metrics = LlapDaemonCacheMetrics.create("test", "1");
+    LowLevelCacheMemoryManager mm = new LowLevelCacheMemoryManager(1024, null, metrics);
+    LowLevelCacheAdmissionFilter filter = new LowLevelCacheAdmissionFilter(1024, 3, mm, metrics);
+    // Everything is admitted while there is free memory.
+    assertTrue(filter.admit(1L, 0, 512));
+    mm.reserveMemory(1024, false, null);
+    assertFalse(filter.admit(2L, 0, 512));
+    assertFalse(filter.admit(2L, 0, 512));
+    assertTrue(filter.admit(2L, 0, 512));
+    // The first read counts, even though it was admitted because of the free memory.
+    assertFalse(filter.admit(1L, 0, 512));
+    assertTrue(filter.admit(1L, 0, 512));
+    assertFalse(filter.admit(1L, 512, 256));
+    assertEquals(4, metrics.getCacheAdmissionRejects());
+  }
+}
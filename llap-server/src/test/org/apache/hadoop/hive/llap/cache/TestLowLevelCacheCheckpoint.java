@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.common.io.DiskRange;
+import org.apache.hadoop.hive.common.io.encoded.MemoryBuffer;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.cache.TestBuddyAllocator.DummyMemoryManager;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.apache.hadoop.hive.ql.io.SyntheticFileId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLowLevelCacheCheckpoint {
+  private static final int MAX_ALLOC = 1024, ARENA_SIZE = 2048;
+  private File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("llap-checkpoint").toFile();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteQuietly(dir);
+  }
+
+  private BuddyAllocator createAllocator(int minAlloc) {
+    return new BuddyAllocator(true, true, minAlloc, MAX_ALLOC, 2, 2 * ARENA_SIZE, 0,
+        dir.getPath(), new DummyMemoryManager(), LlapDaemonCacheMetrics.create("test", "1"),
+        null, false, true);
+  }
+
+  private static LowLevelCacheImpl createCache(BuddyAllocator allocator) {
+    return new LowLevelCacheImpl(LlapDaemonCacheMetrics.create("test", "1"),
+        new LowLevelFifoCachePolicy(), allocator, true, -1);
+  }
+
+  private static void putData(LowLevelCacheImpl cache, BuddyAllocator allocator,
+      Object fileKey, int size, int count) throws Exception {
+    MemoryBuffer[] buffers = new MemoryBuffer[count];
+    allocator.allocateMultiple(buffers, size);
+    DiskRange[] ranges = new DiskRange[count];
+    for (int i = 0; i < count; ++i) {
+      LlapDataBuffer buffer = (LlapDataBuffer)buffers[i];
+      for (int j = 0; j < size; ++j) {
+        buffer.byteBuffer.put(buffer.byteBuffer.position() + j, (byte)(i + j));
+      }
+      ranges[i] = new DiskRange(i * size, (i + 1) * size);
+    }
+    cache.putFileData(fileKey, ranges, buffers, 0, Priority.NORMAL, null, "tag" + size);
+    for (MemoryBuffer buffer : buffers) {
+      cache.decRefBuffer(buffer);
+    }
+  }
+
+  private static void checkData(Map<Long, LlapDataBuffer> buffers, int size, int count) {
+    assertNotNull(buffers);
+    assertEquals(count, buffers.size());
+    for (int i = 0; i < count; ++i) {
+      LlapDataBuffer buffer = buffers.get((long)(i * size));
+      assertEquals(size, buffer.declaredCachedLength);
+      assertEquals("tag" + size, buffer.getTag());
+      for (int j = 0; j < size; ++j) {
+        assertEquals((byte)(i + j), buffer.byteBuffer.get(buffer.byteBuffer.position() + j));
+      }
+    }
+  }
+
+  private static void unlockAll(LowLevelCacheImpl cache, Map<Object, Map<Long, LlapDataBuffer>> all) {
+    for (Map<Long, LlapDataBuffer> buffers : all.values()) {
+      for (LlapDataBuffer buffer : buffers.values()) {
+        cache.decRefBuffer(buffer);
+      }
+    }
+  }
+
+  @Test
+  public void testSaveAndRestore() throws Exception {
+    BuddyAllocator allocator = createAllocator(8);
+    LowLevelCacheImpl cache = createCache(allocator);
+    SyntheticFileId syntheticKey = new SyntheticFileId(new Path("/warehouse/t/0.orc"), 100, 200);
+    putData(cache, allocator, 1L, 8, 10);
+    putData(cache, allocator, syntheticKey, 256, 3);
+    putData(cache, allocator, 3L, MAX_ALLOC, 2); // Goes into the second arena.
+    putData(cache, allocator, "unsupported", 64, 1);
+    assertEquals(15, LowLevelCacheCheckpoint.save(cache, allocator));
+    allocator.closePersistentCacheDir();
+
+    BuddyAllocator newAllocator = createAllocator(8);
+    LowLevelCacheImpl newCache = createCache(newAllocator);
+    assertEquals(15, LowLevelCacheCheckpoint.restore(newCache, newAllocator,
+        new DummyMemoryManager()));
+    Map<Object, Map<Long, LlapDataBuffer>> all = newCache.lockAllBuffers();
+    assertEquals(3, all.size());
+    checkData(all.get(1L), 8, 10);
+    checkData(all.get(syntheticKey), 256, 3);
+    checkData(all.get(3L), MAX_ALLOC, 2);
+    assertNull(all.get("unsupported"));
+    unlockAll(newCache, all);
+
+    // The restored blocks are not handed out again.
+    putData(newCache, newAllocator, 4L, 64, 8);
+    all = newCache.lockAllBuffers();
+    checkData(all.get(1L), 8, 10);
+    checkData(all.get(3L), MAX_ALLOC, 2);
+    unlockAll(newCache, all);
+
+    // The checkpoint is only restored once.
+    assertEquals(0, LowLevelCacheCheckpoint.restore(createCache(newAllocator), newAllocator,
+        new DummyMemoryManager()));
+    newAllocator.closePersistentCacheDir();
+  }
+
+  @Test
+  public void testLayoutMismatch() throws Exception {
+    BuddyAllocator allocator = createAllocator(8);
+    LowLevelCacheImpl cache = createCache(allocator);
+    putData(cache, allocator, 1L, 16, 4);
+    assertEquals(4, LowLevelCacheCheckpoint.save(cache, allocator));
+    allocator.closePersistentCacheDir();
+
+    BuddyAllocator newAllocator = createAllocator(16);
+    assertEquals(0, LowLevelCacheCheckpoint.restore(createCache(newAllocator), newAllocator,
+        new DummyMemoryManager()));
+    newAllocator.closePersistentCacheDir();
+  }
+}
@@ -233,6 +233,33 @@ public void testMultiMatchNonGranular() {
     verifyCacheGet(cache, fn, 3, 7, fakes[0], dr(4, 6), fakes[1]);
   }
 
+  @Test
+  public void testGetMissingRanges() {
+    LowLevelCacheImpl cache = new LowLevelCacheImpl(
+        LlapDaemonCacheMetrics.create("test", "1"), new DummyCachePolicy(),
+        new DummyAllocator(), true, -1); // no cleanup thread
+    long fn = 1;
+    MemoryBuffer[] fakes = new MemoryBuffer[] { fb(), fb() };
+    assertNull(cache.putFileData(
+        fn, new DiskRange[] { dr(2, 4), dr(6, 8) }, fakes, 10, Priority.NORMAL, null, null));
+    verifyMissingRanges(cache.getMissingRanges(fn, dr(1, 9), 10), 1, 2, 4, 6, 8, 9);
+    verifyMissingRanges(cache.getMissingRanges(fn, dr(3, 7), 10), 4, 6);
+    verifyMissingRanges(cache.getMissingRanges(fn, dr(2, 4), 10));
+    verifyMissingRanges(cache.getMissingRanges(2L, dr(2, 4), 10), 2, 4);
+    DiskRangeList ranges = dr(0, 3);
+    ranges.insertAfter(dr(5, 9));
+    verifyMissingRanges(cache.getMissingRanges(fn, ranges, 10), 0, 2, 5, 6, 8, 9);
+  }
+
+  private void verifyMissingRanges(DiskRangeList result, long... bounds) {
+    for (int i = 0; i < bounds.length; i += 2) {
+      assertEquals(bounds[i], result.getOffset());
+      assertEquals(bounds[i + 1], result.getEnd());
+      result = result.next;
+    }
+    assertNull(result);
+  }
+
   @Test
   public void testStaleValueGet() {
     LowLevelCacheImpl cache = new LowLevelCacheImpl(
@@ -252,6 +279,25 @@ public void testStaleValueGet() {
     verifyRefcount(fakes, 0, 4, 0);
   }
 
+  @Test
+  public void testAdmissionFilter() {
+    LlapDaemonCacheMetrics metrics = LlapDaemonCacheMetrics.create("test", "1");
+    LowLevelCacheImpl cache = new LowLevelCacheImpl(metrics, new DummyCachePolicy(),
+        new DummyAllocator(), true, -1); // no cleanup thread
+    // No free memory, so the blocks are only admitted on the second read.
+    LowLevelCacheMemoryManager mm = new LowLevelCacheMemoryManager(0, null, metrics);
+    cache.setAdmissionFilter(new LowLevelCacheAdmissionFilter(1024, 2, mm, metrics));
+    long fn = 1;
+    MemoryBuffer[] fakes = new MemoryBuffer[] { fb(), fb(), fb() };
+    assertNull(cache.putFileData(fn, drs(1, 2), fbs(fakes, 0, 1), 0, Priority.NORMAL, null, null));
+    verifyCacheGet(cache, fn, 1, 3, dr(1, 3));
+    assertEquals(2, metrics.getCacheAdmissionRejects());
+    assertNull(cache.putFileData(fn, drs(1), fbs(fakes, 2), 0, Priority.NORMAL, null, null));
+    verifyCacheGet(cache, fn, 1, 3, fakes[2], dr(2, 3));
+    assertEquals(2, metrics.getCacheAdmissionRejects());
+    verifyRefcount(fakes, 2, 2, 3);
+  }
+
   @Test
   public void testStaleValueReplace() {
     LowLevelCacheImpl cache = new LowLevelCacheImpl(
@@ -178,6 +178,80 @@ public void testLruExtreme() {
     verifyOrder(mm, lru, et, inserted, null);
   }
 
+  @Test
+  public void testBatchNotify() {
+    int heapSize = 8;
+    Random rdm = new Random(1234);
+    Configuration conf = new Configuration();
+    ArrayList<LlapDataBuffer> inserted = new ArrayList<LlapDataBuffer>(heapSize);
+    conf.setFloat(HiveConf.ConfVars.LLAP_LRFU_LAMBDA.varname, 1.0f);
+    EvictionTracker et = new EvictionTracker();
+    LowLevelLrfuCachePolicy lru = new LowLevelLrfuCachePolicy(1, heapSize, conf);
+    LowLevelCacheMemoryManager mm = new LowLevelCacheMemoryManager(heapSize, lru,
+        LlapDaemonCacheMetrics.create("test", "1"));
+    lru.setEvictionListener(et);
+    for (int i = 0; i < heapSize; ++i) {
+      LlapDataBuffer buffer = LowLevelCacheImpl.allocateFake();
+      assertTrue(cache(mm, lru, et, buffer));
+      inserted.add(buffer);
+    }
+    Collections.shuffle(inserted, rdm);
+    // Buffers in a batch are touched in list order, same as a sequence of single notifications.
+    lru.notifyLockAll(inserted.subList(0, heapSize / 2));
+    lru.notifyUnlockAll(inserted.subList(0, heapSize / 2));
+    lru.notifyLockAll(inserted.subList(heapSize / 2, heapSize));
+    lru.notifyUnlockAll(inserted.subList(heapSize / 2, heapSize));
+    verifyOrder(mm, lru, et, inserted, null);
+  }
+
+  @Test
+  public void testQuotas() {
+    Configuration conf = new Configuration();
+    conf.setFloat(HiveConf.ConfVars.LLAP_LRFU_LAMBDA.varname, 1.0f);
+    final CacheQuotas quotas = new CacheQuotas("db.a:0.3:1, db.b:0:0.2", 10, "test");
+    final EvictionTracker et = new EvictionTracker();
+    LowLevelLrfuCachePolicy lru = new LowLevelLrfuCachePolicy(1, 10, conf);
+    lru.setQuotas(quotas);
+    lru.setEvictionListener(new EvictionListener() {
+      @Override
+      public void notifyEvicted(LlapCacheableBuffer buffer) {
+        quotas.reportRemoved(buffer);
+        et.notifyEvicted(buffer);
+      }
+    });
+    // Partition tags are subject to the quota of their table; db.c has no quota.
+    String[] tags = new String[] { "db.a/p=1", "db.a/p=2", "db.a/p=1", "db.b", "db.b", "db.b",
+        "db.b", "db.c", "db.c", "db.c" };
+    LlapDataBuffer[] buffers = new LlapDataBuffer[tags.length];
+    for (int i = 0; i < tags.length; ++i) {
+      buffers[i] = LowLevelCacheImpl.allocateFake();
+      buffers[i].setTag(tags[i]);
+      assertTrue(cache(null, lru, et, buffers[i]));
+      quotas.reportCached(buffers[i]);
+    }
+    assertTrue(quotas.hasOverMax());
+    // db.b is above its maximum, so it is evicted first, down to the maximum.
+    assertEquals(2, lru.evictSomeBlocks(2));
+    verifyEvicted(et, buffers[3], buffers[4]);
+    assertFalse(quotas.hasOverMax());
+    // db.a is at its minimum, so the older db.a buffers are skipped.
+    assertEquals(3, lru.evictSomeBlocks(3));
+    verifyEvicted(et, buffers[5], buffers[6], buffers[7]);
+    assertEquals(2, lru.evictSomeBlocks(2));
+    verifyEvicted(et, buffers[8], buffers[9]);
+    // Only the protected buffers are left; the minimum doesn't prevent eviction.
+    assertEquals(1, lru.evictSomeBlocks(1));
+    verifyEvicted(et, buffers[0]);
+  }
+
+  private static void verifyEvicted(EvictionTracker et, LlapDataBuffer... expected) {
+    assertEquals(expected.length, et.evicted.size());
+    for (int i = 0; i < expected.length; ++i) {
+      assertSame(expected[i], et.evicted.get(i));
+    }
+    et.evicted.clear();
+  }
+
   @Test
   public void testPurge() {
     final int HEAP_SIZE = 32;
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.junit.Test;
+
+public class TestLowLevelShardedLrfuCachePolicy {
+
+  private static class EvictionTracker implements EvictionListener {
+    public final List<LlapCacheableBuffer> evicted =
+        Collections.synchronizedList(new ArrayList<LlapCacheableBuffer>());
+
+    @Override
+    public void notifyEvicted(LlapCacheableBuffer buffer) {
+      evicted.add(buffer);
+    }
+  }
+
+  private static void cache(LowLevelCachePolicy policy, LlapDataBuffer buffer) {
+    buffer.incRef();
+    policy.cache(buffer, Priority.NORMAL);
+    buffer.decRef();
+    policy.notifyUnlock(buffer);
+  }
+
+  @Test
+  public void testShardCount() {
+    Configuration conf = new Configuration();
+    assertEquals(1, new LowLevelShardedLrfuCachePolicy(1, 16, 1, conf).getShardCount());
+    assertEquals(4, new LowLevelShardedLrfuCachePolicy(1, 16, 3, conf).getShardCount());
+    assertEquals(8, new LowLevelShardedLrfuCachePolicy(1, 16, 8, conf).getShardCount());
+  }
+
+  @Test
+  public void testEvictListsBeforeHeaps() {
+    Configuration conf = new Configuration();
+    // The lambda of each of the 4 shards becomes 1, so each shard has a heap of 1 buffer (LRU).
+    conf.setFloat(HiveConf.ConfVars.LLAP_LRFU_LAMBDA.varname, 0.25f);
+    LowLevelShardedLrfuCachePolicy policy = new LowLevelShardedLrfuCachePolicy(1, 64, 4, conf);
+    EvictionTracker et = new EvictionTracker();
+    policy.setEvictionListener(et);
+
+    // The buffer last touched in each shard is the one in its heap.
+    Map<LowLevelLrfuCachePolicy, LlapDataBuffer> inHeap = new HashMap<>();
+    for (int i = 0; i < 64; ++i) {
+      LlapDataBuffer buffer = LowLevelCacheImpl.allocateFake();
+      cache(policy, buffer);
+      inHeap.put(policy.getShard(buffer), buffer);
+    }
+
+    int evictFromLists = 64 - inHeap.size();
+    assertEquals(evictFromLists, policy.evictSomeBlocks(evictFromLists));
+    assertEquals(evictFromLists, et.evicted.size());
+    for (LlapDataBuffer buffer : inHeap.values()) {
+      assertFalse(et.evicted.contains(buffer));
+    }
+
+    // The heaps go last.
+    assertEquals(inHeap.size(), policy.evictSomeBlocks(64));
+    assertEquals(64, et.evicted.size());
+    assertEquals(0, policy.evictSomeBlocks(1));
+  }
+
+  @Test
+  public void testConcurrentLockUnlock() throws Exception {
+    Configuration conf = new Configuration();
+    final LowLevelShardedLrfuCachePolicy policy =
+        new LowLevelShardedLrfuCachePolicy(1, 1024, 8, conf);
+    EvictionTracker et = new EvictionTracker();
+    policy.setEvictionListener(et);
+
+    final LlapDataBuffer[] buffers = new LlapDataBuffer[1024];
+    for (int i = 0; i < buffers.length; ++i) {
+      buffers[i] = LowLevelCacheImpl.allocateFake();
+      cache(policy, buffers[i]);
+    }
+
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; ++t) {
+      final Random random = new Random(t);
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 100000; ++i) {
+            LlapDataBuffer buffer = buffers[random.nextInt(buffers.length)];
+            buffer.incRef();
+            policy.notifyLock(buffer);
+            buffer.decRef();
+            policy.notifyUnlock(buffer);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // Every buffer is in exactly one shard once more.
+    assertEquals(buffers.length, policy.purge());
+    assertEquals(buffers.length, et.evicted.size());
+  }
+}
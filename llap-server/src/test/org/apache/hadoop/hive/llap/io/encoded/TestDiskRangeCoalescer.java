@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.io.encoded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.apache.hadoop.hive.common.io.DiskRangeList.MutateHelper;
+import org.apache.orc.impl.BufferChunk;
+import org.junit.Test;
+
+public class TestDiskRangeCoalescer {
+
+  @Test
+  public void testCoalesceAndSplit() throws IOException {
+    MutateHelper helper = new MutateHelper(ranges(0, 10, 12, 20, 100, 110, 111, 115));
+    DiskRangeCoalescer coalescer = DiskRangeCoalescer.coalesce(helper.next, 4);
+    verifyRanges(helper.next, false, 0, 20, 100, 115);
+
+    // Read the coalesced ranges like the ORC reader would.
+    readRanges(helper.next);
+    assertEquals(3, coalescer.split(helper.next));
+    DiskRangeList result = helper.extract();
+    verifyRanges(result, true, 0, 10, 12, 20, 100, 110, 111, 115);
+    for (DiskRangeList current = result; current != null; current = current.next) {
+      ByteBuffer data = current.getData();
+      assertEquals(current.getLength(), data.remaining());
+      for (int i = 0; i < data.remaining(); ++i) {
+        assertEquals((byte) (current.getOffset() + i), data.get(data.position() + i));
+      }
+    }
+  }
+
+  @Test
+  public void testNoCoalescing() {
+    MutateHelper helper = new MutateHelper(ranges(0, 10, 20, 30));
+    assertNull(DiskRangeCoalescer.coalesce(helper.next, 5));
+    verifyRanges(helper.next, false, 0, 10, 20, 30);
+
+    // The ranges that already have data are not coalesced.
+    DiskRangeList head = ranges(0, 10);
+    head.insertAfter(new BufferChunk(ByteBuffer.allocate(5), 10));
+    head.next.insertAfter(new DiskRangeList(15, 20));
+    helper = new MutateHelper(head);
+    assertNull(DiskRangeCoalescer.coalesce(helper.next, 5));
+  }
+
+  private static DiskRangeList ranges(long... bounds) {
+    DiskRangeList head = new DiskRangeList(bounds[0], bounds[1]), last = head;
+    for (int i = 2; i < bounds.length; i += 2) {
+      last = last.insertAfter(new DiskRangeList(bounds[i], bounds[i + 1]));
+    }
+    return head;
+  }
+
+  private static void readRanges(DiskRangeList head) {
+    for (DiskRangeList current = head; current != null; current = current.next) {
+      byte[] data = new byte[(int) current.getLength()];
+      for (int i = 0; i < data.length; ++i) {
+        data[i] = (byte) (current.getOffset() + i);
+      }
+      current = current.replaceSelfWith(new BufferChunk(ByteBuffer.wrap(data), current.getOffset()));
+    }
+  }
+
+  private static void verifyRanges(DiskRangeList current, boolean hasData, long... bounds) {
+    for (int i = 0; i < bounds.length; i += 2) {
+      assertEquals(bounds[i], current.getOffset());
+      assertEquals(bounds[i + 1], current.getEnd());
+      assertTrue(hasData == current.hasData());
+      current = current.next;
+    }
+    assertNull(current);
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.io.encoded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.apache.hadoop.hive.common.io.DiskRangeList.MutateHelper;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheMemoryManager;
+import org.apache.hadoop.hive.llap.cache.LowLevelCachePolicy;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Test;
+
+public class TestDiskRangeReadAhead {
+
+  @Test
+  public void testReadAheadAndFill() throws Exception {
+    File file = File.createTempFile("readahead", ".bin");
+    file.deleteOnExit();
+    byte[] content = new byte[1000];
+    for (int i = 0; i < content.length; ++i) {
+      content[i] = (byte) i;
+    }
+    Files.write(file.toPath(), content);
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path path = new Path(file.getPath());
+    DiskRangeReadAhead readAhead = new DiskRangeReadAhead(1, 300, null);
+    try {
+      UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
+      DiskRangeList ranges = new DiskRangeList(0, 100);
+      ranges.insertAfter(new DiskRangeList(200, 300));
+      DiskRangeReadAhead.Request request = readAhead.readAhead(
+          "q1", ranges, 500, () -> fs.open(path), ugi, false);
+      assertNotNull(request);
+      assertEquals(200, readAhead.getQueryBytes("q1"));
+      // The query is over the limit; another query is not.
+      assertNull(readAhead.readAhead(
+          "q1", new DiskRangeList(400, 550), 0, () -> fs.open(path), ugi, false));
+      DiskRangeReadAhead.Request other = readAhead.readAhead(
+          "q2", new DiskRangeList(0, 300), 0, () -> fs.open(path), ugi, true);
+      assertNotNull(other);
+
+      // Only the ranges within the read ranges are filled.
+      DiskRangeList head = new DiskRangeList(10, 50);
+      head.insertAfter(new DiskRangeList(90, 210)).insertAfter(new DiskRangeList(250, 300));
+      MutateHelper helper = new MutateHelper(head);
+      assertEquals(90, request.fill(helper.next));
+      DiskRangeList result = helper.extract();
+      verifyData(result, 510, 40);
+      assertFalse(result.next.hasData());
+      verifyData(result.next.next, 750, 50);
+
+      assertEquals(110, request.finish());
+      assertEquals(0, request.finish());
+      assertEquals(0, readAhead.getQueryBytes("q1"));
+      MutateHelper otherHelper = new MutateHelper(new DiskRangeList(100, 150));
+      assertEquals(50, other.fill(otherHelper.next));
+      DiskRangeList otherResult = otherHelper.extract();
+      assertTrue(otherResult.getData().isDirect());
+      verifyData(otherResult, 100, 50);
+      other.finish();
+      assertEquals(0, readAhead.getQueryBytes("q2"));
+    } finally {
+      readAhead.shutdown();
+    }
+  }
+
+  @Test
+  public void testReservationHeldUntilReadEnds() throws Exception {
+    File file = File.createTempFile("readahead", ".bin");
+    file.deleteOnExit();
+    Files.write(file.toPath(), new byte[100]);
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    DiskRangeReadAhead readAhead = new DiskRangeReadAhead(1, 100, null);
+    Path path = new Path(file.getPath());
+    CountDownLatch started = new CountDownLatch(1), proceed = new CountDownLatch(1);
+    try {
+      UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
+      DiskRangeReadAhead.Request running = readAhead.readAhead("q1", new DiskRangeList(0, 60), 0,
+          () -> {
+            started.countDown();
+            try {
+              proceed.await();
+            } catch (InterruptedException ex) {
+              throw new IOException(ex);
+            }
+            return fs.open(path);
+          }, ugi, false);
+      DiskRangeReadAhead.Request queued = readAhead.readAhead(
+          "q1", new DiskRangeList(60, 100), 0, () -> fs.open(path), ugi, false);
+      assertNotNull(running);
+      assertNotNull(queued);
+      started.await();
+
+      // The queued read is cancelled; the running read keeps its bytes until it ends.
+      assertEquals(0, queued.finish());
+      assertEquals(60, readAhead.getQueryBytes("q1"));
+      assertEquals(0, running.finish());
+      assertEquals(60, readAhead.getQueryBytes("q1"));
+      proceed.countDown();
+      for (int i = 0; i < 100 && readAhead.getQueryBytes("q1") != 0; ++i) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, readAhead.getQueryBytes("q1"));
+    } finally {
+      readAhead.shutdown();
+    }
+  }
+
+  @Test
+  public void testStreamClosedAndDirectMemoryReserved() throws Exception {
+    File file = File.createTempFile("readahead", ".bin");
+    file.deleteOnExit();
+    Files.write(file.toPath(), new byte[100]);
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path path = new Path(file.getPath());
+    LowLevelCacheMemoryManager memoryManager = new LowLevelCacheMemoryManager(
+        90, null, LlapDaemonCacheMetrics.create("test", "1"));
+    DiskRangeReadAhead readAhead = new DiskRangeReadAhead(1, 1000, memoryManager);
+    AtomicInteger openCount = new AtomicInteger(), closeCount = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1), proceed = new CountDownLatch(1);
+    try {
+      UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
+      DiskRangeReadAhead.Request running = readAhead.readAhead("q1", new DiskRangeList(0, 60), 0,
+          () -> {
+            started.countDown();
+            try {
+              proceed.await();
+            } catch (InterruptedException ex) {
+              throw new IOException(ex);
+            }
+            openCount.incrementAndGet();
+            return new FSDataInputStream(fs.open(path)) {
+              @Override
+              public void close() throws IOException {
+                closeCount.incrementAndGet();
+                super.close();
+              }
+            };
+          }, ugi, true);
+      assertNotNull(running);
+      assertEquals(30, memoryManager.getFreeMemory());
+      // The direct buffers cannot be reserved against the cache; heap buffers are not charged.
+      assertNull(readAhead.readAhead(
+          "q1", new DiskRangeList(60, 100), 0, () -> fs.open(path), ugi, true));
+      assertEquals(60, readAhead.getQueryBytes("q1"));
+      DiskRangeReadAhead.Request queued = readAhead.readAhead("q1", new DiskRangeList(60, 100), 0,
+          () -> {
+            openCount.incrementAndGet();
+            return fs.open(path);
+          }, ugi, false);
+      assertNotNull(queued);
+      started.await();
+
+      // The reader is done before the running read has opened its stream; the read still closes
+      // the stream it opens, and the queued read never opens one.
+      assertEquals(0, queued.finish());
+      assertEquals(0, running.finish());
+      proceed.countDown();
+      for (int i = 0; i < 100 && readAhead.getQueryBytes("q1") != 0; ++i) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, readAhead.getQueryBytes("q1"));
+      assertEquals(90, memoryManager.getFreeMemory());
+      assertEquals(1, openCount.get());
+      assertEquals(1, closeCount.get());
+    } finally {
+      readAhead.shutdown();
+    }
+  }
+
+  @Test
+  public void testDirectMemoryNotEvicted() throws Exception {
+    LowLevelCachePolicy evictor = mock(LowLevelCachePolicy.class);
+    when(evictor.evictSomeBlocks(anyLong()))
+        .thenAnswer(invocation -> invocation.getArguments()[0]);
+    LowLevelCacheMemoryManager memoryManager = new LowLevelCacheMemoryManager(
+        100, evictor, LlapDaemonCacheMetrics.create("test", "1"));
+    memoryManager.reserveMemory(80, null);
+    DiskRangeReadAhead readAhead = new DiskRangeReadAhead(1, 1000, memoryManager);
+    try {
+      // The cache could evict to make room, but the read ahead only takes the free memory.
+      assertNull(readAhead.readAhead("q1", new DiskRangeList(0, 40), 0, () -> {
+        throw new AssertionError("Not read");
+      }, UserGroupInformation.getCurrentUser(), true));
+      assertEquals(0, readAhead.getQueryBytes("q1"));
+      assertEquals(20, memoryManager.getFreeMemory());
+      verify(evictor, never()).evictSomeBlocks(anyLong());
+    } finally {
+      readAhead.shutdown();
+    }
+  }
+
+  private static void verifyData(DiskRangeList range, int fileOffset, int length) {
+    assertTrue(range.hasData());
+    ByteBuffer data = range.getData();
+    assertEquals(length, data.remaining());
+    for (int i = 0; i < length; ++i) {
+      assertEquals((byte) (fileOffset + i), data.get(data.position() + i));
+    }
+  }
+}
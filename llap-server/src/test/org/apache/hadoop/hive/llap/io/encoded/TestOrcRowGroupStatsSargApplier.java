@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.io.encoded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hive.llap.io.metadata.OrcRowGroupStats;
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.orc.DoubleColumnStatistics;
+import org.apache.orc.IntegerColumnStatistics;
+import org.apache.orc.OrcFile;
+import org.apache.orc.OrcProto;
+import org.apache.orc.Reader;
+import org.apache.orc.StripeInformation;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.impl.ColumnStatisticsImpl;
+import org.apache.orc.impl.RecordReaderImpl;
+import org.apache.orc.impl.SchemaEvolution;
+import org.junit.Test;
+
+public class TestOrcRowGroupStatsSargApplier {
+  private static final int STRIDE = 1000;
+
+  @Test
+  public void testSameAsSargApplier() throws Exception {
+    TypeDescription schema = TypeDescription.fromString("struct<x:int,y:double,z:string>");
+    SchemaEvolution evolution = new SchemaEvolution(schema, schema, new Reader.Options());
+    OrcProto.RowIndex[] indexes = new OrcProto.RowIndex[4];
+    indexes[1] = OrcProto.RowIndex.newBuilder()
+        .addEntry(intEntry(1000, false, 0, 99))
+        .addEntry(intEntry(900, true, 100, 199))
+        .addEntry(nullEntry())
+        .addEntry(intEntry(500, false, 150, 250)).build();
+    indexes[2] = OrcProto.RowIndex.newBuilder()
+        .addEntry(doubleEntry(1000, false, -1.5, 1.5))
+        .addEntry(doubleEntry(1000, false, 2.0, 3.0))
+        .addEntry(nullEntry())
+        .addEntry(doubleEntry(500, true, 0.0, 10.0)).build();
+    OrcRowGroupStats[] stats = new OrcRowGroupStats[4];
+    stats[1] = new OrcRowGroupStats(encode(indexes[1], schema, 1));
+    stats[2] = new OrcRowGroupStats(encode(indexes[2], schema, 2));
+    assertNull(OrcRowGroupStats.encode(indexes[1], TypeDescription.Category.STRING));
+    List<OrcProto.ColumnEncoding> encodings = Collections.nCopies(4,
+        OrcProto.ColumnEncoding.newBuilder().setKind(OrcProto.ColumnEncoding.Kind.DIRECT).build());
+    StripeInformation stripe = mock(StripeInformation.class);
+    StripeInformation shortStripe = mock(StripeInformation.class);
+    when(stripe.getNumberOfRows()).thenReturn(3500L);
+    when(shortStripe.getNumberOfRows()).thenReturn(2000L);
+
+    SearchArgument[] sargs = new SearchArgument[] {
+        SearchArgumentFactory.newBuilder().startAnd()
+            .lessThan("x", PredicateLeaf.Type.LONG, 120L).end().build(),
+        SearchArgumentFactory.newBuilder().startAnd()
+            .equals("x", PredicateLeaf.Type.LONG, 1000L).end().build(),
+        SearchArgumentFactory.newBuilder().startAnd()
+            .isNull("x", PredicateLeaf.Type.LONG).end().build(),
+        SearchArgumentFactory.newBuilder().startOr()
+            .between("y", PredicateLeaf.Type.FLOAT, 2.5, 2.7)
+            .in("x", PredicateLeaf.Type.LONG, 5L, 205L).end().build(),
+        SearchArgumentFactory.newBuilder().startNot()
+            .lessThan("x", PredicateLeaf.Type.LONG, 1000L).end().build(),
+    };
+    // The row groups with only nulls are never eliminated by these predicates.
+    boolean[][] expected = new boolean[][] {
+        { true, true, true, false },
+        { false, false, true, false },
+        { false, true, true, false },
+        RecordReaderImpl.SargApplier.READ_ALL_RGS,
+        RecordReaderImpl.SargApplier.READ_NO_RGS,
+    };
+    for (int i = 0; i < sargs.length; ++i) {
+      // The last case only reads the first two row groups.
+      StripeInformation si = (i == sargs.length - 1) ? shortStripe : stripe;
+      int[] filterColumns = RecordReaderImpl.mapSargColumnsToOrcInternalColIdx(
+          sargs[i].getLeaves(), evolution);
+      boolean[] orcRgs = new RecordReaderImpl.SargApplier(sargs[i], STRIDE, evolution,
+          OrcFile.WriterVersion.ORC_135, false).pickRowGroups(
+              si, indexes, null, encodings, null, true);
+      boolean[] statsRgs = new OrcRowGroupStatsSargApplier(sargs[i], filterColumns, STRIDE,
+          evolution).pickRowGroups(si, stats, true);
+      assertTrue(Arrays.equals(expected[i], orcRgs));
+      if (orcRgs == null || orcRgs.length == 0) {
+        assertSame(orcRgs, statsRgs);
+      } else {
+        assertTrue(Arrays.equals(orcRgs, statsRgs));
+      }
+    }
+  }
+
+  @Test
+  public void testSum() throws Exception {
+    OrcProto.RowIndex intIndex = OrcProto.RowIndex.newBuilder()
+        .addEntry(intEntry(3, false, 1, 10))
+        .addEntry(OrcProto.RowIndexEntry.newBuilder().setStatistics(
+            OrcProto.ColumnStatistics.newBuilder().setNumberOfValues(2)
+                .setIntStatistics(OrcProto.IntegerStatistics.newBuilder()
+                    .setMinimum(Long.MAX_VALUE - 1).setMaximum(Long.MAX_VALUE)))).build();
+    OrcProto.RowIndex doubleIndex = OrcProto.RowIndex.newBuilder()
+        .addEntry(doubleEntry(3, false, 0.5, 2.0))
+        .addEntry(OrcProto.RowIndexEntry.newBuilder().setStatistics(
+            OrcProto.ColumnStatistics.newBuilder().setNumberOfValues(2)
+                .setDoubleStatistics(OrcProto.DoubleStatistics.newBuilder()
+                    .setMinimum(1.0).setMaximum(2.0).setSum(Double.NaN)))).build();
+    OrcRowGroupStats intStats = new OrcRowGroupStats(
+        OrcRowGroupStats.encode(intIndex, TypeDescription.Category.LONG));
+    OrcRowGroupStats doubleStats = new OrcRowGroupStats(
+        OrcRowGroupStats.encode(doubleIndex, TypeDescription.Category.DOUBLE));
+    for (int rgIx = 0; rgIx < 2; ++rgIx) {
+      // The sums are the same as ORC deserializes, including an overflown sum and a NaN.
+      IntegerColumnStatistics expectedInt = (IntegerColumnStatistics)
+          ColumnStatisticsImpl.deserialize(null, intIndex.getEntry(rgIx).getStatistics());
+      IntegerColumnStatistics actualInt =
+          (IntegerColumnStatistics) intStats.getStatistics(rgIx);
+      assertEquals(expectedInt.isSumDefined(), actualInt.isSumDefined());
+      if (expectedInt.isSumDefined()) {
+        assertEquals(expectedInt.getSum(), actualInt.getSum());
+      }
+      DoubleColumnStatistics expectedDouble = (DoubleColumnStatistics)
+          ColumnStatisticsImpl.deserialize(null, doubleIndex.getEntry(rgIx).getStatistics());
+      assertEquals(expectedDouble.getSum(),
+          ((DoubleColumnStatistics) doubleStats.getStatistics(rgIx)).getSum(), 0);
+    }
+    assertTrue(((IntegerColumnStatistics) intStats.getStatistics(0)).isSumDefined());
+    assertFalse(((IntegerColumnStatistics) intStats.getStatistics(1)).isSumDefined());
+    assertTrue(Double.isNaN(((DoubleColumnStatistics) doubleStats.getStatistics(1)).getSum()));
+  }
+
+  private static ByteBuffer encode(
+      OrcProto.RowIndex index, TypeDescription schema, int colIx) {
+    return OrcRowGroupStats.encode(index, schema.findSubtype(colIx).getCategory());
+  }
+
+  private static OrcProto.RowIndexEntry intEntry(long count, boolean hasNull, long min, long max) {
+    return OrcProto.RowIndexEntry.newBuilder().setStatistics(
+        OrcProto.ColumnStatistics.newBuilder().setNumberOfValues(count).setHasNull(hasNull)
+            .setIntStatistics(OrcProto.IntegerStatistics.newBuilder()
+                .setMinimum(min).setMaximum(max).setSum(min + max))).build();
+  }
+
+  private static OrcProto.RowIndexEntry doubleEntry(
+      long count, boolean hasNull, double min, double max) {
+    return OrcProto.RowIndexEntry.newBuilder().setStatistics(
+        OrcProto.ColumnStatistics.newBuilder().setNumberOfValues(count).setHasNull(hasNull)
+            .setDoubleStatistics(OrcProto.DoubleStatistics.newBuilder()
+                .setMinimum(min).setMaximum(max).setSum(0))).build();
+  }
+
+  private static OrcProto.RowIndexEntry nullEntry() {
+    return OrcProto.RowIndexEntry.newBuilder().setStatistics(
+        OrcProto.ColumnStatistics.newBuilder().setNumberOfValues(0).setHasNull(true)).build();
+  }
+}
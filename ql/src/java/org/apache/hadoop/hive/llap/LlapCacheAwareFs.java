@@ -41,6 +41,7 @@
 import org.apache.hadoop.hive.common.io.DiskRange;
 import org.apache.hadoop.hive.common.io.DiskRangeList;
 import org.apache.hadoop.hive.common.io.encoded.MemoryBuffer;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.io.orc.encoded.CacheChunk;
 import org.apache.hadoop.util.Progressable;
 import org.apache.orc.impl.RecordReaderUtils;
@@ -174,7 +175,10 @@ private static class CacheAwareInputStream extends InputStream
     private final Configuration conf;
     private final DataCache cache;
     private final int bufferSize;
+    private final boolean isNoCache;
     private long position = 0;
+    // The stream for the data that is not in cache; opened on the first miss.
+    private FSDataInputStream diskStream = null;
 
     public CacheAwareInputStream(DataCache cache, Configuration conf,
         TreeMap<Long, Long> chunkIndex, Path path, Object fileKey, int bufferSize, String tag) {
@@ -185,6 +189,7 @@ public CacheAwareInputStream(DataCache cache, Configuration conf,
       this.conf = conf;
       this.bufferSize = bufferSize;
       this.tag = tag;
+      this.isNoCache = HiveConf.getBoolVar(conf, HiveConf.ConfVars.LLAP_IO_NO_CACHE);
     }
 
     public LlapCacheAwareFs.CacheAwareInputStream cloneWithBufferSize(int bufferSize) {
@@ -213,8 +218,8 @@ public DiskRangeList createCacheChunk(
           return new CacheChunk(buffer, startOffset, endOffset);
         }
       }, gotAllData);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("Buffers after cache " + RecordReaderUtils.stringifyDiskRanges(drl));
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Buffers after cache " + RecordReaderUtils.stringifyDiskRanges(drl));
       }
       if (gotAllData.value) {
         long sizeRead = 0;
@@ -238,8 +243,7 @@ public DiskRangeList createCacheChunk(
       // after the cache has inserted cache data. We also assume all the missing parts will
       // represent one or several column chunks, since we always cache on column chunk boundaries.
       DiskRangeList current = drl;
-      FileSystem fs = path.getFileSystem(conf);
-      FSDataInputStream is = fs.open(path, bufferSize);
+      FSDataInputStream is = getDiskStream();
       Allocator allocator = cache.getAllocator();
       long sizeRead = 0;
       while (current != null) {
@@ -264,7 +268,7 @@ public DiskRangeList createCacheChunk(
         is.readFully(array, arrayOffset + offsetFromReadStart, candidateSize);
         sizeRead += candidateSize;
         // Now copy missing chunks (and parts of chunks) into cache buffers.
-        if (fileKey == null || cache == null) continue;
+        if (fileKey == null || cache == null || isNoCache) continue;
         int extraDiskDataOffset = 0;
         // TODO: should we try to make a giant array for one cache call to avoid overhead?
         for (Map.Entry<Long, Long> missingChunk : chunksInThisRead.entrySet()) {
@@ -348,6 +352,21 @@ public DiskRangeList createCacheChunk(
       return len;
     }
 
+    private FSDataInputStream getDiskStream() throws IOException {
+      if (diskStream == null) {
+        diskStream = getFs().open(path, bufferSize);
+      }
+      return diskStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (diskStream != null) {
+        diskStream.close();
+        diskStream = null;
+      }
+    }
+
     private void validateAndUpdatePosition(int len, long sizeRead) {
       if (sizeRead != len) {
         throw new AssertionError("Reading at " + position + " for " + len + ": "
@@ -417,8 +436,14 @@ public boolean seekToNewSource(long arg0) throws IOException {
 
     @Override
     public int read(long arg0, byte[] arg1, int arg2, int arg3) throws IOException {
+      // Positioned reads must not change the position of the stream.
+      long oldPosition = position;
       seek(arg0);
-      return read(arg1, arg2, arg3);
+      try {
+        return read(arg1, arg2, arg3);
+      } finally {
+        seek(oldPosition);
+      }
     }
 
     @Override
@@ -428,7 +453,7 @@ public void readFully(long arg0, byte[] arg1) throws IOException {
 
     @Override
     public void readFully(long arg0, byte[] arg1, int arg2, int arg3) throws IOException {
-      read(arg0, arg1, 0, arg1.length);
+      read(arg0, arg1, arg2, arg3);
     }
   }
 }
@@ -886,6 +886,28 @@ protected boolean updateProgress() {
 
   protected Writable recordValue;
 
+  /**
+   * Writes the record that a batching serde serialized from a batch of rows, instead of going
+   * through the rows; only for the query results, that are not partitioned, list bucketed nor
+   * transactional. The record is null while the serde buffers the rows.
+   */
+  protected void processBatchRecord(Writable record, int numBatchRows) throws HiveException {
+    runTimeNumRows += numBatchRows;
+    if (!filesCreated) {
+      createBucketFiles(fsp);
+    }
+    fpaths = fsp;
+    if (record == null) {
+      return;
+    }
+    try {
+      updateProgress();
+      rowOutWriters = fpaths.outWriters;
+      rowOutWriters[0].write(record);
+    } catch (IOException e) {
+      throw new HiveException(e);
+    }
+  }
 
   @Override
   public void process(Object row, int tag) throws HiveException {
@@ -1280,8 +1302,11 @@ public void closeOp(boolean abort) throws HiveException {
         try {
           recordValue = serializer.serialize(null, inputObjInspectors[0]);
           if (null != fpaths) {
-            rowOutWriters = fpaths.outWriters;
-            rowOutWriters[0].write(recordValue);
+            // ArrowStreamSerDe returns null if it has no rows left
+            if (null != recordValue) {
+              rowOutWriters = fpaths.outWriters;
+              rowOutWriters[0].write(recordValue);
+            }
           } else if(recordValue instanceof ArrowWrapperWritable) {
             //Because LLAP arrow output depends on the ThriftJDBCBinarySerDe code path
             //this is required for 0 row outputs
@@ -20,6 +20,7 @@
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Future;
@@ -30,9 +31,13 @@
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.common.ObjectPair;
+import org.apache.hadoop.hive.common.ValidTxnWriteIdList;
+import org.apache.hadoop.hive.common.ValidWriteIdList;
 import org.apache.hadoop.hive.conf.Constants;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.llap.LlapDaemonInfo;
+import org.apache.hadoop.hive.llap.io.api.LlapProxy;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
 import org.apache.hadoop.hive.ql.HashTableLoaderFactory;
 import org.apache.hadoop.hive.ql.exec.mr.ExecMapperContext;
@@ -58,13 +63,16 @@
 import org.apache.hadoop.hive.ql.exec.spark.SparkUtilities;
 import org.apache.hadoop.hive.ql.exec.tez.LlapObjectCache;
 import org.apache.hadoop.hive.ql.exec.tez.LlapObjectSubCache;
+import org.apache.hadoop.hive.ql.exec.tez.LlapSharedHashTableCache;
 import org.apache.hadoop.hive.ql.io.HiveKey;
 import org.apache.hadoop.hive.ql.log.PerfLogger;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.optimizer.SharedHashTableOptimizer;
 import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
 import org.apache.hadoop.hive.ql.plan.JoinDesc;
 import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.serde2.AbstractSerDe;
@@ -84,6 +92,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.esotericsoftware.kryo.KryoException;
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
 
 /**
  * Map side Join operator implementation.
@@ -97,6 +106,36 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
 
   private transient String cacheKey;
   private transient ObjectCache cache;
+  private transient String queryId;
+  private transient String sharedCacheKey;
+
+  // Settings that decide which hash table implementation is loaded; a shared hash table is only
+  // reused by queries that agree on all of them.
+  private static final ConfVars[] SHARED_CACHE_KEY_VARS = {
+      ConfVars.HIVEMAPJOINUSEOPTIMIZEDTABLE,
+      ConfVars.HIVEUSEHYBRIDGRACEHASHJOIN,
+      ConfVars.HIVEHYBRIDGRACEHASHJOINADAPTIVE,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_MINMAX_ENABLED,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_ENABLED,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_OFFHEAP_ENABLED,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_SPILL_ENABLED,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_ENABLED,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_MAX_RANGE,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_MIN_DENSITY,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_ENABLED,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_MIN_KEYS,
+      ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_FPP };
+
+  // Session settings that change the rows of the small table branch for the same plan, but that
+  // the plan does not record: how the timestamps are read, converted and computed, how the files
+  // are matched to the table schema, and the arithmetic compatibility level. The rest of the row
+  // semantics come from the small table desc; see describeSmallTable.
+  private static final ConfVars[] SHARED_CACHE_KEY_SEMANTIC_VARS = {
+      ConfVars.HIVE_LOCAL_TIME_ZONE,
+      ConfVars.HIVE_INT_TIMESTAMP_CONVERSION_IN_SECONDS,
+      ConfVars.HIVE_PARQUET_TIMESTAMP_SKIP_CONVERSION,
+      ConfVars.HIVE_SCHEMA_EVOLUTION,
+      ConfVars.HIVE_COMPAT };
 
   protected HashTableLoader loader;
 
@@ -107,6 +146,7 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
 
   private UnwrapRowContainer[] unwrapContainer;
   private transient Configuration hconf;
+  private transient boolean isHybridHashJoin;       // whether the hash tables may spill
   private transient boolean hybridMapJoinLeftover;  // whether there's spilled data to be processed
   protected transient MapJoinBytesTableContainer[] spilledMapJoinTables;  // used to hold restored
                                                                           // spilled small tables
@@ -172,6 +212,30 @@ public String getCacheKey() {
     return cacheKey;
   }
 
+  /**
+   * @return Whether the hash tables may spill, either because the mapjoin was planned as a Hybrid
+   *         Grace Hash Join or because it switches to one when they outgrow memory.
+   */
+  public boolean isHybridHashJoin() {
+    return isHybridHashJoin;
+  }
+
+  /**
+   * Whether a mapjoin that was not planned as a Hybrid Grace Hash Join switches to one at runtime
+   * when its hash tables outgrow the memory they may use while they are loaded.
+   */
+  public static boolean isAdaptiveHybridHashJoin(MapJoinDesc desc, Configuration hconf) {
+    if (desc.isHybridHashJoin() ||
+        !HiveConf.getBoolVar(hconf, ConfVars.HIVEHYBRIDGRACEHASHJOINADAPTIVE)) {
+      return false;
+    }
+    // Not for cross products, which are never Hybrid Grace, nor for FULL OUTER, whose non-matched
+    // small table rows are tracked over the whole hash table.
+    JoinCondDesc[] conds = desc.getConds();
+    return !desc.getKeys().values().iterator().next().isEmpty() &&
+        !(conds.length == 1 && conds[0].getType() == JoinDesc.FULL_OUTER_JOIN);
+  }
+
   @Override
   protected void initializeOp(Configuration hconf) throws HiveException {
     this.hconf = hconf;
@@ -183,7 +247,7 @@ protected void initializeOp(Configuration hconf) throws HiveException {
 
     // On Tez only: The hash map might already be cached in the container we run
     // the task in. On MR: The cache is a no-op.
-    String queryId = HiveConf.getVar(hconf, HiveConf.ConfVars.HIVEQUERYID);
+    queryId = HiveConf.getVar(hconf, HiveConf.ConfVars.HIVEQUERYID);
     // The cacheKey may have already been defined in the MapJoin conf spec
     // as part of the Shared Work Optimization if it can be reused among
     // multiple mapjoin operators. In that case, we take that key from conf
@@ -195,6 +259,7 @@ protected void initializeOp(Configuration hconf) throws HiveException {
         MapJoinDesc.generateCacheKey(this.getOperatorId()) :
         conf.getCacheKey() + "_" + this.getClass().getName();
     cache = ObjectCacheFactory.getCache(hconf, queryId, false);
+    sharedCacheKey = generateSharedCacheKey(hconf);
     loader = getHashTableLoader(hconf);
 
     bucketId = hconf.getInt(Constants.LLAP_BUCKET_ID, -1);
@@ -213,6 +278,8 @@ protected void initializeOp(Configuration hconf) throws HiveException {
 
     doFullOuterMapJoinInit();
 
+    isHybridHashJoin = conf.isHybridHashJoin() || isAdaptiveHybridHashJoin(conf, hconf);
+
     generateMapMetaData();
 
     isTestingNoHashTableLoad = HiveConf.getBoolVar(hconf,
@@ -239,7 +306,7 @@ protected void initializeOp(Configuration hconf) throws HiveException {
 
       Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> future =
           cache.retrieveAsync(
-              cacheKey, () ->loadHashTable(mapContext, mrContext));
+              cacheKey, () ->loadSharedHashTable(mapContext, mrContext));
       asyncInitOperations.add(future);
     } else if (!isInputFileChangeSensitive(mapContext)) {
       loadHashTable(mapContext, mrContext);
@@ -411,6 +478,98 @@ private Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> loadHashTabl
     return pair;
   }
 
+  /*
+   * The key of the hash tables in the LLAP cache shared across queries, or null if they are not
+   * shared. The key from the plan is completed with the snapshot write ids of the small tables,
+   * the operator class, the settings that decide which hash table implementation is loaded, a
+   * digest of the small table desc as it is at runtime, and the session settings that change the
+   * values of the small table rows without showing in the desc.
+   */
+  private String generateSharedCacheKey(Configuration hconf) {
+    if (conf.getSharedCacheKey() == null || !LlapProxy.isDaemon() ||
+        !HiveConf.getBoolVar(hconf, ConfVars.LLAP_MAPJOIN_SHARED_CACHE_ENABLED)) {
+      return null;
+    }
+    String txnWriteIdListStr = hconf.get(ValidTxnWriteIdList.VALID_TABLES_WRITEIDS_KEY);
+    if (txnWriteIdListStr == null) {
+      return null;
+    }
+    ValidTxnWriteIdList txnWriteIdList = new ValidTxnWriteIdList(txnWriteIdListStr);
+    StringBuilder sb = new StringBuilder(conf.getSharedCacheKey());
+    sb.append('_').append(this.getClass().getName());
+    for (String tableName : conf.getSharedCacheTables()) {
+      ValidWriteIdList writeIdList = txnWriteIdList.getTableValidWriteIdList(tableName);
+      if (writeIdList == null) {
+        return null;
+      }
+      sb.append('_').append(writeIdList.writeToString());
+    }
+    for (ConfVars var : SHARED_CACHE_KEY_VARS) {
+      sb.append('_').append(hconf.get(var.varname, var.getDefaultValue()));
+    }
+    sb.append('_').append(Hashing.sha256().hashString(
+        describeSmallTable(), StandardCharsets.UTF_8).toString());
+    for (ConfVars var : SHARED_CACHE_KEY_SEMANTIC_VARS) {
+      // Named, since values such as time zone ids may contain the separator.
+      sb.append('_').append(var.varname).append('=')
+          .append(hconf.get(var.varname, var.getDefaultValue()));
+    }
+    return sb.toString();
+  }
+
+  /*
+   * Describes what decides the rows of the hash tables after vectorization: the key and value
+   * serde properties, which include the column types, sort and null orders, and the vectorized
+   * hash table that is built for them.
+   */
+  private String describeSmallTable() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("keyTable=");
+    SharedHashTableOptimizer.describeTableDesc(conf.getKeyTblDesc(), sb);
+    if (conf.getValueTblDescs() != null) {
+      sb.append(";valueTables=");
+      for (TableDesc valueTblDesc : conf.getValueTblDescs()) {
+        SharedHashTableOptimizer.describeTableDesc(valueTblDesc, sb);
+        sb.append(',');
+      }
+    }
+    if (conf.getValueFilteredTblDescs() != null) {
+      sb.append(";valueFilteredTables=");
+      for (TableDesc valueTblDesc : conf.getValueFilteredTblDescs()) {
+        SharedHashTableOptimizer.describeTableDesc(valueTblDesc, sb);
+        sb.append(',');
+      }
+    }
+    if (conf.getVectorDesc() instanceof VectorMapJoinDesc) {
+      VectorMapJoinDesc vectorDesc = (VectorMapJoinDesc) conf.getVectorDesc();
+      sb.append(";native=").append(vectorDesc.getIsVectorizationMapJoinNativeEnabled());
+      sb.append(";optimized=").append(vectorDesc.getUseOptimizedTable());
+      sb.append(";implementation=").append(vectorDesc.getHashTableImplementationType());
+      sb.append(";kind=").append(vectorDesc.getHashTableKind());
+      sb.append(";keyType=").append(vectorDesc.getHashTableKeyType());
+      sb.append(";variation=").append(vectorDesc.getVectorMapJoinVariation());
+      sb.append(";minMax=").append(vectorDesc.getMinMaxEnabled());
+      sb.append(";nullSafes=").append(vectorDesc.getHasNullSafes());
+    }
+    return sb.toString();
+  }
+
+  // Load Hash table through the LLAP cache shared across queries, when the plan allows it
+  private Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> loadSharedHashTable(
+          ExecMapperContext mapContext, MapredContext mrContext) throws HiveException {
+    if (sharedCacheKey == null) {
+      return loadHashTable(mapContext, mrContext);
+    }
+    // The budget is a part of the executor memory the daemon accounts for, not of the whole heap,
+    // which also holds the IO cache of an on-heap LLAP cache.
+    long executorMemory = LlapDaemonInfo.INSTANCE.isLlap()
+        ? LlapDaemonInfo.INSTANCE.getExecutorMemory() : Runtime.getRuntime().maxMemory();
+    long maxSize = (long) (executorMemory * HiveConf.getFloatVar(
+        hconf, ConfVars.LLAP_MAPJOIN_SHARED_CACHE_MAX_EXECUTOR_MEMORY_FRACTION));
+    return LlapSharedHashTableCache.getInstance().retrieve(sharedCacheKey, queryId, maxSize,
+        () -> loadHashTable(mapContext, mrContext));
+  }
+
   // Load Hash table for Bucket MapJoin
   private Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> loadHashTableBMJ(
           ExecMapperContext mapContext, MapredContext mrContext) throws HiveException {
@@ -557,7 +716,7 @@ public void process(Object row, int tag) throws HiveException {
             if (!noOuterJoin) {
               // For Hybrid Grace Hash Join, during the 1st round processing,
               // we only keep the LEFT side if the row is not spilled
-              if (!conf.isHybridHashJoin() || hybridMapJoinLeftover ||
+              if (!isHybridHashJoin || hybridMapJoinLeftover ||
                   (joinResult != JoinUtil.JoinResult.SPILL && !bigTableRowSpilled)) {
                 joinNeeded = true;
                 storage[pos] = dummyObjVectors[pos];
@@ -777,66 +936,7 @@ public void closeOp(boolean abort) throws HiveException {
     // For Hybrid Grace Hash Join, we need to see if there is any spilled data to be processed next
     if (spilled) {
       if (!abort) {
-        if (hashMapRowGetters == null) {
-          hashMapRowGetters = new ReusableGetAdaptor[mapJoinTables.length];
-        }
-        int numPartitions = 0;
-        // Find out number of partitions for each small table (should be same across tables)
-        for (byte pos = 0; pos < mapJoinTables.length; pos++) {
-          if (pos != conf.getPosBigTable()) {
-            firstSmallTable = (HybridHashTableContainer) mapJoinTables[pos];
-            numPartitions = firstSmallTable.getHashPartitions().length;
-            break;
-          }
-        }
-        assert numPartitions != 0 : "Number of partitions must be greater than 0!";
-
-        if (firstSmallTable.hasSpill()) {
-          spilledMapJoinTables = new MapJoinBytesTableContainer[mapJoinTables.length];
-          hybridMapJoinLeftover = true;
-
-          // Clear all in-memory partitions first
-          for (byte pos = 0; pos < mapJoinTables.length; pos++) {
-            MapJoinTableContainer tableContainer = mapJoinTables[pos];
-            if (tableContainer != null && tableContainer instanceof HybridHashTableContainer) {
-              HybridHashTableContainer hybridHtContainer = (HybridHashTableContainer) tableContainer;
-              hybridHtContainer.dumpStats();
-
-              HashPartition[] hashPartitions = hybridHtContainer.getHashPartitions();
-              // Clear all in memory partitions first
-              for (int i = 0; i < hashPartitions.length; i++) {
-                if (!hashPartitions[i].isHashMapOnDisk()) {
-                  hybridHtContainer.setTotalInMemRowCount(
-                      hybridHtContainer.getTotalInMemRowCount() -
-                          hashPartitions[i].getHashMapFromMemory().getNumValues());
-                  hashPartitions[i].getHashMapFromMemory().clear();
-                }
-              }
-              assert hybridHtContainer.getTotalInMemRowCount() == 0;
-            }
-          }
-
-          // Reprocess the spilled data
-          for (int i = 0; i < numPartitions; i++) {
-            HashPartition[] hashPartitions = firstSmallTable.getHashPartitions();
-            if (hashPartitions[i].isHashMapOnDisk()) {
-              try {
-                continueProcess(i);     // Re-process spilled data
-              } catch (KryoException ke) {
-                LOG.error("Processing the spilled data failed due to Kryo error!");
-                LOG.error("Cleaning up all spilled data!");
-                cleanupGraceHashJoin();
-                throw new HiveException(ke);
-              } catch (Exception e) {
-                throw new HiveException(e);
-              }
-              for (byte pos = 0; pos < order.length; pos++) {
-                if (pos != conf.getPosBigTable())
-                  spilledMapJoinTables[pos] = null;
-              }
-            }
-          }
-        }
+        processSpilledPartitions();
       }
 
       if (LOG.isInfoEnabled()) {
@@ -863,6 +963,74 @@ public void closeOp(boolean abort) throws HiveException {
     super.closeOp(abort);
   }
 
+  /**
+   * Hybrid Grace Hash Join: join the spilled small table partitions with the big table rows that
+   * were spilled along with them.
+   * @throws HiveException
+   */
+  protected void processSpilledPartitions() throws HiveException {
+    if (hashMapRowGetters == null) {
+      hashMapRowGetters = new ReusableGetAdaptor[mapJoinTables.length];
+    }
+    int numPartitions = 0;
+    // Find out number of partitions for each small table (should be same across tables)
+    for (byte pos = 0; pos < mapJoinTables.length; pos++) {
+      if (pos != conf.getPosBigTable()) {
+        firstSmallTable = (HybridHashTableContainer) mapJoinTables[pos];
+        numPartitions = firstSmallTable.getHashPartitions().length;
+        break;
+      }
+    }
+    assert numPartitions != 0 : "Number of partitions must be greater than 0!";
+
+    if (firstSmallTable.hasSpill()) {
+      spilledMapJoinTables = new MapJoinBytesTableContainer[mapJoinTables.length];
+      hybridMapJoinLeftover = true;
+
+      // Clear all in-memory partitions first
+      for (byte pos = 0; pos < mapJoinTables.length; pos++) {
+        MapJoinTableContainer tableContainer = mapJoinTables[pos];
+        if (tableContainer != null && tableContainer instanceof HybridHashTableContainer) {
+          HybridHashTableContainer hybridHtContainer = (HybridHashTableContainer) tableContainer;
+          hybridHtContainer.dumpStats();
+
+          HashPartition[] hashPartitions = hybridHtContainer.getHashPartitions();
+          // Clear all in memory partitions first
+          for (int i = 0; i < hashPartitions.length; i++) {
+            if (!hashPartitions[i].isHashMapOnDisk()) {
+              hybridHtContainer.setTotalInMemRowCount(
+                  hybridHtContainer.getTotalInMemRowCount() -
+                      hashPartitions[i].getHashMapFromMemory().getNumValues());
+              hashPartitions[i].getHashMapFromMemory().clear();
+            }
+          }
+          assert hybridHtContainer.getTotalInMemRowCount() == 0;
+        }
+      }
+
+      // Reprocess the spilled data
+      for (int i = 0; i < numPartitions; i++) {
+        HashPartition[] hashPartitions = firstSmallTable.getHashPartitions();
+        if (hashPartitions[i].isHashMapOnDisk()) {
+          try {
+            continueProcess(i);     // Re-process spilled data
+          } catch (KryoException ke) {
+            LOG.error("Processing the spilled data failed due to Kryo error!");
+            LOG.error("Cleaning up all spilled data!");
+            cleanupGraceHashJoin();
+            throw new HiveException(ke);
+          } catch (Exception e) {
+            throw new HiveException(e);
+          }
+          for (byte pos = 0; pos < order.length; pos++) {
+            if (pos != conf.getPosBigTable())
+              spilledMapJoinTables[pos] = null;
+          }
+        }
+      }
+    }
+  }
+
   private void clearAllTableContainers() {
     if (mapJoinTables != null) {
       for (MapJoinTableContainer tableContainer : mapJoinTables) {
@@ -66,6 +66,7 @@ public class HashTableLoader implements org.apache.hadoop.hive.ql.exec.HashTable
   private MapJoinDesc desc;
   private TezContext tezContext;
   private String cacheKey;
+  private boolean isHybridHashJoin;
 
   @Override
   public void init(ExecMapperContext context, MapredContext mrContext, Configuration hconf,
@@ -74,6 +75,7 @@ public void init(ExecMapperContext context, MapredContext mrContext, Configurati
     this.hconf = hconf;
     this.desc = joinOp.getConf();
     this.cacheKey = joinOp.getCacheKey();
+    this.isHybridHashJoin = joinOp.isHybridHashJoin();
   }
 
   @Override
@@ -92,7 +94,7 @@ public void load(MapJoinTableContainer[] mapJoinTables,
 
     boolean useOptimizedTables = HiveConf.getBoolVar(
         hconf, HiveConf.ConfVars.HIVEMAPJOINUSEOPTIMIZEDTABLE);
-    boolean useHybridGraceHashJoin = desc.isHybridHashJoin();
+    boolean useHybridGraceHashJoin = isHybridHashJoin;
     boolean isFirstKey = true;
 
     // Get the total available memory from memory manager
@@ -113,6 +115,41 @@ public void load(MapJoinTableContainer[] mapJoinTables,
       totalMapJoinMemory = (long) (processMaxMemory * hashtableMemoryUsage);
     }
 
+    MemoryMonitorInfo memoryMonitorInfo = desc.getMemoryMonitorInfo();
+    boolean doMemCheck = false;
+    long effectiveThreshold = 0;
+    if (memoryMonitorInfo != null) {
+      effectiveThreshold = memoryMonitorInfo.getEffectiveThreshold(desc.getMaxMemoryAvailable());
+
+      // hash table loading happens in server side, LlapDecider could kick out some fragments to run outside of LLAP.
+      // Flip the flag at runtime in case if we are running outside of LLAP
+      if (!LlapDaemonInfo.INSTANCE.isLlap()) {
+        memoryMonitorInfo.setLlap(false);
+      }
+      if (memoryMonitorInfo.doMemoryMonitoring()) {
+        doMemCheck = true;
+        if (LOG.isInfoEnabled()) {
+          LOG.info("Memory monitoring for hash table loader enabled. {}", memoryMonitorInfo);
+        }
+      }
+    }
+
+    if (!doMemCheck) {
+      if (LOG.isInfoEnabled()) {
+        LOG.info("Not doing hash table memory monitoring. {}", memoryMonitorInfo);
+      }
+    }
+
+    // A mapjoin that switches to Hybrid Grace Hash Join at runtime only spills what would not fit
+    // under the memory monitor threshold that would otherwise fail the load.
+    if (useHybridGraceHashJoin && !desc.isHybridHashJoin()) {
+      if (doMemCheck) {
+        totalMapJoinMemory = effectiveThreshold;
+      }
+      LOG.info("Using Hybrid Grace Hash Join with " + totalMapJoinMemory + " bytes in case the " +
+          "hash tables outgrow memory");
+    }
+
     // Only applicable to n-way Hybrid Grace Hash Join
     HybridHashTableConf nwayConf = null;
     long totalSize = 0;
@@ -151,30 +188,6 @@ public void load(MapJoinTableContainer[] mapJoinTables,
       }
       nwayConf.setNumberOfPartitions(numPartitions);
     }
-    MemoryMonitorInfo memoryMonitorInfo = desc.getMemoryMonitorInfo();
-    boolean doMemCheck = false;
-    long effectiveThreshold = 0;
-    if (memoryMonitorInfo != null) {
-      effectiveThreshold = memoryMonitorInfo.getEffectiveThreshold(desc.getMaxMemoryAvailable());
-
-      // hash table loading happens in server side, LlapDecider could kick out some fragments to run outside of LLAP.
-      // Flip the flag at runtime in case if we are running outside of LLAP
-      if (!LlapDaemonInfo.INSTANCE.isLlap()) {
-        memoryMonitorInfo.setLlap(false);
-      }
-      if (memoryMonitorInfo.doMemoryMonitoring()) {
-        doMemCheck = true;
-        if (LOG.isInfoEnabled()) {
-          LOG.info("Memory monitoring for hash table loader enabled. {}", memoryMonitorInfo);
-        }
-      }
-    }
-
-    if (!doMemCheck) {
-      if (LOG.isInfoEnabled()) {
-        LOG.info("Not doing hash table memory monitoring. {}", memoryMonitorInfo);
-      }
-    }
     for (int pos = 0; pos < mapJoinTables.length; pos++) {
       if (pos == desc.getPosBigTable()) {
         continue;
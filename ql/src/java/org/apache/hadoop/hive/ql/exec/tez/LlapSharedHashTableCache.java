@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.tez;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast.VectorMapJoinFastTableContainer;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * LlapSharedHashTableCache. Map join hash tables shared by all the queries running in an LLAP
+ * daemon.
+ *
+ * Unlike {@link LlapObjectCache}, which lives as long as one query, entries here outlive the
+ * queries that built them. Each entry is referenced by the queries using it; a reference is taken
+ * when a query retrieves the entry and released when the query completes. Entries that no
+ * running query references are evicted in LRU order when a new hash table does not fit in the
+ * memory budget, or all at once by {@link #purge()}. A hash table that is larger than the budget,
+ * or that spilled, is handed to the query that built it but not cached.
+ */
+public final class LlapSharedHashTableCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LlapSharedHashTableCache.class.getName());
+
+  private static final LlapSharedHashTableCache INSTANCE = new LlapSharedHashTableCache();
+
+  public static LlapSharedHashTableCache getInstance() {
+    return INSTANCE;
+  }
+
+  private static final class Entry {
+    final Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> value;
+    final long size;
+    final Set<String> queryIds = new HashSet<>();
+
+    Entry(Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> value, long size) {
+      this.value = value;
+      this.size = size;
+    }
+  }
+
+  /*
+   * The lock of a key, with the number of the threads holding or waiting for it. The count is
+   * only changed under the cache monitor, so the lock is removed exactly when no thread can
+   * still take it.
+   */
+  private static final class KeyLock {
+    final ReentrantLock lock = new ReentrantLock();
+    int users;
+  }
+
+  // Access ordered, so iteration starts at the least recently used entry.
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final Map<String, KeyLock> locks = new HashMap<>();
+
+  private long maxSize;
+  private long totalSize;
+
+  @VisibleForTesting
+  LlapSharedHashTableCache() {
+  }
+
+  /**
+   * Retrieves the hash tables for the key, loading them if they are not cached, and references
+   * them on behalf of the query until {@link #release(String)} is called for it.
+   *
+   * @param key the shared cache key, including the snapshot write ids of the small tables
+   * @param queryId the query taking the reference
+   * @param maxSize the memory budget of the cache in bytes
+   * @param fn function to load the hash tables if they are not cached
+   */
+  public Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> retrieve(String key,
+      String queryId, long maxSize,
+      Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> fn)
+      throws HiveException {
+    KeyLock keyLock;
+    synchronized (this) {
+      this.maxSize = maxSize;
+      Entry entry = lookup(key, queryId);
+      if (entry != null) {
+        return entry.value;
+      }
+      keyLock = locks.computeIfAbsent(key, k -> new KeyLock());
+      ++keyLock.users;
+    }
+
+    // Only one query builds a given hash table; the others wait for it.
+    keyLock.lock.lock();
+    try {
+      synchronized (this) {
+        Entry entry = lookup(key, queryId);
+        if (entry != null) {
+          return entry.value;
+        }
+      }
+
+      Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> value;
+      try {
+        value = fn.call();
+      } catch (HiveException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new HiveException(e);
+      }
+
+      long size = 0;
+      for (MapJoinTableContainer container : value.getLeft()) {
+        if (container != null) {
+          if (container.hasSpill()) {
+            LOG.info("Not sharing hash table " + key + " because it spilled");
+            return value;
+          }
+          size += getMemorySize(container);
+        }
+      }
+
+      synchronized (this) {
+        Entry entry = lookup(key, queryId);
+        if (entry != null) {
+          // Never replace a cached entry, which would count the key twice in totalSize.
+          return entry.value;
+        }
+        if (makeRoom(size)) {
+          entry = new Entry(value, size);
+          entry.queryIds.add(queryId);
+          entries.put(key, entry);
+          totalSize += size;
+          LOG.info("Sharing hash table " + key + " of " + size + " bytes; " + totalSize +
+              " of " + this.maxSize + " bytes used by " + entries.size() + " shared hash tables");
+        } else {
+          LOG.info("Not sharing hash table " + key + " of " + size + " bytes; " + totalSize +
+              " of " + this.maxSize + " bytes are used by referenced hash tables");
+        }
+      }
+      return value;
+    } finally {
+      synchronized (this) {
+        if (--keyLock.users == 0) {
+          locks.remove(key);
+        }
+      }
+      keyLock.lock.unlock();
+    }
+  }
+
+  /**
+   * Releases the references the query holds. The hash tables stay cached for later queries.
+   */
+  public synchronized void release(String queryId) {
+    for (Entry entry : entries.values()) {
+      entry.queryIds.remove(queryId);
+    }
+  }
+
+  /**
+   * Evicts all the hash tables no running query references.
+   *
+   * @return the estimated number of bytes evicted
+   */
+  public synchronized long purge() {
+    long evicted = 0;
+    Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next().getValue();
+      if (entry.queryIds.isEmpty()) {
+        evicted += entry.size;
+        it.remove();
+        freeOffHeapMemory(entry);
+      }
+    }
+    totalSize -= evicted;
+    if (evicted > 0) {
+      LOG.info("Purged " + evicted + " bytes of shared hash tables");
+    }
+    return evicted;
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return entries.size();
+  }
+
+  @VisibleForTesting
+  synchronized long getTotalSize() {
+    return totalSize;
+  }
+
+  @VisibleForTesting
+  synchronized int getLockCount() {
+    return locks.size();
+  }
+
+  @VisibleForTesting
+  synchronized int getRefCount(String key) {
+    Entry entry = entries.get(key);
+    return (entry == null) ? 0 : entry.queryIds.size();
+  }
+
+  private Entry lookup(String key, String queryId) {
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      entry.queryIds.add(queryId);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Found shared hash table " + key + " referenced by " + entry.queryIds.size() +
+            " queries");
+      }
+    }
+    return entry;
+  }
+
+  /*
+   * Evicts unreferenced entries, least recently used first, until size more bytes fit in the
+   * budget. Returns false, without evicting anything, when they cannot fit.
+   */
+  private boolean makeRoom(long size) {
+    long evictable = 0;
+    for (Entry entry : entries.values()) {
+      if (entry.queryIds.isEmpty()) {
+        evictable += entry.size;
+      }
+    }
+    if (totalSize - evictable + size > maxSize) {
+      return false;
+    }
+    Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+    while (totalSize + size > maxSize && it.hasNext()) {
+      Map.Entry<String, Entry> e = it.next();
+      Entry entry = e.getValue();
+      if (entry.queryIds.isEmpty()) {
+        LOG.info("Evicting shared hash table " + e.getKey() + " of " + entry.size + " bytes");
+        totalSize -= entry.size;
+        it.remove();
+        freeOffHeapMemory(entry);
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Frees the off-heap slots of an evicted entry. No running query references it, and the
+   * queries that did have completed, so nothing can read the hash tables any more.
+   */
+  private static void freeOffHeapMemory(Entry entry) {
+    for (MapJoinTableContainer container : entry.value.getLeft()) {
+      if (container instanceof VectorMapJoinFastTableContainer) {
+        ((VectorMapJoinFastTableContainer) container).freeOffHeapMemory();
+      }
+    }
+  }
+
+  private static long getMemorySize(MapJoinTableContainer container) {
+    long size = container.getEstimatedMemorySize();
+    if (container instanceof VectorMapJoinFastTableContainer) {
+      size += ((VectorMapJoinFastTableContainer) container).getOffHeapMemorySize();
+    }
+    return size;
+  }
+}
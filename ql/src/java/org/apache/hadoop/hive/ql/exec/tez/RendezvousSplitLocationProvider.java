@@ -0,0 +1,206 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.tez;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.split.SplitLocationProvider;
+import org.apache.hive.common.util.Murmur3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Maps a split (path + offset) to a location using rendezvous (highest random weight) hashing.
+ *
+ * Every location gets a weight for the split, derived from the location name and the split, and
+ * the split goes to the location with the highest weight. Unlike the positional hashing in
+ * {@link HostAffinitySplitLocationProvider}, the choice does not depend on the order of the
+ * locations or on the slots of the nodes that are gone; when a node leaves, only the splits that
+ * were mapped to it move, and a new node only takes over the splits it gets the highest weight
+ * for, so the rest of the LLAP cache stays valid.
+ *
+ * Optionally, the load is bounded: a location does not get more than maxLoadFactor times the
+ * average number of splits assigned so far, and the split goes to the location with the next
+ * highest weight instead. This keeps a few large tables from piling up on one node, at the cost
+ * of making the overflowing splits depend on the other splits of the same job.
+ */
+public class RendezvousSplitLocationProvider implements SplitLocationProvider {
+
+  private final static Logger LOG = LoggerFactory.getLogger(
+      RendezvousSplitLocationProvider.class);
+  private final boolean isDebugEnabled = LOG.isDebugEnabled();
+
+  private static final int MAX_LOCATIONS = 0x10000;
+
+  private final String[] locations;
+  private final long[] locationHashes;
+  private final Map<String, Integer> locationIndexes;
+  private final float maxLoadFactor;
+  // The state for the bounded load; only used when maxLoadFactor is set.
+  private final int[] loads;
+  private final Map<String, Integer> assignments = new HashMap<>();
+  private int assignedCount = 0;
+
+  public RendezvousSplitLocationProvider(List<String> knownLocations, float maxLoadFactor) {
+    Preconditions.checkState(knownLocations != null && !knownLocations.isEmpty(),
+        RendezvousSplitLocationProvider.class.getName() + " needs at least 1 location to function");
+    Preconditions.checkArgument(maxLoadFactor == 0 || maxLoadFactor >= 1,
+        "The max load factor should be 0 (unbounded) or at least 1: " + maxLoadFactor);
+    List<String> validLocations = new ArrayList<>(knownLocations.size());
+    for (String location : knownLocations) {
+      // Skip the placeholders for the inactive nodes, and the duplicates.
+      if (location != null && !validLocations.contains(location)) {
+        validLocations.add(location);
+      }
+    }
+    Preconditions.checkState(!validLocations.isEmpty(),
+        RendezvousSplitLocationProvider.class.getName() + " needs at least 1 active location");
+    Preconditions.checkState(validLocations.size() <= MAX_LOCATIONS,
+        "Too many locations: " + validLocations.size());
+    this.locations = validLocations.toArray(new String[validLocations.size()]);
+    this.locationHashes = new long[locations.length];
+    this.locationIndexes = new HashMap<>();
+    for (int i = 0; i < locations.length; ++i) {
+      byte[] bytes = locations[i].getBytes(StandardCharsets.UTF_8);
+      locationHashes[i] = Murmur3.hash64(bytes, 0, bytes.length, Murmur3.DEFAULT_SEED);
+      locationIndexes.put(locations[i], i);
+    }
+    this.maxLoadFactor = maxLoadFactor;
+    this.loads = new int[locations.length];
+  }
+
+  @Override
+  public String[] getLocations(InputSplit split) throws IOException {
+    if (!(split instanceof FileSplit)) {
+      if (isDebugEnabled) {
+        LOG.debug("Split: " + split + " is not a FileSplit. Using default locations");
+      }
+      return split.getLocations();
+    }
+    FileSplit fsplit = (FileSplit) split;
+    int[] candidates = preferLocations(fsplit);
+    String path = fsplit.getPath().toString();
+    int index = (maxLoadFactor == 0)
+        ? determineLocation(candidates, path, fsplit.getStart())
+        : determineBoundedLocation(candidates, path, fsplit.getStart());
+    if (isDebugEnabled) {
+      LOG.debug("Split at " + path + " with offset= " + fsplit.getStart() + ", length="
+          + fsplit.getLength() + " mapped to location=" + locations[index]);
+    }
+    return new String[] { locations[index] };
+  }
+
+  private int[] preferLocations(FileSplit fsplit) throws IOException {
+    String[] datanodes = fsplit.getLocations();
+    if (datanodes != null && datanodes.length > 0) {
+      int[] targets = new int[datanodes.length];
+      int count = 0;
+      for (String datanode : datanodes) {
+        Integer index = locationIndexes.get(datanode);
+        if (index != null) {
+          targets[count++] = index;
+        }
+      }
+      if (count > 0) {
+        return Arrays.copyOf(targets, count);
+      }
+    }
+    // Cloud FS, or no LLAP daemons on the datanodes.
+    return null;
+  }
+
+  private int determineLocation(int[] candidates, String path, long start) {
+    long splitHash = hashSplit(path, start);
+    int count = (candidates == null) ? locations.length : candidates.length;
+    int bestIndex = -1;
+    long bestWeight = 0;
+    for (int i = 0; i < count; ++i) {
+      int index = (candidates == null) ? i : candidates[i];
+      long weight = weight(splitHash, locationHashes[index]);
+      if (bestIndex == -1 || weight > bestWeight) {
+        bestIndex = index;
+        bestWeight = weight;
+      }
+    }
+    return bestIndex;
+  }
+
+  private synchronized int determineBoundedLocation(int[] candidates, String path, long start) {
+    // The same split must always get the same location, and must only be counted once.
+    String key = path + "@" + (start >> 3);
+    Integer assigned = assignments.get(key);
+    if (assigned != null) {
+      return assigned;
+    }
+    long splitHash = hashSplit(path, start);
+    int count = (candidates == null) ? locations.length : candidates.length;
+    long[] weights = new long[count];
+    for (int i = 0; i < count; ++i) {
+      int index = (candidates == null) ? i : candidates[i];
+      // Pack the candidate into the low bits, so that sorting the weights sorts the candidates.
+      weights[i] = (weight(splitHash, locationHashes[index]) & ~0xffffL) | i;
+    }
+    Arrays.sort(weights);
+    int maxLoad = (int) Math.ceil(maxLoadFactor * (assignedCount + 1) / locations.length);
+    int result = -1;
+    for (int i = count - 1; i >= 0; --i) {
+      int candidate = (int) (weights[i] & 0xffffL);
+      int index = (candidates == null) ? candidate : candidates[candidate];
+      if (result == -1) {
+        result = index; // If every candidate is full, go with the highest weight anyway.
+      }
+      if (loads[index] < maxLoad) {
+        result = index;
+        break;
+      }
+    }
+    ++loads[result];
+    ++assignedCount;
+    assignments.put(key, result);
+    return result;
+  }
+
+  private static long weight(long splitHash, long locationHash) {
+    // The murmur3 64-bit finalizer, so that every bit of both hashes affects the order.
+    long h = splitHash ^ locationHash;
+    h ^= (h >>> 33);
+    h *= 0xff51afd7ed558ccdL;
+    h ^= (h >>> 33);
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= (h >>> 33);
+    return h;
+  }
+
+  private static long hashSplit(String path, long start) {
+    // As in HostAffinitySplitLocationProvider, only the start offset is used, so that splits
+    // generated on block boundaries and on stripe boundaries map to the same node.
+    byte[] pathBytes = path.getBytes();
+    byte[] allBytes = new byte[pathBytes.length + 8];
+    System.arraycopy(pathBytes, 0, allBytes, 0, pathBytes.length);
+    SerDeUtils.writeLong(allBytes, pathBytes.length, start >> 3);
+    return Murmur3.hash64(allBytes, 0, allBytes.length, Murmur3.DEFAULT_SEED);
+  }
+}
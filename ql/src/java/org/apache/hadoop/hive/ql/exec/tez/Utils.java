@@ -52,8 +52,11 @@ public static SplitLocationProvider getSplitLocationProvider(Configuration conf,
       LlapRegistryService serviceRegistry = LlapRegistryService.getClient(conf);
       LOG.info("Using LLAP instance " + serviceRegistry.getApplicationId());
 
+      boolean useRendezvous = "rendezvous".equalsIgnoreCase(
+          HiveConf.getVar(conf, HiveConf.ConfVars.LLAP_CLIENT_CONSISTENT_SPLITS_HASHING));
+      // Rendezvous hashing does not depend on the positions, so it doesn't need the inactive slots.
       Collection<LlapServiceInstance> serviceInstances =
-        serviceRegistry.getInstances().getAllInstancesOrdered(true);
+        serviceRegistry.getInstances().getAllInstancesOrdered(!useRendezvous);
       Preconditions.checkArgument(!serviceInstances.isEmpty(),
           "No running LLAP daemons! Please check LLAP service status and zookeeper configuration");
       ArrayList<String> locations = new ArrayList<>(serviceInstances.size());
@@ -64,7 +67,12 @@ public static SplitLocationProvider getSplitLocationProvider(Configuration conf,
         }
         locations.add(serviceInstance.getHost());
       }
-      splitLocationProvider = new HostAffinitySplitLocationProvider(locations);
+      if (useRendezvous) {
+        splitLocationProvider = new RendezvousSplitLocationProvider(locations, HiveConf.getFloatVar(
+            conf, HiveConf.ConfVars.LLAP_CLIENT_CONSISTENT_SPLITS_MAX_LOAD_FACTOR));
+      } else {
+        splitLocationProvider = new HostAffinitySplitLocationProvider(locations);
+      }
     } else {
       splitLocationProvider = new SplitLocationProvider() {
         @Override
@@ -21,11 +21,14 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
 import org.apache.hadoop.hive.ql.exec.FileSinkOperator;
+import org.apache.hadoop.hive.ql.io.AcidUtils;
+import org.apache.hadoop.hive.ql.io.arrow.ArrowStreamSerDe;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.FileSinkDesc;
 import org.apache.hadoop.hive.ql.plan.OperatorDesc;
 import org.apache.hadoop.hive.ql.plan.VectorDesc;
 import org.apache.hadoop.hive.ql.plan.VectorFileSinkDesc;
+import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -51,6 +54,9 @@ public class VectorFileSinkOperator extends FileSinkOperator
 
   protected transient Object[] singleRow;
 
+  // Set if the query results are written as Arrow streams, straight from the batches
+  private transient ArrowStreamSerDe arrowStreamSerDe;
+
   public VectorFileSinkOperator(CompilationOpContext ctx, OperatorDesc conf,
       VectorizationContext vContext, VectorDesc vectorDesc) {
     this(ctx);
@@ -84,11 +90,23 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     super.initializeOp(hconf);
 
     firstBatch = true;
+    if (serializer instanceof ArrowStreamSerDe && !bDynParts && lbCtx == null
+        && conf.getWriteType() == AcidUtils.Operation.NOT_ACID) {
+      arrowStreamSerDe = (ArrowStreamSerDe) serializer;
+    }
   }
 
   @Override
   public void process(Object data, int tag) throws HiveException {
     VectorizedRowBatch batch = (VectorizedRowBatch) data;
+    if (arrowStreamSerDe != null) {
+      try {
+        processBatchRecord(arrowStreamSerDe.serializeBatch(batch), batch.size);
+      } catch (SerDeException e) {
+        throw new HiveException(e);
+      }
+      return;
+    }
     if (firstBatch) {
       vectorExtractRow = new VectorExtractRow();
       vectorExtractRow.init((StructObjectInspector) inputObjInspectors[0], vContext.getProjectedColumns());
@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hive.ql.exec.vector;
 
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.ref.SoftReference;
@@ -46,9 +47,16 @@
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriter;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriterFactory;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorAggregateExpression;
+import org.apache.hadoop.hive.ql.exec.vector.groupby.VectorGroupByFastAggregation;
+import org.apache.hadoop.hive.ql.exec.vector.groupby.VectorGroupByFastBytesHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.groupby.VectorGroupByFastHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.groupby.VectorGroupByFastLongHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.groupby.VectorGroupByFastTwoLongHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.rowbytescontainer.VectorRowBytesContainer;
 import org.apache.hadoop.hive.ql.exec.vector.wrapper.VectorHashKeyWrapperBase;
 import org.apache.hadoop.hive.ql.exec.vector.wrapper.VectorHashKeyWrapperBatch;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.HiveUtils;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.GroupByDesc;
 import org.apache.hadoop.hive.ql.plan.OperatorDesc;
@@ -56,9 +64,13 @@
 import org.apache.hadoop.hive.ql.plan.VectorGroupByDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.lazybinary.fast.LazyBinaryDeserializeRead;
+import org.apache.hadoop.hive.serde2.lazybinary.fast.LazyBinarySerializeWrite;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.mapred.JobConf;
@@ -81,6 +93,12 @@ public class VectorGroupByOperator extends Operator<GroupByDesc>
   private static final Logger LOG = LoggerFactory.getLogger(
       VectorGroupByOperator.class.getName());
 
+  /**
+   * The deepest spill level a merged partition is spilled again into; beyond it, the groups of
+   * a merged partition are kept in memory.
+   */
+  private static final int MAX_SPILL_LEVEL = 8;
+
   private VectorizationContext vContext;
   private VectorGroupByDesc vectorDesc;
 
@@ -354,8 +372,71 @@ private class ProcessingModeHashAggregate extends ProcessingModeBase {
      */
     private long numRowsCompareHashAggr;
 
+    /**
+     * When true, memory pressure spills hash partitions of the key space to local disk instead
+     * of flushing partial results.  See {@link VectorGroupBySpillPartition}.
+     */
+    private boolean spillEnabled;
+
+    private int numSpillPartitions;
+
+    private String spillLocalDirs;
+
+    /**
+     * The spill partitions of the current spill level, created by the first spill of the level.
+     */
+    private VectorGroupBySpillPartition[] spillPartitions;
+
+    /**
+     * 0 for the partitions of the input; n + 1 for the partitions that a partition of level n
+     * is re-spilled into while it is merged, because it does not fit in memory on its own.
+     * Each level hashes the keys into partitions differently.
+     */
+    private int spillLevel;
+
+    /**
+     * Whether a merged partition that could not be re-spilled was already reported.
+     */
+    private boolean isMergeOverMemoryLogged;
+
+    private int spilledPartitionCount;
+    private int maxSpillLevel;
+
+    /**
+     * Number of in-memory hash table entries of each spill partition.
+     */
+    private int[] spillPartitionEntryCounts;
+
+    /**
+     * True while the spilled partitions are merged back; the rows of a merged partition are only
+     * spilled again into the partitions of the next spill level.
+     */
+    private boolean isMergingSpill;
+
+    private VectorSerializeRow<LazyBinarySerializeWrite> spillVectorSerializeRow;
+    private VectorDeserializeRow<LazyBinaryDeserializeRead> spillVectorDeserializeRow;
+    private VectorizedRowBatch spillReplayBatch;
+    private int spillReplayBatchMaxSize;
+
+    /**
+     * The selection of the input batch, saved while the rows of spilled partitions are
+     * filtered out of it.
+     */
+    private int[] savedSelected;
+    private int savedSize;
+    private boolean savedSelectedInUse;
+    private boolean isBatchSelectionSaved;
+    private int[] keptSelected;
+
+    /**
+     * The open addressing hash table used instead of mapKeysAggregationBuffers for one long,
+     * two long, or one bytes key, or null.
+     */
+    private VectorGroupByFastHashTable fastHashTable;
+
     @Override
     public void initialize(Configuration hconf) throws HiveException {
+      boolean fastHashTableEnabled;
       // hconf is null in unit testing
       if (null != hconf) {
         this.percentEntriesToFlush = HiveConf.getFloatVar(hconf,
@@ -366,6 +447,13 @@ public void initialize(Configuration hconf) throws HiveException {
           HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_MAXENTRIES);
         this.numRowsCompareHashAggr = HiveConf.getIntVar(hconf,
           HiveConf.ConfVars.HIVEGROUPBYMAPINTERVAL);
+        this.spillEnabled = HiveConf.getBoolVar(hconf,
+          HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_SPILL_ENABLED);
+        this.numSpillPartitions = HiveConf.getIntVar(hconf,
+          HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_SPILL_PARTITIONS);
+        this.spillLocalDirs = HiveUtils.getLocalDirList(hconf);
+        fastHashTableEnabled = HiveConf.getBoolVar(hconf,
+          HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_FAST_HASHTABLE_ENABLED);
       }
       else {
         this.percentEntriesToFlush =
@@ -376,6 +464,49 @@ public void initialize(Configuration hconf) throws HiveException {
             HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_MAXENTRIES.defaultIntVal;
         this.numRowsCompareHashAggr =
             HiveConf.ConfVars.HIVEGROUPBYMAPINTERVAL.defaultIntVal;
+        this.spillEnabled =
+            HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_SPILL_ENABLED.defaultBoolVal;
+        this.numSpillPartitions =
+            HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_SPILL_PARTITIONS.defaultIntVal;
+        fastHashTableEnabled =
+            HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_FAST_HASHTABLE_ENABLED.defaultBoolVal;
+      }
+
+      // Grouping sets drive the same batch through the hash table several times with different
+      // keys, so the input rows of a spilled partition cannot be set aside per key.
+      if (spillEnabled &&
+          (groupingSetsPresent || keyExpressions.length == 0 || numSpillPartitions < 2)) {
+        LOG.info("Vector GROUP BY spilling disabled (grouping sets {}, key count {}, partitions {})",
+            groupingSetsPresent, keyExpressions.length, numSpillPartitions);
+        spillEnabled = false;
+      }
+      if (spillEnabled) {
+        for (VectorAggregateExpression aggregator : aggregators) {
+          if (!aggregator.canWriteAggregationBuffer()) {
+            LOG.info("Vector GROUP BY spilling disabled for aggregation " +
+                aggregator.getClass().getSimpleName());
+            spillEnabled = false;
+            break;
+          }
+        }
+      }
+      if (spillEnabled) {
+        spillPartitionEntryCounts = new int[numSpillPartitions];
+        savedSelected = new int[VectorizedRowBatch.DEFAULT_SIZE];
+        keptSelected = new int[VectorizedRowBatch.DEFAULT_SIZE];
+      }
+
+      if (fastHashTableEnabled && !spillEnabled && !groupingSetsPresent) {
+        fastHashTable = createFastHashTable();
+        if (fastHashTable != null) {
+          VectorGroupByFastAggregation[] fastAggregations =
+              VectorGroupByFastAggregation.create(aggregators);
+          if (fastAggregations != null) {
+            fastHashTable.setAggregations(fastAggregations);
+          }
+          LOG.info("Vector GROUP BY fast hash table aggregations in {}",
+              fastAggregations != null ? "arrays" : "buffer rows");
+        }
       }
 
       minReductionHashAggr = getConf().getMinReductionHashAggr();
@@ -399,25 +530,69 @@ public void doProcessBatch(VectorizedRowBatch batch, boolean isFirstGroupingSet,
         }
       }
 
-      // First we traverse the batch to evaluate and prepare the KeyWrappers
-      // After this the KeyWrappers are properly set and hash code is computed
-      if (!groupingSetsPresent) {
-        keyWrappersBatch.evaluateBatch(batch);
+      if (fastHashTable != null) {
+        processHashBatch(batch);
       } else {
-        keyWrappersBatch.evaluateBatchGroupingSets(batch, currentGroupingSetsOverrideIsNulls);
+        // First we traverse the batch to evaluate and prepare the KeyWrappers
+        // After this the KeyWrappers are properly set and hash code is computed
+        if (!groupingSetsPresent) {
+          keyWrappersBatch.evaluateBatch(batch);
+        } else {
+          keyWrappersBatch.evaluateBatchGroupingSets(batch, currentGroupingSetsOverrideIsNulls);
+        }
+
+        try {
+          if (spillPartitions == null || !spillRowsOfSpilledPartitions(batch)) {
+            processHashBatch(batch);
+          } else if (batch.size > 0) {
+            // The batch selection changed; the KeyWrappers must follow it.
+            keyWrappersBatch.evaluateBatch(batch);
+            processHashBatch(batch);
+          }
+        } finally {
+          if (isBatchSelectionSaved) {
+            restoreBatchSelection(batch);
+          }
+        }
       }
 
+      // Check if we should turn into streaming mode.  This flushes and merges the spilled
+      // partitions, which replays their rows, so the batch selection must be restored first.
+      if (!isMergingSpill) {
+        checkHashModeEfficiency();
+      }
+    }
+
+    private void processHashBatch(VectorizedRowBatch batch) throws HiveException {
+
       // Next we locate the aggregation buffer set for each key
       prepareBatchAggregationBufferSets(batch);
 
       // Finally, evaluate the aggregators
-      processAggregators(batch);
+      if (fastHashTable != null && fastHashTable.hasAggregations()) {
+        fastHashTable.aggregate(batch);
+      } else {
+        processAggregators(batch);
+      }
 
       //Flush if memory limits were reached
       // We keep flushing until the memory is under threshold
       int preFlushEntriesCount = numEntriesHashTable;
       while (shouldFlush(batch)) {
-        flush(false);
+        if (!spillEnabled || !spillPartition(batch)) {
+          if (isMergingSpill) {
+            // A partial flush would emit groups of the merged partition more than once, so
+            // they are kept in memory until the partition is flushed whole.
+            if (!isMergeOverMemoryLogged) {
+              LOG.warn(String.format(
+                  "Merged spill partition exceeds the memory limits at spill level %d with %d entries",
+                  spillLevel, numEntriesHashTable));
+              isMergeOverMemoryLogged = true;
+            }
+            break;
+          }
+          flush(false);
+        }
 
         if(gcCanary.get() == null) {
           gcCanaryFlushes++;
@@ -436,6 +611,11 @@ public void doProcessBatch(VectorizedRowBatch batch, boolean isFirstGroupingSet,
         preFlushEntriesCount = numEntriesHashTable;
       }
 
+      if (isMergingSpill) {
+        // Replayed rows were already counted when they were spilled.
+        return;
+      }
+
       if (sumBatchSize == 0 && 0 != batch.size) {
         // Sample the first batch processed for variable sizes.
         updateAvgVariableSize(batch);
@@ -443,15 +623,14 @@ public void doProcessBatch(VectorizedRowBatch batch, boolean isFirstGroupingSet,
 
       sumBatchSize += batch.size;
       lastModeCheckRowCount += batch.size;
-
-      // Check if we should turn into streaming mode
-      checkHashModeEfficiency();
     }
 
     @Override
     public void close(boolean aborted) throws HiveException {
       if (!aborted) {
-        flush(true);
+        flushAll();
+      } else {
+        clearSpillPartitions();
       }
       if (!aborted && sumBatchSize == 0 && GroupByOperator.shouldEmitSummaryRow(conf)) {
         // in case the empty grouping set is preset; but no output has done
@@ -482,6 +661,11 @@ private void prepareBatchAggregationBufferSets(VectorizedRowBatch batch) throws
         return;
       }
 
+      if (fastHashTable != null) {
+        prepareFastHashTableAggregationBufferSets(batch);
+        return;
+      }
+
       // We now have to probe the global hash and find-or-allocate
       // the aggregation buffers to use for each key present in the batch
       VectorHashKeyWrapperBase[] keyWrappers = keyWrappersBatch.getVectorHashKeyWrappers();
@@ -501,21 +685,119 @@ private void prepareBatchAggregationBufferSets(VectorizedRowBatch batch) throws
           mapKeysAggregationBuffers.put(kw.copyKey(), aggregationBuffer);
           numEntriesHashTable++;
           numEntriesSinceCheck++;
+          if (spillEnabled) {
+            spillPartitionEntryCounts[getSpillPartition(kw)]++;
+          }
+        }
+        aggregationBatchInfo.mapAggregationBufferSet(aggregationBuffer, i);
+      }
+    }
+
+    /**
+     * Locates the aggregation buffer sets for each row of the current batch in the fast hash
+     * table, allocating them for new groups.
+     */
+    private void prepareFastHashTableAggregationBufferSets(VectorizedRowBatch batch)
+        throws HiveException {
+      if (fastHashTable.hasAggregations()) {
+        // The aggregation state of the new groups is kept in the table.
+        final int groupCount = fastHashTable.size();
+        fastHashTable.findOrAddGroups(batch);
+        final int newGroupCount = fastHashTable.size() - groupCount;
+        numEntriesHashTable += newGroupCount;
+        numEntriesSinceCheck += newGroupCount;
+        return;
+      }
+
+      fastHashTable.findOrAddGroups(batch);
+      final int[] batchGroupNums = fastHashTable.getBatchGroupNums();
+
+      final int n = batch.size;
+      for (int i = 0; i < n; ++i) {
+        final int groupNum = batchGroupNums[i];
+        VectorAggregationBufferRow aggregationBuffer =
+            fastHashTable.getAggregationBufferRow(groupNum);
+        if (null == aggregationBuffer) {
+          aggregationBuffer = allocateAggregationBuffer();
+          fastHashTable.setAggregationBufferRow(groupNum, aggregationBuffer);
+          numEntriesHashTable++;
+          numEntriesSinceCheck++;
         }
         aggregationBatchInfo.mapAggregationBufferSet(aggregationBuffer, i);
       }
     }
 
+    /**
+     * Creates the fast hash table for the key column vector types, or returns null when the
+     * keys are not one long, two long, or one bytes key.
+     */
+    private VectorGroupByFastHashTable createFastHashTable() throws HiveException {
+      final int keyCount = keyExpressions.length;
+      if (keyCount == 0 || keyCount > 2 || outputKeyLength != keyCount) {
+        return null;
+      }
+      ColumnVector.Type[] keyColumnVectorTypes = new ColumnVector.Type[keyCount];
+      for (int i = 0; i < keyCount; i++) {
+        if (keyExpressions[i].getOutputTypeInfo() == null) {
+          return null;
+        }
+        keyColumnVectorTypes[i] = keyExpressions[i].getOutputColumnVectorType();
+      }
+
+      VectorGroupByFastHashTable hashTable = null;
+      if (keyCount == 1) {
+        final int keyColumnNum = keyExpressions[0].getOutputColumnNum();
+        switch (keyColumnVectorTypes[0]) {
+        case LONG:
+        case DECIMAL_64:
+          hashTable = new VectorGroupByFastLongHashTable(keyColumnNum,
+              VectorGroupByFastHashTable.DEFAULT_INITIAL_CAPACITY,
+              VectorGroupByFastHashTable.DEFAULT_LOAD_FACTOR);
+          break;
+        case BYTES:
+          hashTable = new VectorGroupByFastBytesHashTable(keyColumnNum,
+              VectorGroupByFastHashTable.DEFAULT_INITIAL_CAPACITY,
+              VectorGroupByFastHashTable.DEFAULT_LOAD_FACTOR,
+              VectorGroupByFastBytesHashTable.DEFAULT_WRITE_BUFFERS_SIZE);
+          break;
+        default:
+          break;
+        }
+      } else if (isLongFamilyKey(keyColumnVectorTypes[0]) &&
+          isLongFamilyKey(keyColumnVectorTypes[1])) {
+        hashTable = new VectorGroupByFastTwoLongHashTable(
+            keyExpressions[0].getOutputColumnNum(), keyExpressions[1].getOutputColumnNum(),
+            VectorGroupByFastHashTable.DEFAULT_INITIAL_CAPACITY,
+            VectorGroupByFastHashTable.DEFAULT_LOAD_FACTOR);
+      }
+      if (hashTable != null) {
+        LOG.info("Vector GROUP BY using " + hashTable.getClass().getSimpleName());
+      }
+      return hashTable;
+    }
+
+    private boolean isLongFamilyKey(ColumnVector.Type columnVectorType) {
+      return columnVectorType == ColumnVector.Type.LONG ||
+          columnVectorType == ColumnVector.Type.DECIMAL_64;
+    }
+
     /**
      * Computes the memory limits for hash table flush (spill).
      */
     private void computeMemoryLimits() {
       JavaDataModel model = JavaDataModel.get();
 
-      fixedHashEntrySize =
-          model.hashMapEntry() +
-          keyWrappersBatch.getKeysFixedSize() +
-          aggregationBatchInfo.getAggregatorsFixedSize();
+      if (fastHashTable != null) {
+        // The slots, the keys and the aggregation arrays are accounted by the fast hash table
+        // itself.
+        fixedHashEntrySize = fastHashTable.hasAggregations() ?
+            0 : aggregationBatchInfo.getAggregatorsFixedSize();
+      } else {
+        fixedHashEntrySize =
+            model.hashMapEntry() +
+            keyWrappersBatch.getKeysFixedSize() +
+            aggregationBatchInfo.getAggregatorsFixedSize();
+      }
 
       MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
       maxMemory = isLlap ? getConf().getMaxMemoryAvailable() : memoryMXBean.getHeapMemoryUsage().getMax();
@@ -547,6 +829,12 @@ private void computeMemoryLimits() {
      */
     private void flush(boolean all) throws HiveException {
 
+      if (fastHashTable != null) {
+        // The open addressing table cannot remove single groups, so it is always flushed whole.
+        flushFastHashTable();
+        return;
+      }
+
       int entriesToFlush = all ? numEntriesHashTable :
         (int)(numEntriesHashTable * this.percentEntriesToFlush);
       int entriesFlushed = 0;
@@ -573,6 +861,9 @@ private void flush(boolean all) throws HiveException {
         if (!all) {
           iter.remove();
           --numEntriesHashTable;
+          if (spillEnabled) {
+            spillPartitionEntryCounts[getSpillPartition(pair.getKey())]--;
+          }
           if (++entriesFlushed >= entriesToFlush) {
             break;
           }
@@ -582,6 +873,9 @@ private void flush(boolean all) throws HiveException {
       if (all) {
         mapKeysAggregationBuffers.clear();
         numEntriesHashTable = 0;
+        if (spillEnabled) {
+          Arrays.fill(spillPartitionEntryCounts, 0);
+        }
       }
 
       if (all && LOG.isDebugEnabled()) {
@@ -589,6 +883,19 @@ private void flush(boolean all) throws HiveException {
       }
     }
 
+    private void flushFastHashTable() throws HiveException {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format("Flush (all) %s gcCanary:%s",
+            fastHashTable, gcCanary.get() == null ? "dead" : "alive"));
+      }
+      final int groupCount = fastHashTable.size();
+      for (int groupNum = 0; groupNum < groupCount; groupNum++) {
+        writeSingleRow(fastHashTable, groupNum);
+      }
+      fastHashTable.clear();
+      numEntriesHashTable = 0;
+    }
+
     /**
      * Returns true if the memory threshold for the hash table was reached.
      */
@@ -603,8 +910,11 @@ private boolean shouldFlush(VectorizedRowBatch batch) {
         updateAvgVariableSize(batch);
         numEntriesSinceCheck = 0;
       }
-      if (numEntriesHashTable > this.maxHtEntries ||
-          numEntriesHashTable * (fixedHashEntrySize + avgVariableSize) > maxHashTblMemory) {
+      long hashTableMemory = numEntriesHashTable * (fixedHashEntrySize + avgVariableSize);
+      if (fastHashTable != null) {
+        hashTableMemory += fastHashTable.getEstimatedMemorySize();
+      }
+      if (numEntriesHashTable > this.maxHtEntries || hashTableMemory > maxHashTblMemory) {
         return true;
       }
       if (gcCanary.get() == null) {
@@ -620,8 +930,12 @@ private boolean shouldFlush(VectorizedRowBatch batch) {
      * that caused the check threshold to be reached.
      */
     private void updateAvgVariableSize(VectorizedRowBatch batch) {
-      int keyVariableSize = keyWrappersBatch.getVariableSize(batch.size);
-      int aggVariableSize = aggregationBatchInfo.getVariableSize(batch.size);
+      // The fast hash table accounts for its key bytes itself.
+      int keyVariableSize =
+          fastHashTable == null ? keyWrappersBatch.getVariableSize(batch.size) : 0;
+      // The aggregations kept in the fast hash table arrays have no variable size.
+      int aggVariableSize = fastHashTable != null && fastHashTable.hasAggregations() ?
+          0 : aggregationBatchInfo.getVariableSize(batch.size);
 
       // This assumes the distribution of variable size keys/aggregates in the input
       // is the same as the distribution of variable sizes in the hash entries
@@ -641,12 +955,332 @@ private void checkHashModeEfficiency() throws HiveException {
               numEntriesHashTable, sumBatchSize, (long)(sumBatchSize * minReductionHashAggr)));
         }
         if (numEntriesHashTable > sumBatchSize * minReductionHashAggr) {
-          flush(true);
+          flushAll();
 
           changeToStreamingMode();
         }
       }
     }
+
+    private int getSpillPartition(KeyWrapper kw) {
+      // The keys of a re-spilled partition all hash to the same partition of the previous
+      // level, so the hash code is mixed with the level (murmur3 finalizer) to split them.
+      int h = kw.hashCode() ^ (spillLevel * 0x9E3779B9);
+      h ^= h >>> 16;
+      h *= 0x85EBCA6B;
+      h ^= h >>> 13;
+      h *= 0xC2B2AE35;
+      h ^= h >>> 16;
+      return (h & Integer.MAX_VALUE) % numSpillPartitions;
+    }
+
+    /**
+     * Flushes all the in-memory entries and then merges and flushes the spilled partitions
+     * one at a time.  A spilled partition that exceeds the memory limits on its own is spilled
+     * again into the partitions of the next spill level, up to MAX_SPILL_LEVEL.
+     */
+    private void flushAll() throws HiveException {
+      flush(true);
+      if (spillPartitions == null) {
+        return;
+      }
+      isMergingSpill = true;
+      isMergeOverMemoryLogged = false;
+      try {
+        mergeSpillPartitions();
+      } finally {
+        isMergingSpill = false;
+        clearSpillPartitions();
+        spillLevel = 0;
+      }
+    }
+
+    /**
+     * Merges and flushes the spilled partitions of the current spill level, and recursively
+     * the partitions of the next level that they were spilled again into.
+     */
+    private void mergeSpillPartitions() throws HiveException {
+      VectorGroupBySpillPartition[] partitions = spillPartitions;
+      int level = spillLevel;
+      try {
+        for (VectorGroupBySpillPartition partition : partitions) {
+          if (!partition.isSpilled()) {
+            continue;
+          }
+          spillPartitions = null;
+          spillLevel = level + 1;
+          mergeSpillPartition(partition);
+          flush(true);
+          partition.clear();
+          if (spillPartitions != null) {
+            mergeSpillPartitions();
+          }
+        }
+      } finally {
+        for (VectorGroupBySpillPartition partition : partitions) {
+          partition.clear();
+        }
+        spillLevel = level;
+      }
+    }
+
+    /**
+     * Reloads the spilled aggregation state of a partition into the (empty) hash table and
+     * aggregates the input rows that were spilled after it.
+     */
+    private void mergeSpillPartition(VectorGroupBySpillPartition partition) throws HiveException {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format("Merging spilled partition at level %d: %d entries, %d rows",
+            spillLevel - 1, partition.getSpilledEntryCount(), partition.getSpilledRowCount()));
+      }
+
+      try {
+        while (partition.hasNextEntry()) {
+          VectorHashKeyWrapperBase key = partition.nextKey();
+          VectorAggregationBufferRow aggregationBuffer = allocateAggregationBuffer();
+          partition.nextAggregationBufferRow(aggregationBuffer);
+          mapKeysAggregationBuffers.put(key, aggregationBuffer);
+          numEntriesHashTable++;
+          spillPartitionEntryCounts[getSpillPartition(key)]++;
+        }
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+
+      VectorRowBytesContainer rowBytesContainer = partition.getRowBytesContainerForReading();
+      if (rowBytesContainer == null) {
+        return;
+      }
+      try {
+        rowBytesContainer.prepareForReading();
+        spillReplayBatch.reset();
+        while (rowBytesContainer.readNext()) {
+          spillVectorDeserializeRow.setBytes(
+              rowBytesContainer.currentBytes(),
+              rowBytesContainer.currentOffset(),
+              rowBytesContainer.currentLength());
+          try {
+            spillVectorDeserializeRow.deserialize(spillReplayBatch, spillReplayBatch.size);
+          } catch (Exception e) {
+            throw new HiveException(
+                "\nDeserializeRead detail: " +
+                    spillVectorDeserializeRow.getDetailedReadPositionString(),
+                e);
+          }
+          if (++spillReplayBatch.size == spillReplayBatchMaxSize) {
+            doProcessBatch(spillReplayBatch, false, null);
+            spillReplayBatch.reset();
+          }
+        }
+        if (spillReplayBatch.size > 0) {
+          doProcessBatch(spillReplayBatch, false, null);
+          spillReplayBatch.reset();
+        }
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+    }
+
+    /**
+     * Spills the non-spilled partition with the most in-memory entries.
+     * Returns false when there is nothing left to spill, or the input cannot be spilled.
+     */
+    private boolean spillPartition(VectorizedRowBatch batch) throws HiveException {
+      if (spillPartitions == null) {
+        if (spillLevel >= MAX_SPILL_LEVEL) {
+          return false;
+        }
+        if (spillVectorSerializeRow == null && !setupSpill(batch)) {
+          spillEnabled = false;
+          return false;
+        }
+        spillPartitions = new VectorGroupBySpillPartition[numSpillPartitions];
+        for (int i = 0; i < numSpillPartitions; i++) {
+          spillPartitions[i] =
+              new VectorGroupBySpillPartition(spillLocalDirs, keyWrappersBatch, aggregators);
+        }
+      }
+
+      int partitionNum = -1;
+      for (int i = 0; i < numSpillPartitions; i++) {
+        if (!spillPartitions[i].isSpilled() && spillPartitionEntryCounts[i] > 0 &&
+            (partitionNum == -1 ||
+                spillPartitionEntryCounts[i] > spillPartitionEntryCounts[partitionNum])) {
+          partitionNum = i;
+        }
+      }
+      if (partitionNum == -1) {
+        return false;
+      }
+
+      VectorGroupBySpillPartition partition = spillPartitions[partitionNum];
+      Iterator<Map.Entry<KeyWrapper, VectorAggregationBufferRow>> iter =
+          mapKeysAggregationBuffers.entrySet().iterator();
+      try {
+        while (iter.hasNext()) {
+          Map.Entry<KeyWrapper, VectorAggregationBufferRow> pair = iter.next();
+          if (getSpillPartition(pair.getKey()) == partitionNum) {
+            partition.addEntry((VectorHashKeyWrapperBase) pair.getKey(), pair.getValue());
+            iter.remove();
+          }
+        }
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+      numEntriesHashTable -= spillPartitionEntryCounts[partitionNum];
+      spillPartitionEntryCounts[partitionNum] = 0;
+      spilledPartitionCount++;
+      maxSpillLevel = Math.max(maxSpillLevel, spillLevel);
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format("Spilled partition %d at level %d with %d entries, %d entries left",
+            partitionNum, spillLevel, partition.getSpilledEntryCount(), numEntriesHashTable));
+      }
+      return true;
+    }
+
+    /**
+     * Prepares the LazyBinary serialization of the input rows from the physical column vectors
+     * of the batch, once for all the spill levels.  The scratch columns are not spilled; they
+     * are recomputed on replay.
+     */
+    private boolean setupSpill(VectorizedRowBatch batch) throws HiveException {
+      List<Integer> projectedColumns = vContext.getProjectedColumns();
+      List<TypeInfo> typeInfoList = new ArrayList<TypeInfo>();
+      List<Integer> columnList = new ArrayList<Integer>();
+      for (int projectedColumn : projectedColumns) {
+        ColumnVector colVector = batch.cols[projectedColumn];
+        if (colVector == null) {
+          continue;
+        }
+        TypeInfo typeInfo = getSpillTypeInfo(colVector);
+        if (typeInfo == null) {
+          LOG.info("Vector GROUP BY spilling disabled for column vector type " + colVector.type);
+          return false;
+        }
+        typeInfoList.add(typeInfo);
+        columnList.add(projectedColumn);
+      }
+
+      TypeInfo[] spillTypeInfos = typeInfoList.toArray(new TypeInfo[0]);
+      int[] spillColumnMap = ArrayUtils.toPrimitive(columnList.toArray(new Integer[0]));
+
+      spillVectorSerializeRow =
+          new VectorSerializeRow<LazyBinarySerializeWrite>(
+              new LazyBinarySerializeWrite(spillColumnMap.length));
+      spillVectorSerializeRow.init(spillTypeInfos, spillColumnMap);
+
+      spillVectorDeserializeRow =
+          new VectorDeserializeRow<LazyBinaryDeserializeRead>(
+              new LazyBinaryDeserializeRead(spillTypeInfos, /* useExternalBuffer */ true));
+      spillVectorDeserializeRow.init(spillColumnMap);
+
+      spillReplayBatch = VectorizedBatchUtil.makeLike(batch);
+
+      // The column vectors are made like the input ones, which may be smaller than the default.
+      spillReplayBatchMaxSize = spillReplayBatch.getMaxSize();
+      for (ColumnVector colVector : spillReplayBatch.cols) {
+        if (colVector != null) {
+          spillReplayBatchMaxSize = Math.min(spillReplayBatchMaxSize, colVector.isNull.length);
+        }
+      }
+      return true;
+    }
+
+    /**
+     * The type used to round-trip a column vector through the spill file.
+     */
+    private TypeInfo getSpillTypeInfo(ColumnVector colVector) {
+      switch (colVector.type) {
+      case LONG:
+      case DECIMAL_64:
+        return TypeInfoFactory.longTypeInfo;
+      case DOUBLE:
+        return TypeInfoFactory.doubleTypeInfo;
+      case BYTES:
+        return TypeInfoFactory.stringTypeInfo;
+      case DECIMAL:
+        DecimalColumnVector decimalColVector = (DecimalColumnVector) colVector;
+        return TypeInfoFactory.getDecimalTypeInfo(
+            decimalColVector.precision, decimalColVector.scale);
+      case TIMESTAMP:
+        return TypeInfoFactory.timestampTypeInfo;
+      case INTERVAL_DAY_TIME:
+        return TypeInfoFactory.intervalDayTimeTypeInfo;
+      default:
+        return null;
+      }
+    }
+
+    /**
+     * Serializes the rows of the batch that belong to spilled partitions to their partition and
+     * removes them from the batch selection.  Returns true if the selection changed; the caller
+     * must call {@link #restoreBatchSelection} when done with the batch.
+     */
+    private boolean spillRowsOfSpilledPartitions(VectorizedRowBatch batch) throws HiveException {
+      VectorHashKeyWrapperBase[] keyWrappers = keyWrappersBatch.getVectorHashKeyWrappers();
+      final int size = batch.size;
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+
+      int keptCount = 0;
+      try {
+        for (int logical = 0; logical < size; logical++) {
+          final int batchIndex = (selectedInUse ? selected[logical] : logical);
+          VectorGroupBySpillPartition partition =
+              spillPartitions[getSpillPartition(keyWrappers[logical])];
+          if (partition.isSpilled()) {
+            Output output = partition.getOutputForRowBytes();
+            spillVectorSerializeRow.setOutputAppend(output);
+            spillVectorSerializeRow.serializeWrite(batch, batchIndex);
+            partition.finishRow();
+          } else {
+            keptSelected[keptCount++] = batchIndex;
+          }
+        }
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+      if (keptCount == size) {
+        return false;
+      }
+
+      if (!isMergingSpill) {
+        // The spilled rows are aggregated at close, but count as input now.
+        sumBatchSize += size - keptCount;
+        lastModeCheckRowCount += size - keptCount;
+      }
+
+      savedSize = size;
+      savedSelectedInUse = selectedInUse;
+      if (selectedInUse) {
+        System.arraycopy(selected, 0, savedSelected, 0, size);
+      }
+      isBatchSelectionSaved = true;
+
+      System.arraycopy(keptSelected, 0, selected, 0, keptCount);
+      batch.size = keptCount;
+      batch.selectedInUse = true;
+      return true;
+    }
+
+    private void restoreBatchSelection(VectorizedRowBatch batch) {
+      if (savedSelectedInUse) {
+        System.arraycopy(savedSelected, 0, batch.selected, 0, savedSize);
+      }
+      batch.size = savedSize;
+      batch.selectedInUse = savedSelectedInUse;
+      isBatchSelectionSaved = false;
+    }
+
+    private void clearSpillPartitions() {
+      if (spillPartitions != null) {
+        for (VectorGroupBySpillPartition partition : spillPartitions) {
+          partition.clear();
+        }
+        spillPartitions = null;
+      }
+    }
   }
 
   /**
@@ -1152,6 +1786,32 @@ private void writeSingleRow(VectorHashKeyWrapperBase kw, VectorAggregationBuffer
     }
   }
 
+  /**
+   * Emits a single row, made from the key of a group of a fast hash table and its aggregation
+   * buffers values.
+   */
+  private void writeSingleRow(VectorGroupByFastHashTable fastHashTable, int groupNum)
+      throws HiveException {
+
+    int colNum = outputKeyLength;   // Start after group keys.
+    final int batchIndex = outputBatch.size;
+
+    fastHashTable.assignKeyRowColumns(outputBatch, batchIndex, groupNum);
+    if (fastHashTable.hasAggregations()) {
+      fastHashTable.assignAggregationRowColumns(outputBatch, batchIndex, colNum, groupNum);
+    } else {
+      VectorAggregationBufferRow agg = fastHashTable.getAggregationBufferRow(groupNum);
+      for (int i = 0; i < aggregators.length; ++i) {
+        aggregators[i].assignRowColumn(outputBatch, batchIndex, colNum++,
+            agg.getAggregationBuffer(i));
+      }
+    }
+    ++outputBatch.size;
+    if (outputBatch.size == VectorizedRowBatch.DEFAULT_SIZE) {
+      flushOutput();
+    }
+  }
+
   /**
    * Emits a (reduce) group row, made from the key (copied in at the beginning of the group) and
    * the row aggregation buffers values
@@ -1239,4 +1899,16 @@ public void configureJobConf(JobConf job) {
   public long getMaxMemory() {
     return maxMemory;
   }
+
+  @VisibleForTesting
+  int getSpilledPartitionCount() {
+    return processingMode instanceof ProcessingModeHashAggregate ?
+        ((ProcessingModeHashAggregate) processingMode).spilledPartitionCount : 0;
+  }
+
+  @VisibleForTesting
+  int getMaxSpillLevel() {
+    return processingMode instanceof ProcessingModeHashAggregate ?
+        ((ProcessingModeHashAggregate) processingMode).maxSpillLevel : 0;
+  }
 }
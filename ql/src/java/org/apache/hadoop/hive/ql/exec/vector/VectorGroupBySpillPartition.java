@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hive.common.FileUtils;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorAggregateExpression;
+import org.apache.hadoop.hive.ql.exec.vector.rowbytescontainer.VectorRowBytesContainer;
+import org.apache.hadoop.hive.ql.exec.vector.wrapper.VectorHashKeyWrapperBase;
+import org.apache.hadoop.hive.ql.exec.vector.wrapper.VectorHashKeyWrapperBatch;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One hash partition of the key space of a spilling vectorized GROUP BY hash aggregation.
+ *
+ * Once a partition is spilled, it holds two runs on local disk:
+ *   1) The aggregation state (key, aggregation buffers) of every group of the partition that
+ *      was in memory when the partition was spilled.  The keys are distinct.
+ *   2) The input rows for the partition that arrived after it was spilled, serialized with
+ *      LazyBinary.  These rows have not been aggregated yet.
+ *
+ * At close, the state run is reloaded into the hash table and the input rows are replayed
+ * through the aggregators, so each group is emitted exactly once.
+ *
+ * The state run holds only the key values and the aggregation values, written by the key
+ * wrapper batch and by each aggregation.
+ */
+public class VectorGroupBySpillPartition {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(VectorGroupBySpillPartition.class.getName());
+
+  private final String spillLocalDirs;
+  private final VectorHashKeyWrapperBatch keyWrappersBatch;
+  private final VectorAggregateExpression[] aggregators;
+
+  private File stateParentDir;
+  private File stateFile;
+  private DataOutputStream stateOutput;
+  private DataInputStream stateInput;
+  private long stateEntriesToRead;
+  private VectorRowBytesContainer rowBytesContainer;
+
+  private long spilledEntryCount;
+  private long spilledRowCount;
+
+  public VectorGroupBySpillPartition(String spillLocalDirs,
+      VectorHashKeyWrapperBatch keyWrappersBatch, VectorAggregateExpression[] aggregators) {
+    this.spillLocalDirs = spillLocalDirs;
+    this.keyWrappersBatch = keyWrappersBatch;
+    this.aggregators = aggregators;
+  }
+
+  public boolean isSpilled() {
+    return stateFile != null;
+  }
+
+  /**
+   * Writes one group (key and its aggregation buffers) to the state run.
+   */
+  public void addEntry(VectorHashKeyWrapperBase key,
+      VectorAggregationBufferRow aggregationBufferRow) throws IOException {
+    if (stateFile == null) {
+      stateParentDir =
+          FileUtils.createLocalDirsTempFile(spillLocalDirs, "vector-groupby-state", "", true);
+      stateFile = File.createTempFile("VectorGroupBySpillState", ".tmp", stateParentDir);
+      stateFile.deleteOnExit();
+      stateOutput = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(stateFile)));
+    }
+    keyWrappersBatch.writeKey(key, stateOutput);
+    for (int i = 0; i < aggregators.length; i++) {
+      aggregators[i].writeAggregationBuffer(
+          aggregationBufferRow.getAggregationBuffer(i), stateOutput);
+    }
+    spilledEntryCount++;
+  }
+
+  public boolean hasNextEntry() throws IOException {
+    if (stateFile == null) {
+      return false;
+    }
+    if (stateOutput != null) {
+      stateOutput.close();
+      stateOutput = null;
+      stateInput = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(stateFile)));
+      stateEntriesToRead = spilledEntryCount;
+    }
+    return stateEntriesToRead > 0;
+  }
+
+  /**
+   * Reads the next spilled key.  Must be followed by {@link #nextAggregationBufferRow}.
+   */
+  public VectorHashKeyWrapperBase nextKey() throws IOException {
+    stateEntriesToRead--;
+    return keyWrappersBatch.readKey(stateInput);
+  }
+
+  /**
+   * Reads the aggregation buffers of the key read last into a newly allocated row.
+   */
+  public void nextAggregationBufferRow(VectorAggregationBufferRow aggregationBufferRow)
+      throws IOException {
+    for (int i = 0; i < aggregators.length; i++) {
+      aggregators[i].readAggregationBuffer(
+          aggregationBufferRow.getAggregationBuffer(i), stateInput);
+    }
+  }
+
+  /**
+   * Returns the output to serialize the next input row of the partition into.
+   * Must be followed by {@link #finishRow()}.
+   */
+  public Output getOutputForRowBytes() {
+    if (rowBytesContainer == null) {
+      rowBytesContainer = new VectorRowBytesContainer(spillLocalDirs);
+    }
+    return rowBytesContainer.getOuputForRowBytes();
+  }
+
+  public void finishRow() throws IOException {
+    rowBytesContainer.finishRow();
+    spilledRowCount++;
+  }
+
+  /**
+   * The container of the serialized input rows for reading, or null when no rows were spilled.
+   */
+  public VectorRowBytesContainer getRowBytesContainerForReading() {
+    return rowBytesContainer;
+  }
+
+  public long getSpilledEntryCount() {
+    return spilledEntryCount;
+  }
+
+  public long getSpilledRowCount() {
+    return spilledRowCount;
+  }
+
+  public void clear() {
+    if (stateOutput != null) {
+      try {
+        stateOutput.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close the spilled GROUP BY state output " + stateFile, e);
+      }
+      stateOutput = null;
+    }
+    if (stateInput != null) {
+      try {
+        stateInput.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close the spilled GROUP BY state input " + stateFile, e);
+      }
+      stateInput = null;
+    }
+    if (stateParentDir != null) {
+      if (!FileUtil.fullyDelete(stateParentDir)) {
+        LOG.warn("Failed to delete the spilled GROUP BY state directory " + stateParentDir);
+      }
+      stateParentDir = null;
+    }
+    stateFile = null;
+    stateEntriesToRead = 0;
+    if (rowBytesContainer != null) {
+      rowBytesContainer.clear();
+      rowBytesContainer = null;
+    }
+    spilledEntryCount = 0;
+    spilledRowCount = 0;
+  }
+}
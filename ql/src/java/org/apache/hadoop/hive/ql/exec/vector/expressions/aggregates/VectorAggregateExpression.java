@@ -18,9 +18,13 @@
 
 package org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import org.apache.hadoop.hive.common.type.DataTypePhysicalVariation;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
 import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.VectorAggregationBufferRow;
 import org.apache.hadoop.hive.ql.exec.vector.VectorAggregationDesc;
@@ -29,6 +33,7 @@
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.AggregationDesc;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.Mode;
@@ -141,6 +146,51 @@ public abstract boolean matches(String name, ColumnVector.Type inputColVectorTyp
   public abstract void assignRowColumn(VectorizedRowBatch batch, int batchIndex, int columnNum,
       AggregationBuffer agg) throws HiveException;
 
+  /**
+   * Whether the aggregation buffers can be written out with {@link #writeAggregationBuffer} and
+   * read back with {@link #readAggregationBuffer}, e.g. by a hash aggregation that spills.
+   */
+  public boolean canWriteAggregationBuffer() {
+    return false;
+  }
+
+  /**
+   * Writes the values of the aggregation buffer, so that {@link #readAggregationBuffer} can
+   * restore them into another buffer of this aggregation.
+   */
+  public void writeAggregationBuffer(AggregationBuffer agg, DataOutput out) throws IOException {
+    throw new UnsupportedOperationException(
+        getClass().getSimpleName() + " cannot write its aggregation buffers");
+  }
+
+  /**
+   * Reads the values written by {@link #writeAggregationBuffer} into a new aggregation buffer.
+   */
+  public void readAggregationBuffer(AggregationBuffer agg, DataInput in) throws IOException {
+    throw new UnsupportedOperationException(
+        getClass().getSimpleName() + " cannot read its aggregation buffers");
+  }
+
+  /**
+   * Writes a decimal of an aggregation buffer; unlike HiveDecimalWritable.write, this also
+   * handles a decimal that is not set, e.g. after an overflow.
+   */
+  protected static void writeDecimal(HiveDecimalWritable value, DataOutput out)
+      throws IOException {
+    out.writeBoolean(value.isSet());
+    if (value.isSet()) {
+      value.write(out);
+    }
+  }
+
+  protected static void readDecimal(HiveDecimalWritable value, DataInput in) throws IOException {
+    if (in.readBoolean()) {
+      value.readFields(in);
+    } else {
+      value.set((HiveDecimal) null);
+    }
+  }
+
   @Override
   public String toString() {
     return vecAggrDesc.toString();
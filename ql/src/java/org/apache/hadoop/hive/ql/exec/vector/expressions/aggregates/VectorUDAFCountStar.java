@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
@@ -158,4 +162,21 @@ public void assignRowColumn(VectorizedRowBatch batch, int batchIndex, int column
     outputColVector.isNull[batchIndex] = false;
     outputColVector.vector[batchIndex] = myagg.count;
   }
+
+  @Override
+  public boolean canWriteAggregationBuffer() {
+    return true;
+  }
+
+  @Override
+  public void writeAggregationBuffer(AggregationBuffer agg, DataOutput out) throws IOException {
+    Aggregation myagg = (Aggregation) agg;
+    out.writeLong(myagg.count);
+  }
+
+  @Override
+  public void readAggregationBuffer(AggregationBuffer agg, DataInput in) throws IOException {
+    Aggregation myagg = (Aggregation) agg;
+    myagg.count = in.readLong();
+  }
 }
@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.apache.hadoop.hive.common.type.HiveDecimal;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorAggregateExpression;
@@ -433,4 +437,23 @@ public void assignRowColumn(VectorizedRowBatch batch, int batchIndex, int column
 
     outputColVector.set(batchIndex, myagg.sum);
   }
+
+  @Override
+  public boolean canWriteAggregationBuffer() {
+    return true;
+  }
+
+  @Override
+  public void writeAggregationBuffer(AggregationBuffer agg, DataOutput out) throws IOException {
+    Aggregation myagg = (Aggregation) agg;
+    out.writeBoolean(myagg.isNull);
+    writeDecimal(myagg.sum, out);
+  }
+
+  @Override
+  public void readAggregationBuffer(AggregationBuffer agg, DataInput in) throws IOException {
+    Aggregation myagg = (Aggregation) agg;
+    myagg.isNull = in.readBoolean();
+    readDecimal(myagg.sum, in);
+  }
 }
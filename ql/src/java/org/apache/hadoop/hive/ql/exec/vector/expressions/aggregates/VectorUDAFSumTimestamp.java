@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorAggregateExpression;
 import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
@@ -410,4 +414,23 @@ public void assignRowColumn(VectorizedRowBatch batch, int batchIndex, int column
 
     outputColVector.vector[batchIndex] = myagg.sum;
   }
-}
\ No newline at end of file
+
+  @Override
+  public boolean canWriteAggregationBuffer() {
+    return true;
+  }
+
+  @Override
+  public void writeAggregationBuffer(AggregationBuffer agg, DataOutput out) throws IOException {
+    Aggregation myagg = (Aggregation) agg;
+    out.writeBoolean(myagg.isNull);
+    out.writeDouble(myagg.sum);
+  }
+
+  @Override
+  public void readAggregationBuffer(AggregationBuffer agg, DataInput in) throws IOException {
+    Aggregation myagg = (Aggregation) agg;
+    myagg.isNull = in.readBoolean();
+    myagg.sum = in.readDouble();
+  }
+}
@@ -0,0 +1,587 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorAggregateExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorUDAFCount;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorUDAFCountMerge;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorUDAFCountStar;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.gen.VectorUDAFMaxDouble;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.gen.VectorUDAFMaxLong;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.gen.VectorUDAFMinDouble;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.gen.VectorUDAFMinLong;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.gen.VectorUDAFSumDouble;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.gen.VectorUDAFSumLong;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+
+/*
+ * The state of one aggregation of a VectorGroupByFastHashTable, kept in primitive arrays indexed
+ * by group number instead of an aggregation buffer object per group.
+ *
+ * Only count, and the sum, min and max of long and double columns are supported; they compute
+ * the same values as their VectorAggregateExpression (see create).  The arrays grow with the
+ * group storage of the hash table.
+ */
+public abstract class VectorGroupByFastAggregation {
+
+  /**
+   * The input of the aggregation, or null for count(*).
+   */
+  protected final VectorExpression inputExpression;
+
+  protected VectorGroupByFastAggregation(VectorExpression inputExpression) {
+    this.inputExpression = inputExpression;
+  }
+
+  /**
+   * Creates the group number indexed state of each aggregator, or returns null when one of the
+   * aggregators is not supported.
+   */
+  public static VectorGroupByFastAggregation[] create(VectorAggregateExpression[] aggregators) {
+    VectorGroupByFastAggregation[] aggregations =
+        new VectorGroupByFastAggregation[aggregators.length];
+    for (int i = 0; i < aggregators.length; i++) {
+      final VectorAggregateExpression aggregator = aggregators[i];
+      final VectorExpression inputExpression = aggregator.getInputExpression();
+      if (aggregator instanceof VectorUDAFCountStar) {
+        aggregations[i] = new CountStar();
+      } else if (aggregator instanceof VectorUDAFCount) {
+        aggregations[i] = new Count(inputExpression);
+      } else if (aggregator instanceof VectorUDAFCountMerge) {
+        // The partial counts are summed, and the count of no rows is 0 rather than null.
+        aggregations[i] = new LongSum(inputExpression, false);
+      } else if (aggregator instanceof VectorUDAFSumLong) {
+        aggregations[i] = new LongSum(inputExpression, true);
+      } else if (aggregator instanceof VectorUDAFMinLong) {
+        aggregations[i] = new LongMinMax(inputExpression, true);
+      } else if (aggregator instanceof VectorUDAFMaxLong) {
+        aggregations[i] = new LongMinMax(inputExpression, false);
+      } else if (aggregator instanceof VectorUDAFSumDouble) {
+        aggregations[i] = new DoubleSum(inputExpression);
+      } else if (aggregator instanceof VectorUDAFMinDouble) {
+        aggregations[i] = new DoubleMinMax(inputExpression, true);
+      } else if (aggregator instanceof VectorUDAFMaxDouble) {
+        aggregations[i] = new DoubleMinMax(inputExpression, false);
+      } else {
+        return null;
+      }
+    }
+    return aggregations;
+  }
+
+  /**
+   * Allocates the state of the given number of groups.
+   */
+  public abstract void allocate(int capacity);
+
+  /**
+   * Grows the state to the given number of groups, keeping the state of the current groups.
+   */
+  public abstract void expand(int newCapacity);
+
+  /**
+   * Initializes the state of a new group.
+   */
+  public abstract void initGroup(int groupNum);
+
+  /**
+   * Aggregates the rows of a batch into their groups, given by logical row.
+   */
+  public void aggregate(VectorizedRowBatch batch, int[] batchGroupNums) throws HiveException {
+    if (batch.size == 0) {
+      return;
+    }
+    ColumnVector inputVector = null;
+    if (inputExpression != null) {
+      inputExpression.evaluate(batch);
+      inputVector = batch.cols[inputExpression.getOutputColumnNum()];
+      if (inputVector.isRepeating && !inputVector.noNulls && inputVector.isNull[0]) {
+        // None of the aggregations count the null values.
+        return;
+      }
+    }
+    aggregateInput(batch, batchGroupNums, inputVector);
+  }
+
+  protected abstract void aggregateInput(VectorizedRowBatch batch, int[] batchGroupNums,
+      ColumnVector inputVector);
+
+  /**
+   * Writes the value of a group into a column of an output batch.
+   */
+  public abstract void assignRowColumn(VectorizedRowBatch outputBatch, int batchIndex,
+      int columnNum, int groupNum);
+
+  /**
+   * The estimated size of the state of the given number of groups.
+   */
+  public abstract long getMemorySize(int capacity);
+
+  /**
+   * The estimated size of the state of one more group.
+   */
+  public abstract long getFixedSize();
+
+  protected static boolean isNullRow(ColumnVector inputVector, int batchIndex) {
+    return !inputVector.noNulls && inputVector.isNull[inputVector.isRepeating ? 0 : batchIndex];
+  }
+
+  protected static int valueIndex(ColumnVector inputVector, int batchIndex) {
+    return inputVector.isRepeating ? 0 : batchIndex;
+  }
+
+  /*
+   * count(*): the number of rows.
+   */
+  private static final class CountStar extends VectorGroupByFastAggregation {
+
+    private long[] counts;
+
+    CountStar() {
+      super(null);
+    }
+
+    @Override
+    public void allocate(int capacity) {
+      counts = new long[capacity];
+    }
+
+    @Override
+    public void expand(int newCapacity) {
+      counts = Arrays.copyOf(counts, newCapacity);
+    }
+
+    @Override
+    public void initGroup(int groupNum) {
+      counts[groupNum] = 0;
+    }
+
+    @Override
+    protected void aggregateInput(VectorizedRowBatch batch, int[] batchGroupNums,
+        ColumnVector inputVector) {
+      final int size = batch.size;
+      for (int logical = 0; logical < size; logical++) {
+        counts[batchGroupNums[logical]]++;
+      }
+    }
+
+    @Override
+    public void assignRowColumn(VectorizedRowBatch outputBatch, int batchIndex, int columnNum,
+        int groupNum) {
+      LongColumnVector outputColVector = (LongColumnVector) outputBatch.cols[columnNum];
+      outputColVector.isNull[batchIndex] = false;
+      outputColVector.vector[batchIndex] = counts[groupNum];
+    }
+
+    @Override
+    public long getMemorySize(int capacity) {
+      return JavaDataModel.get().lengthForLongArrayOfSize(capacity);
+    }
+
+    @Override
+    public long getFixedSize() {
+      return JavaDataModel.get().primitive2();
+    }
+  }
+
+  /*
+   * count(column): the number of rows whose input is not null.
+   */
+  private static final class Count extends VectorGroupByFastAggregation {
+
+    private long[] counts;
+
+    Count(VectorExpression inputExpression) {
+      super(inputExpression);
+    }
+
+    @Override
+    public void allocate(int capacity) {
+      counts = new long[capacity];
+    }
+
+    @Override
+    public void expand(int newCapacity) {
+      counts = Arrays.copyOf(counts, newCapacity);
+    }
+
+    @Override
+    public void initGroup(int groupNum) {
+      counts[groupNum] = 0;
+    }
+
+    @Override
+    protected void aggregateInput(VectorizedRowBatch batch, int[] batchGroupNums,
+        ColumnVector inputVector) {
+      final int size = batch.size;
+      if (inputVector.noNulls || inputVector.isRepeating) {
+        for (int logical = 0; logical < size; logical++) {
+          counts[batchGroupNums[logical]]++;
+        }
+        return;
+      }
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      final boolean[] isNull = inputVector.isNull;
+      for (int logical = 0; logical < size; logical++) {
+        final int batchIndex = (selectedInUse ? selected[logical] : logical);
+        if (!isNull[batchIndex]) {
+          counts[batchGroupNums[logical]]++;
+        }
+      }
+    }
+
+    @Override
+    public void assignRowColumn(VectorizedRowBatch outputBatch, int batchIndex, int columnNum,
+        int groupNum) {
+      LongColumnVector outputColVector = (LongColumnVector) outputBatch.cols[columnNum];
+      outputColVector.isNull[batchIndex] = false;
+      outputColVector.vector[batchIndex] = counts[groupNum];
+    }
+
+    @Override
+    public long getMemorySize(int capacity) {
+      return JavaDataModel.get().lengthForLongArrayOfSize(capacity);
+    }
+
+    @Override
+    public long getFixedSize() {
+      return JavaDataModel.get().primitive2();
+    }
+  }
+
+  /*
+   * The sum of a long column, which is null when all the input is null (unless it is a merge of
+   * partial counts).
+   */
+  private static final class LongSum extends VectorGroupByFastAggregation {
+
+    private final boolean isNullable;
+    private long[] sums;
+    private boolean[] isSet;
+
+    LongSum(VectorExpression inputExpression, boolean isNullable) {
+      super(inputExpression);
+      this.isNullable = isNullable;
+    }
+
+    @Override
+    public void allocate(int capacity) {
+      sums = new long[capacity];
+      isSet = new boolean[capacity];
+    }
+
+    @Override
+    public void expand(int newCapacity) {
+      sums = Arrays.copyOf(sums, newCapacity);
+      isSet = Arrays.copyOf(isSet, newCapacity);
+    }
+
+    @Override
+    public void initGroup(int groupNum) {
+      sums[groupNum] = 0;
+      isSet[groupNum] = false;
+    }
+
+    @Override
+    protected void aggregateInput(VectorizedRowBatch batch, int[] batchGroupNums,
+        ColumnVector inputVector) {
+      final long[] vector = ((LongColumnVector) inputVector).vector;
+      final int size = batch.size;
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      for (int logical = 0; logical < size; logical++) {
+        final int batchIndex = (selectedInUse ? selected[logical] : logical);
+        if (isNullRow(inputVector, batchIndex)) {
+          continue;
+        }
+        final int groupNum = batchGroupNums[logical];
+        sums[groupNum] += vector[valueIndex(inputVector, batchIndex)];
+        isSet[groupNum] = true;
+      }
+    }
+
+    @Override
+    public void assignRowColumn(VectorizedRowBatch outputBatch, int batchIndex, int columnNum,
+        int groupNum) {
+      LongColumnVector outputColVector = (LongColumnVector) outputBatch.cols[columnNum];
+      if (isNullable && !isSet[groupNum]) {
+        outputColVector.noNulls = false;
+        outputColVector.isNull[batchIndex] = true;
+        return;
+      }
+      outputColVector.isNull[batchIndex] = false;
+      outputColVector.vector[batchIndex] = sums[groupNum];
+    }
+
+    @Override
+    public long getMemorySize(int capacity) {
+      JavaDataModel jdm = JavaDataModel.get();
+      return jdm.lengthForLongArrayOfSize(capacity) + jdm.lengthForBooleanArrayOfSize(capacity);
+    }
+
+    @Override
+    public long getFixedSize() {
+      return JavaDataModel.get().primitive2() + 1;
+    }
+  }
+
+  /*
+   * The min or max of a long column, or null when all the input is null.
+   */
+  private static final class LongMinMax extends VectorGroupByFastAggregation {
+
+    private final boolean isMin;
+    private long[] values;
+    private boolean[] isSet;
+
+    LongMinMax(VectorExpression inputExpression, boolean isMin) {
+      super(inputExpression);
+      this.isMin = isMin;
+    }
+
+    @Override
+    public void allocate(int capacity) {
+      values = new long[capacity];
+      isSet = new boolean[capacity];
+    }
+
+    @Override
+    public void expand(int newCapacity) {
+      values = Arrays.copyOf(values, newCapacity);
+      isSet = Arrays.copyOf(isSet, newCapacity);
+    }
+
+    @Override
+    public void initGroup(int groupNum) {
+      isSet[groupNum] = false;
+    }
+
+    @Override
+    protected void aggregateInput(VectorizedRowBatch batch, int[] batchGroupNums,
+        ColumnVector inputVector) {
+      final long[] vector = ((LongColumnVector) inputVector).vector;
+      final int size = batch.size;
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      for (int logical = 0; logical < size; logical++) {
+        final int batchIndex = (selectedInUse ? selected[logical] : logical);
+        if (isNullRow(inputVector, batchIndex)) {
+          continue;
+        }
+        final int groupNum = batchGroupNums[logical];
+        final long value = vector[valueIndex(inputVector, batchIndex)];
+        if (!isSet[groupNum]) {
+          values[groupNum] = value;
+          isSet[groupNum] = true;
+        } else if (isMin ? value < values[groupNum] : value > values[groupNum]) {
+          values[groupNum] = value;
+        }
+      }
+    }
+
+    @Override
+    public void assignRowColumn(VectorizedRowBatch outputBatch, int batchIndex, int columnNum,
+        int groupNum) {
+      LongColumnVector outputColVector = (LongColumnVector) outputBatch.cols[columnNum];
+      if (!isSet[groupNum]) {
+        outputColVector.noNulls = false;
+        outputColVector.isNull[batchIndex] = true;
+        return;
+      }
+      outputColVector.isNull[batchIndex] = false;
+      outputColVector.vector[batchIndex] = values[groupNum];
+    }
+
+    @Override
+    public long getMemorySize(int capacity) {
+      JavaDataModel jdm = JavaDataModel.get();
+      return jdm.lengthForLongArrayOfSize(capacity) + jdm.lengthForBooleanArrayOfSize(capacity);
+    }
+
+    @Override
+    public long getFixedSize() {
+      return JavaDataModel.get().primitive2() + 1;
+    }
+  }
+
+  /*
+   * The sum of a double column, or null when all the input is null.
+   */
+  private static final class DoubleSum extends VectorGroupByFastAggregation {
+
+    private double[] sums;
+    private boolean[] isSet;
+
+    DoubleSum(VectorExpression inputExpression) {
+      super(inputExpression);
+    }
+
+    @Override
+    public void allocate(int capacity) {
+      sums = new double[capacity];
+      isSet = new boolean[capacity];
+    }
+
+    @Override
+    public void expand(int newCapacity) {
+      sums = Arrays.copyOf(sums, newCapacity);
+      isSet = Arrays.copyOf(isSet, newCapacity);
+    }
+
+    @Override
+    public void initGroup(int groupNum) {
+      isSet[groupNum] = false;
+    }
+
+    @Override
+    protected void aggregateInput(VectorizedRowBatch batch, int[] batchGroupNums,
+        ColumnVector inputVector) {
+      final double[] vector = ((DoubleColumnVector) inputVector).vector;
+      final int size = batch.size;
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      for (int logical = 0; logical < size; logical++) {
+        final int batchIndex = (selectedInUse ? selected[logical] : logical);
+        if (isNullRow(inputVector, batchIndex)) {
+          continue;
+        }
+        final int groupNum = batchGroupNums[logical];
+        final double value = vector[valueIndex(inputVector, batchIndex)];
+        if (!isSet[groupNum]) {
+          sums[groupNum] = value;
+          isSet[groupNum] = true;
+        } else {
+          sums[groupNum] += value;
+        }
+      }
+    }
+
+    @Override
+    public void assignRowColumn(VectorizedRowBatch outputBatch, int batchIndex, int columnNum,
+        int groupNum) {
+      DoubleColumnVector outputColVector = (DoubleColumnVector) outputBatch.cols[columnNum];
+      if (!isSet[groupNum]) {
+        outputColVector.noNulls = false;
+        outputColVector.isNull[batchIndex] = true;
+        return;
+      }
+      outputColVector.isNull[batchIndex] = false;
+      outputColVector.vector[batchIndex] = sums[groupNum];
+    }
+
+    @Override
+    public long getMemorySize(int capacity) {
+      JavaDataModel jdm = JavaDataModel.get();
+      return jdm.lengthForDoubleArrayOfSize(capacity) + jdm.lengthForBooleanArrayOfSize(capacity);
+    }
+
+    @Override
+    public long getFixedSize() {
+      return JavaDataModel.get().primitive2() + 1;
+    }
+  }
+
+  /*
+   * The min or max of a double column, or null when all the input is null.
+   */
+  private static final class DoubleMinMax extends VectorGroupByFastAggregation {
+
+    private final boolean isMin;
+    private double[] values;
+    private boolean[] isSet;
+
+    DoubleMinMax(VectorExpression inputExpression, boolean isMin) {
+      super(inputExpression);
+      this.isMin = isMin;
+    }
+
+    @Override
+    public void allocate(int capacity) {
+      values = new double[capacity];
+      isSet = new boolean[capacity];
+    }
+
+    @Override
+    public void expand(int newCapacity) {
+      values = Arrays.copyOf(values, newCapacity);
+      isSet = Arrays.copyOf(isSet, newCapacity);
+    }
+
+    @Override
+    public void initGroup(int groupNum) {
+      isSet[groupNum] = false;
+    }
+
+    @Override
+    protected void aggregateInput(VectorizedRowBatch batch, int[] batchGroupNums,
+        ColumnVector inputVector) {
+      final double[] vector = ((DoubleColumnVector) inputVector).vector;
+      final int size = batch.size;
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      for (int logical = 0; logical < size; logical++) {
+        final int batchIndex = (selectedInUse ? selected[logical] : logical);
+        if (isNullRow(inputVector, batchIndex)) {
+          continue;
+        }
+        final int groupNum = batchGroupNums[logical];
+        final double value = vector[valueIndex(inputVector, batchIndex)];
+        if (!isSet[groupNum]) {
+          values[groupNum] = value;
+          isSet[groupNum] = true;
+        } else if (isMin ? value < values[groupNum] : value > values[groupNum]) {
+          values[groupNum] = value;
+        }
+      }
+    }
+
+    @Override
+    public void assignRowColumn(VectorizedRowBatch outputBatch, int batchIndex, int columnNum,
+        int groupNum) {
+      DoubleColumnVector outputColVector = (DoubleColumnVector) outputBatch.cols[columnNum];
+      if (!isSet[groupNum]) {
+        outputColVector.noNulls = false;
+        outputColVector.isNull[batchIndex] = true;
+        return;
+      }
+      outputColVector.isNull[batchIndex] = false;
+      outputColVector.vector[batchIndex] = values[groupNum];
+    }
+
+    @Override
+    public long getMemorySize(int capacity) {
+      JavaDataModel jdm = JavaDataModel.get();
+      return jdm.lengthForDoubleArrayOfSize(capacity) + jdm.lengthForBooleanArrayOfSize(capacity);
+    }
+
+    @Override
+    public long getFixedSize() {
+      return JavaDataModel.get().primitive2() + 1;
+    }
+  }
+}
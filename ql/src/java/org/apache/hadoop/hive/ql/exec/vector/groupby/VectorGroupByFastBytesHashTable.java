@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.WriteBuffers;
+import org.apache.hive.common.util.HashCodeUtil;
+
+/*
+ * A single bytes key (STRING, CHAR, VARCHAR, BINARY) GROUP BY fast hash table.
+ *
+ * The key bytes are appended to a WriteBuffers; each group keeps the absolute offset, length,
+ * and hash code of its key in primitive arrays.
+ */
+public class VectorGroupByFastBytesHashTable extends VectorGroupByFastHashTable {
+
+  public static final int DEFAULT_WRITE_BUFFERS_SIZE = 128 * 1024;
+
+  private static final byte[] EMPTY_BYTES = new byte[0];
+
+  private final int writeBuffersSize;
+
+  private WriteBuffers keyBuffers;
+  private WriteBuffers.ByteSegmentRef keyRef;
+
+  private long[] keyOffsets;
+  private int[] keyLengths;
+  private int[] keyHashCodes;
+
+  private int nullGroupNum;
+
+  private byte[] probeBytes;
+  private int probeStart;
+  private int probeLength;
+  private int probeHashCode;
+
+  public VectorGroupByFastBytesHashTable(int keyColumnNum, int initialCapacity, float loadFactor,
+      int writeBuffersSize) {
+    super(new int[] { keyColumnNum }, initialCapacity, loadFactor);
+    this.writeBuffersSize = writeBuffersSize;
+    keyBuffers = new WriteBuffers(writeBuffersSize, Long.MAX_VALUE);
+    keyRef = new WriteBuffers.ByteSegmentRef();
+  }
+
+  @Override
+  protected void allocateKeyStorage(int capacity) {
+    keyOffsets = new long[capacity];
+    keyLengths = new int[capacity];
+    keyHashCodes = new int[capacity];
+    nullGroupNum = NULL_GROUP;
+    if (keyBuffers != null) {
+      keyBuffers.clear();
+    }
+  }
+
+  @Override
+  protected void expandKeyStorage(int newCapacity) {
+    keyOffsets = Arrays.copyOf(keyOffsets, newCapacity);
+    keyLengths = Arrays.copyOf(keyLengths, newCapacity);
+    keyHashCodes = Arrays.copyOf(keyHashCodes, newCapacity);
+  }
+
+  @Override
+  protected long getKeyStorageMemorySize() {
+    JavaDataModel jdm = JavaDataModel.get();
+    long size = jdm.lengthForLongArrayOfSize(keyOffsets.length) +
+        2 * jdm.lengthForIntArrayOfSize(keyLengths.length);
+    if (keyBuffers != null) {
+      size += keyBuffers.getEstimatedMemorySize();
+    }
+    return size;
+  }
+
+  @Override
+  protected long getKeyFixedSize() {
+    JavaDataModel jdm = JavaDataModel.get();
+    return jdm.primitive2() + 2 * jdm.primitive1();
+  }
+
+  @Override
+  protected int findOrAddGroup(VectorizedRowBatch batch, int batchIndex) throws HiveException {
+    BytesColumnVector keyColVector = (BytesColumnVector) batch.cols[keyColumnNums[0]];
+    final int adjustedIndex = adjustIndex(keyColVector, batchIndex);
+    if (isNull(keyColVector, adjustedIndex)) {
+      if (nullGroupNum == NULL_GROUP) {
+        nullGroupNum = addGroup();
+      }
+      return nullGroupNum;
+    }
+    probeBytes = keyColVector.vector[adjustedIndex];
+    probeStart = keyColVector.start[adjustedIndex];
+    probeLength = keyColVector.length[adjustedIndex];
+    probeHashCode = HashCodeUtil.murmurHash(probeBytes, probeStart, probeLength);
+    return findOrAddKey(probeHashCode);
+  }
+
+  @Override
+  protected boolean isKeyEqual(int groupNum) {
+    if (keyHashCodes[groupNum] != probeHashCode || keyLengths[groupNum] != probeLength) {
+      return false;
+    }
+    return probeLength == 0 ||
+        keyBuffers.isEqual(probeBytes, probeStart, probeLength, keyOffsets[groupNum], probeLength);
+  }
+
+  @Override
+  protected void storeKey(int groupNum) {
+    keyOffsets[groupNum] = keyBuffers.getWritePoint();
+    keyLengths[groupNum] = probeLength;
+    keyHashCodes[groupNum] = probeHashCode;
+    if (probeLength > 0) {
+      keyBuffers.write(probeBytes, probeStart, probeLength);
+    }
+  }
+
+  @Override
+  protected int storedKeyHashCode(int groupNum) {
+    return keyHashCodes[groupNum];
+  }
+
+  @Override
+  public void assignKeyRowColumns(VectorizedRowBatch outputBatch, int batchIndex, int groupNum) {
+    ColumnVector colVector = outputBatch.cols[0];
+    if (groupNum == nullGroupNum) {
+      colVector.noNulls = false;
+      colVector.isNull[batchIndex] = true;
+      return;
+    }
+    colVector.isNull[batchIndex] = false;
+    BytesColumnVector bytesColVector = (BytesColumnVector) colVector;
+    final int length = keyLengths[groupNum];
+    if (length == 0) {
+      bytesColVector.setVal(batchIndex, EMPTY_BYTES, 0, 0);
+      return;
+    }
+    keyRef.reset(keyOffsets[groupNum], length);
+    keyBuffers.populateValue(keyRef);
+    // setVal copies the bytes, so the key buffers may be cleared after the flush.
+    bytesColVector.setVal(batchIndex, keyRef.getBytes(), (int) keyRef.getOffset(), length);
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + " write buffers size " + writeBuffersSize;
+  }
+}
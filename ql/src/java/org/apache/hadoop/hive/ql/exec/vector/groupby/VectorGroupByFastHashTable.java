@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorAggregationBufferRow;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * An open addressing hash table that maps the GROUP BY key of each row of a batch to a dense
+ * group number, optimized for vectorized hash aggregation.
+ *
+ * The keys are stored column-wise in primitive arrays indexed by group number (see the
+ * subclasses).  When all the aggregations are supported by VectorGroupByFastAggregation, their
+ * state is kept in primitive arrays indexed by the same group number too, and there is no key
+ * object, aggregation buffer or hash map entry per group.  Otherwise the aggregation buffers of
+ * the groups are kept in an array indexed by group number.
+ *
+ * The slot array holds (group number + 1) so that 0 marks an empty slot.  Slots are probed with
+ * the same quadratic sequence as the vector map join fast hash tables.  Entries are never
+ * removed individually; the table is emptied with clear().
+ */
+public abstract class VectorGroupByFastHashTable {
+
+  public static final Logger LOG = LoggerFactory.getLogger(VectorGroupByFastHashTable.class);
+
+  // 2^30 (we cannot use Integer.MAX_VALUE which is 2^31-1).
+  public static final int HIGHEST_INT_POWER_OF_2 = 1073741824;
+
+  public static final int DEFAULT_INITIAL_CAPACITY = 1024;
+  public static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+  /**
+   * Marks a key that is null.
+   */
+  protected static final int NULL_GROUP = -1;
+
+  protected final int[] keyColumnNums;
+
+  private final int initialCapacity;
+  protected final float loadFactor;
+
+  protected int logicalHashBucketCount;
+  protected int logicalHashBucketMask;
+  protected int resizeThreshold;
+
+  protected int[] slots;
+
+  protected int groupCount;
+  protected int groupCapacity;
+
+  protected int largestNumberOfSteps;
+  protected int metricPutConflict;
+  protected int metricExpands;
+
+  private VectorGroupByFastAggregation[] aggregations;
+
+  private VectorAggregationBufferRow[] aggregationBufferRows;
+
+  /**
+   * The group number of each (logical) row of the last batch passed to findOrAddGroups.
+   */
+  protected final int[] batchGroupNums;
+
+  public VectorGroupByFastHashTable(int[] keyColumnNums, int initialCapacity, float loadFactor) {
+    this.keyColumnNums = keyColumnNums;
+    this.initialCapacity = (Integer.bitCount(initialCapacity) == 1) ?
+        initialCapacity : Integer.highestOneBit(initialCapacity) << 1;
+    this.loadFactor = loadFactor;
+    batchGroupNums = new int[VectorizedRowBatch.DEFAULT_SIZE];
+    allocate();
+  }
+
+  private void allocate() {
+    logicalHashBucketCount = initialCapacity;
+    logicalHashBucketMask = logicalHashBucketCount - 1;
+    resizeThreshold = (int) (logicalHashBucketCount * loadFactor);
+    slots = new int[logicalHashBucketCount];
+
+    groupCount = 0;
+    groupCapacity = Math.max(16, resizeThreshold);
+    if (aggregations != null) {
+      aggregationBufferRows = null;
+      for (VectorGroupByFastAggregation aggregation : aggregations) {
+        aggregation.allocate(groupCapacity);
+      }
+    } else {
+      aggregationBufferRows = new VectorAggregationBufferRow[groupCapacity];
+    }
+    allocateKeyStorage(groupCapacity);
+
+    largestNumberOfSteps = 0;
+    metricPutConflict = 0;
+  }
+
+  /**
+   * Keeps the state of the aggregations in the table instead of aggregation buffer rows.  Must be
+   * called while the table is empty.
+   */
+  public void setAggregations(VectorGroupByFastAggregation[] aggregations) {
+    if (groupCount != 0) {
+      throw new IllegalStateException("The aggregations must be set while the table is empty");
+    }
+    this.aggregations = aggregations;
+    allocate();
+  }
+
+  public boolean hasAggregations() {
+    return aggregations != null;
+  }
+
+  /**
+   * Number of groups in the table.
+   */
+  public int size() {
+    return groupCount;
+  }
+
+  /**
+   * Finds the group of each row of the batch, adding groups for new keys.  The group numbers
+   * are returned by getBatchGroupNums(), indexed by logical row.
+   *
+   * Without aggregations (see setAggregations), new groups have no aggregation buffers yet; the
+   * caller must set them with setAggregationBufferRow.
+   */
+  public void findOrAddGroups(VectorizedRowBatch batch) throws HiveException {
+    final int size = batch.size;
+    final boolean selectedInUse = batch.selectedInUse;
+    final int[] selected = batch.selected;
+    for (int logical = 0; logical < size; logical++) {
+      final int batchIndex = (selectedInUse ? selected[logical] : logical);
+      batchGroupNums[logical] = findOrAddGroup(batch, batchIndex);
+    }
+  }
+
+  public int[] getBatchGroupNums() {
+    return batchGroupNums;
+  }
+
+  public VectorAggregationBufferRow getAggregationBufferRow(int groupNum) {
+    return aggregationBufferRows[groupNum];
+  }
+
+  public void setAggregationBufferRow(int groupNum, VectorAggregationBufferRow aggregationBufferRow) {
+    aggregationBufferRows[groupNum] = aggregationBufferRow;
+  }
+
+  /**
+   * Aggregates the rows of the last batch passed to findOrAddGroups into their groups.
+   */
+  public void aggregate(VectorizedRowBatch batch) throws HiveException {
+    for (VectorGroupByFastAggregation aggregation : aggregations) {
+      aggregation.aggregate(batch, batchGroupNums);
+    }
+  }
+
+  /**
+   * Writes the aggregation values of a group into consecutive columns of an output batch,
+   * starting with firstColumnNum.
+   */
+  public void assignAggregationRowColumns(VectorizedRowBatch outputBatch, int batchIndex,
+      int firstColumnNum, int groupNum) {
+    for (int i = 0; i < aggregations.length; i++) {
+      aggregations[i].assignRowColumn(outputBatch, batchIndex, firstColumnNum + i, groupNum);
+    }
+  }
+
+  /**
+   * Writes the key of a group into the key columns (0 .. key count - 1) of an output batch.
+   */
+  public abstract void assignKeyRowColumns(VectorizedRowBatch outputBatch, int batchIndex,
+      int groupNum);
+
+  /**
+   * Removes all groups, shrinking back to the initial capacity.
+   */
+  public void clear() {
+    allocate();
+  }
+
+  /**
+   * The estimated size of the table, the keys and the aggregation arrays, without the
+   * aggregation buffers.
+   */
+  public long getEstimatedMemorySize() {
+    JavaDataModel jdm = JavaDataModel.get();
+    long size = JavaDataModel.alignUp(jdm.object() + 10L * jdm.primitive1(), jdm.memoryAlign());
+    size += jdm.lengthForIntArrayOfSize(slots.length);
+    if (aggregations != null) {
+      for (VectorGroupByFastAggregation aggregation : aggregations) {
+        size += aggregation.getMemorySize(groupCapacity);
+      }
+    } else {
+      size += jdm.lengthForObjectArrayOfSize(groupCapacity);
+    }
+    size += jdm.lengthForIntArrayOfSize(batchGroupNums.length);
+    size += getKeyStorageMemorySize();
+    return size;
+  }
+
+  /**
+   * The estimated fixed size of one more group in the table, its key storage, and its
+   * aggregation state or buffer reference.
+   */
+  public long getEntryFixedSize() {
+    JavaDataModel jdm = JavaDataModel.get();
+    // One slot at the load factor, the key, and the aggregations.
+    long size = (long) Math.ceil(jdm.primitive1() / loadFactor) + getKeyFixedSize();
+    if (aggregations != null) {
+      for (VectorGroupByFastAggregation aggregation : aggregations) {
+        size += aggregation.getFixedSize();
+      }
+    } else {
+      size += jdm.ref();
+    }
+    return size;
+  }
+
+  protected abstract void allocateKeyStorage(int capacity);
+
+  protected abstract void expandKeyStorage(int newCapacity);
+
+  protected abstract long getKeyStorageMemorySize();
+
+  protected abstract long getKeyFixedSize();
+
+  protected abstract int findOrAddGroup(VectorizedRowBatch batch, int batchIndex)
+      throws HiveException;
+
+  /**
+   * Returns true when the stored key of the group equals the key of the row being probed.
+   */
+  protected abstract boolean isKeyEqual(int groupNum);
+
+  /**
+   * Stores the key of the row being probed as the key of a new group.
+   */
+  protected abstract void storeKey(int groupNum);
+
+  /**
+   * The hash code of the stored key of a group, for rehashing.
+   */
+  protected abstract int storedKeyHashCode(int groupNum);
+
+  /**
+   * Probes for the key last set up by the subclass (see isKeyEqual / storeKey) with the given
+   * hash code, and adds a new group if the key is not present.
+   */
+  protected int findOrAddKey(int hashCode) {
+    int slot = hashCode & logicalHashBucketMask;
+    long probeSlot = slot;
+    int i = 0;
+    while (true) {
+      final int slotValue = slots[slot];
+      if (slotValue == 0) {
+        break;
+      }
+      final int groupNum = slotValue - 1;
+      if (isKeyEqual(groupNum)) {
+        return groupNum;
+      }
+      ++metricPutConflict;
+      // Some other key (collision) - keep probing.
+      probeSlot += (++i);
+      slot = (int) (probeSlot & logicalHashBucketMask);
+    }
+
+    if (largestNumberOfSteps < i) {
+      largestNumberOfSteps = i;
+    }
+
+    final int groupNum = addGroup();
+    storeKey(groupNum);
+    slots[slot] = groupNum + 1;
+
+    if (groupCount >= resizeThreshold) {
+      expandAndRehash();
+    }
+    return groupNum;
+  }
+
+  /**
+   * Allocates the next group number, growing the group storage when needed.  Single key tables
+   * use it directly for the null key, which has no slot.
+   */
+  protected int addGroup() {
+    if (groupCount == groupCapacity) {
+      int newGroupCapacity = (int) Math.min(2L * groupCapacity, HIGHEST_INT_POWER_OF_2);
+      if (newGroupCapacity == groupCapacity) {
+        throw new RuntimeException("Vector GROUP BY fast hash table cannot grow any more");
+      }
+      if (aggregations != null) {
+        for (VectorGroupByFastAggregation aggregation : aggregations) {
+          aggregation.expand(newGroupCapacity);
+        }
+      } else {
+        aggregationBufferRows = Arrays.copyOf(aggregationBufferRows, newGroupCapacity);
+      }
+      expandKeyStorage(newGroupCapacity);
+      groupCapacity = newGroupCapacity;
+    }
+    if (aggregations != null) {
+      for (VectorGroupByFastAggregation aggregation : aggregations) {
+        aggregation.initGroup(groupCount);
+      }
+    }
+    return groupCount++;
+  }
+
+  private void expandAndRehash() {
+    if (logicalHashBucketCount >= HIGHEST_INT_POWER_OF_2) {
+      throw new RuntimeException("Vector GROUP BY fast hash table cannot grow any more -- " +
+          "current logical size is " + logicalHashBucketCount);
+    }
+    int newLogicalHashBucketCount = logicalHashBucketCount * 2;
+    int newLogicalHashBucketMask = newLogicalHashBucketCount - 1;
+    int newLargestNumberOfSteps = 0;
+    int[] newSlots = new int[newLogicalHashBucketCount];
+
+    for (int slot = 0; slot < logicalHashBucketCount; slot++) {
+      final int slotValue = slots[slot];
+      if (slotValue == 0) {
+        continue;
+      }
+      int newSlot = storedKeyHashCode(slotValue - 1) & newLogicalHashBucketMask;
+      long newProbeSlot = newSlot;
+      int i = 0;
+      while (newSlots[newSlot] != 0) {
+        // Some other key (collision) - keep probing.
+        newProbeSlot += (++i);
+        newSlot = (int) (newProbeSlot & newLogicalHashBucketMask);
+      }
+      if (newLargestNumberOfSteps < i) {
+        newLargestNumberOfSteps = i;
+      }
+      newSlots[newSlot] = slotValue;
+    }
+
+    slots = newSlots;
+    logicalHashBucketCount = newLogicalHashBucketCount;
+    logicalHashBucketMask = newLogicalHashBucketMask;
+    largestNumberOfSteps = newLargestNumberOfSteps;
+    resizeThreshold = (int) (logicalHashBucketCount * loadFactor);
+    metricExpands++;
+  }
+
+  /**
+   * Returns the index into the column vector for a batch index, taking isRepeating into account.
+   */
+  protected static int adjustIndex(ColumnVector colVector, int batchIndex) {
+    return colVector.isRepeating ? 0 : batchIndex;
+  }
+
+  protected static boolean isNull(ColumnVector colVector, int adjustedIndex) {
+    return !colVector.noNulls && colVector.isNull[adjustedIndex];
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " groups " + groupCount +
+        " logical size " + logicalHashBucketCount +
+        " largest steps " + largestNumberOfSteps +
+        " conflicts " + metricPutConflict +
+        " expands " + metricExpands;
+  }
+}
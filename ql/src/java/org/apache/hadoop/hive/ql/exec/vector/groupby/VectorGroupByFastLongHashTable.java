@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hive.common.util.HashCodeUtil;
+
+/*
+ * A single long key (any long family type or DECIMAL_64) GROUP BY fast hash table.
+ */
+public class VectorGroupByFastLongHashTable extends VectorGroupByFastHashTable {
+
+  private long[] keys;
+
+  private int nullGroupNum;
+
+  private long probeKey;
+
+  public VectorGroupByFastLongHashTable(int keyColumnNum, int initialCapacity, float loadFactor) {
+    super(new int[] { keyColumnNum }, initialCapacity, loadFactor);
+  }
+
+  @Override
+  protected void allocateKeyStorage(int capacity) {
+    keys = new long[capacity];
+    nullGroupNum = NULL_GROUP;
+  }
+
+  @Override
+  protected void expandKeyStorage(int newCapacity) {
+    keys = Arrays.copyOf(keys, newCapacity);
+  }
+
+  @Override
+  protected long getKeyStorageMemorySize() {
+    return JavaDataModel.get().lengthForLongArrayOfSize(keys.length);
+  }
+
+  @Override
+  protected long getKeyFixedSize() {
+    return JavaDataModel.get().primitive2();
+  }
+
+  @Override
+  public void findOrAddGroups(VectorizedRowBatch batch) throws HiveException {
+    LongColumnVector keyColVector = (LongColumnVector) batch.cols[keyColumnNums[0]];
+    if (keyColVector.isRepeating) {
+
+      // Same group for all rows.
+      final int groupNum = findOrAddGroup(batch, 0);
+      Arrays.fill(batchGroupNums, 0, batch.size, groupNum);
+      return;
+    }
+    if (keyColVector.noNulls) {
+
+      // Avoid the per row null checks.
+      final long[] vector = keyColVector.vector;
+      final int size = batch.size;
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      for (int logical = 0; logical < size; logical++) {
+        final int batchIndex = (selectedInUse ? selected[logical] : logical);
+        probeKey = vector[batchIndex];
+        batchGroupNums[logical] = findOrAddKey(HashCodeUtil.calculateLongHashCode(probeKey));
+      }
+      return;
+    }
+    super.findOrAddGroups(batch);
+  }
+
+  @Override
+  protected int findOrAddGroup(VectorizedRowBatch batch, int batchIndex) throws HiveException {
+    LongColumnVector keyColVector = (LongColumnVector) batch.cols[keyColumnNums[0]];
+    final int adjustedIndex = adjustIndex(keyColVector, batchIndex);
+    if (isNull(keyColVector, adjustedIndex)) {
+      if (nullGroupNum == NULL_GROUP) {
+        nullGroupNum = addGroup();
+      }
+      return nullGroupNum;
+    }
+    probeKey = keyColVector.vector[adjustedIndex];
+    return findOrAddKey(HashCodeUtil.calculateLongHashCode(probeKey));
+  }
+
+  @Override
+  protected boolean isKeyEqual(int groupNum) {
+    return keys[groupNum] == probeKey;
+  }
+
+  @Override
+  protected void storeKey(int groupNum) {
+    keys[groupNum] = probeKey;
+  }
+
+  @Override
+  protected int storedKeyHashCode(int groupNum) {
+    return HashCodeUtil.calculateLongHashCode(keys[groupNum]);
+  }
+
+  @Override
+  public void assignKeyRowColumns(VectorizedRowBatch outputBatch, int batchIndex, int groupNum) {
+    ColumnVector colVector = outputBatch.cols[0];
+    if (groupNum == nullGroupNum) {
+      colVector.noNulls = false;
+      colVector.isNull[batchIndex] = true;
+      return;
+    }
+    colVector.isNull[batchIndex] = false;
+    ((LongColumnVector) colVector).vector[batchIndex] = keys[groupNum];
+  }
+}
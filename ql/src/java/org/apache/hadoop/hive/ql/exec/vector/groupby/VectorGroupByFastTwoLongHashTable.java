@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hive.common.util.HashCodeUtil;
+
+/*
+ * A two long key (any long family types or DECIMAL_64) GROUP BY fast hash table.
+ *
+ * Either key may be null; the null flags are part of the stored key and of the hash code.
+ */
+public class VectorGroupByFastTwoLongHashTable extends VectorGroupByFastHashTable {
+
+  private static final byte KEY0_NULL = 1;
+  private static final byte KEY1_NULL = 2;
+
+  private long[] keys0;
+  private long[] keys1;
+  private byte[] nullFlags;
+
+  private long probeKey0;
+  private long probeKey1;
+  private byte probeNullFlags;
+
+  public VectorGroupByFastTwoLongHashTable(int keyColumnNum0, int keyColumnNum1,
+      int initialCapacity, float loadFactor) {
+    super(new int[] { keyColumnNum0, keyColumnNum1 }, initialCapacity, loadFactor);
+  }
+
+  @Override
+  protected void allocateKeyStorage(int capacity) {
+    keys0 = new long[capacity];
+    keys1 = new long[capacity];
+    nullFlags = new byte[capacity];
+  }
+
+  @Override
+  protected void expandKeyStorage(int newCapacity) {
+    keys0 = Arrays.copyOf(keys0, newCapacity);
+    keys1 = Arrays.copyOf(keys1, newCapacity);
+    nullFlags = Arrays.copyOf(nullFlags, newCapacity);
+  }
+
+  @Override
+  protected long getKeyStorageMemorySize() {
+    JavaDataModel jdm = JavaDataModel.get();
+    return 2 * jdm.lengthForLongArrayOfSize(keys0.length) +
+        jdm.lengthForByteArrayOfSize(nullFlags.length);
+  }
+
+  @Override
+  protected long getKeyFixedSize() {
+    return 2 * JavaDataModel.get().primitive2() + 1;
+  }
+
+  @Override
+  public void findOrAddGroups(VectorizedRowBatch batch) throws HiveException {
+    LongColumnVector keyColVector0 = (LongColumnVector) batch.cols[keyColumnNums[0]];
+    LongColumnVector keyColVector1 = (LongColumnVector) batch.cols[keyColumnNums[1]];
+    if (keyColVector0.noNulls && keyColVector1.noNulls &&
+        !keyColVector0.isRepeating && !keyColVector1.isRepeating) {
+
+      // Avoid the per row null and repeating checks.
+      final long[] vector0 = keyColVector0.vector;
+      final long[] vector1 = keyColVector1.vector;
+      final int size = batch.size;
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      probeNullFlags = 0;
+      for (int logical = 0; logical < size; logical++) {
+        final int batchIndex = (selectedInUse ? selected[logical] : logical);
+        probeKey0 = vector0[batchIndex];
+        probeKey1 = vector1[batchIndex];
+        batchGroupNums[logical] =
+            findOrAddKey(HashCodeUtil.calculateTwoLongHashCode(probeKey0, probeKey1));
+      }
+      return;
+    }
+    super.findOrAddGroups(batch);
+  }
+
+  @Override
+  protected int findOrAddGroup(VectorizedRowBatch batch, int batchIndex) throws HiveException {
+    LongColumnVector keyColVector0 = (LongColumnVector) batch.cols[keyColumnNums[0]];
+    LongColumnVector keyColVector1 = (LongColumnVector) batch.cols[keyColumnNums[1]];
+    final int adjustedIndex0 = adjustIndex(keyColVector0, batchIndex);
+    final int adjustedIndex1 = adjustIndex(keyColVector1, batchIndex);
+
+    probeNullFlags = 0;
+    if (isNull(keyColVector0, adjustedIndex0)) {
+      probeNullFlags |= KEY0_NULL;
+      probeKey0 = 0;
+    } else {
+      probeKey0 = keyColVector0.vector[adjustedIndex0];
+    }
+    if (isNull(keyColVector1, adjustedIndex1)) {
+      probeNullFlags |= KEY1_NULL;
+      probeKey1 = 0;
+    } else {
+      probeKey1 = keyColVector1.vector[adjustedIndex1];
+    }
+    return findOrAddKey(hashCode(probeKey0, probeKey1, probeNullFlags));
+  }
+
+  private static int hashCode(long key0, long key1, byte nullFlags) {
+    final int hashCode = HashCodeUtil.calculateTwoLongHashCode(key0, key1);
+    return nullFlags == 0 ? hashCode : hashCode ^ HashCodeUtil.calculateIntHashCode(nullFlags);
+  }
+
+  @Override
+  protected boolean isKeyEqual(int groupNum) {
+    return keys0[groupNum] == probeKey0 && keys1[groupNum] == probeKey1 &&
+        nullFlags[groupNum] == probeNullFlags;
+  }
+
+  @Override
+  protected void storeKey(int groupNum) {
+    keys0[groupNum] = probeKey0;
+    keys1[groupNum] = probeKey1;
+    nullFlags[groupNum] = probeNullFlags;
+  }
+
+  @Override
+  protected int storedKeyHashCode(int groupNum) {
+    return hashCode(keys0[groupNum], keys1[groupNum], nullFlags[groupNum]);
+  }
+
+  @Override
+  public void assignKeyRowColumns(VectorizedRowBatch outputBatch, int batchIndex, int groupNum) {
+    final byte flags = nullFlags[groupNum];
+    assignKey(outputBatch.cols[0], batchIndex, (flags & KEY0_NULL) != 0, keys0[groupNum]);
+    assignKey(outputBatch.cols[1], batchIndex, (flags & KEY1_NULL) != 0, keys1[groupNum]);
+  }
+
+  private static void assignKey(ColumnVector colVector, int batchIndex, boolean isNull,
+      long key) {
+    if (isNull) {
+      colVector.noNulls = false;
+      colVector.isNull[batchIndex] = true;
+      return;
+    }
+    colVector.isNull[batchIndex] = false;
+    ((LongColumnVector) colVector).vector[batchIndex] = key;
+  }
+}
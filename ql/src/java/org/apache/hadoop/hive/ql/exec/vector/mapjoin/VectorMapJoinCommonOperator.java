@@ -36,6 +36,7 @@
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
 import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.VectorColumnMapping;
 import org.apache.hadoop.hive.ql.exec.vector.VectorColumnOutputMapping;
 import org.apache.hadoop.hive.ql.exec.vector.VectorColumnSourceMapping;
@@ -70,6 +71,8 @@
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hive.common.util.BloomKFilter;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -277,6 +280,22 @@ protected void initLoggingPrefix(String className) {
   protected transient long batchCounter;
   protected transient long rowCounter;
 
+  /*
+   * Counters of the big table keys tested against the small table Bloom filter and the keys the
+   * filter rejected before probing the hash table.
+   */
+  public static enum BloomFilterCounter {
+    VECTOR_MAPJOIN_BLOOM_FILTER_KEYS_TESTED,
+    VECTOR_MAPJOIN_BLOOM_FILTER_KEYS_REJECTED
+  }
+
+  // The Bloom filter over the small table keys when one was built with the hash table; otherwise,
+  // null.  Only used by operators that drop non-matching big table rows.
+  protected transient BloomKFilter bloomFilter;
+
+  protected transient LongWritable bloomFilterKeysTested;
+  protected transient LongWritable bloomFilterKeysRejected;
+
   /** Kryo ctor. */
   protected VectorMapJoinCommonOperator() {
     super();
@@ -568,6 +587,13 @@ protected void initializeOp(Configuration hconf) throws HiveException {
         HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_OVERFLOW_REPEATED_THRESHOLD);
     useOverflowRepeatedThreshold = (overflowRepeatedThreshold >= 0);
 
+    bloomFilterKeysTested = new LongWritable();
+    bloomFilterKeysRejected = new LongWritable();
+    statsMap.put(BloomFilterCounter.VECTOR_MAPJOIN_BLOOM_FILTER_KEYS_TESTED.name() + "_" +
+        getOperatorId(), bloomFilterKeysTested);
+    statsMap.put(BloomFilterCounter.VECTOR_MAPJOIN_BLOOM_FILTER_KEYS_REJECTED.name() + "_" +
+        getOperatorId(), bloomFilterKeysRejected);
+
 
     /*
      * Create our vectorized copy row and deserialize row helper objects.
@@ -785,6 +811,135 @@ public void firstBatchSetup(VectorizedRowBatch batch) throws HiveException {
   public void hashTableSetup() throws HiveException {
   }
 
+  /*
+   * Get the small table Bloom filter for operators that can drop the big table rows it rejects.
+   */
+  protected void bloomFilterSetup() {
+    bloomFilter = vectorMapJoinHashTable.getBloomFilter();
+    if (bloomFilter != null) {
+      LOG.info(getLoggingPrefix() + " Using Bloom filter of " + bloomFilter.sizeInBytes() +
+          " bytes to pre-filter big table keys");
+    }
+  }
+
+  /*
+   * Remove the rows whose single long key the Bloom filter rejects from the batch, like a filter
+   * expression does.  Rows with a NULL key are kept and left to the join.
+   */
+  protected void filterLongKeysWithBloomFilter(VectorizedRowBatch batch,
+      LongColumnVector joinColVector) {
+
+    final int inputLogicalSize = batch.size;
+    final long[] vector = joinColVector.vector;
+    final boolean[] isNull = joinColVector.isNull;
+    final boolean noNulls = joinColVector.noNulls;
+
+    bloomFilterKeysTested.set(bloomFilterKeysTested.get() + inputLogicalSize);
+
+    if (joinColVector.isRepeating) {
+      if ((noNulls || !isNull[0]) && !bloomFilter.testLong(vector[0])) {
+        bloomFilterKeysRejected.set(bloomFilterKeysRejected.get() + inputLogicalSize);
+        batch.size = 0;
+      }
+      return;
+    }
+
+    int[] selected = batch.selected;
+    int newSize = 0;
+    if (batch.selectedInUse) {
+      for (int logical = 0; logical < inputLogicalSize; logical++) {
+        final int batchIndex = selected[logical];
+        if ((!noNulls && isNull[batchIndex]) || bloomFilter.testLong(vector[batchIndex])) {
+          selected[newSize++] = batchIndex;
+        }
+      }
+    } else {
+      for (int batchIndex = 0; batchIndex < inputLogicalSize; batchIndex++) {
+        if ((!noNulls && isNull[batchIndex]) || bloomFilter.testLong(vector[batchIndex])) {
+          selected[newSize++] = batchIndex;
+        }
+      }
+      if (newSize < inputLogicalSize) {
+        batch.selectedInUse = true;
+      }
+    }
+    bloomFilterKeysRejected.set(bloomFilterKeysRejected.get() + inputLogicalSize - newSize);
+    batch.size = newSize;
+  }
+
+  /*
+   * Whether the single long key of each row of a non-repeating batch is NULL or outside the min /
+   * max range of the small table keys, so no row of the batch can match.
+   */
+  protected static boolean isLongKeyBatchOutOfRange(VectorizedRowBatch batch,
+      LongColumnVector joinColVector, long min, long max) {
+
+    final int inputLogicalSize = batch.size;
+    final long[] vector = joinColVector.vector;
+    final boolean[] isNull = joinColVector.isNull;
+    final boolean noNulls = joinColVector.noNulls;
+    final int[] selected = batch.selected;
+    final boolean selectedInUse = batch.selectedInUse;
+
+    for (int logical = 0; logical < inputLogicalSize; logical++) {
+      final int batchIndex = (selectedInUse ? selected[logical] : logical);
+      if ((noNulls || !isNull[batchIndex]) &&
+          vector[batchIndex] >= min && vector[batchIndex] <= max) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Remove the rows whose single string key the Bloom filter rejects from the batch, like a filter
+   * expression does.  Rows with a NULL key are kept and left to the join.
+   */
+  protected void filterBytesKeysWithBloomFilter(VectorizedRowBatch batch,
+      BytesColumnVector joinColVector) {
+
+    final int inputLogicalSize = batch.size;
+    final byte[][] vector = joinColVector.vector;
+    final int[] start = joinColVector.start;
+    final int[] length = joinColVector.length;
+    final boolean[] isNull = joinColVector.isNull;
+    final boolean noNulls = joinColVector.noNulls;
+
+    bloomFilterKeysTested.set(bloomFilterKeysTested.get() + inputLogicalSize);
+
+    if (joinColVector.isRepeating) {
+      if ((noNulls || !isNull[0]) && !bloomFilter.testBytes(vector[0], start[0], length[0])) {
+        bloomFilterKeysRejected.set(bloomFilterKeysRejected.get() + inputLogicalSize);
+        batch.size = 0;
+      }
+      return;
+    }
+
+    int[] selected = batch.selected;
+    int newSize = 0;
+    if (batch.selectedInUse) {
+      for (int logical = 0; logical < inputLogicalSize; logical++) {
+        final int batchIndex = selected[logical];
+        if ((!noNulls && isNull[batchIndex]) ||
+            bloomFilter.testBytes(vector[batchIndex], start[batchIndex], length[batchIndex])) {
+          selected[newSize++] = batchIndex;
+        }
+      }
+    } else {
+      for (int batchIndex = 0; batchIndex < inputLogicalSize; batchIndex++) {
+        if ((!noNulls && isNull[batchIndex]) ||
+            bloomFilter.testBytes(vector[batchIndex], start[batchIndex], length[batchIndex])) {
+          selected[newSize++] = batchIndex;
+        }
+      }
+      if (newSize < inputLogicalSize) {
+        batch.selectedInUse = true;
+      }
+    }
+    bloomFilterKeysRejected.set(bloomFilterKeysRejected.get() + inputLogicalSize - newSize);
+    batch.size = newSize;
+  }
+
   /*
    * Perform the Native Vector MapJoin operator work.
    */
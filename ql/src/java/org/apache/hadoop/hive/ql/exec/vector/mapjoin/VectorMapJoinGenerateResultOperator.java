@@ -38,6 +38,8 @@
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedBatchUtil;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast.VectorMapJoinFastPartitionedHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast.VectorMapJoinFastTableContainer;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashTableResult;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashMapResult;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.optimized.VectorMapJoinOptimizedCreateHashTable;
@@ -56,6 +58,8 @@
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.hive.serde2.ByteStream.Output;
 
+import com.esotericsoftware.kryo.KryoException;
+
 /**
  * This class has methods for generating vectorized join results and forwarding batchs.
  *
@@ -525,13 +529,32 @@ private void setupSpillSerDe(VectorizedRowBatch batch) throws HiveException {
     bigTableVectorDeserializeRow.init(noNullsProjection);
   }
 
-  private void spillSerializeRow(VectorizedRowBatch batch, int batchIndex,
-      int partitionId) throws IOException {
+  /*
+   * @return The native fast hash table when it spills; otherwise, null for the optimized
+   *         HybridHashTableContainer.
+   */
+  private VectorMapJoinFastPartitionedHashTable getSpillingFastHashTable() {
+    MapJoinTableContainer smallTable = mapJoinTables[posSingleVectorMapJoinSmallTable];
+    if (smallTable instanceof VectorMapJoinFastTableContainer) {
+      return ((VectorMapJoinFastTableContainer) smallTable).getPartitionedHashTable();
+    }
+    return null;
+  }
 
+  private VectorRowBytesContainer getMatchfileRowBytesContainer(int partitionId) {
+    VectorMapJoinFastPartitionedHashTable fastHashTable = getSpillingFastHashTable();
+    if (fastHashTable != null) {
+      return fastHashTable.getMatchfileRowBytesContainer(partitionId);
+    }
     HybridHashTableContainer ht = (HybridHashTableContainer) mapJoinTables[posSingleVectorMapJoinSmallTable];
     HashPartition hp = ht.getHashPartitions()[partitionId];
+    return hp.getMatchfileRowBytesContainer();
+  }
 
-    VectorRowBytesContainer rowBytesContainer = hp.getMatchfileRowBytesContainer();
+  private void spillSerializeRow(VectorizedRowBatch batch, int batchIndex,
+      int partitionId) throws IOException {
+
+    VectorRowBytesContainer rowBytesContainer = getMatchfileRowBytesContainer(partitionId);
     Output output = rowBytesContainer.getOuputForRowBytes();
     bigTableVectorSerializeRow.setOutputAppend(output);
     bigTableVectorSerializeRow.serializeWrite(batch, batchIndex);
@@ -605,6 +628,43 @@ protected void reloadHashTable(byte pos, int partitionId)
     }
   }
 
+  /**
+   * With the native fast hash table, the spilled partitions are partitions of the fast hash table.
+   * Each one is reloaded by itself as the hash table used to join its spilled big table rows.
+   */
+  @Override
+  protected void processSpilledPartitions() throws HiveException {
+    VectorMapJoinFastPartitionedHashTable fastHashTable = getSpillingFastHashTable();
+    if (fastHashTable == null) {
+      super.processSpilledPartitions();
+      return;
+    }
+
+    // The big table rows of the in-memory partitions have all been joined.
+    fastHashTable.clearInMemoryPartitions();
+
+    for (int i = 0; i < fastHashTable.getNumPartitions(); i++) {
+      if (fastHashTable.isSpilled(i)) {
+        LOG.info("Going to reload hash partition " + i);
+        try {
+          vectorMapJoinHashTable = fastHashTable.reloadPartition(i);
+          needHashTableSetup = true;
+          reProcessBigTable(i);
+        } catch (KryoException ke) {
+          LOG.error("Processing the spilled data failed due to Kryo error!");
+          LOG.error("Cleaning up all spilled data!");
+          fastHashTable.clearSpill();
+          throw new HiveException(ke);
+        } catch (HiveException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new HiveException(e);
+        }
+        fastHashTable.clearPartition(i);
+      }
+    }
+  }
+
   @Override
   protected void reProcessBigTable(int partitionId)
       throws HiveException {
@@ -618,13 +678,11 @@ protected void reProcessBigTable(int partitionId)
       return;
     }
 
-    HashPartition partition = firstSmallTable.getHashPartitions()[partitionId];
-
     int rowCount = 0;
     int batchCount = 0;
 
     try {
-      VectorRowBytesContainer bigTable = partition.getMatchfileRowBytesContainer();
+      VectorRowBytesContainer bigTable = getMatchfileRowBytesContainer(partitionId);
       bigTable.prepareForReading();
 
       while (bigTable.readNext()) {
@@ -741,6 +799,12 @@ public void closeOp(boolean aborted) throws HiveException {
     if (!aborted && overflowBatch.size > 0) {
       forwardOverflow();
     }
+    if (bloomFilter != null && bloomFilterKeysTested.get() > 0) {
+      final long keysTested = bloomFilterKeysTested.get();
+      final long keysRejected = bloomFilterKeysRejected.get();
+      LOG.info(getLoggingPrefix() + " Bloom filter rejected " + keysRejected + " of " + keysTested +
+          " big table keys (" + String.format("%.1f", 100.0 * keysRejected / keysTested) + "%)");
+    }
     if (LOG.isDebugEnabled()) {
       LOG.debug("VectorMapJoinInnerLongOperator closeOp " + batchCounter + " batches processed");
     }
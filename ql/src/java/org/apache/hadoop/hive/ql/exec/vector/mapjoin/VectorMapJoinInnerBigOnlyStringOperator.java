@@ -116,6 +116,8 @@ public void hashTableSetup() throws HiveException {
      */
 
     hashMultiSet = (VectorMapJoinBytesHashMultiSet) vectorMapJoinHashTable;
+
+    bloomFilterSetup();
   }
 
   @Override
@@ -133,7 +135,7 @@ public void processBatch(VectorizedRowBatch batch) throws HiveException {
         ve.evaluate(batch);
       }
 
-      final int inputLogicalSize = batch.size;
+      int inputLogicalSize = batch.size;
       if (inputLogicalSize == 0) {
         return;
       }
@@ -145,6 +147,15 @@ public void processBatch(VectorizedRowBatch batch) throws HiveException {
         }
       }
 
+      // Drop the rows whose key the small table Bloom filter rules out before any lookup.
+      if (bloomFilter != null) {
+        filterBytesKeysWithBloomFilter(batch, (BytesColumnVector) batch.cols[singleJoinColumn]);
+        inputLogicalSize = batch.size;
+        if (inputLogicalSize == 0) {
+          return;
+        }
+      }
+
       // We rebuild in-place the selected array with rows destine to be forwarded.
       int numSel = 0;
 
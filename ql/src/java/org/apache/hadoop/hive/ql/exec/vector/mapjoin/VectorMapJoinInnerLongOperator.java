@@ -124,6 +124,8 @@ public void hashTableSetup() throws HiveException {
       min = hashMap.min();
       max = hashMap.max();
     }
+
+    bloomFilterSetup();
   }
 
   @Override
@@ -140,7 +142,7 @@ public void processBatch(VectorizedRowBatch batch) throws HiveException {
         ve.evaluate(batch);
       }
 
-      final int inputLogicalSize = batch.size;
+      int inputLogicalSize = batch.size;
       if (inputLogicalSize == 0) {
         return;
       }
@@ -152,6 +154,15 @@ public void processBatch(VectorizedRowBatch batch) throws HiveException {
         }
       }
 
+      // Drop the rows whose key the small table Bloom filter rules out before any lookup.
+      if (bloomFilter != null) {
+        filterLongKeysWithBloomFilter(batch, (LongColumnVector) batch.cols[singleJoinColumn]);
+        inputLogicalSize = batch.size;
+        if (inputLogicalSize == 0) {
+          return;
+        }
+      }
+
       /*
        * Single-Column Long specific declarations.
        */
@@ -211,6 +222,12 @@ public void processBatch(VectorizedRowBatch batch) throws HiveException {
           LOG.debug(CLASS_NAME + " batch #" + batchCounter + " non-repeated");
         }
 
+        if (useMinMax && isLongKeyBatchOutOfRange(batch, joinColVector, min, max)) {
+          // All keys out of range for whole hash table.
+          batch.size = 0;
+          return;
+        }
+
         // We remember any matching rows in matchs / matchSize.  At the end of the loop,
         // selected / batch.size will represent both matching and non-matching rows for outer join.
         // Only deferred rows will have been removed from selected.
@@ -115,6 +115,8 @@ public void hashTableSetup() throws HiveException {
      */
 
     hashMap = (VectorMapJoinBytesHashMap) vectorMapJoinHashTable;
+
+    bloomFilterSetup();
   }
 
   @Override
@@ -131,7 +133,7 @@ public void processBatch(VectorizedRowBatch batch) throws HiveException {
         ve.evaluate(batch);
       }
 
-      final int inputLogicalSize = batch.size;
+      int inputLogicalSize = batch.size;
       if (inputLogicalSize == 0) {
         return;
       }
@@ -143,6 +145,15 @@ public void processBatch(VectorizedRowBatch batch) throws HiveException {
         }
       }
 
+      // Drop the rows whose key the small table Bloom filter rules out before any lookup.
+      if (bloomFilter != null) {
+        filterBytesKeysWithBloomFilter(batch, (BytesColumnVector) batch.cols[singleJoinColumn]);
+        inputLogicalSize = batch.size;
+        if (inputLogicalSize == 0) {
+          return;
+        }
+      }
+
       /*
        * Single-Column String specific declarations.
        */
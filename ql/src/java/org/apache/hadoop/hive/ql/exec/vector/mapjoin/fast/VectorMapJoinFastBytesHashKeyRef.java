@@ -52,6 +52,26 @@ public static boolean equalKey(long refWord, byte[] keyBytes, int keyStart, int
     return true;
   }
 
+  /*
+   * Reference the key bytes.  The key is copied when it spans write buffers.
+   */
+  public static void getKey(long refWord, WriteBuffers writeBuffers,
+      WriteBuffers.ByteSegmentRef keyByteSegmentRef, WriteBuffers.Position readPos) {
+
+    final long absoluteOffset = KeyRef.getAbsoluteOffset(refWord);
+
+    writeBuffers.setReadPoint(absoluteOffset, readPos);
+
+    int actualKeyLength = KeyRef.getSmallKeyLength(refWord);
+    boolean isKeyLengthSmall = (actualKeyLength != KeyRef.SmallKeyLength.allBitsOn);
+    if (!isKeyLengthSmall) {
+
+      // Read big key length we wrote with the key.
+      actualKeyLength = writeBuffers.readVInt(readPos);
+    }
+    writeBuffers.getByteSegmentRefToCurrent(keyByteSegmentRef, actualKeyLength, readPos);
+  }
+
   public static int calculateHashCode(long refWord, WriteBuffers writeBuffers,
       WriteBuffers.Position readPos) {
 
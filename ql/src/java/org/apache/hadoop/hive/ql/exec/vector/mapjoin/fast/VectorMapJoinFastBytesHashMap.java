@@ -89,7 +89,7 @@ public boolean findNextNonMatched() {
           // Fall below and handle Small Table NULL key.
           break;
         }
-        final long refWord = hashMap.slots[nonMatchedLogicalSlotNum];
+        final long refWord = hashMap.slots.get(nonMatchedLogicalSlotNum);
         if (refWord != 0) {
           if (!matchTracker.wasMatched(nonMatchedLogicalSlotNum)) {
             nonMatchedHashMapResult.set(hashMap.hashMapStore, refWord);
@@ -115,7 +115,7 @@ public boolean readNonMatchedBytesKey() throws HiveException {
         return false;
       }
       hashMap.hashMapStore.getKey(
-          hashMap.slots[nonMatchedLogicalSlotNum],
+          hashMap.slots.get(nonMatchedLogicalSlotNum),
           nonMatchedKeyByteSegmentRef,
           nonMatchedReadPos);
       return true;
@@ -168,7 +168,7 @@ public void add(byte[] keyBytes, int keyStart, int keyLength, BytesWritable curr
     final long partialHashCode =
         VectorMapJoinFastBytesHashKeyRef.extractPartialHashCode(hashCode);
     while (true) {
-      refWord = slots[slot];
+      refWord = slots.get(slot);
       if (refWord == 0) {
         isNewKey = true;
         break;
@@ -198,16 +198,16 @@ public void add(byte[] keyBytes, int keyStart, int keyLength, BytesWritable curr
     int valueLength = currentValue.getLength();
 
     if (isNewKey) {
-      slots[slot] =
+      slots.set(slot,
           hashMapStore.addFirst(
-              partialHashCode, keyBytes, keyStart, keyLength, valueBytes, 0, valueLength);
+              partialHashCode, keyBytes, keyStart, keyLength, valueBytes, 0, valueLength));
       keysAssigned++;
     } else {
       final long newRefWord =
           hashMapStore.addMore(
               refWord, valueBytes, 0, valueLength, unsafeReadPos);
       if (newRefWord != refWord) {
-        slots[slot] = newRefWord;
+        slots.set(slot, newRefWord);
       }
     }
   }
@@ -261,7 +261,7 @@ protected final int doHashMapMatch(
     final long partialHashCode =
         VectorMapJoinFastBytesHashKeyRef.extractPartialHashCode(hashCode);
     while (true) {
-      final long refWord = slots[slot];
+      final long refWord = slots.get(slot);
       if (refWord == 0) {
 
         // Given that we do not delete, an empty slot means no match.
@@ -311,10 +311,12 @@ public void addFullOuterNullKeyValue(BytesWritable currentValue) {
 
   public VectorMapJoinFastBytesHashMap(
       boolean isFullOuter,
-      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter,
-        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        isOffHeap);
     fullOuterNullKeyRefWord = 0;
     hashMapStore = new VectorMapJoinFastBytesHashMapStore(writeBuffersSize);
     writeBuffers = hashMapStore.getWriteBuffers();
@@ -65,7 +65,7 @@ public void add(byte[] keyBytes, int keyStart, int keyLength, BytesWritable curr
     final long partialHashCode =
         VectorMapJoinFastBytesHashKeyRef.extractPartialHashCode(hashCode);
     while (true) {
-      refWord = slots[slot];
+      refWord = slots.get(slot);
       if (refWord == 0) {
         isNewKey = true;
         break;
@@ -92,16 +92,16 @@ public void add(byte[] keyBytes, int keyStart, int keyLength, BytesWritable curr
     }
 
     if (isNewKey) {
-      slots[slot] =
+      slots.set(slot,
           hashMultiSetStore.addFirst(
-              partialHashCode, keyBytes, keyStart, keyLength);
+              partialHashCode, keyBytes, keyStart, keyLength));
       keysAssigned++;
     } else {
       final long newRefWord =
           hashMultiSetStore.bumpCount(
               refWord, unsafeReadPos);
       if (newRefWord != refWord) {
-        slots[slot] = newRefWord;
+        slots.set(slot, newRefWord);
       }
     }
   }
@@ -134,7 +134,7 @@ protected final void doHashMultiSetContains(
     final long partialHashCode =
         VectorMapJoinFastBytesHashKeyRef.extractPartialHashCode(hashCode);
     while (true) {
-      final long refWord = slots[slot];
+      final long refWord = slots.get(slot);
       if (refWord == 0) {
 
         // Given that we do not delete, an empty slot means no match.
@@ -163,10 +163,12 @@ protected final void doHashMultiSetContains(
 
   public VectorMapJoinFastBytesHashMultiSet(
       boolean isFullOuter,
-      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter,
-        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        isOffHeap);
     hashMultiSetStore = new VectorMapJoinFastBytesHashMultiSetStore(writeBuffersSize);
     writeBuffers = hashMultiSetStore.getWriteBuffers();
   }
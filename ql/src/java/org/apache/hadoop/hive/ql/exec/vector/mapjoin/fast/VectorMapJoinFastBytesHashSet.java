@@ -60,7 +60,7 @@ public void add(byte[] keyBytes, int keyStart, int keyLength, BytesWritable curr
     final long partialHashCode =
         VectorMapJoinFastBytesHashKeyRef.extractPartialHashCode(hashCode);
     while (true) {
-      refWord = slots[slot];
+      refWord = slots.get(slot);
       if (refWord == 0) {
         isNewKey = true;
         break;
@@ -87,9 +87,9 @@ public void add(byte[] keyBytes, int keyStart, int keyLength, BytesWritable curr
     }
 
     if (isNewKey) {
-      slots[slot] =
+      slots.set(slot,
           hashSetStore.add(
-              partialHashCode, keyBytes, keyStart, keyLength);
+              partialHashCode, keyBytes, keyStart, keyLength));
       keysAssigned++;
     } else {
 
@@ -125,7 +125,7 @@ protected final void doHashSetContains(
     final long partialHashCode =
         VectorMapJoinFastBytesHashKeyRef.extractPartialHashCode(hashCode);
     while (true) {
-      final long refWord = slots[slot];
+      final long refWord = slots.get(slot);
       if (refWord == 0) {
 
         // Given that we do not delete, an empty slot means no match.
@@ -154,10 +154,12 @@ protected final void doHashSetContains(
 
   public VectorMapJoinFastBytesHashSet(
       boolean isFullOuter,
-      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter,
-        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        isOffHeap);
     hashSetStore = new VectorMapJoinFastBytesHashSetStore(writeBuffersSize);
     writeBuffers = hashSetStore.getWriteBuffers();
   }
@@ -20,13 +20,14 @@
 
 import java.io.IOException;
 
-import org.apache.hadoop.hive.ql.util.JavaDataModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBytesHashTable;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.serde2.WriteBuffers;
+import org.apache.hadoop.hive.serde2.WriteBuffers.ByteSegmentRef;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hive.common.util.BloomKFilter;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -39,6 +40,8 @@
 
   private static final Logger LOG = LoggerFactory.getLogger(VectorMapJoinFastBytesHashTable.class);
 
+  private final boolean isOffHeap;
+
   protected WriteBuffers writeBuffers;
 
   protected WriteBuffers.Position unsafeReadPos; // Thread-unsafe position used at write time.
@@ -67,10 +70,11 @@ protected void expandAndRehash() {
     int newMetricPutConflict = 0;
     int newLargestNumberOfSteps = 0;
 
-    long[] newSlots = new long[newLogicalHashBucketCount];
+    VectorMapJoinFastSlotArray newSlots =
+        VectorMapJoinFastSlotArray.create(newLogicalHashBucketCount, isOffHeap);
 
     for (int slot = 0; slot < logicalHashBucketCount; slot++) {
-      final long refWord = slots[slot];
+      final long refWord = slots.get(slot);
       if (refWord != 0) {
         final long hashCode =
             VectorMapJoinFastBytesHashKeyRef.calculateHashCode(
@@ -82,7 +86,7 @@ protected void expandAndRehash() {
         long newProbeSlot = newSlot;
         int i = 0;
         while (true) {
-          if (newSlots[newSlot] == 0) {
+          if (newSlots.get(newSlot) == 0) {
             break;
           }
           ++newMetricPutConflict;
@@ -100,10 +104,12 @@ protected void expandAndRehash() {
         }
 
         // Use old reference word.
-        newSlots[newSlot] = refWord;
+        newSlots.set(newSlot, refWord);
       }
     }
 
+    // The old slots are not used any more.
+    slots.free();
     slots = newSlots;
     logicalHashBucketCount = newLogicalHashBucketCount;
     logicalHashBucketMask = newLogicalHashBucketMask;
@@ -116,7 +122,23 @@ protected void expandAndRehash() {
   /*
    * The hash table slots for fast HashMap.
    */
-  protected long[] slots;
+  protected VectorMapJoinFastSlotArray slots;
+
+  @Override
+  public void addKeysToBloomFilter(BloomKFilter bloomFilter) {
+    ByteSegmentRef keyByteSegmentRef = new ByteSegmentRef();
+    for (int slot = 0; slot < logicalHashBucketCount; slot++) {
+      final long refWord = slots.get(slot);
+      if (refWord != 0) {
+        VectorMapJoinFastBytesHashKeyRef.getKey(
+            refWord, writeBuffers, keyByteSegmentRef, unsafeReadPos);
+        bloomFilter.addBytes(
+            keyByteSegmentRef.getBytes(),
+            (int) keyByteSegmentRef.getOffset(),
+            keyByteSegmentRef.getLength());
+      }
+    }
+  }
 
   private void allocateBucketArray() {
 
@@ -124,25 +146,37 @@ private void allocateBucketArray() {
     if (logicalHashBucketCount > HIGHEST_INT_POWER_OF_2) {
       throwExpandError(HIGHEST_INT_POWER_OF_2, "Bytes");
     }
-    slots = new long[logicalHashBucketCount];
+    slots = VectorMapJoinFastSlotArray.create(logicalHashBucketCount, isOffHeap);
   }
 
   public VectorMapJoinFastBytesHashTable(
       boolean isFullOuter,
-      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter,
         initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+    this.isOffHeap = isOffHeap;
     unsafeReadPos = new WriteBuffers.Position();
     allocateBucketArray();
   }
 
+  @Override
+  public long getOffHeapMemorySize() {
+    return slots.getOffHeapMemorySize();
+  }
+
+  @Override
+  public void freeOffHeapMemory() {
+    slots.free();
+  }
+
   @Override
   public long getEstimatedMemorySize() {
     long size = 0;
     size += super.getEstimatedMemorySize();
     size += unsafeReadPos == null ? 0 : unsafeReadPos.getEstimatedMemorySize();
-    size += JavaDataModel.get().lengthForLongArrayOfSize(slots.length);
+    size += slots.getEstimatedMemorySize();
     return size;
   }
 }
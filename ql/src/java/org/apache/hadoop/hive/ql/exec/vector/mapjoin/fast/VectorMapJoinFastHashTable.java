@@ -25,6 +25,7 @@
 import org.apache.hadoop.hive.ql.exec.persistence.MatchTracker;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashTable;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinNonMatchedIterator;
+import org.apache.hive.common.util.BloomKFilter;
 
 public abstract class VectorMapJoinFastHashTable implements VectorMapJoinHashTable {
   public static final Logger LOG = LoggerFactory.getLogger(VectorMapJoinFastHashTable.class);
@@ -45,6 +46,9 @@ public abstract class VectorMapJoinFastHashTable implements VectorMapJoinHashTab
   protected int resizeThreshold;
   protected int metricExpands;
 
+  // Optional filter over all the keys, built once the hash table is loaded.
+  private BloomKFilter bloomFilter;
+
   // 2^30 (we cannot use Integer.MAX_VALUE which is 2^31-1).
   public static final int HIGHEST_INT_POWER_OF_2 = 1073741824;
 
@@ -98,6 +102,38 @@ public int size() {
     return keysAssigned;
   }
 
+  /*
+   * Add every key of the hash table to the Bloom filter.
+   */
+  public abstract void addKeysToBloomFilter(BloomKFilter bloomFilter);
+
+  /*
+   * Build the Bloom filter over the keys.  Must be called after the hash table is loaded since
+   * keys added later are not in the filter.
+   */
+  public void buildBloomFilter(double fpp) {
+    BloomKFilter newBloomFilter = new BloomKFilter(Math.max(keysAssigned, 1), fpp);
+    addKeysToBloomFilter(newBloomFilter);
+    bloomFilter = newBloomFilter;
+  }
+
+  @Override
+  public BloomKFilter getBloomFilter() {
+    return bloomFilter;
+  }
+
+  /*
+   * @return The direct memory used outside of the Java heap, which is not included in the
+   *         estimated memory size.
+   */
+  public abstract long getOffHeapMemorySize();
+
+  /*
+   * Releases the direct memory outside of the Java heap right away.  The hash table cannot be used
+   * any more.
+   */
+  public abstract void freeOffHeapMemory();
+
   @Override
   public long getEstimatedMemorySize() {
     int size = 0;
@@ -106,6 +142,9 @@ public long getEstimatedMemorySize() {
     if (isFullOuter) {
       size += MatchTracker.calculateEstimatedMemorySize(logicalHashBucketCount);
     }
+    if (bloomFilter != null) {
+      size += bloomFilter.sizeInBytes();
+    }
     return size;
   }
 
@@ -96,6 +96,23 @@ public void load(MapJoinTableContainer[] mapJoinTables,
         LOG.info("Not doing hash table memory monitoring. {}", memoryMonitorInfo);
       }
     }
+
+    // A spilling hash table is kept within the memory monitor threshold when there is one, and
+    // otherwise within the memory the hash table was planned with, like HybridHashTableContainer.
+    long spillThreshold;
+    long spillCheckInterval;
+    if (doMemCheck) {
+      spillThreshold = effectiveThreshold;
+      spillCheckInterval = memoryMonitorInfo.getMemoryCheckInterval();
+    } else {
+      spillThreshold = desc.getMemoryNeeded();
+      if (spillThreshold <= 0) {
+        spillThreshold = HiveConf.getLongVar(
+            hconf, HiveConf.ConfVars.HIVECONVERTJOINNOCONDITIONALTASKTHRESHOLD);
+      }
+      spillCheckInterval =
+          HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEHYBRIDGRACEHASHJOINMEMCHECKFREQ);
+    }
     for (int pos = 0; pos < mapJoinTables.length; pos++) {
       if (pos == desc.getPosBigTable()) {
         continue;
@@ -113,41 +130,83 @@ public void load(MapJoinTableContainer[] mapJoinTables,
         throw new HiveException(e);
       }
 
+      VectorMapJoinFastTableContainer vectorMapJoinFastTableContainer = null;
+      VectorMapJoinFastPartitionedHashTableBuilder partitionedHashTableBuilder = null;
       try {
         KeyValueReader kvReader = (KeyValueReader) input.getReader();
 
         Long keyCountObj = parentKeyCounts.get(pos);
         long keyCount = (keyCountObj == null) ? -1 : keyCountObj.longValue();
 
-        VectorMapJoinFastTableContainer vectorMapJoinFastTableContainer =
+        vectorMapJoinFastTableContainer =
                 new VectorMapJoinFastTableContainer(desc, hconf, keyCount);
 
         LOG.info("Loading hash table for input: {} cacheKey: {} tableContainer: {} smallTablePos: {}", inputName,
           cacheKey, vectorMapJoinFastTableContainer.getClass().getSimpleName(), pos);
 
         vectorMapJoinFastTableContainer.setSerde(null, null); // No SerDes here.
+
+        // With multiple load threads, this thread only reads and partitions the rows while the
+        // partition hash tables are built concurrently.  A spilling hash table is built by this
+        // thread so partitions can be spilled between rows.
+        final boolean isSpillEnabled = vectorMapJoinFastTableContainer.isSpillEnabled();
+        VectorMapJoinFastPartitionedHashTable partitionedHashTable =
+            vectorMapJoinFastTableContainer.getPartitionedHashTable();
+        if (partitionedHashTable != null && !isSpillEnabled) {
+          partitionedHashTableBuilder =
+              new VectorMapJoinFastPartitionedHashTableBuilder(partitionedHashTable, inputName);
+          LOG.info("Building hash table for input: {} with {} threads", inputName,
+              partitionedHashTable.getNumPartitions());
+        }
         while (kvReader.next()) {
-          vectorMapJoinFastTableContainer.putRow((BytesWritable)kvReader.getCurrentKey(),
-              (BytesWritable)kvReader.getCurrentValue());
+          if (partitionedHashTableBuilder != null) {
+            partitionedHashTableBuilder.putRow((BytesWritable)kvReader.getCurrentKey(),
+                (BytesWritable)kvReader.getCurrentValue());
+          } else {
+            vectorMapJoinFastTableContainer.putRow((BytesWritable)kvReader.getCurrentKey(),
+                (BytesWritable)kvReader.getCurrentValue());
+          }
           numEntries++;
+          if (isSpillEnabled && (numEntries % spillCheckInterval == 0)) {
+            // If it does not fit even with every partition spilled, the memory monitor check below
+            // still fails the load.
+            vectorMapJoinFastTableContainer.spillToFit(spillThreshold);
+          }
           if (doMemCheck && (numEntries % memoryMonitorInfo.getMemoryCheckInterval() == 0)) {
-              final long estMemUsage = vectorMapJoinFastTableContainer.getEstimatedMemorySize();
+              // The off-heap slots count against the same memory of the executor as the heap.
+              // While the build threads are inserting, only their published sizes can be read.
+              final long offHeapMemUsage = (partitionedHashTableBuilder != null)
+                  ? partitionedHashTableBuilder.getOffHeapMemorySize()
+                  : vectorMapJoinFastTableContainer.getOffHeapMemorySize();
+              final long estMemUsage = offHeapMemUsage + ((partitionedHashTableBuilder != null)
+                  ? partitionedHashTableBuilder.getEstimatedMemorySize()
+                  : vectorMapJoinFastTableContainer.getEstimatedMemorySize());
               if (estMemUsage > effectiveThreshold) {
                 String msg = "Hash table loading exceeded memory limits for input: " + inputName +
                   " numEntries: " + numEntries + " estimatedMemoryUsage: " + estMemUsage +
+                  " (off-heap: " + offHeapMemUsage + ")" +
                   " effectiveThreshold: " + effectiveThreshold + " memoryMonitorInfo: " + memoryMonitorInfo;
                 LOG.error(msg);
                 throw new MapJoinMemoryExhaustionError(msg);
               } else {
                 if (LOG.isInfoEnabled()) {
                   LOG.info("Checking hash table loader memory usage for input: {} numEntries: {} " +
-                      "estimatedMemoryUsage: {} effectiveThreshold: {}", inputName, numEntries, estMemUsage,
-                    effectiveThreshold);
+                      "estimatedMemoryUsage: {} (off-heap: {}) effectiveThreshold: {}", inputName,
+                    numEntries, estMemUsage, offHeapMemUsage, effectiveThreshold);
                 }
               }
           }
         }
 
+        if (partitionedHashTableBuilder != null) {
+          partitionedHashTableBuilder.finish();
+        }
+        if (isSpillEnabled) {
+          vectorMapJoinFastTableContainer.spillToFit(spillThreshold);
+          if (vectorMapJoinFastTableContainer.hasSpill()) {
+            LOG.info("Hash table for input: {} spilled to disk", inputName);
+          }
+        }
         vectorMapJoinFastTableContainer.seal();
         mapJoinTables[pos] = vectorMapJoinFastTableContainer;
         if (doMemCheck) {
@@ -158,12 +217,27 @@ public void load(MapJoinTableContainer[] mapJoinTables,
           LOG.info("Finished loading hash table for input: {} cacheKey: {} numEntries: {}", inputName, cacheKey,
             numEntries);
         }
+        final long offHeapMemorySize = vectorMapJoinFastTableContainer.getOffHeapMemorySize();
+        if (offHeapMemorySize > 0) {
+          LOG.info("Hash table for input: {} uses {} bytes of off-heap memory", inputName,
+              offHeapMemorySize);
+        }
       } catch (IOException e) {
         throw new HiveException(e);
       } catch (SerDeException e) {
         throw new HiveException(e);
       } catch (Exception e) {
         throw new HiveException(e);
+      } finally {
+        if (partitionedHashTableBuilder != null) {
+          partitionedHashTableBuilder.close();
+        }
+        if (mapJoinTables[pos] == null && vectorMapJoinFastTableContainer != null) {
+          // Remove the partitions spilled before the load failed; nothing else has seen the
+          // container, so its off-heap slots can be freed too.
+          vectorMapJoinFastTableContainer.clear();
+          vectorMapJoinFastTableContainer.freeOffHeapMemory();
+        }
       }
     }
   }
@@ -34,7 +34,6 @@
 import org.apache.hadoop.hive.serde2.WriteBuffers;
 import org.apache.hadoop.hive.serde2.WriteBuffers.ByteSegmentRef;
 import org.apache.hadoop.io.BytesWritable;
-import org.apache.hive.common.util.HashCodeUtil;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -93,10 +92,10 @@ public boolean findNextNonMatched() {
           break;
         }
         final int nonMatchedDoubleIndex = nonMatchedLogicalSlotNum * 2;
-        if (hashMap.slotPairs[nonMatchedDoubleIndex] != 0) {
+        if (hashMap.slotPairs.get(nonMatchedDoubleIndex) != 0) {
           if (!matchTracker.wasMatched(nonMatchedLogicalSlotNum)) {
             nonMatchedHashMapResult.set(
-                hashMap.valueStore, hashMap.slotPairs[nonMatchedDoubleIndex]);
+                hashMap.valueStore, hashMap.slotPairs.get(nonMatchedDoubleIndex));
             keyIsNull = false;
             return true;
           }
@@ -121,7 +120,7 @@ public boolean readNonMatchedLongKey() {
 
     @Override
     public long getNonMatchedLongKey() {
-      return hashMap.slotPairs[nonMatchedLogicalSlotNum * 2 + 1];
+      return hashMap.slotPairs.get(nonMatchedLogicalSlotNum * 2 + 1);
     }
 
     @Override
@@ -176,11 +175,12 @@ public void assignSlot(int slot, long key, boolean isNewKey, BytesWritable curre
     int pairIndex = 2 * slot;
     if (isNewKey) {
       // First entry.
-      slotPairs[pairIndex] = valueStore.addFirst(valueBytes, 0, valueLength);
-      slotPairs[pairIndex + 1] = key;
+      slotPairs.set(pairIndex, valueStore.addFirst(valueBytes, 0, valueLength));
+      slotPairs.set(pairIndex + 1, key);
     } else {
       // Add another value.
-      slotPairs[pairIndex] = valueStore.addMore(slotPairs[pairIndex], valueBytes, 0, valueLength);
+      slotPairs.set(pairIndex,
+          valueStore.addMore(slotPairs.get(pairIndex), valueBytes, 0, valueLength));
     }
   }
 
@@ -192,13 +192,12 @@ public JoinUtil.JoinResult lookup(long key, VectorMapJoinHashMapResult hashMapRe
 
     optimizedHashMapResult.forget();
 
-    long hashCode = HashCodeUtil.calculateLongHashCode(key);
-    int pairIndex = findReadSlot(key, hashCode);
+    int pairIndex = findReadSlot(key);
     JoinUtil.JoinResult joinResult;
     if (pairIndex == -1) {
       joinResult = JoinUtil.JoinResult.NOMATCH;
     } else {
-      optimizedHashMapResult.set(valueStore, slotPairs[pairIndex]);
+      optimizedHashMapResult.set(valueStore, slotPairs.get(pairIndex));
 
       joinResult = JoinUtil.JoinResult.MATCH;
     }
@@ -217,8 +216,7 @@ public JoinUtil.JoinResult lookup(long key, VectorMapJoinHashMapResult hashMapRe
 
     optimizedHashMapResult.forget();
 
-    long hashCode = HashCodeUtil.calculateLongHashCode(key);
-    int pairIndex = findReadSlot(key, hashCode);
+    int pairIndex = findReadSlot(key);
     JoinUtil.JoinResult joinResult;
     if (pairIndex == -1) {
       joinResult = JoinUtil.JoinResult.NOMATCH;
@@ -226,7 +224,7 @@ public JoinUtil.JoinResult lookup(long key, VectorMapJoinHashMapResult hashMapRe
       if (matchTracker != null) {
         matchTracker.trackMatch(pairIndex / 2);
       }
-      optimizedHashMapResult.set(valueStore, slotPairs[pairIndex]);
+      optimizedHashMapResult.set(valueStore, slotPairs.get(pairIndex));
 
       joinResult = JoinUtil.JoinResult.MATCH;
     }
@@ -256,9 +254,22 @@ public VectorMapJoinFastLongHashMap(
       boolean minMaxEnabled,
       HashTableKeyType hashTableKeyType,
       int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+    this(
+        isFullOuter, minMaxEnabled, hashTableKeyType,
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        /* isOffHeap */ false);
+  }
+
+  public VectorMapJoinFastLongHashMap(
+      boolean isFullOuter,
+      boolean minMaxEnabled,
+      HashTableKeyType hashTableKeyType,
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter, minMaxEnabled, hashTableKeyType,
-        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        isOffHeap);
     valueStore = new VectorMapJoinFastValueStore(writeBuffersSize);
     fullOuterNullKeyValueRef = 0;
   }
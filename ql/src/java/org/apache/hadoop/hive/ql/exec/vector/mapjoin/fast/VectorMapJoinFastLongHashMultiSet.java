@@ -29,7 +29,6 @@
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.io.BytesWritable;
-import org.apache.hive.common.util.HashCodeUtil;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -78,11 +77,11 @@ public void assignSlot(int slot, long key, boolean isNewKey, BytesWritable curre
     int pairIndex = 2 * slot;
     if (isNewKey) {
       // First entry.
-      slotPairs[pairIndex] = 1;    // Count.
-      slotPairs[pairIndex + 1] = key;
+      slotPairs.set(pairIndex, 1);    // Count.
+      slotPairs.set(pairIndex + 1, key);
     } else {
       // Add another value.
-      slotPairs[pairIndex]++;
+      slotPairs.set(pairIndex, slotPairs.get(pairIndex) + 1);
     }
   }
 
@@ -95,8 +94,7 @@ public JoinUtil.JoinResult contains(long key, VectorMapJoinHashMultiSetResult ha
 
     optimizedHashMultiSetResult.forget();
 
-    long hashCode = HashCodeUtil.calculateLongHashCode(key);
-    int pairIndex = findReadSlot(key, hashCode);
+    int pairIndex = findReadSlot(key);
     JoinUtil.JoinResult joinResult;
     if (pairIndex == -1) {
       joinResult = JoinUtil.JoinResult.NOMATCH;
@@ -108,7 +106,7 @@ public JoinUtil.JoinResult contains(long key, VectorMapJoinHashMultiSetResult ha
         matchTracker.trackMatch(pairIndex / 2);
       }
       */
-      optimizedHashMultiSetResult.set(slotPairs[pairIndex]);
+      optimizedHashMultiSetResult.set(slotPairs.get(pairIndex));
       joinResult = JoinUtil.JoinResult.MATCH;
     }
 
@@ -122,10 +120,24 @@ public VectorMapJoinFastLongHashMultiSet(
       boolean minMaxEnabled,
       HashTableKeyType hashTableKeyType,
       int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+    this(
+        isFullOuter,
+        minMaxEnabled, hashTableKeyType,
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        /* isOffHeap */ false);
+  }
+
+  public VectorMapJoinFastLongHashMultiSet(
+      boolean isFullOuter,
+      boolean minMaxEnabled,
+      HashTableKeyType hashTableKeyType,
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter,
         minMaxEnabled, hashTableKeyType,
-        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        isOffHeap);
     fullOuterNullKeyValueCount = 0;
   }
 
@@ -29,7 +29,6 @@
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
 import org.apache.hadoop.io.BytesWritable;
-import org.apache.hive.common.util.HashCodeUtil;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -70,8 +69,8 @@ public void assignSlot(int slot, long key, boolean isNewKey, BytesWritable curre
     int pairIndex = 2 * slot;
     if (isNewKey) {
       // First entry.
-      slotPairs[pairIndex] = 1;    // Existence.
-      slotPairs[pairIndex + 1] = key;
+      slotPairs.set(pairIndex, 1);    // Existence.
+      slotPairs.set(pairIndex + 1, key);
     }
   }
 
@@ -83,8 +82,7 @@ public JoinResult contains(long key, VectorMapJoinHashSetResult hashSetResult) {
 
     optimizedHashSetResult.forget();
 
-    long hashCode = HashCodeUtil.calculateLongHashCode(key);
-    int pairIndex = findReadSlot(key, hashCode);
+    int pairIndex = findReadSlot(key);
     JoinUtil.JoinResult joinResult;
     if (pairIndex == -1) {
       joinResult = JoinUtil.JoinResult.NOMATCH;
@@ -110,10 +108,24 @@ public VectorMapJoinFastLongHashSet(
       boolean minMaxEnabled,
       HashTableKeyType hashTableKeyType,
       int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+    this(
+        isFullOuter,
+        minMaxEnabled, hashTableKeyType,
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        /* isOffHeap */ false);
+  }
+
+  public VectorMapJoinFastLongHashSet(
+      boolean isFullOuter,
+      boolean minMaxEnabled,
+      HashTableKeyType hashTableKeyType,
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter,
         minMaxEnabled, hashTableKeyType,
-        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        isOffHeap);
   }
 
   @Override
@@ -33,6 +33,7 @@
 import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hive.common.util.BloomKFilter;
 import org.apache.hive.common.util.HashCodeUtil;
 import org.apache.tez.runtime.library.api.KeyValueReader;
 
@@ -51,13 +52,22 @@
 
   private final BinarySortableDeserializeRead keyBinarySortableDeserializeRead;
 
+  private final boolean isOffHeap;
+
   private final boolean useMinMax;
   private long min;
   private long max;
 
+  /*
+   * When the keys are dense, a direct-addressed index from (key - min) to the slot number + 1 of
+   * the key, or 0 when the key is not in the hash table; otherwise, null.
+   */
+  private int[] denseSlots;
+
+  // The min / max of a dense hash table are exact, so they are used even when not enabled.
   @Override
   public boolean useMinMax() {
-    return useMinMax;
+    return useMinMax || denseSlots != null;
   }
 
   @Override
@@ -100,6 +110,9 @@ public void add(long key, BytesWritable currentValue) {
       expandAndRehash();
     }
 
+    // The dense index is built once the hash table is loaded, so keys added later are not in it.
+    denseSlots = null;
+
     long hashCode = HashCodeUtil.calculateLongHashCode(key);
     int intHashCode = (int) hashCode;
     int slot = (intHashCode & logicalHashBucketMask);
@@ -108,13 +121,13 @@ public void add(long key, BytesWritable currentValue) {
     boolean isNewKey;
     while (true) {
       int pairIndex = 2 * slot;
-      long valueRef = slotPairs[pairIndex];
+      long valueRef = slotPairs.get(pairIndex);
       if (valueRef == 0) {
         // LOG.debug("VectorMapJoinFastLongHashTable add key " + key + " slot " + slot + " pairIndex " + pairIndex + " empty slot (i = " + i + ")");
         isNewKey = true;
         break;
       }
-      long tableKey = slotPairs[pairIndex + 1];
+      long tableKey = slotPairs.get(pairIndex + 1);
       if (key == tableKey) {
         // LOG.debug("VectorMapJoinFastLongHashTable add key " + key + " slot " + slot + " pairIndex " + pairIndex + " found key (i = " + i + ")");
         isNewKey = false;
@@ -140,13 +153,11 @@ public void add(long key, BytesWritable currentValue) {
 
     if (isNewKey) {
       keysAssigned++;
-      if (useMinMax) {
-        if (key < min) {
-          min = key;
-        }
-        if (key > max) {
-          max = key;
-        }
+      if (key < min) {
+        min = key;
+      }
+      if (key > max) {
+        max = key;
       }
     }
   }
@@ -163,13 +174,14 @@ private void expandAndRehash() {
     int newLargestNumberOfSteps = 0;
 
     int newSlotPairArraySize = newLogicalHashBucketCount * 2;
-    long[] newSlotPairs = new long[newSlotPairArraySize];
+    VectorMapJoinFastSlotArray newSlotPairs =
+        VectorMapJoinFastSlotArray.create(newSlotPairArraySize, isOffHeap);
 
     for (int slot = 0; slot < logicalHashBucketCount; slot++) {
       int pairIndex = slot * 2;
-      long valueRef = slotPairs[pairIndex];
+      long valueRef = slotPairs.get(pairIndex);
       if (valueRef != 0) {
-        long tableKey = slotPairs[pairIndex + 1];
+        long tableKey = slotPairs.get(pairIndex + 1);
 
         // Copy to new slot table.
         long hashCode = HashCodeUtil.calculateLongHashCode(tableKey);
@@ -180,7 +192,7 @@ private void expandAndRehash() {
         int i = 0;
         while (true) {
           newPairIndex = newSlot * 2;
-          long newValueRef = newSlotPairs[newPairIndex];
+          long newValueRef = newSlotPairs.get(newPairIndex);
           if (newValueRef == 0) {
             break;
           }
@@ -201,11 +213,13 @@ private void expandAndRehash() {
         // Use old value reference word.
         // LOG.debug("VectorMapJoinFastLongHashTable expandAndRehash key " + tableKey + " slot " + newSlot + " newPairIndex " + newPairIndex + " empty slot (i = " + i + ")");
 
-        newSlotPairs[newPairIndex] = valueRef;
-        newSlotPairs[newPairIndex + 1] = tableKey;
+        newSlotPairs.set(newPairIndex, valueRef);
+        newSlotPairs.set(newPairIndex + 1, tableKey);
       }
     }
 
+    // The old slots are not used any more.
+    slotPairs.free();
     slotPairs = newSlotPairs;
     logicalHashBucketCount = newLogicalHashBucketCount;
     logicalHashBucketMask = newLogicalHashBucketMask;
@@ -215,6 +229,20 @@ private void expandAndRehash() {
     metricExpands++;
   }
 
+  /*
+   * @return The pair index of the key, or -1 when it is not in the hash table.
+   */
+  protected int findReadSlot(long key) {
+    if (denseSlots != null) {
+      if (key < min || key > max) {
+        return -1;
+      }
+      int slot = denseSlots[(int) (key - min)] - 1;
+      return (slot < 0) ? -1 : 2 * slot;
+    }
+    return findReadSlot(key, HashCodeUtil.calculateLongHashCode(key));
+  }
+
   protected int findReadSlot(long key, long hashCode) {
 
     int intHashCode = (int) hashCode;
@@ -224,12 +252,12 @@ protected int findReadSlot(long key, long hashCode) {
     int i = 0;
     while (true) {
       int pairIndex = 2 * slot;
-      long valueRef = slotPairs[pairIndex];
+      long valueRef = slotPairs.get(pairIndex);
       if (valueRef == 0) {
         // Given that we do not delete, an empty slot means no match.
         return -1;
       }
-      long tableKey = slotPairs[pairIndex + 1];
+      long tableKey = slotPairs.get(pairIndex + 1);
       if (key == tableKey) {
         return pairIndex;
       }
@@ -249,7 +277,50 @@ protected int findReadSlot(long key, long hashCode) {
    *
    * The slot pair is 1) a non-zero reference word to the first value bytes and 2) the long value.
    */
-  protected long[] slotPairs;
+  protected VectorMapJoinFastSlotArray slotPairs;
+
+  @Override
+  public void addKeysToBloomFilter(BloomKFilter bloomFilter) {
+    for (int slot = 0; slot < logicalHashBucketCount; slot++) {
+      int pairIndex = 2 * slot;
+      if (slotPairs.get(pairIndex) != 0) {
+        bloomFilter.addLong(slotPairs.get(pairIndex + 1));
+      }
+    }
+  }
+
+  /*
+   * Build the direct-addressed index over the keys when their range is at most maxRange and at
+   * least minDensity of the keys in the range are in the hash table.  Lookups then read the slot
+   * of a key from the index instead of hashing and probing for it.  Must be called after the hash
+   * table is loaded; adding a key drops the index.
+   *
+   * @return Whether the index was built.
+   */
+  public boolean buildDenseIndex(long maxRange, float minDensity) {
+    if (keysAssigned == 0) {
+      return false;
+    }
+    // The range does not fit a long when the keys span more than half of the long values.
+    final long range = max - min + 1;
+    if (range <= 0 || range > Math.min(maxRange, Integer.MAX_VALUE - 8) ||
+        keysAssigned < minDensity * range) {
+      return false;
+    }
+    int[] newDenseSlots = new int[(int) range];
+    for (int slot = 0; slot < logicalHashBucketCount; slot++) {
+      int pairIndex = 2 * slot;
+      if (slotPairs.get(pairIndex) != 0) {
+        newDenseSlots[(int) (slotPairs.get(pairIndex + 1) - min)] = slot + 1;
+      }
+    }
+    denseSlots = newDenseSlots;
+    return true;
+  }
+
+  public boolean isDense() {
+    return denseSlots != null;
+  }
 
   private void allocateBucketArray() {
     // We allocate pairs, so we cannot go above highest Integer power of 2 / 4.
@@ -257,17 +328,19 @@ private void allocateBucketArray() {
       throwExpandError(ONE_QUARTER_LIMIT, "Long");
     }
     int slotPairArraySize = 2 * logicalHashBucketCount;
-    slotPairs = new long[slotPairArraySize];
+    slotPairs = VectorMapJoinFastSlotArray.create(slotPairArraySize, isOffHeap);
   }
 
   public VectorMapJoinFastLongHashTable(
         boolean isFullOuter,
         boolean minMaxEnabled,
         HashTableKeyType hashTableKeyType,
-        int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+        int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+        boolean isOffHeap) {
     super(
         isFullOuter,
         initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+    this.isOffHeap = isOffHeap;
     this.hashTableKeyType = hashTableKeyType;
     PrimitiveTypeInfo[] primitiveTypeInfos = { hashTableKeyType.getPrimitiveTypeInfo() };
     keyBinarySortableDeserializeRead =
@@ -280,11 +353,22 @@ public VectorMapJoinFastLongHashTable(
     max = Long.MIN_VALUE;
   }
 
+  @Override
+  public long getOffHeapMemorySize() {
+    return slotPairs.getOffHeapMemorySize();
+  }
+
+  @Override
+  public void freeOffHeapMemory() {
+    slotPairs.free();
+  }
+
   @Override
   public long getEstimatedMemorySize() {
     JavaDataModel jdm = JavaDataModel.get();
     long size = super.getEstimatedMemorySize();
-    size += slotPairs == null ? 0 : jdm.lengthForLongArrayOfSize(slotPairs.length);
+    size += slotPairs == null ? 0 : slotPairs.getEstimatedMemorySize();
+    size += denseSlots == null ? 0 : jdm.lengthForIntArrayOfSize(denseSlots.length);
     size += (2 * jdm.primitive2());
     size += (2 * jdm.primitive1());
     size += jdm.object();
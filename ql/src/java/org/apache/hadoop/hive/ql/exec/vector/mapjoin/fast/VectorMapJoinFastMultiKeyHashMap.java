@@ -51,9 +51,20 @@ public void testPutRow(byte[] currentKey, byte[] currentValue) throws HiveExcept
   public VectorMapJoinFastMultiKeyHashMap(
       boolean isFullOuter,
       int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+    this(
+        isFullOuter,
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        /* isOffHeap */ false);
+  }
+
+  public VectorMapJoinFastMultiKeyHashMap(
+      boolean isFullOuter,
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter,
-        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        isOffHeap);
   }
 
   @Override
@@ -49,9 +49,20 @@ public void testPutRow(byte[] currentKey) throws HiveException, IOException {
   public VectorMapJoinFastMultiKeyHashMultiSet(
       boolean isFullOuter,
       int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount) {
+    this(
+        isFullOuter,
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        /* isOffHeap */ false);
+  }
+
+  public VectorMapJoinFastMultiKeyHashMultiSet(
+      boolean isFullOuter,
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
     super(
         isFullOuter,
-        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount);
+        initialCapacity, loadFactor, writeBuffersSize, estimatedKeyCount,
+        isOffHeap);
   }
 
   @Override
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.exec.JoinUtil;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBytesHashMultiSet;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashMultiSetResult;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
+
+/*
+ * An single STRING key or MULTI_KEY hash multi-set partitioned for a concurrent build.
+ */
+public class VectorMapJoinFastPartitionedBytesHashMultiSet
+        extends VectorMapJoinFastPartitionedBytesHashTable
+        implements VectorMapJoinBytesHashMultiSet {
+
+  private final VectorMapJoinFastBytesHashMultiSet[] hashMultiSets;
+
+  public VectorMapJoinFastPartitionedBytesHashMultiSet(
+      HashTableKeyType hashTableKeyType,
+      int numPartitions,
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
+    super(hashTableKeyType, new VectorMapJoinFastBytesHashMultiSet[numPartitions]);
+    hashMultiSets = (VectorMapJoinFastBytesHashMultiSet[]) partitionHashTables;
+    final int partitionCapacity = partitionCapacity(initialCapacity, numPartitions);
+    final long partitionKeyCount = partitionKeyCount(estimatedKeyCount, numPartitions);
+    for (int i = 0; i < numPartitions; i++) {
+      if (hashTableKeyType == HashTableKeyType.STRING) {
+        hashMultiSets[i] = new VectorMapJoinFastStringHashMultiSet(
+            /* isFullOuter */ false,
+            partitionCapacity, loadFactor, writeBuffersSize, partitionKeyCount,
+            isOffHeap);
+      } else {
+        hashMultiSets[i] = new VectorMapJoinFastMultiKeyHashMultiSet(
+            /* isFullOuter */ false,
+            partitionCapacity, loadFactor, writeBuffersSize, partitionKeyCount,
+            isOffHeap);
+      }
+    }
+  }
+
+  @Override
+  public VectorMapJoinHashMultiSetResult createHashMultiSetResult() {
+    return new VectorMapJoinFastBytesHashMultiSetStore.HashMultiSetResult();
+  }
+
+  @Override
+  public JoinUtil.JoinResult contains(byte[] keyBytes, int keyStart, int keyLength,
+      VectorMapJoinHashMultiSetResult hashMultiSetResult) throws IOException {
+    final int partition = partition(keyBytes, keyStart, keyLength);
+    if (isSpilled(partition)) {
+      return spillResult(partition, hashMultiSetResult);
+    }
+    return hashMultiSets[partition].contains(keyBytes, keyStart, keyLength, hashMultiSetResult);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.exec.JoinUtil;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBytesHashSet;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashSetResult;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
+
+/*
+ * An single STRING key or MULTI_KEY hash set partitioned for a concurrent build.
+ */
+public class VectorMapJoinFastPartitionedBytesHashSet
+        extends VectorMapJoinFastPartitionedBytesHashTable
+        implements VectorMapJoinBytesHashSet {
+
+  private final VectorMapJoinFastBytesHashSet[] hashSets;
+
+  public VectorMapJoinFastPartitionedBytesHashSet(
+      HashTableKeyType hashTableKeyType,
+      int numPartitions,
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
+    super(hashTableKeyType, new VectorMapJoinFastBytesHashSet[numPartitions]);
+    hashSets = (VectorMapJoinFastBytesHashSet[]) partitionHashTables;
+    final int partitionCapacity = partitionCapacity(initialCapacity, numPartitions);
+    final long partitionKeyCount = partitionKeyCount(estimatedKeyCount, numPartitions);
+    for (int i = 0; i < numPartitions; i++) {
+      if (hashTableKeyType == HashTableKeyType.STRING) {
+        hashSets[i] = new VectorMapJoinFastStringHashSet(
+            /* isFullOuter */ false,
+            partitionCapacity, loadFactor, writeBuffersSize, partitionKeyCount,
+            isOffHeap);
+      } else {
+        hashSets[i] = new VectorMapJoinFastMultiKeyHashSet(
+            /* isFullOuter */ false,
+            partitionCapacity, loadFactor, writeBuffersSize, partitionKeyCount,
+            isOffHeap);
+      }
+    }
+  }
+
+  @Override
+  public VectorMapJoinHashSetResult createHashSetResult() {
+    return new VectorMapJoinFastBytesHashSetStore.HashSetResult();
+  }
+
+  @Override
+  public JoinUtil.JoinResult contains(byte[] keyBytes, int keyStart, int keyLength,
+      VectorMapJoinHashSetResult hashSetResult) throws IOException {
+    final int partition = partition(keyBytes, keyStart, keyLength);
+    if (isSpilled(partition)) {
+      return spillResult(partition, hashSetResult);
+    }
+    return hashSets[partition].contains(keyBytes, keyStart, keyLength, hashSetResult);
+  }
+}
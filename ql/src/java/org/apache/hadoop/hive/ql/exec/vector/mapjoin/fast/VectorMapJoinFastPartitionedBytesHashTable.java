@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBytesHashTable;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
+import org.apache.hadoop.hive.serde2.binarysortable.fast.BinarySortableDeserializeRead;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hive.common.util.HashCodeUtil;
+
+import com.google.common.base.Preconditions;
+
+/*
+ * A single STRING key or MULTI_KEY byte array key hash table partitioned for a concurrent build.
+ *
+ * The STRING key is deserialized from the BinarySortable small table key to partition it; the
+ * MULTI_KEY is the serialized key itself.
+ */
+public abstract class VectorMapJoinFastPartitionedBytesHashTable
+        extends VectorMapJoinFastPartitionedHashTable
+        implements VectorMapJoinBytesHashTable {
+
+  // Null for MULTI_KEY.
+  private final BinarySortableDeserializeRead keyBinarySortableDeserializeRead;
+
+  public VectorMapJoinFastPartitionedBytesHashTable(HashTableKeyType hashTableKeyType,
+      VectorMapJoinFastBytesHashTable[] partitionHashTables) {
+    super(partitionHashTables);
+    Preconditions.checkArgument(
+        hashTableKeyType == HashTableKeyType.STRING || hashTableKeyType == HashTableKeyType.MULTI_KEY,
+        "Unexpected hash table key type %s", hashTableKeyType);
+    if (hashTableKeyType == HashTableKeyType.STRING) {
+      PrimitiveTypeInfo[] primitiveTypeInfos = { TypeInfoFactory.stringTypeInfo };
+      keyBinarySortableDeserializeRead =
+          new BinarySortableDeserializeRead(
+              primitiveTypeInfos,
+              /* useExternalBuffer */ false);
+    } else {
+      keyBinarySortableDeserializeRead = null;
+    }
+  }
+
+  protected final int partition(byte[] keyBytes, int keyStart, int keyLength) {
+    return partitionFromHashCode(HashCodeUtil.murmurHash(keyBytes, keyStart, keyLength));
+  }
+
+  @Override
+  public int partitionRow(BytesWritable currentKey) throws HiveException, IOException {
+    byte[] keyBytes = currentKey.getBytes();
+    int keyLength = currentKey.getLength();
+    if (keyBinarySortableDeserializeRead == null) {
+      return partition(keyBytes, 0, keyLength);
+    }
+    keyBinarySortableDeserializeRead.set(keyBytes, 0, keyLength);
+    try {
+      if (!keyBinarySortableDeserializeRead.readNextField()) {
+        return -1;
+      }
+    } catch (Exception e) {
+      throw new HiveException(
+          "\nDeserializeRead details: " +
+              keyBinarySortableDeserializeRead.getDetailedReadPositionString() +
+          "\nException: " + e.toString());
+    }
+    return partition(
+        keyBinarySortableDeserializeRead.currentBytes,
+        keyBinarySortableDeserializeRead.currentBytesStart,
+        keyBinarySortableDeserializeRead.currentBytesLength);
+  }
+}
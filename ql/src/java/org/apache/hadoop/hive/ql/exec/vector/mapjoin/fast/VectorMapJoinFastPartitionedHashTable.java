@@ -0,0 +1,452 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.hadoop.hive.common.FileUtils;
+import org.apache.hadoop.hive.common.ObjectPair;
+import org.apache.hadoop.hive.ql.exec.JoinUtil;
+import org.apache.hadoop.hive.ql.exec.SerializationUtilities;
+import org.apache.hadoop.hive.ql.exec.persistence.KeyValueContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MatchTracker;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashTableResult;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinNonMatchedIterator;
+import org.apache.hadoop.hive.ql.exec.vector.rowbytescontainer.VectorRowBytesContainer;
+import org.apache.hadoop.hive.ql.io.HiveKey;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hive.common.util.BloomKFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.google.common.base.Preconditions;
+
+/*
+ * A vector map join fast hash table split by key hash code into a power of 2 number of partition
+ * hash tables, so the partitions can be built concurrently (see
+ * VectorMapJoinFastPartitionedHashTableBuilder).
+ *
+ * Each key lives in exactly one partition.  A lookup hashes the key to pick the partition and then
+ * does the lookup in that partition's hash table.
+ *
+ * FULL OUTER MapJoin is not supported since match tracking and the non-matched iterator are per
+ * hash table.
+ *
+ * When spilling is enabled (see enableSpill), the partitions are also the Hybrid Grace Hash Join
+ * partitions.  A spilled partition's hash table is serialized to local disk the same way
+ * HybridHashTableContainer spills a hash partition: small table rows loaded after the spill go to
+ * its sidefile, lookups of its keys return SPILL so the operator saves the big table row in its
+ * matchfile, and after the big table has been read the partition is reloaded and the matchfile
+ * rows are joined against it.
+ */
+public abstract class VectorMapJoinFastPartitionedHashTable implements VectorMapJoinHashTable {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(VectorMapJoinFastPartitionedHashTable.class.getName());
+
+  // Fibonacci hashing multiplier used to spread the key hash code before taking the partition
+  // from its top bits.  The partition hash tables use the low bits of the same hash code for the
+  // slot and the bytes hash tables also use the top bits for the partial hash code, so using either
+  // bit range directly would leave all the keys of a partition clustered.
+  private static final int PARTITION_HASH_MULTIPLIER = 0x9E3779B9;
+
+  protected final VectorMapJoinFastHashTable[] partitionHashTables;
+
+  private final int partitionShift;
+
+  private BloomKFilter bloomFilter;
+
+  // Spilling state, allocated by enableSpill.  A partition is spilled when its spill path is set.
+  private String spillLocalDirs;
+  private Path[] spillPaths;
+  private int[] spilledKeyCounts;
+  private KeyValueContainer[] sidefiles;
+  private VectorRowBytesContainer[] matchfiles;
+  private HiveKey sidefileKey;
+
+  public VectorMapJoinFastPartitionedHashTable(VectorMapJoinFastHashTable[] partitionHashTables) {
+    final int numPartitions = partitionHashTables.length;
+    Preconditions.checkArgument(numPartitions > 1 && Integer.bitCount(numPartitions) == 1,
+        "Number of partitions must be a power of 2 larger than 1: %s", numPartitions);
+    this.partitionHashTables = partitionHashTables;
+    partitionShift = Integer.SIZE - Integer.numberOfTrailingZeros(numPartitions);
+  }
+
+  /*
+   * Round a requested number of partitions (e.g. load threads) up to a power of 2.
+   */
+  public static int roundUpNumPartitions(int numPartitions) {
+    return (numPartitions <= 1) ? 1 : Integer.highestOneBit(numPartitions - 1) << 1;
+  }
+
+  /*
+   * Split the initial capacity of the whole hash table among the partitions.
+   */
+  protected static int partitionCapacity(int initialCapacity, int numPartitions) {
+    return Math.max(initialCapacity / numPartitions, 1);
+  }
+
+  /*
+   * Split the estimated key count (-1 when not available) among the partitions.
+   */
+  protected static long partitionKeyCount(long estimatedKeyCount, int numPartitions) {
+    return (estimatedKeyCount == -1) ? -1 : estimatedKeyCount / numPartitions;
+  }
+
+  public int getNumPartitions() {
+    return partitionHashTables.length;
+  }
+
+  public VectorMapJoinFastHashTable getPartitionHashTable(int partition) {
+    return partitionHashTables[partition];
+  }
+
+  protected final int partitionFromHashCode(int hashCode) {
+    return (hashCode * PARTITION_HASH_MULTIPLIER) >>> partitionShift;
+  }
+
+  /*
+   * Deserialize the BinarySortable small table key (as needed) and return its partition, or -1
+   * for a NULL key which is not stored.
+   *
+   * Not thread-safe -- called only by the thread reading the small table.
+   */
+  public abstract int partitionRow(BytesWritable currentKey) throws HiveException, IOException;
+
+  @Override
+  public void putRow(BytesWritable currentKey, BytesWritable currentValue)
+      throws SerDeException, HiveException, IOException {
+    final int partition = partitionRow(currentKey);
+    if (partition != -1) {
+      if (isSpilled(partition)) {
+        sidefileKey.set(currentKey.getBytes(), 0, currentKey.getLength());
+        getSidefile(partition).add(sidefileKey, currentValue);
+      } else {
+        partitionHashTables[partition].putRow(currentKey, currentValue);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < partitionHashTables.length; i++) {
+      if (isSpilled(i)) {
+        size += spilledKeyCounts[i];
+      } else if (partitionHashTables[i] != null) {
+        size += partitionHashTables[i].size();
+      }
+    }
+    return size;
+  }
+
+  //-----------------------------------------------------------------------------------------------
+
+  /*
+   * Spilling.
+   */
+
+  /*
+   * Allow partitions to be spilled to the local directories.  Spilled hash tables are serialized
+   * with Kryo, so the partition hash tables must be on the heap.
+   */
+  public void enableSpill(String spillLocalDirs) {
+    final int numPartitions = partitionHashTables.length;
+    this.spillLocalDirs = spillLocalDirs;
+    spillPaths = new Path[numPartitions];
+    spilledKeyCounts = new int[numPartitions];
+    sidefiles = new KeyValueContainer[numPartitions];
+    matchfiles = new VectorRowBytesContainer[numPartitions];
+    sidefileKey = new HiveKey();
+  }
+
+  public boolean isSpillEnabled() {
+    return spillPaths != null;
+  }
+
+  public boolean isSpilled(int partition) {
+    return spillPaths != null && spillPaths[partition] != null;
+  }
+
+  public boolean hasSpill() {
+    if (spillPaths != null) {
+      for (Path spillPath : spillPaths) {
+        if (spillPath != null) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Spill the in-memory partition using the most memory.
+   *
+   * @return False when there is no partition with keys left to spill.
+   */
+  public boolean spillLargestPartition() throws IOException {
+    int largest = -1;
+    long largestSize = 0;
+    for (int i = 0; i < partitionHashTables.length; i++) {
+      if (!isSpilled(i) && partitionHashTables[i].size() > 0) {
+        final long size = partitionHashTables[i].getEstimatedMemorySize();
+        if (largest == -1 || size > largestSize) {
+          largest = i;
+          largestSize = size;
+        }
+      }
+    }
+    if (largest == -1) {
+      return false;
+    }
+    spillPartition(largest);
+    return true;
+  }
+
+  public void spillPartition(int partition) throws IOException {
+    Preconditions.checkState(isSpillEnabled() && !isSpilled(partition));
+    VectorMapJoinFastHashTable partitionHashTable = partitionHashTables[partition];
+
+    File file = FileUtils.createLocalDirsTempFile(
+        spillLocalDirs, "partition-" + partition + "-", null, false);
+    Kryo kryo = SerializationUtilities.borrowKryo();
+    try (OutputStream outputStream = new FileOutputStream(file, false);
+        Output output = new Output(outputStream)) {
+      kryo.writeClassAndObject(output, partitionHashTable);
+    } catch (IOException | RuntimeException e) {
+      // The partition stays in memory; clearSpill() would not know about the file.
+      if (!file.delete()) {
+        LOG.warn("Failed to delete the incomplete spill file " + file);
+      }
+      throw e;
+    } finally {
+      SerializationUtilities.releaseKryo(kryo);
+    }
+
+    LOG.info("Spilled hash partition " + partition + " (Keys: " + partitionHashTable.size() +
+        ", Mem size: " + partitionHashTable.getEstimatedMemorySize() + "): " + file);
+
+    spillPaths[partition] = file.toPath();
+    spilledKeyCounts[partition] = partitionHashTable.size();
+    partitionHashTables[partition] = null;
+  }
+
+  /*
+   * Fill in the result of a lookup of a key in a spilled partition.
+   */
+  protected static JoinUtil.JoinResult spillResult(int partition,
+      VectorMapJoinHashTableResult hashTableResult) {
+    hashTableResult.forget();
+    hashTableResult.setSpillPartitionId(partition);
+    hashTableResult.setJoinResult(JoinUtil.JoinResult.SPILL);
+    return JoinUtil.JoinResult.SPILL;
+  }
+
+  private KeyValueContainer getSidefile(int partition) {
+    if (sidefiles[partition] == null) {
+      sidefiles[partition] = new KeyValueContainer(spillLocalDirs);
+    }
+    return sidefiles[partition];
+  }
+
+  /*
+   * @return The container for the big table rows of a spilled partition.
+   */
+  public VectorRowBytesContainer getMatchfileRowBytesContainer(int partition) {
+    if (matchfiles[partition] == null) {
+      matchfiles[partition] = new VectorRowBytesContainer(spillLocalDirs);
+    }
+    return matchfiles[partition];
+  }
+
+  /*
+   * Free the partitions that are in memory, once the big table has been read and only the spilled
+   * partitions are left to join.
+   */
+  public void clearInMemoryPartitions() {
+    for (int i = 0; i < partitionHashTables.length; i++) {
+      if (!isSpilled(i)) {
+        partitionHashTables[i] = null;
+      }
+    }
+  }
+
+  /*
+   * Deserialize a spilled partition hash table and add the small table rows of its sidefile.
+   */
+  public VectorMapJoinFastHashTable reloadPartition(int partition)
+      throws IOException, HiveException, SerDeException {
+    Preconditions.checkState(isSpilled(partition));
+    Path spillPath = spillPaths[partition];
+
+    VectorMapJoinFastHashTable partitionHashTable;
+    InputStream inputStream = Files.newInputStream(spillPath);
+    Input input = new Input(inputStream);
+    Kryo kryo = SerializationUtilities.borrowKryo();
+    try {
+      partitionHashTable = (VectorMapJoinFastHashTable) kryo.readClassAndObject(input);
+    } finally {
+      SerializationUtilities.releaseKryo(kryo);
+      input.close();
+      inputStream.close();
+    }
+    Files.delete(spillPath);
+    spillPaths[partition] = null;
+    spilledKeyCounts[partition] = 0;
+
+    KeyValueContainer sidefile = sidefiles[partition];
+    if (sidefile != null) {
+      LOG.info("Adding " + sidefile.size() + " sidefile rows to reloaded hash partition " +
+          partition);
+      while (sidefile.hasNext()) {
+        ObjectPair<HiveKey, BytesWritable> pair = sidefile.next();
+        partitionHashTable.putRow(pair.getFirst(), pair.getSecond());
+      }
+      sidefile.clear();
+      sidefiles[partition] = null;
+    }
+
+    partitionHashTables[partition] = partitionHashTable;
+    return partitionHashTable;
+  }
+
+  /*
+   * Free a reloaded partition along with the big table rows that were joined against it.
+   */
+  public void clearPartition(int partition) {
+    partitionHashTables[partition] = null;
+    if (matchfiles[partition] != null) {
+      matchfiles[partition].clear();
+      matchfiles[partition] = null;
+    }
+  }
+
+  /*
+   * Remove any spill files left, e.g. when the query is aborted.
+   */
+  public void clearSpill() {
+    if (spillPaths == null) {
+      return;
+    }
+    for (int i = 0; i < partitionHashTables.length; i++) {
+      if (spillPaths[i] != null) {
+        try {
+          Files.deleteIfExists(spillPaths[i]);
+        } catch (IOException e) {
+          LOG.warn("Failed to delete spilled hash partition " + spillPaths[i], e);
+        }
+        spillPaths[i] = null;
+      }
+      if (sidefiles[i] != null) {
+        sidefiles[i].clear();
+        sidefiles[i] = null;
+      }
+      if (matchfiles[i] != null) {
+        matchfiles[i].clear();
+        matchfiles[i] = null;
+      }
+    }
+  }
+
+  /*
+   * Build one Bloom filter over the keys of all the partitions, so a probe tests the filter before
+   * it even picks the partition.
+   */
+  public void buildBloomFilter(double fpp) {
+    BloomKFilter newBloomFilter = new BloomKFilter(Math.max(size(), 1), fpp);
+    for (VectorMapJoinFastHashTable partitionHashTable : partitionHashTables) {
+      partitionHashTable.addKeysToBloomFilter(newBloomFilter);
+    }
+    bloomFilter = newBloomFilter;
+  }
+
+  @Override
+  public BloomKFilter getBloomFilter() {
+    return bloomFilter;
+  }
+
+  @Override
+  public MatchTracker createMatchTracker() {
+    throw new RuntimeException("Not supported for a partitioned hash table");
+  }
+
+  @Override
+  public VectorMapJoinNonMatchedIterator createNonMatchedIterator(MatchTracker matchTracker) {
+    throw new RuntimeException("Not supported for a partitioned hash table");
+  }
+
+  @Override
+  public int spillPartitionId() {
+    throw new RuntimeException("Not implemented");
+  }
+
+  /*
+   * Like getEstimatedMemorySize, this reads the partition hash tables, so it must not be called
+   * while a VectorMapJoinFastPartitionedHashTableBuilder is building them; use the sizes the
+   * builder publishes instead.
+   */
+  public long getOffHeapMemorySize() {
+    long size = 0;
+    for (VectorMapJoinFastHashTable partitionHashTable : partitionHashTables) {
+      if (partitionHashTable != null) {
+        size += partitionHashTable.getOffHeapMemorySize();
+      }
+    }
+    return size;
+  }
+
+  /*
+   * Releases the direct memory of the partitions in memory right away.
+   */
+  public void freeOffHeapMemory() {
+    for (VectorMapJoinFastHashTable partitionHashTable : partitionHashTables) {
+      if (partitionHashTable != null) {
+        partitionHashTable.freeOffHeapMemory();
+      }
+    }
+  }
+
+  @Override
+  public long getEstimatedMemorySize() {
+    JavaDataModel jdm = JavaDataModel.get();
+    long size = jdm.object() + jdm.primitive1();
+    size += jdm.array() + partitionHashTables.length * jdm.ref();
+    for (VectorMapJoinFastHashTable partitionHashTable : partitionHashTables) {
+      if (partitionHashTable != null) {
+        size += partitionHashTable.getEstimatedMemorySize();
+      }
+    }
+    if (bloomFilter != null) {
+      size += bloomFilter.sizeInBytes();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/*
+ * Builds the partitions of a VectorMapJoinFastPartitionedHashTable concurrently, one build thread
+ * per partition.
+ *
+ * The thread reading the small table calls putRow for each row: the key is deserialized and hashed
+ * to its partition on that thread, and the key and value bytes are copied into a batch for the
+ * partition.  Full batches, bounded by rows and by bytes, are handed to the partition's build
+ * thread through a bounded queue, so each partition hash table is only ever written by one thread.
+ * Processed batches are returned through a second queue and reused, which also bounds how far the
+ * reader can run ahead.
+ *
+ * The partition hash tables must not be read while they are built, so each build thread publishes
+ * the memory size of its partition after every batch for the reader's memory checks.
+ */
+public class VectorMapJoinFastPartitionedHashTableBuilder implements Closeable {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(VectorMapJoinFastPartitionedHashTableBuilder.class);
+
+  private static final int BATCH_SIZE = 1024;
+
+  // A batch is also handed over once its rows take this many bytes, so the buffers of the batches
+  // stay bounded with wide rows.  A single row wider than this gets a batch of its own.
+  private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+  private static final int INITIAL_BATCH_BYTES = 16 * 1024;
+
+  // Batches per partition: one being filled by the reader, the rest queued or being inserted.
+  private static final int BATCHES_PER_PARTITION = 4;
+
+  /*
+   * The key and value bytes of the rows are stored back to back in one buffer.  The buffer grows
+   * up to MAX_BATCH_BYTES, and is shrunk back when a row wider than that has grown it further.
+   */
+  private static class Batch {
+    byte[] bytes = new byte[INITIAL_BATCH_BYTES];
+    int length;
+    final int[] keyLengths = new int[BATCH_SIZE];
+    final int[] valueLengths = new int[BATCH_SIZE];
+    int size;
+    boolean isLast;
+
+    void add(BytesWritable key, BytesWritable value) {
+      final int keyLength = key.getLength();
+      final int valueLength = value.getLength();
+      final int newLength = length + keyLength + valueLength;
+      if (newLength > bytes.length) {
+        bytes = Arrays.copyOf(bytes,
+            Math.max(newLength, Math.min(bytes.length * 2, MAX_BATCH_BYTES)));
+      }
+      System.arraycopy(key.getBytes(), 0, bytes, length, keyLength);
+      System.arraycopy(value.getBytes(), 0, bytes, length + keyLength, valueLength);
+      length = newLength;
+      keyLengths[size] = keyLength;
+      valueLengths[size] = valueLength;
+      size++;
+    }
+
+    boolean isFull() {
+      return size == BATCH_SIZE || length >= MAX_BATCH_BYTES;
+    }
+
+    void reset() {
+      size = 0;
+      length = 0;
+      if (bytes.length > MAX_BATCH_BYTES) {
+        bytes = new byte[MAX_BATCH_BYTES];
+      }
+    }
+  }
+
+  private final VectorMapJoinFastPartitionedHashTable partitionedHashTable;
+  private final int numPartitions;
+
+  private final BlockingQueue<Batch>[] fullBatchQueues;
+  private final BlockingQueue<Batch>[] freeBatchQueues;
+  private final Batch[] currentBatches;
+
+  private final ExecutorService executorService;
+  private final Future<?>[] buildFutures;
+
+  private volatile Throwable buildFailure;
+
+  // The heap and off-heap memory sizes of each partition hash table, as last published by its
+  // build thread.
+  private final AtomicLongArray heapMemorySizes;
+  private final AtomicLongArray offHeapMemorySizes;
+
+  @SuppressWarnings("unchecked")
+  public VectorMapJoinFastPartitionedHashTableBuilder(
+      VectorMapJoinFastPartitionedHashTable partitionedHashTable, String name) {
+    this.partitionedHashTable = partitionedHashTable;
+    numPartitions = partitionedHashTable.getNumPartitions();
+
+    fullBatchQueues = new BlockingQueue[numPartitions];
+    freeBatchQueues = new BlockingQueue[numPartitions];
+    currentBatches = new Batch[numPartitions];
+    for (int partition = 0; partition < numPartitions; partition++) {
+      fullBatchQueues[partition] = new ArrayBlockingQueue<Batch>(BATCHES_PER_PARTITION);
+      freeBatchQueues[partition] = new ArrayBlockingQueue<Batch>(BATCHES_PER_PARTITION);
+      for (int i = 1; i < BATCHES_PER_PARTITION; i++) {
+        freeBatchQueues[partition].add(new Batch());
+      }
+      currentBatches[partition] = new Batch();
+    }
+
+    heapMemorySizes = new AtomicLongArray(numPartitions);
+    offHeapMemorySizes = new AtomicLongArray(numPartitions);
+    for (int partition = 0; partition < numPartitions; partition++) {
+      publishMemorySize(partition, partitionedHashTable.getPartitionHashTable(partition));
+    }
+
+    executorService = Executors.newFixedThreadPool(numPartitions,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("VectorMapJoinFastHashTableBuild-" + name + "-%d").build());
+    buildFutures = new Future<?>[numPartitions];
+    for (int partition = 0; partition < numPartitions; partition++) {
+      final int buildPartition = partition;
+      buildFutures[partition] = executorService.submit(() -> {
+        build(buildPartition);
+        return null;
+      });
+    }
+  }
+
+  /*
+   * Build thread loop for one partition.  After a failure the remaining batches are still drained
+   * so the reader is never blocked waiting for a free batch; the failure is reported by finish.
+   */
+  private void build(int partition) throws InterruptedException {
+    final VectorMapJoinFastHashTable partitionHashTable =
+        partitionedHashTable.getPartitionHashTable(partition);
+    final BlockingQueue<Batch> fullBatchQueue = fullBatchQueues[partition];
+    final BlockingQueue<Batch> freeBatchQueue = freeBatchQueues[partition];
+    final BytesWritable key = new BytesWritable();
+    final BytesWritable value = new BytesWritable();
+    while (true) {
+      Batch batch = fullBatchQueue.take();
+      if (buildFailure == null) {
+        try {
+          int offset = 0;
+          for (int i = 0; i < batch.size; i++) {
+            key.set(batch.bytes, offset, batch.keyLengths[i]);
+            offset += batch.keyLengths[i];
+            value.set(batch.bytes, offset, batch.valueLengths[i]);
+            offset += batch.valueLengths[i];
+            partitionHashTable.putRow(key, value);
+          }
+          publishMemorySize(partition, partitionHashTable);
+        } catch (Throwable t) {
+          buildFailure = t;
+        }
+      }
+      if (batch.isLast) {
+        return;
+      }
+      batch.reset();
+      freeBatchQueue.put(batch);
+    }
+  }
+
+  private void publishMemorySize(int partition, VectorMapJoinFastHashTable partitionHashTable) {
+    heapMemorySizes.set(partition, partitionHashTable.getEstimatedMemorySize());
+    offHeapMemorySizes.set(partition, partitionHashTable.getOffHeapMemorySize());
+  }
+
+  /*
+   * @return The Java heap used by the partition hash tables as of their last built batches.
+   *         Safe to call while the partitions are being built.
+   */
+  public long getEstimatedMemorySize() {
+    long size = 0;
+    for (int partition = 0; partition < numPartitions; partition++) {
+      size += heapMemorySizes.get(partition);
+    }
+    return size;
+  }
+
+  /*
+   * @return The direct memory used by the partition hash tables as of their last built batches.
+   *         Safe to call while the partitions are being built.
+   */
+  public long getOffHeapMemorySize() {
+    long size = 0;
+    for (int partition = 0; partition < numPartitions; partition++) {
+      size += offHeapMemorySizes.get(partition);
+    }
+    return size;
+  }
+
+  /*
+   * Partition the row and copy it into the current batch of its partition.  Not thread-safe --
+   * called only by the thread reading the small table.
+   */
+  public void putRow(BytesWritable currentKey, BytesWritable currentValue)
+      throws HiveException, IOException, InterruptedException {
+    final int partition = partitionedHashTable.partitionRow(currentKey);
+    if (partition == -1) {
+      return;
+    }
+    Batch batch = currentBatches[partition];
+    batch.add(currentKey, currentValue);
+    if (batch.isFull()) {
+      checkBuildFailure();
+      fullBatchQueues[partition].put(batch);
+      currentBatches[partition] = freeBatchQueues[partition].take();
+    }
+  }
+
+  /*
+   * Hand over the last batches and wait for all the partitions to be built.
+   */
+  public void finish() throws HiveException, InterruptedException {
+    for (int partition = 0; partition < numPartitions; partition++) {
+      Batch batch = currentBatches[partition];
+      batch.isLast = true;
+      fullBatchQueues[partition].put(batch);
+      currentBatches[partition] = null;
+    }
+    for (Future<?> buildFuture : buildFutures) {
+      try {
+        buildFuture.get();
+      } catch (ExecutionException e) {
+        throw new HiveException(e.getCause());
+      }
+    }
+    checkBuildFailure();
+    if (LOG.isDebugEnabled()) {
+      StringBuilder sb = new StringBuilder();
+      for (int partition = 0; partition < numPartitions; partition++) {
+        sb.append(' ').append(partitionedHashTable.getPartitionHashTable(partition).size());
+      }
+      LOG.debug("Built {} hash table partitions with key counts:{}", numPartitions, sb);
+    }
+  }
+
+  private void checkBuildFailure() throws HiveException {
+    final Throwable failure = buildFailure;
+    if (failure == null) {
+      return;
+    }
+    if (failure instanceof Error) {
+      // E.g. MapJoinMemoryExhaustionError when a partition hash table cannot grow any more.
+      throw (Error) failure;
+    }
+    if (failure instanceof HiveException) {
+      throw (HiveException) failure;
+    }
+    throw new HiveException(failure);
+  }
+
+  @Override
+  public void close() {
+    // Interrupts the build threads when the load did not finish, e.g. on a read error.
+    executorService.shutdownNow();
+  }
+}
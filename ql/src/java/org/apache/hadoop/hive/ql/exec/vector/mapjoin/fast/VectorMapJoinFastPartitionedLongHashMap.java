@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.exec.JoinUtil;
+import org.apache.hadoop.hive.ql.exec.persistence.MatchTracker;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashMapResult;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinLongHashMap;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
+
+/*
+ * An single LONG key hash map partitioned for a concurrent build.
+ */
+public class VectorMapJoinFastPartitionedLongHashMap
+        extends VectorMapJoinFastPartitionedLongHashTable
+        implements VectorMapJoinLongHashMap {
+
+  private final VectorMapJoinFastLongHashMap[] hashMaps;
+
+  public VectorMapJoinFastPartitionedLongHashMap(
+      boolean minMaxEnabled,
+      HashTableKeyType hashTableKeyType,
+      int numPartitions,
+      int initialCapacity, float loadFactor, int writeBuffersSize, long estimatedKeyCount,
+      boolean isOffHeap) {
+    super(hashTableKeyType, new VectorMapJoinFastLongHashMap[numPartitions], minMaxEnabled);
+    hashMaps = (VectorMapJoinFastLongHashMap[]) partitionHashTables;
+    for (int i = 0; i < numPartitions; i++) {
+      hashMaps[i] = new VectorMapJoinFastLongHashMap(
+          /* isFullOuter */ false,
+          minMaxEnabled,
+          hashTableKeyType,
+          partitionCapacity(initialCapacity, numPartitions), loadFactor, writeBuffersSize,
+          partitionKeyCount(estimatedKeyCount, numPartitions),
+          isOffHeap);
+    }
+  }
+
+  @Override
+  public VectorMapJoinHashMapResult createHashMapResult() {
+    return new VectorMapJoinFastValueStore.HashMapResult();
+  }
+
+  @Override
+  public JoinUtil.JoinResult lookup(long key, VectorMapJoinHashMapResult hashMapResult)
+      throws IOException {
+    final int partition = partition(key);
+    if (isSpilled(partition)) {
+      return spillResult(partition, hashMapResult);
+    }
+    return hashMaps[partition].lookup(key, hashMapResult);
+  }
+
+  @Override
+  public JoinUtil.JoinResult lookup(long key, VectorMapJoinHashMapResult hashMapResult,
+      MatchTracker matchTracker) throws IOException {
+    final int partition = partition(key);
+    if (isSpilled(partition)) {
+      return spillResult(partition, hashMapResult);
+    }
+    return hashMaps[partition].lookup(key, hashMapResult, matchTracker);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinLongHashTable;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
+import org.apache.hadoop.hive.serde2.binarysortable.fast.BinarySortableDeserializeRead;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hive.common.util.HashCodeUtil;
+
+/*
+ * A single long key hash table partitioned for a concurrent build.
+ */
+public abstract class VectorMapJoinFastPartitionedLongHashTable
+        extends VectorMapJoinFastPartitionedHashTable
+        implements VectorMapJoinLongHashTable {
+
+  private final HashTableKeyType hashTableKeyType;
+
+  private final BinarySortableDeserializeRead keyBinarySortableDeserializeRead;
+
+  private final boolean minMaxEnabled;
+
+  public VectorMapJoinFastPartitionedLongHashTable(HashTableKeyType hashTableKeyType,
+      VectorMapJoinFastLongHashTable[] partitionHashTables, boolean minMaxEnabled) {
+    super(partitionHashTables);
+    this.hashTableKeyType = hashTableKeyType;
+    this.minMaxEnabled = minMaxEnabled;
+    PrimitiveTypeInfo[] primitiveTypeInfos = { hashTableKeyType.getPrimitiveTypeInfo() };
+    keyBinarySortableDeserializeRead =
+        new BinarySortableDeserializeRead(
+            primitiveTypeInfos,
+            /* useExternalBuffer */ false);
+  }
+
+  protected final int partition(long key) {
+    return partitionFromHashCode(HashCodeUtil.calculateLongHashCode(key));
+  }
+
+  @Override
+  public int partitionRow(BytesWritable currentKey) throws HiveException, IOException {
+    keyBinarySortableDeserializeRead.set(currentKey.getBytes(), 0, currentKey.getLength());
+    try {
+      if (!keyBinarySortableDeserializeRead.readNextField()) {
+        return -1;
+      }
+    } catch (Exception e) {
+      throw new HiveException(
+          "\nDeserializeRead details: " +
+              keyBinarySortableDeserializeRead.getDetailedReadPositionString() +
+          "\nException: " + e.toString());
+    }
+    return partition(
+        VectorMapJoinFastLongHashUtil.deserializeLongKey(
+            keyBinarySortableDeserializeRead, hashTableKeyType));
+  }
+
+  // The keys of spilled partitions, including the ones in their sidefiles, are not tracked, so
+  // min / max filtering is off once a partition has spilled.  A reloaded partition has its own.
+  @Override
+  public boolean useMinMax() {
+    return minMaxEnabled && !hasSpill();
+  }
+
+  @Override
+  public long min() {
+    long min = Long.MAX_VALUE;
+    for (VectorMapJoinFastHashTable partitionHashTable : partitionHashTables) {
+      if (partitionHashTable != null) {
+        min = Math.min(min, ((VectorMapJoinFastLongHashTable) partitionHashTable).min());
+      }
+    }
+    return min;
+  }
+
+  @Override
+  public long max() {
+    long max = Long.MIN_VALUE;
+    for (VectorMapJoinFastHashTable partitionHashTable : partitionHashTables) {
+      if (partitionHashTable != null) {
+        max = Math.max(max, ((VectorMapJoinFastLongHashTable) partitionHashTable).max());
+      }
+    }
+    return max;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hive.common.util.DirectBufferCleaner;
+
+/*
+ * The fixed length slot array of a vector map join fast hash table.
+ *
+ * The on-heap variation is a plain long array.  The off-heap variation keeps the slots in direct
+ * memory outside of the Java heap, so a large hash table does not need one huge heap allocation
+ * and its slots are never scanned or copied by the garbage collector.  The direct memory is
+ * released by free(), or when the slot array itself is garbage collected.
+ *
+ * Both variations start out with all slots zero.
+ */
+public abstract class VectorMapJoinFastSlotArray {
+
+  public static VectorMapJoinFastSlotArray create(int length, boolean isOffHeap) {
+    return isOffHeap ? new OffHeapSlotArray(length) : new OnHeapSlotArray(length);
+  }
+
+  public abstract long get(int index);
+
+  public abstract void set(int index, long value);
+
+  public abstract int length();
+
+  /*
+   * @return The Java heap used by the slot array.
+   */
+  public abstract long getEstimatedMemorySize();
+
+  /*
+   * @return The direct memory used by the slot array outside of the Java heap.
+   */
+  public abstract long getOffHeapMemorySize();
+
+  /*
+   * Releases the direct memory right away, instead of when the slot array is garbage collected.
+   * The slot array cannot be used any more.
+   */
+  public abstract void free();
+
+  private static final class OnHeapSlotArray extends VectorMapJoinFastSlotArray {
+
+    private final long[] slots;
+
+    OnHeapSlotArray(int length) {
+      slots = new long[length];
+    }
+
+    @Override
+    public long get(int index) {
+      return slots[index];
+    }
+
+    @Override
+    public void set(int index, long value) {
+      slots[index] = value;
+    }
+
+    @Override
+    public int length() {
+      return slots.length;
+    }
+
+    @Override
+    public long getEstimatedMemorySize() {
+      JavaDataModel jdm = JavaDataModel.get();
+      return jdm.object() + jdm.lengthForLongArrayOfSize(slots.length);
+    }
+
+    @Override
+    public long getOffHeapMemorySize() {
+      return 0;
+    }
+
+    @Override
+    public void free() {
+      // The heap is left to the garbage collector.
+    }
+  }
+
+  private static final class OffHeapSlotArray extends VectorMapJoinFastSlotArray {
+
+    // A direct buffer is limited to 2GB, so the slots are split into chunks of 2^27 longs (1GB).
+    private static final int CHUNK_LENGTH_LOG2 = 27;
+    private static final int CHUNK_LENGTH = 1 << CHUNK_LENGTH_LOG2;
+    private static final int CHUNK_INDEX_MASK = CHUNK_LENGTH - 1;
+
+    // The direct buffers, for free(), and their long views
+    private final ByteBuffer[] buffers;
+    private final LongBuffer[] chunks;
+    private final int length;
+    private boolean isFreed;
+
+    OffHeapSlotArray(int length) {
+      this.length = length;
+      final int chunkCount = (int) (((long) length + CHUNK_INDEX_MASK) >>> CHUNK_LENGTH_LOG2);
+      buffers = new ByteBuffer[chunkCount];
+      chunks = new LongBuffer[chunkCount];
+      for (int chunk = 0; chunk < chunkCount; chunk++) {
+        final int chunkLength = Math.min(length - chunk * CHUNK_LENGTH, CHUNK_LENGTH);
+        buffers[chunk] =
+            ByteBuffer.allocateDirect(chunkLength * Long.BYTES)
+                .order(ByteOrder.nativeOrder());
+        chunks[chunk] = buffers[chunk].asLongBuffer();
+      }
+    }
+
+    @Override
+    public long get(int index) {
+      return chunks[index >>> CHUNK_LENGTH_LOG2].get(index & CHUNK_INDEX_MASK);
+    }
+
+    @Override
+    public void set(int index, long value) {
+      chunks[index >>> CHUNK_LENGTH_LOG2].put(index & CHUNK_INDEX_MASK, value);
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public long getEstimatedMemorySize() {
+      JavaDataModel jdm = JavaDataModel.get();
+      return jdm.object() + jdm.primitive1() + jdm.array() +
+          chunks.length * (jdm.ref() + 2 * jdm.object());
+    }
+
+    @Override
+    public long getOffHeapMemorySize() {
+      return isFreed ? 0 : (long) length * Long.BYTES;
+    }
+
+    @Override
+    public void free() {
+      isFreed = true;
+      for (int chunk = 0; chunk < buffers.length; chunk++) {
+        if (buffers[chunk] == null) {
+          continue;
+        }
+        // Drop the views first, so a use after free fails instead of reading freed memory.
+        chunks[chunk] = null;
+        DirectBufferCleaner.clean(buffers[chunk]);
+        buffers[chunk] = null;
+      }
+    }
+  }
+}
@@ -24,6 +24,7 @@
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
 import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinKey;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectSerDeContext;
@@ -32,11 +33,13 @@
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashTable;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinTableContainer;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.HiveUtils;
 import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableImplementationType;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKind;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.VectorMapJoinVariation;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Writable;
@@ -59,8 +62,25 @@ public class VectorMapJoinFastTableContainer implements VectorMapJoinTableContai
 
   private final long estimatedKeyCount;
 
+  private final int numLoadThreads;
 
-  private final VectorMapJoinFastHashTable vectorMapJoinFastHashTable;
+  // Whether the hash table spills for Hybrid Grace Hash Join.
+  private final boolean isSpillEnabled;
+
+  // The number of partitions of a partitioned hash table.
+  private final int numPartitions;
+
+  private final boolean isOffHeap;
+
+  private final boolean denseEnabled;
+  private final long denseMaxRange;
+  private final float denseMinDensity;
+
+  private final boolean bloomFilterEnabled;
+  private final long bloomFilterMinKeys;
+  private final float bloomFilterFpp;
+
+  private final VectorMapJoinHashTable vectorMapJoinFastHashTable;
   private String key;
 
   public VectorMapJoinFastTableContainer(MapJoinDesc desc, Configuration hconf,
@@ -76,6 +96,44 @@ public VectorMapJoinFastTableContainer(MapJoinDesc desc, Configuration hconf,
 
     this.estimatedKeyCount = estimatedKeyCount;
 
+    numLoadThreads = VectorMapJoinFastPartitionedHashTable.roundUpNumPartitions(
+        HiveConf.getIntVar(hconf,
+            HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_LOAD_THREADS));
+
+    VectorMapJoinDesc vectorDesc = (VectorMapJoinDesc) desc.getVectorDesc();
+    isSpillEnabled = !vectorDesc.getIsFullOuter() &&
+        ((desc.isHybridHashJoin() && vectorDesc.getIsFastHashTableSpillEnabled()) ||
+            MapJoinOperator.isAdaptiveHybridHashJoin(desc, hconf));
+    if (isSpillEnabled) {
+      // The spill partitions are the hash table partitions, so there are at least 2.
+      int minNumPartitions = Math.max(
+          HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEHYBRIDGRACEHASHJOINMINNUMPARTITIONS), 2);
+      numPartitions = VectorMapJoinFastPartitionedHashTable.roundUpNumPartitions(
+          Math.max(numLoadThreads, minNumPartitions));
+    } else {
+      numPartitions = numLoadThreads;
+    }
+
+    // Spilled hash tables are serialized with Kryo, which cannot serialize direct buffers.
+    isOffHeap = HiveConf.getBoolVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_OFFHEAP_ENABLED) &&
+        !isSpillEnabled;
+
+    denseEnabled = HiveConf.getBoolVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_ENABLED);
+    denseMaxRange = HiveConf.getLongVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_MAX_RANGE);
+    denseMinDensity = HiveConf.getFloatVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_DENSE_MIN_DENSITY);
+
+    bloomFilterEnabled = HiveConf.getBoolVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_ENABLED) &&
+        isBloomFilterProbed(vectorDesc);
+    bloomFilterMinKeys = HiveConf.getLongVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_MIN_KEYS);
+    bloomFilterFpp = HiveConf.getFloatVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_FPP);
+
     int newThreshold = HashMapWrapper.calculateTableSize(
         keyCountAdj, threshold, loadFactor, estimatedKeyCount);
 
@@ -89,6 +147,15 @@ public VectorMapJoinHashTable vectorMapJoinHashTable() {
     return vectorMapJoinFastHashTable;
   }
 
+  /*
+   * @return The hash table when it is partitioned to be built by multiple threads or to spill;
+   *         otherwise, null.
+   */
+  public VectorMapJoinFastPartitionedHashTable getPartitionedHashTable() {
+    return (vectorMapJoinFastHashTable instanceof VectorMapJoinFastPartitionedHashTable)
+        ? (VectorMapJoinFastPartitionedHashTable) vectorMapJoinFastHashTable : null;
+  }
+
   @Override
   public void setKey(String key) {
     this.key = key;
@@ -99,7 +166,7 @@ public String getKey() {
     return key;
   }
 
-  private VectorMapJoinFastHashTable createHashTable(int newThreshold) {
+  private VectorMapJoinHashTable createHashTable(int newThreshold) {
 
     VectorMapJoinDesc vectorDesc = (VectorMapJoinDesc) desc.getVectorDesc();
     HashTableImplementationType hashTableImplementationType = vectorDesc.getHashTableImplementationType();
@@ -110,6 +177,16 @@ private VectorMapJoinFastHashTable createHashTable(int newThreshold) {
 
     int writeBufferSize = HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEHASHTABLEWBSIZE);
 
+    // FULL OUTER match tracking is per hash table, so it is always built by one thread.
+    if (numPartitions > 1 && !isFullOuter) {
+      VectorMapJoinFastPartitionedHashTable partitionedHashTable = createPartitionedHashTable(
+          hashTableKind, hashTableKeyType, minMaxEnabled, newThreshold, writeBufferSize);
+      if (isSpillEnabled) {
+        partitionedHashTable.enableSpill(HiveUtils.getLocalDirList(hconf));
+      }
+      return partitionedHashTable;
+    }
+
     VectorMapJoinFastHashTable hashTable = null;
 
     switch (hashTableKeyType) {
@@ -124,21 +201,24 @@ private VectorMapJoinFastHashTable createHashTable(int newThreshold) {
             isFullOuter,
             minMaxEnabled,
             hashTableKeyType,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       case HASH_MULTISET:
         hashTable = new VectorMapJoinFastLongHashMultiSet(
             isFullOuter,
             minMaxEnabled,
             hashTableKeyType,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       case HASH_SET:
         hashTable = new VectorMapJoinFastLongHashSet(
             isFullOuter,
             minMaxEnabled,
             hashTableKeyType,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       }
       break;
@@ -148,17 +228,20 @@ private VectorMapJoinFastHashTable createHashTable(int newThreshold) {
       case HASH_MAP:
         hashTable = new VectorMapJoinFastStringHashMap(
             isFullOuter,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       case HASH_MULTISET:
         hashTable = new VectorMapJoinFastStringHashMultiSet(
             isFullOuter,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       case HASH_SET:
         hashTable = new VectorMapJoinFastStringHashSet(
             isFullOuter,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       }
       break;
@@ -168,17 +251,91 @@ private VectorMapJoinFastHashTable createHashTable(int newThreshold) {
       case HASH_MAP:
         hashTable = new VectorMapJoinFastMultiKeyHashMap(
             isFullOuter,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       case HASH_MULTISET:
         hashTable = new VectorMapJoinFastMultiKeyHashMultiSet(
             isFullOuter,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       case HASH_SET:
         hashTable = new VectorMapJoinFastMultiKeyHashSet(
             isFullOuter,
-            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount);
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
+        break;
+      }
+      break;
+    }
+
+    return hashTable;
+  }
+
+  private VectorMapJoinFastPartitionedHashTable createPartitionedHashTable(
+      HashTableKind hashTableKind, HashTableKeyType hashTableKeyType, boolean minMaxEnabled,
+      int newThreshold, int writeBufferSize) {
+
+    VectorMapJoinFastPartitionedHashTable hashTable = null;
+
+    switch (hashTableKeyType) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      switch (hashTableKind) {
+      case HASH_MAP:
+        hashTable = new VectorMapJoinFastPartitionedLongHashMap(
+            minMaxEnabled,
+            hashTableKeyType,
+            numPartitions,
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
+        break;
+      case HASH_MULTISET:
+        hashTable = new VectorMapJoinFastPartitionedLongHashMultiSet(
+            minMaxEnabled,
+            hashTableKeyType,
+            numPartitions,
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
+        break;
+      case HASH_SET:
+        hashTable = new VectorMapJoinFastPartitionedLongHashSet(
+            minMaxEnabled,
+            hashTableKeyType,
+            numPartitions,
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
+        break;
+      }
+      break;
+
+    case STRING:
+    case MULTI_KEY:
+      switch (hashTableKind) {
+      case HASH_MAP:
+        hashTable = new VectorMapJoinFastPartitionedBytesHashMap(
+            hashTableKeyType,
+            numPartitions,
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
+        break;
+      case HASH_MULTISET:
+        hashTable = new VectorMapJoinFastPartitionedBytesHashMultiSet(
+            hashTableKeyType,
+            numPartitions,
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
+        break;
+      case HASH_SET:
+        hashTable = new VectorMapJoinFastPartitionedBytesHashSet(
+            hashTableKeyType,
+            numPartitions,
+            newThreshold, loadFactor, writeBufferSize, estimatedKeyCount,
+            isOffHeap);
         break;
       }
       break;
@@ -196,9 +353,75 @@ public MapJoinKey putRow(Writable currentKey, Writable currentValue)
     return null;
   }
 
+  public boolean isSpillEnabled() {
+    return isSpillEnabled;
+  }
+
+  /*
+   * Spill the largest partitions until the hash table fits in the memory threshold.
+   *
+   * @return False when the hash table does not fit even with all of its partitions spilled.
+   */
+  public boolean spillToFit(long memoryThreshold) throws IOException {
+    VectorMapJoinFastPartitionedHashTable partitionedHashTable = getPartitionedHashTable();
+    while (getEstimatedMemorySize() > memoryThreshold) {
+      if (!partitionedHashTable.spillLargestPartition()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public void seal() {
-    // Do nothing
+    // Reading the dense index is cheaper than testing a Bloom filter.
+    if (denseEnabled && vectorMapJoinFastHashTable instanceof VectorMapJoinFastLongHashTable &&
+        buildDenseIndex()) {
+      return;
+    }
+    // The Bloom filter would rule out the keys of the spilled partitions.
+    if (bloomFilterEnabled && !hasSpill() &&
+        vectorMapJoinFastHashTable.size() >= bloomFilterMinKeys) {
+      buildBloomFilter();
+    }
+  }
+
+  /*
+   * Only the single long and string key INNER, INNER big-only and LEFT SEMI operators test the
+   * Bloom filter; outer joins keep the rows it would reject, and multi-keys are not filtered.
+   */
+  private static boolean isBloomFilterProbed(VectorMapJoinDesc vectorDesc) {
+    if (vectorDesc.getHashTableKeyType() == HashTableKeyType.MULTI_KEY) {
+      return false;
+    }
+    VectorMapJoinVariation variation = vectorDesc.getVectorMapJoinVariation();
+    return variation == VectorMapJoinVariation.INNER ||
+        variation == VectorMapJoinVariation.INNER_BIG_ONLY ||
+        variation == VectorMapJoinVariation.LEFT_SEMI;
+  }
+
+  private boolean buildDenseIndex() {
+    VectorMapJoinFastLongHashTable longHashTable =
+        (VectorMapJoinFastLongHashTable) vectorMapJoinFastHashTable;
+    if (!longHashTable.buildDenseIndex(denseMaxRange, denseMinDensity)) {
+      return false;
+    }
+    LOG.info("Built dense index over {} keys from {} to {}",
+        longHashTable.size(), longHashTable.min(), longHashTable.max());
+    return true;
+  }
+
+  private void buildBloomFilter() {
+    long startTime = System.currentTimeMillis();
+    VectorMapJoinFastPartitionedHashTable partitionedHashTable = getPartitionedHashTable();
+    if (partitionedHashTable != null) {
+      partitionedHashTable.buildBloomFilter(bloomFilterFpp);
+    } else {
+      ((VectorMapJoinFastHashTable) vectorMapJoinFastHashTable).buildBloomFilter(bloomFilterFpp);
+    }
+    LOG.info("Built Bloom filter of {} bytes over {} keys in {} ms",
+        vectorMapJoinFastHashTable.getBloomFilter().sizeInBytes(),
+        vectorMapJoinFastHashTable.size(), System.currentTimeMillis() - startTime);
   }
 
   @Override
@@ -214,7 +437,26 @@ public NonMatchedSmallTableIterator createNonMatchedSmallTableIterator(
 
   @Override
   public void clear() {
-    // Do nothing
+    // The container may still be reachable through the object cache, so the off-heap slots are
+    // not freed here; see freeOffHeapMemory.
+    VectorMapJoinFastPartitionedHashTable partitionedHashTable = getPartitionedHashTable();
+    if (partitionedHashTable != null) {
+      partitionedHashTable.clearSpill();
+    }
+  }
+
+  /*
+   * Frees the off-heap slots right away, instead of when the container is garbage collected.
+   * Only called by the owner once no one else can reach the container: after a failed load, or
+   * when the shared hash table cache evicts it.
+   */
+  public void freeOffHeapMemory() {
+    VectorMapJoinFastPartitionedHashTable partitionedHashTable = getPartitionedHashTable();
+    if (partitionedHashTable != null) {
+      partitionedHashTable.freeOffHeapMemory();
+    } else {
+      ((VectorMapJoinFastHashTable) vectorMapJoinFastHashTable).freeOffHeapMemory();
+    }
   }
 
   @Override
@@ -229,7 +471,8 @@ public void dumpMetrics() {
 
   @Override
   public boolean hasSpill() {
-    return false;
+    VectorMapJoinFastPartitionedHashTable partitionedHashTable = getPartitionedHashTable();
+    return partitionedHashTable != null && partitionedHashTable.hasSpill();
   }
 
   @Override
@@ -237,14 +480,25 @@ public int size() {
     return vectorMapJoinFastHashTable.size();
   }
 
+  /*
+   * @return The direct memory used by the hash table outside of the Java heap.
+   */
+  public long getOffHeapMemorySize() {
+    VectorMapJoinFastPartitionedHashTable partitionedHashTable = getPartitionedHashTable();
+    if (partitionedHashTable != null) {
+      return partitionedHashTable.getOffHeapMemorySize();
+    }
+    return ((VectorMapJoinFastHashTable) vectorMapJoinFastHashTable).getOffHeapMemorySize();
+  }
+
   @Override
   public long getEstimatedMemorySize() {
     JavaDataModel jdm = JavaDataModel.get();
     long size = 0;
     size += vectorMapJoinFastHashTable.getEstimatedMemorySize();
-    size += (4 * jdm.primitive1());
+    size += (8 * jdm.primitive1());
     size += (2 * jdm.object());
-    size += (jdm.primitive2());
+    size += (2 * jdm.primitive2());
     return size;
   }
 
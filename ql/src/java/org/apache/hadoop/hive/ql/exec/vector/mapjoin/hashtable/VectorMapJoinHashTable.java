@@ -25,6 +25,7 @@
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hive.common.util.BloomKFilter;
 
 /*
  * Root interface for a vector map join hash table (which could be a hash map, hash multi-set, or
@@ -51,4 +52,12 @@ void putRow(BytesWritable currentKey, BytesWritable currentValue)
   VectorMapJoinNonMatchedIterator createNonMatchedIterator(MatchTracker matchTracker);
 
   int spillPartitionId();
+
+  /*
+   * @return A Bloom filter over all the keys of the hash table when one was built after loading;
+   *         otherwise, null.
+   */
+  default BloomKFilter getBloomFilter() {
+    return null;
+  }
 }
@@ -18,6 +18,12 @@
 
 package org.apache.hadoop.hive.ql.exec.vector.wrapper;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.sql.Timestamp;
+
+import org.apache.hadoop.hive.common.type.HiveIntervalDayTime;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriter;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
@@ -32,6 +38,7 @@
 import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.VectorColumnSetInfo;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 
 /**
@@ -1062,6 +1069,119 @@ public void assignRowColumn(VectorizedRowBatch batch, int batchIndex, int keyInd
     }
   }
 
+  /**
+   * Writes the key values of a key wrapper, so that {@link #readKey} can restore them.
+   */
+  public void writeKey(VectorHashKeyWrapperBase kw, DataOutput out) throws IOException {
+    for (int keyIndex = 0; keyIndex < keyCount; keyIndex++) {
+      boolean isNull = kw.isNull(keyIndex);
+      out.writeBoolean(isNull);
+      if (isNull) {
+        continue;
+      }
+      int columnTypeSpecificIndex = columnTypeSpecificIndices[keyIndex];
+      switch (columnVectorTypes[keyIndex]) {
+      case LONG:
+      case DECIMAL_64:
+        out.writeLong(kw.getLongValue(columnTypeSpecificIndex));
+        break;
+      case DOUBLE:
+        out.writeDouble(kw.getDoubleValue(columnTypeSpecificIndex));
+        break;
+      case BYTES:
+        int length = kw.getByteLength(columnTypeSpecificIndex);
+        out.writeInt(length);
+        out.write(kw.getBytes(columnTypeSpecificIndex),
+            kw.getByteStart(columnTypeSpecificIndex), length);
+        break;
+      case DECIMAL:
+        kw.getDecimal(columnTypeSpecificIndex).write(out);
+        break;
+      case TIMESTAMP:
+        Timestamp timestamp = kw.getTimestamp(columnTypeSpecificIndex);
+        out.writeLong(timestamp.getTime());
+        out.writeInt(timestamp.getNanos());
+        break;
+      case INTERVAL_DAY_TIME:
+        HiveIntervalDayTime intervalDayTime = kw.getIntervalDayTime(columnTypeSpecificIndex);
+        out.writeLong(intervalDayTime.getTotalSeconds());
+        out.writeInt(intervalDayTime.getNanos());
+        break;
+      default:
+        throw new IOException("Unexpected column vector type " + columnVectorTypes[keyIndex]);
+      }
+    }
+  }
+
+  /**
+   * Reads the key values written by {@link #writeKey} into a new key wrapper.
+   */
+  public VectorHashKeyWrapperBase readKey(DataInput in) throws IOException {
+    VectorHashKeyWrapperBase kw = allocateKeyWrapper();
+    kw.clearIsNull();
+    for (int keyIndex = 0; keyIndex < keyCount; keyIndex++) {
+      boolean isNull = in.readBoolean();
+      int columnTypeSpecificIndex = columnTypeSpecificIndices[keyIndex];
+      switch (columnVectorTypes[keyIndex]) {
+      case LONG:
+      case DECIMAL_64:
+        if (isNull) {
+          kw.assignNullLong(keyIndex, columnTypeSpecificIndex);
+        } else {
+          kw.assignLong(keyIndex, columnTypeSpecificIndex, in.readLong());
+        }
+        break;
+      case DOUBLE:
+        if (isNull) {
+          kw.assignNullDouble(keyIndex, columnTypeSpecificIndex);
+        } else {
+          kw.assignDouble(columnTypeSpecificIndex, in.readDouble());
+        }
+        break;
+      case BYTES:
+        if (isNull) {
+          kw.assignNullString(keyIndex, columnTypeSpecificIndex);
+        } else {
+          byte[] bytes = new byte[in.readInt()];
+          in.readFully(bytes);
+          kw.assignString(columnTypeSpecificIndex, bytes, 0, bytes.length);
+        }
+        break;
+      case DECIMAL:
+        if (isNull) {
+          kw.assignNullDecimal(keyIndex, columnTypeSpecificIndex);
+        } else {
+          HiveDecimalWritable decimal = new HiveDecimalWritable();
+          decimal.readFields(in);
+          kw.assignDecimal(columnTypeSpecificIndex, decimal);
+        }
+        break;
+      case TIMESTAMP:
+        if (isNull) {
+          kw.assignNullTimestamp(keyIndex, columnTypeSpecificIndex);
+        } else {
+          Timestamp timestamp = new Timestamp(in.readLong());
+          timestamp.setNanos(in.readInt());
+          kw.assignTimestamp(columnTypeSpecificIndex, timestamp);
+        }
+        break;
+      case INTERVAL_DAY_TIME:
+        if (isNull) {
+          kw.assignNullIntervalDayTime(keyIndex, columnTypeSpecificIndex);
+        } else {
+          long totalSeconds = in.readLong();
+          kw.assignIntervalDayTime(columnTypeSpecificIndex,
+              new HiveIntervalDayTime(totalSeconds, in.readInt()));
+        }
+        break;
+      default:
+        throw new IOException("Unexpected column vector type " + columnVectorTypes[keyIndex]);
+      }
+    }
+    kw.setHashKey();
+    return kw;
+  }
+
   public int getVariableSize(int batchSize) {
     int variableSize = 0;
     if ( 0 < stringIndices.length) {
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io.arrow;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.AbstractSerDe;
+import org.apache.hadoop.hive.serde2.ByteStream;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.SerDeStats;
+import org.apache.hadoop.hive.serde2.SerDeUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Writable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ArrowStreamSerDe writes the final query results of the HiveServer2 sessions that use the arrow
+ * result format (see hive.server2.thrift.resultset.format) as Arrow IPC streams. Like
+ * {@link org.apache.hadoop.hive.serde2.thrift.ThriftJDBCBinarySerDe}, it buffers up to
+ * hive.server2.thrift.resultset.default.fetch.size rows, and each serialized blob is sent to the
+ * client as is in one fetch.
+ *
+ * The rows are converted to Arrow record batches by {@link ArrowColumnarBatchSerDe}; the
+ * vectorized file sink hands over its batches with {@link #serializeBatch(VectorizedRowBatch)},
+ * which converts them without extracting the rows, like VectorFileSinkArrowOperator.
+ *
+ * Only the primitive types that the JDBC driver reads from the Arrow vectors are supported (see
+ * {@link #isSupported(String)}); the timestamps are sent with microsecond precision.
+ */
+public class ArrowStreamSerDe extends AbstractSerDe {
+  public static final Logger LOG = LoggerFactory.getLogger(ArrowStreamSerDe.class.getName());
+
+  private Configuration conf;
+  private Properties tbl;
+  private List<String> columnNames;
+  private List<TypeInfo> columnTypes;
+  private StructObjectInspector rowObjectInspector;
+  private int maxBufferedRows;
+
+  // Converts the rows, or the vectorized batches, to Arrow batches; created on the first use
+  private ArrowColumnarBatchSerDe rowSerDe;
+  private Serializer batchSerializer;
+  // The last Arrow batch, that holds the vectors and the allocator to close
+  private ArrowWrapperWritable lastBatch;
+
+  private final ByteStream.Output output = new ByteStream.Output();
+  private final BytesWritable serializedBytesWritable = new BytesWritable();
+  private WriteChannel channel;
+  private int count;
+
+  /**
+   * @return whether the columns can be sent as Arrow streams
+   */
+  public static boolean isSupported(String columnTypeProperty) {
+    if (columnTypeProperty == null || columnTypeProperty.isEmpty()) {
+      return false;
+    }
+    for (TypeInfo typeInfo : TypeInfoUtils.getTypeInfosFromTypeString(columnTypeProperty)) {
+      if (typeInfo.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        return false;
+      }
+      switch (((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory()) {
+      case BOOLEAN:
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case STRING:
+      case VARCHAR:
+      case DATE:
+      case TIMESTAMP:
+      case BINARY:
+      case DECIMAL:
+        break;
+      default:
+        // The char values are padded in TColumns, but not in Arrow vectors.
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void initialize(Configuration conf, Properties tbl) throws SerDeException {
+    this.conf = conf;
+    this.tbl = tbl;
+    maxBufferedRows =
+        HiveConf.getIntVar(conf, HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_DEFAULT_FETCH_SIZE);
+    String columnNameProperty = tbl.getProperty(serdeConstants.LIST_COLUMNS);
+    String columnTypeProperty = tbl.getProperty(serdeConstants.LIST_COLUMN_TYPES);
+    final String columnNameDelimiter = tbl.containsKey(serdeConstants.COLUMN_NAME_DELIMITER) ? tbl
+        .getProperty(serdeConstants.COLUMN_NAME_DELIMITER) : String.valueOf(SerDeUtils.COMMA);
+    if (columnNameProperty.length() == 0) {
+      columnNames = new ArrayList<>();
+    } else {
+      columnNames = Arrays.asList(columnNameProperty.split(columnNameDelimiter));
+    }
+    if (columnTypeProperty.length() == 0) {
+      columnTypes = new ArrayList<>();
+    } else {
+      columnTypes = TypeInfoUtils.getTypeInfosFromTypeString(columnTypeProperty);
+    }
+    rowObjectInspector = (StructObjectInspector) TypeInfoUtils
+        .getStandardWritableObjectInspectorFromTypeInfo(
+            TypeInfoFactory.getStructTypeInfo(columnNames, columnTypes));
+  }
+
+  @Override
+  public Class<? extends Writable> getSerializedClass() {
+    return BytesWritable.class;
+  }
+
+  /**
+   * Buffers the row. A null row means there are no more rows.
+   * @return the Arrow stream of the buffered rows once there are enough of them, or null
+   */
+  @Override
+  public Writable serialize(Object obj, ObjectInspector objInspector) throws SerDeException {
+    if (obj == null) {
+      return flush();
+    }
+    if (rowSerDe == null) {
+      rowSerDe = new ArrowColumnarBatchSerDe();
+      rowSerDe.initialize(conf, tbl);
+    }
+    return append(rowSerDe.serialize(obj, objInspector));
+  }
+
+  /**
+   * Buffers the rows of a vectorized batch; the columns of the batch are the projected ones.
+   * @return the Arrow stream of the buffered rows once there are enough of them, or null
+   */
+  public Writable serializeBatch(VectorizedRowBatch batch) throws SerDeException {
+    if (batchSerializer == null) {
+      batchSerializer = new Serializer(
+          conf, Thread.currentThread().getName(), columnTypes, columnNames);
+    }
+    return append(batchSerializer.serializeBatch(batch, true));
+  }
+
+  private Writable append(ArrowWrapperWritable batch) throws SerDeException {
+    if (batch == null) {
+      return null;
+    }
+    lastBatch = batch;
+    VectorSchemaRoot root = batch.getVectorSchemaRoot();
+    if (root.getRowCount() == 0) {
+      return null;
+    }
+    try {
+      if (channel == null) {
+        output.reset();
+        channel = new WriteChannel(Channels.newChannel(output));
+        MessageSerializer.serialize(channel, root.getSchema());
+      }
+      try (ArrowRecordBatch recordBatch = new VectorUnloader(root).getRecordBatch()) {
+        MessageSerializer.serialize(channel, recordBatch);
+      }
+    } catch (IOException e) {
+      throw new SerDeException(e);
+    }
+    count += root.getRowCount();
+    return count >= maxBufferedRows ? endStream() : null;
+  }
+
+  private Writable endStream() throws SerDeException {
+    try {
+      ArrowStreamWriter.writeEndOfStream(channel);
+    } catch (IOException e) {
+      throw new SerDeException(e);
+    }
+    channel = null;
+    count = 0;
+    serializedBytesWritable.set(output.getData(), 0, output.getLength());
+    return serializedBytesWritable;
+  }
+
+  private Writable flush() throws SerDeException {
+    try {
+      if (rowSerDe != null) {
+        // The rows buffered by the Arrow serializer
+        append(rowSerDe.serialize(null, rowObjectInspector));
+      }
+      return channel != null ? endStream() : null;
+    } finally {
+      if (lastBatch != null) {
+        lastBatch.getRootVector().close();
+        lastBatch.getAllocator().close();
+        lastBatch = null;
+      }
+      rowSerDe = null;
+      batchSerializer = null;
+    }
+  }
+
+  @Override
+  public SerDeStats getSerDeStats() {
+    return null;
+  }
+
+  /**
+   * @return the bytes of the Arrow stream, that the client reads.
+   */
+  @Override
+  public Object deserialize(Writable blob) throws SerDeException {
+    return ((BytesWritable) blob).copyBytes();
+  }
+
+  @Override
+  public ObjectInspector getObjectInspector() throws SerDeException {
+    return rowObjectInspector;
+  }
+}
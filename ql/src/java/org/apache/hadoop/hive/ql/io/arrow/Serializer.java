@@ -816,7 +816,9 @@ private static void writeGeneric(final FieldVector fieldVector, final ColumnVect
     final TimestampColumnVector timestampColumnVector = (TimestampColumnVector) hiveVector;
     // Time = second + sub-second
     final long secondInMillis = timestampColumnVector.getTime(j);
-    final long secondInMicros = (secondInMillis - secondInMillis % MILLIS_PER_SECOND) * MICROS_PER_MILLIS;
+    // The nanos are positive, so the seconds are rounded down also before the epoch
+    final long secondInMicros =
+        (secondInMillis - Math.floorMod(secondInMillis, (long) MILLIS_PER_SECOND)) * MICROS_PER_MILLIS;
     final long subSecondInMicros = timestampColumnVector.getNanos(j) / NS_PER_MICROS;
     if ((secondInMillis > 0 && secondInMicros < 0) || (secondInMillis < 0 && secondInMicros > 0)) {
       // If the timestamp cannot be represented in long microsecond, set it as a null value
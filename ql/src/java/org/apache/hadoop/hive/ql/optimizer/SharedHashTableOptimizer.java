@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hadoop.hive.ql.exec.FilterOperator;
+import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
+import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.OperatorUtils;
+import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
+import org.apache.hadoop.hive.ql.exec.SelectOperator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.io.AcidUtils;
+import org.apache.hadoop.hive.ql.metadata.Partition;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.parse.ParseContext;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDynamicListDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDynamicValueDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
+import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
+import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * SharedHashTableOptimizer. Sets the key under which LLAP daemons share the hash table of a
+ * map join across queries.
+ *
+ * A map join qualifies when every small table input is a plain scan of a transactional table,
+ * optionally followed by deterministic filters and projections. The key is a digest of the
+ * tables, their schema, the pruned partitions, the operator expressions of the small table
+ * branches and the key/value schema of the hash table. At runtime the snapshot write ids of the
+ * tables are appended to it, so two queries only share a hash table built over the same data.
+ */
+public class SharedHashTableOptimizer extends Transform {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SharedHashTableOptimizer.class);
+
+  public static final String SHARED_CACHE_KEY_PREFIX = "HASH_MAP_SHARED_";
+
+  @Override
+  public ParseContext transform(ParseContext pctx) throws SemanticException {
+    for (MapJoinOperator mapJoinOp : OperatorUtils.findOperators(
+        new ArrayList<Operator<?>>(pctx.getTopOps().values()), MapJoinOperator.class)) {
+      MapJoinDesc desc = mapJoinOp.getConf();
+      if (desc.isBucketMapJoin() || desc.isDynamicPartitionHashJoin()) {
+        // Different tasks load different parts of the small table.
+        continue;
+      }
+
+      StringBuilder sb = new StringBuilder();
+      List<String> tables = new ArrayList<>();
+      if (describeMapJoin(pctx, mapJoinOp, sb, tables)) {
+        String sharedCacheKey = SHARED_CACHE_KEY_PREFIX +
+            Hashing.sha256().hashString(sb.toString(), StandardCharsets.UTF_8).toString();
+        desc.setSharedCacheKey(sharedCacheKey);
+        desc.setSharedCacheTables(tables);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Shared hash table key for " + mapJoinOp + " is " + sharedCacheKey +
+              " over tables " + tables);
+        }
+      }
+    }
+    return pctx;
+  }
+
+  private static boolean describeMapJoin(ParseContext pctx, MapJoinOperator mapJoinOp,
+      StringBuilder sb, List<String> tables) throws SemanticException {
+    MapJoinDesc desc = mapJoinOp.getConf();
+    sb.append("posBigTable=").append(desc.getPosBigTable());
+    sb.append(";noOuterJoin=").append(desc.getNoOuterJoin());
+    sb.append(";filterMap=").append(Arrays.deepToString(desc.getFilterMap()));
+    sb.append(";keyTable=");
+    describeTableDesc(desc.getKeyTblDesc(), sb);
+
+    List<Operator<?>> parents = mapJoinOp.getParentOperators();
+    for (int pos = 0; pos < parents.size(); pos++) {
+      if (pos == desc.getPosBigTable()) {
+        continue;
+      }
+      sb.append(";pos=").append(pos);
+      sb.append(";keys=");
+      if (!describeExprs(desc.getKeys().get((byte) pos), sb)) {
+        return false;
+      }
+      sb.append(";filters=");
+      if (!describeExprs(desc.getFilters().get((byte) pos), sb)) {
+        return false;
+      }
+      sb.append(";valueTable=");
+      describeTableDesc(desc.getValueTblDescs().get(pos), sb);
+      if (!desc.getNoOuterJoin() && desc.getValueFilteredTblDescs() != null) {
+        sb.append(";valueFilteredTable=");
+        describeTableDesc(desc.getValueFilteredTblDescs().get(pos), sb);
+      }
+      if (!describeSmallTableBranch(pctx, parents.get(pos), sb, tables)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Walks up a small table branch from its reduce sink to the table scan. Only reduce sink,
+   * select, filter and table scan operators are allowed, each with a single parent.
+   */
+  private static boolean describeSmallTableBranch(ParseContext pctx, Operator<?> op,
+      StringBuilder sb, List<String> tables) throws SemanticException {
+    if (!(op instanceof ReduceSinkOperator)) {
+      return false;
+    }
+    while (true) {
+      if (op instanceof TableScanOperator) {
+        return describeTableScan(pctx, (TableScanOperator) op, sb, tables);
+      }
+      if (op instanceof ReduceSinkOperator) {
+        ReduceSinkDesc rsDesc = ((ReduceSinkOperator) op).getConf();
+        if (rsDesc.getTopN() >= 0) {
+          return false;
+        }
+        sb.append(";RS:keys=");
+        if (!describeExprs(rsDesc.getKeyCols(), sb)) {
+          return false;
+        }
+        sb.append(";values=");
+        if (!describeExprs(rsDesc.getValueCols(), sb)) {
+          return false;
+        }
+        sb.append(";keySerde=");
+        describeTableDesc(rsDesc.getKeySerializeInfo(), sb);
+        sb.append(";valueSerde=");
+        describeTableDesc(rsDesc.getValueSerializeInfo(), sb);
+      } else if (op instanceof SelectOperator) {
+        SelectDesc selDesc = ((SelectOperator) op).getConf();
+        sb.append(";SEL:selStar=").append(selDesc.isSelStarNoCompute());
+        sb.append(";columns=").append(selDesc.getOutputColumnNames());
+        sb.append(";exprs=");
+        if (!describeExprs(selDesc.getColList(), sb)) {
+          return false;
+        }
+      } else if (op instanceof FilterOperator) {
+        FilterDesc filterDesc = ((FilterOperator) op).getConf();
+        if (filterDesc.getIsSamplingPred()) {
+          return false;
+        }
+        sb.append(";FIL:");
+        if (!describeExpr(filterDesc.getPredicate(), sb)) {
+          return false;
+        }
+      } else {
+        return false;
+      }
+      if (op.getParentOperators() == null || op.getParentOperators().size() != 1) {
+        return false;
+      }
+      op = op.getParentOperators().get(0);
+    }
+  }
+
+  private static boolean describeTableScan(ParseContext pctx, TableScanOperator tsOp,
+      StringBuilder sb, List<String> tables) throws SemanticException {
+    TableScanDesc tsDesc = tsOp.getConf();
+    Table table = tsDesc.getTableMetadata();
+    if (table == null || table.isTemporary() || !AcidUtils.isTransactionalTable(table)) {
+      // Without write ids there is no way to tell whether the table changed since the hash
+      // table was built.
+      return false;
+    }
+    if (tsDesc.getRowLimit() >= 0 || pctx.getOpToSamplePruner().containsKey(tsOp) ||
+        pctx.getNameToSplitSample().containsKey(tsDesc.getAlias())) {
+      return false;
+    }
+    if (tsDesc.getFilterExpr() != null && !isSharable(tsDesc.getFilterExpr())) {
+      // Dynamic partition pruning and semijoin reduction depend on the other side of the query.
+      return false;
+    }
+
+    String tableName = table.getFullyQualifiedName();
+    sb.append(";TS:table=").append(tableName);
+    sb.append(";cols=").append(table.getCols());
+    sb.append(";partCols=").append(table.getPartCols());
+    sb.append(";serde=").append(table.getSerializationLib());
+    sb.append(";inputFormat=").append(table.getSd().getInputFormat());
+    TreeSet<String> partitionNames = new TreeSet<>();
+    if (table.isPartitioned()) {
+      for (Partition partition : pctx.getPrunedPartitions(tsOp).getPartitions()) {
+        partitionNames.add(partition.getName());
+      }
+    }
+    sb.append(";partitions=").append(partitionNames);
+    if (!tables.contains(tableName)) {
+      tables.add(tableName);
+    }
+    return true;
+  }
+
+  /**
+   * Appends the serde and the properties of a table descriptor. Used for the shared hash table
+   * key both here and in {@link MapJoinOperator}, so the two always describe a schema the same way.
+   */
+  public static void describeTableDesc(TableDesc tableDesc, StringBuilder sb) {
+    if (tableDesc == null) {
+      sb.append("null");
+      return;
+    }
+    sb.append(tableDesc.getSerdeClassName());
+    Properties properties = tableDesc.getProperties();
+    if (properties != null) {
+      // Sorted so the same schema always describes the same way.
+      Map<String, String> sorted = new TreeMap<>();
+      for (String name : properties.stringPropertyNames()) {
+        sorted.put(name, properties.getProperty(name));
+      }
+      sb.append(sorted);
+    }
+  }
+
+  private static boolean describeExprs(List<ExprNodeDesc> exprs, StringBuilder sb) {
+    if (exprs == null) {
+      sb.append("null");
+      return true;
+    }
+    sb.append('[');
+    for (ExprNodeDesc expr : exprs) {
+      if (!describeExpr(expr, sb)) {
+        return false;
+      }
+      sb.append(',');
+    }
+    sb.append(']');
+    return true;
+  }
+
+  private static boolean describeExpr(ExprNodeDesc expr, StringBuilder sb) {
+    if (!isSharable(expr)) {
+      return false;
+    }
+    sb.append(expr.getExprString()).append(':').append(expr.getTypeString());
+    return true;
+  }
+
+  /*
+   * An expression evaluates the same way in every query unless it is non-deterministic, a
+   * runtime constant such as current_timestamp, or a dynamic value filled in by another branch
+   * of the query.
+   */
+  private static boolean isSharable(ExprNodeDesc expr) {
+    if (expr instanceof ExprNodeDynamicValueDesc || expr instanceof ExprNodeDynamicListDesc) {
+      return false;
+    }
+    if (expr instanceof ExprNodeGenericFuncDesc) {
+      ExprNodeGenericFuncDesc funcDesc = (ExprNodeGenericFuncDesc) expr;
+      if (!FunctionRegistry.isDeterministic(funcDesc.getGenericUDF()) ||
+          FunctionRegistry.isRuntimeConstant(funcDesc.getGenericUDF())) {
+        return false;
+      }
+    }
+    if (expr.getChildren() != null) {
+      for (ExprNodeDesc child : expr.getChildren()) {
+        if (!isSharable(child)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
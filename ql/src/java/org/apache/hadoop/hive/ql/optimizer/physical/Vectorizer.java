@@ -3628,6 +3628,13 @@ private boolean canSpecializeMapJoin(Operator<? extends OperatorDesc> op, MapJoi
     // physical optimizer stages...
     boolean isHybridHashJoin = desc.isHybridHashJoin();
 
+    // The fast hash table can spill for Hybrid Grace Hash Join, except for FULL OUTER since its
+    // match tracking is over the whole hash table.
+    boolean isFastHashTableSpillEnabled =
+        HiveConf.getBoolVar(hiveConf,
+            HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_SPILL_ENABLED) &&
+        (!oneMapJoinCondition || desc.getConds()[0].getType() != JoinDesc.FULL_OUTER_JOIN);
+
     /*
      * Populate vectorMapJoininfo.
      */
@@ -3899,6 +3906,7 @@ private boolean canSpecializeMapJoin(Operator<? extends OperatorDesc> op, MapJoi
 
     vectorDesc.setIsFastHashTableEnabled(isFastHashTableEnabled);
     vectorDesc.setIsHybridHashJoin(isHybridHashJoin);
+    vectorDesc.setIsFastHashTableSpillEnabled(isFastHashTableSpillEnabled);
 
     vectorDesc.setSupportsKeyTypes(supportsKeyTypes);
     if (!supportsKeyTypes) {
@@ -3933,10 +3941,10 @@ private boolean canSpecializeMapJoin(Operator<? extends OperatorDesc> op, MapJoi
 
     } else {
 
-      // With the fast hash table implementation, we currently do not support
-      // Hybrid Grace Hash Join.
+      // With the fast hash table implementation, Hybrid Grace Hash Join is only supported when
+      // the fast hash table can spill.
 
-      if (isHybridHashJoin) {
+      if (isHybridHashJoin && !isFastHashTableSpillEnabled) {
         result = false;
       }
     }
@@ -146,6 +146,7 @@
 import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
 import org.apache.hadoop.hive.ql.io.NullRowsInputFormat;
 import org.apache.hadoop.hive.ql.io.arrow.ArrowColumnarBatchSerDe;
+import org.apache.hadoop.hive.ql.io.arrow.ArrowStreamSerDe;
 import org.apache.hadoop.hive.ql.lib.DefaultGraphWalker;
 import org.apache.hadoop.hive.ql.lib.Dispatcher;
 import org.apache.hadoop.hive.ql.lib.GraphWalker;
@@ -7577,6 +7578,14 @@ protected Operator genFileSinkPlan(String dest, QB qb, Operator input)
             // Set the fetch formatter to be a no-op for the ListSinkOperator, since we'll
             // write out formatted thrift objects to SequenceFile
             conf.set(SerDeUtils.LIST_SINK_OUTPUT_FORMATTER, NoOpFetchFormatter.class.getName());
+          } else if (SessionState.get().getIsUsingArrowResultFormat()
+              && ArrowStreamSerDe.isSupported(colTypes)) {
+            // The tasks write the Arrow streams that are sent to the client, in a SequenceFile
+            fileFormat = "SequenceFile";
+            tableDescriptor =
+                PlanUtils.getDefaultQueryOutputTableDesc(cols, colTypes, fileFormat,
+                    ArrowStreamSerDe.class);
+            conf.set(SerDeUtils.LIST_SINK_OUTPUT_FORMATTER, NoOpFetchFormatter.class.getName());
           } else {
             fileFormat = HiveConf.getVar(conf, HiveConf.ConfVars.HIVEQUERYRESULTFILEFORMAT);
             Class<? extends Deserializer> serdeClass = LazySimpleSerDe.class;
@@ -7790,7 +7799,8 @@ private boolean useBatchingSerializer(String serdeClassName) {
   private boolean hasSetBatchSerializer(String serdeClassName) {
     return (serdeClassName.equalsIgnoreCase(ThriftJDBCBinarySerDe.class.getName()) &&
       HiveConf.getBoolVar(conf, HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_SERIALIZE_IN_TASKS)) ||
-    serdeClassName.equalsIgnoreCase(ArrowColumnarBatchSerDe.class.getName());
+    serdeClassName.equalsIgnoreCase(ArrowColumnarBatchSerDe.class.getName()) ||
+    serdeClassName.equalsIgnoreCase(ArrowStreamSerDe.class.getName());
   }
 
   private ColsAndTypes deriveFileSinkColTypes(RowResolver inputRR, List<FieldSchema> field_schemas)
@@ -15040,8 +15050,11 @@ private QueryResultsCache.LookupInfo createLookupInfoForQuery(ASTNode astNode) t
   }
 
   private boolean isResultsCacheEnabled() {
+    // The results of the arrow format sessions are not shared, since the other sessions cannot
+    // read them; nor do these sessions read the results of the others.
     return conf.getBoolVar(HiveConf.ConfVars.HIVE_QUERY_RESULTS_CACHE_ENABLED) &&
-        !(SessionState.get().isHiveServerQuery() && conf.getBoolVar(HiveConf.ConfVars.HIVE_SERVER2_ENABLE_DOAS));
+        !(SessionState.get().isHiveServerQuery() && conf.getBoolVar(HiveConf.ConfVars.HIVE_SERVER2_ENABLE_DOAS)) &&
+        !SessionState.get().getIsUsingArrowResultFormat();
   }
 
   /**
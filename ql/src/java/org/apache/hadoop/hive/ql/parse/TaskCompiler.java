@@ -52,6 +52,7 @@
 import org.apache.hadoop.hive.ql.hooks.ReadEntity;
 import org.apache.hadoop.hive.ql.hooks.WriteEntity;
 import org.apache.hadoop.hive.ql.io.AcidUtils;
+import org.apache.hadoop.hive.ql.io.arrow.ArrowStreamSerDe;
 import org.apache.hadoop.hive.ql.metadata.Hive;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.Partition;
@@ -185,7 +186,18 @@ public void compile(final ParseContext pCtx,
           // Set the fetch formatter to be a no-op for the ListSinkOperator, since we'll
           // read formatted thrift objects from the output SequenceFile written by Tasks.
           conf.set(SerDeUtils.LIST_SINK_OUTPUT_FORMATTER, NoOpFetchFormatter.class.getName());
+        } else if (SessionState.get().getIsUsingArrowResultFormat()
+            && ArrowStreamSerDe.isSupported(colTypes)) {
+          // Read the Arrow streams written by the tasks, as in SemanticAnalyzer.genFileSinkPlan
+          resultTab =
+              PlanUtils.getDefaultQueryOutputTableDesc(cols, colTypes, "SequenceFile",
+                  ArrowStreamSerDe.class);
+          conf.set(SerDeUtils.LIST_SINK_OUTPUT_FORMATTER, NoOpFetchFormatter.class.getName());
         } else {
+          if (SessionState.get().getIsUsingArrowResultFormat()) {
+            // The results that the Arrow streams cannot hold are sent as TColumns
+            conf.set(SerDeUtils.LIST_SINK_OUTPUT_FORMATTER, ThriftFormatter.class.getName());
+          }
           if("SequenceFile".equalsIgnoreCase(resFileFormat)) {
             // file format is changed so that IF file sink provides list of files to fetch from (instead
             // of whle directory) list status is done on files (which is what HiveSequenceFileInputFormat do)
@@ -205,6 +217,9 @@ public void compile(final ParseContext pCtx,
           // Set the fetch formatter to be a no-op for the ListSinkOperator, since we'll
           // read formatted thrift objects from the output SequenceFile written by Tasks.
           conf.set(SerDeUtils.LIST_SINK_OUTPUT_FORMATTER, NoOpFetchFormatter.class.getName());
+        } else if (SessionState.get().getIsUsingArrowResultFormat()) {
+          // The fetch aggregations are sent as TColumns
+          conf.set(SerDeUtils.LIST_SINK_OUTPUT_FORMATTER, ThriftFormatter.class.getName());
         }
       }
 
@@ -215,8 +230,9 @@ public void compile(final ParseContext pCtx,
       fetch.setSink(pCtx.getFetchSink());
       if (isHiveServerQuery &&
         null != resultTab &&
-        resultTab.getSerdeClassName().equalsIgnoreCase(ThriftJDBCBinarySerDe.class.getName()) &&
-        HiveConf.getBoolVar(conf, HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_SERIALIZE_IN_TASKS)) {
+        ((resultTab.getSerdeClassName().equalsIgnoreCase(ThriftJDBCBinarySerDe.class.getName()) &&
+        HiveConf.getBoolVar(conf, HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_SERIALIZE_IN_TASKS)) ||
+        resultTab.getSerdeClassName().equalsIgnoreCase(ArrowStreamSerDe.class.getName()))) {
           fetch.setIsUsingThriftJDBCBinarySerDe(true);
       } else {
           fetch.setIsUsingThriftJDBCBinarySerDe(false);
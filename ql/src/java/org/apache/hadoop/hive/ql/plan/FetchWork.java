@@ -73,7 +73,8 @@ public class FetchWork implements Serializable {
 
   /**
    * Whether is a HiveServer query, and the destination table is
-   * indeed written using ThriftJDBCBinarySerDe
+   * indeed written using ThriftJDBCBinarySerDe or ArrowStreamSerDe,
+   * i.e. each record is a blob that is sent as is
    */
   private boolean isUsingThriftJDBCBinarySerDe = false;
 
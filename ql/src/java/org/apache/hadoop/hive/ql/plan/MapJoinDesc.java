@@ -90,6 +90,11 @@ public class MapJoinDesc extends JoinDesc implements Serializable {
 
   private String cacheKey;
 
+  // Key of the hash table in the LLAP cache shared across queries, and the fully qualified names
+  // of the transactional tables whose snapshot write ids complete the key at runtime.
+  private String sharedCacheKey;
+  private List<String> sharedCacheTables;
+
   public MapJoinDesc() {
     bigTableBucketNumMapping = new LinkedHashMap<String, Integer>();
   }
@@ -114,6 +119,8 @@ public MapJoinDesc(MapJoinDesc clone) {
     this.isBucketMapJoin = clone.isBucketMapJoin;
     this.isHybridHashJoin = clone.isHybridHashJoin;
     this.cacheKey = clone.cacheKey;
+    this.sharedCacheKey = clone.sharedCacheKey;
+    this.sharedCacheTables = clone.sharedCacheTables;
   }
 
   public MapJoinDesc(final Map<Byte, List<ExprNodeDesc>> keys,
@@ -490,6 +497,22 @@ public void setCacheKey(String cacheKey) {
     this.cacheKey = cacheKey;
   }
 
+  public String getSharedCacheKey() {
+    return sharedCacheKey;
+  }
+
+  public void setSharedCacheKey(String sharedCacheKey) {
+    this.sharedCacheKey = sharedCacheKey;
+  }
+
+  public List<String> getSharedCacheTables() {
+    return sharedCacheTables;
+  }
+
+  public void setSharedCacheTables(List<String> sharedCacheTables) {
+    this.sharedCacheTables = sharedCacheTables;
+  }
+
   public static String generateCacheKey(String operatorId) {
     return "HASH_MAP_" + operatorId + "_container";
   }
@@ -563,10 +586,17 @@ private VectorizationCondition[] createNativeConditions() {
       }
 
       if (isFastHashTableEnabled) {
-        conditionList.add(
-            new VectorizationCondition(
-                !vectorMapJoinDesc.getIsHybridHashJoin(),
-                "Fast Hash Table and No Hybrid Hash Join"));
+        if (vectorMapJoinDesc.getIsFastHashTableSpillEnabled()) {
+          conditionList.add(
+              new VectorizationCondition(
+                  true,
+                  "Fast Hash Table with Spill"));
+        } else {
+          conditionList.add(
+              new VectorizationCondition(
+                  !vectorMapJoinDesc.getIsHybridHashJoin(),
+                  "Fast Hash Table and No Hybrid Hash Join"));
+        }
       } else {
         conditionList.add(
             new VectorizationCondition(
@@ -202,6 +202,7 @@ public VectorMapJoinInfo getVectorMapJoinInfo() {
   private boolean hasNullSafes;
   private boolean isFastHashTableEnabled;
   private boolean isHybridHashJoin;
+  private boolean isFastHashTableSpillEnabled;
   private boolean supportsKeyTypes;
   private List<String> notSupportedKeyTypes;
   private boolean supportsValueTypes;
@@ -289,6 +290,12 @@ public void setIsHybridHashJoin(boolean isHybridHashJoin) {
   public boolean getIsHybridHashJoin() {
     return isHybridHashJoin;
   }
+  public void setIsFastHashTableSpillEnabled(boolean isFastHashTableSpillEnabled) {
+    this.isFastHashTableSpillEnabled = isFastHashTableSpillEnabled;
+  }
+  public boolean getIsFastHashTableSpillEnabled() {
+    return isFastHashTableSpillEnabled;
+  }
   public void setIsFullOuter(boolean isFullOuter) {
     this.isFullOuter = isFullOuter;
   }
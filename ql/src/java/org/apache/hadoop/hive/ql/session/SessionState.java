@@ -167,6 +167,11 @@ public class SessionState {
    */
   private boolean isUsingThriftJDBCBinarySerDe = false;
 
+  /**
+   * The flag to indicate if the tasks write the query results of the session as Arrow streams.
+   */
+  private boolean isUsingArrowResultFormat = false;
+
   /**
    * The flag to indicate if the session already started so we can skip the init
    */
@@ -394,6 +399,14 @@ public boolean getIsUsingThriftJDBCBinarySerDe() {
 	return isUsingThriftJDBCBinarySerDe;
   }
 
+  public void setIsUsingArrowResultFormat(boolean isUsingArrowResultFormat) {
+    this.isUsingArrowResultFormat = isUsingArrowResultFormat;
+  }
+
+  public boolean getIsUsingArrowResultFormat() {
+    return isUsingArrowResultFormat;
+  }
+
   public void setIsHiveServerQuery(boolean isHiveServerQuery) {
     this.isHiveServerQuery = isHiveServerQuery;
   }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.hive.common.io.Allocator;
+import org.apache.hadoop.hive.common.io.DataCache;
+import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestLlapCacheAwareFs {
+  private static final String COUNTING_SCHEME = "counting";
+
+  /** A local file system that counts the streams it opens and the streams that are closed. */
+  public static class CountingFileSystem extends RawLocalFileSystem {
+    private static final AtomicInteger openCount = new AtomicInteger(),
+        closeCount = new AtomicInteger();
+
+    @Override
+    public URI getUri() {
+      return URI.create(COUNTING_SCHEME + ":///");
+    }
+
+    @Override
+    public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+      openCount.incrementAndGet();
+      return new FSDataInputStream(super.open(f, bufferSize)) {
+        @Override
+        public void close() throws IOException {
+          closeCount.incrementAndGet();
+          super.close();
+        }
+      };
+    }
+  }
+
+  private byte[] content;
+  private Configuration conf;
+  private Path filePath;
+
+  @Before
+  public void setUp() throws Exception {
+    File file = File.createTempFile("cacheawarefs", ".bin");
+    file.deleteOnExit();
+    content = new byte[100];
+    for (int i = 0; i < content.length; ++i) {
+      content[i] = (byte) i;
+    }
+    Files.write(file.toPath(), content);
+    conf = new Configuration();
+    conf.set("fs." + COUNTING_SCHEME + ".impl", CountingFileSystem.class.getName());
+    conf.setBoolean("fs." + COUNTING_SCHEME + ".impl.disable.cache", true);
+    filePath = new Path(COUNTING_SCHEME + "://" + file.getPath());
+    CountingFileSystem.openCount.set(0);
+    CountingFileSystem.closeCount.set(0);
+  }
+
+  @Test
+  public void testPositionedReadFullyWithOffset() throws Exception {
+    TreeMap<Long, Long> chunkIndex = new TreeMap<>();
+    chunkIndex.put(10L, 30L);
+    Path cachePath = LlapCacheAwareFs.registerFile(
+        createEmptyCache(), filePath, null, chunkIndex, conf, null);
+    try (FSDataInputStream stream = cachePath.getFileSystem(conf).open(cachePath)) {
+      byte[] buffer = new byte[40];
+      stream.seek(3);
+      stream.readFully(10, buffer, 5, 20);
+      assertEquals(3, stream.getPos());
+      for (int i = 0; i < buffer.length; ++i) {
+        byte expected = (i >= 5 && i < 25) ? content[10 + i - 5] : 0;
+        assertEquals("At " + i, expected, buffer[i]);
+      }
+    } finally {
+      LlapCacheAwareFs.unregisterFile(cachePath);
+    }
+  }
+
+  @Test
+  public void testDiskStreamOpenedOnceAndClosed() throws Exception {
+    TreeMap<Long, Long> chunkIndex = new TreeMap<>();
+    chunkIndex.put(0L, 40L);
+    chunkIndex.put(40L, 100L);
+    Path cachePath = LlapCacheAwareFs.registerFile(
+        createEmptyCache(), filePath, null, chunkIndex, conf, null);
+    try {
+      FSDataInputStream stream = cachePath.getFileSystem(conf).open(cachePath);
+      assertEquals(0, CountingFileSystem.openCount.get());
+      byte[] buffer = new byte[60];
+      stream.readFully(0, buffer, 0, 40);
+      stream.readFully(40, buffer, 0, 60);
+      assertEquals(content[99], buffer[59]);
+      assertEquals(0, stream.getPos());
+      assertEquals(1, CountingFileSystem.openCount.get());
+      assertEquals(0, CountingFileSystem.closeCount.get());
+      stream.close();
+      assertEquals(1, CountingFileSystem.closeCount.get());
+    } finally {
+      LlapCacheAwareFs.unregisterFile(cachePath);
+    }
+  }
+
+  /** Creates a cache that has none of the data, so that all the reads go to the disk. */
+  private static DataCache createEmptyCache() {
+    DataCache cache = mock(DataCache.class);
+    Allocator allocator = mock(Allocator.class);
+    when(allocator.getMaxAllocation()).thenReturn(1024);
+    when(cache.getAllocator()).thenReturn(allocator);
+    doAnswer(new Answer<DiskRangeList>() {
+      @Override
+      public DiskRangeList answer(InvocationOnMock invocation) {
+        return (DiskRangeList) invocation.getArguments()[1];
+      }
+    }).when(cache).getFileData(any(), any(DiskRangeList.class), anyLong(),
+        any(DataCache.DiskRangeListFactory.class), any(DataCache.BooleanRef.class));
+    return cache;
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.tez;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast.VectorMapJoinFastTableContainer;
+import org.junit.Test;
+
+public class TestLlapSharedHashTableCache {
+
+  private static Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> createTables(
+      long size, boolean spilled) {
+    MapJoinTableContainer container = mock(MapJoinTableContainer.class);
+    when(container.getEstimatedMemorySize()).thenReturn(size);
+    when(container.hasSpill()).thenReturn(spilled);
+    return new ImmutablePair<>(
+        new MapJoinTableContainer[] { null, container }, new MapJoinTableContainerSerDe[2]);
+  }
+
+  private static Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> load(
+      final Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables,
+      final AtomicInteger loadCount) {
+    return () -> {
+      loadCount.incrementAndGet();
+      return tables;
+    };
+  }
+
+  @Test
+  public void testSharedAcrossQueries() throws Exception {
+    LlapSharedHashTableCache cache = new LlapSharedHashTableCache();
+    AtomicInteger loadCount = new AtomicInteger();
+    Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables = createTables(100, false);
+
+    assertSame(tables, cache.retrieve("key", "query1", 1000, load(tables, loadCount)));
+    assertSame(tables, cache.retrieve("key", "query2", 1000, load(tables, loadCount)));
+    // A query retrieving the same hash table again does not take another reference.
+    assertSame(tables, cache.retrieve("key", "query2", 1000, load(tables, loadCount)));
+    assertEquals(1, loadCount.get());
+    assertEquals(2, cache.getRefCount("key"));
+    assertEquals(100, cache.getTotalSize());
+
+    // The hash table stays cached after the queries complete.
+    cache.release("query1");
+    cache.release("query2");
+    assertEquals(0, cache.getRefCount("key"));
+    assertSame(tables, cache.retrieve("key", "query3", 1000, load(tables, loadCount)));
+    assertEquals(1, loadCount.get());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    LlapSharedHashTableCache cache = new LlapSharedHashTableCache();
+    AtomicInteger loadCount = new AtomicInteger();
+
+    cache.retrieve("key1", "query1", 1000, load(createTables(400, false), loadCount));
+    cache.retrieve("key2", "query2", 1000, load(createTables(400, false), loadCount));
+    cache.release("query1");
+    cache.release("query2");
+    // key1 becomes the most recently used.
+    cache.retrieve("key1", "query3", 1000, load(createTables(400, false), loadCount));
+    cache.release("query3");
+
+    // The least recently used hash table makes room for the new one.
+    cache.retrieve("key3", "query4", 1000, load(createTables(400, false), loadCount));
+    assertEquals(2, cache.size());
+    assertEquals(800, cache.getTotalSize());
+    assertEquals(1, cache.getRefCount("key3"));
+    cache.retrieve("key1", "query4", 1000, load(createTables(400, false), loadCount));
+    assertEquals(3, loadCount.get());
+
+    // Referenced hash tables are never evicted; a new one that does not fit is not cached.
+    Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables = createTables(400, false);
+    assertSame(tables, cache.retrieve("key4", "query5", 1000, load(tables, loadCount)));
+    assertEquals(2, cache.size());
+    assertEquals(0, cache.getRefCount("key4"));
+    assertEquals(4, loadCount.get());
+
+    // Neither is a hash table larger than the whole budget.
+    cache.release("query4");
+    cache.retrieve("key5", "query6", 1000, load(createTables(2000, false), loadCount));
+    assertEquals(2, cache.size());
+    assertEquals(800, cache.getTotalSize());
+  }
+
+  @Test
+  public void testSpilledNotShared() throws Exception {
+    LlapSharedHashTableCache cache = new LlapSharedHashTableCache();
+    AtomicInteger loadCount = new AtomicInteger();
+
+    Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables = createTables(100, true);
+    assertSame(tables, cache.retrieve("key", "query1", 1000, load(tables, loadCount)));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testPurge() throws Exception {
+    LlapSharedHashTableCache cache = new LlapSharedHashTableCache();
+    AtomicInteger loadCount = new AtomicInteger();
+
+    cache.retrieve("key1", "query1", 1000, load(createTables(100, false), loadCount));
+    cache.retrieve("key2", "query2", 1000, load(createTables(200, false), loadCount));
+    cache.release("query1");
+
+    assertEquals(100, cache.purge());
+    assertEquals(1, cache.size());
+    assertEquals(200, cache.getTotalSize());
+    assertEquals(1, cache.getRefCount("key2"));
+  }
+
+  @Test
+  public void testOffHeapFreedOnEviction() throws Exception {
+    LlapSharedHashTableCache cache = new LlapSharedHashTableCache();
+    AtomicInteger loadCount = new AtomicInteger();
+    VectorMapJoinFastTableContainer evicted = mock(VectorMapJoinFastTableContainer.class);
+    VectorMapJoinFastTableContainer referenced = mock(VectorMapJoinFastTableContainer.class);
+    when(evicted.getEstimatedMemorySize()).thenReturn(100L);
+    when(referenced.getEstimatedMemorySize()).thenReturn(200L);
+
+    cache.retrieve("key1", "query1", 1000, load(new ImmutablePair<>(
+        new MapJoinTableContainer[] { null, evicted }, new MapJoinTableContainerSerDe[2]),
+        loadCount));
+    cache.retrieve("key2", "query2", 1000, load(new ImmutablePair<>(
+        new MapJoinTableContainer[] { null, referenced }, new MapJoinTableContainerSerDe[2]),
+        loadCount));
+    // Releasing the query keeps the hash table cached, so its memory stays.
+    cache.release("query1");
+    verify(evicted, never()).freeOffHeapMemory();
+
+    cache.purge();
+    verify(evicted).freeOffHeapMemory();
+    verify(referenced, never()).freeOffHeapMemory();
+  }
+
+  @Test
+  public void testConcurrentLoad() throws Exception {
+    final LlapSharedHashTableCache cache = new LlapSharedHashTableCache();
+    final AtomicInteger loadCount = new AtomicInteger();
+    final Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables =
+        createTables(100, false);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>>> futures =
+          new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        final String queryId = "query" + i;
+        futures.add(executor.submit(() -> cache.retrieve("key", queryId, 1000, () -> {
+          loadCount.incrementAndGet();
+          Thread.sleep(100);
+          return tables;
+        })));
+      }
+      for (Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> future : futures) {
+        assertSame(tables, future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // Only one query builds the hash table.
+    assertEquals(1, loadCount.get());
+    assertEquals(8, cache.getRefCount("key"));
+  }
+
+  @Test
+  public void testConcurrentLoadNotCached() throws Exception {
+    final LlapSharedHashTableCache cache = new LlapSharedHashTableCache();
+    final AtomicInteger loadCount = new AtomicInteger();
+    final AtomicInteger loading = new AtomicInteger();
+    final AtomicInteger maxLoading = new AtomicInteger();
+    // The referenced hash table leaves no room, so the builders of key2 do not cache it.
+    cache.retrieve("key1", "query0", 1000, load(createTables(900, false), loadCount));
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        final String queryId = "query" + (i + 1);
+        futures.add(executor.submit(() -> cache.retrieve("key2", queryId, 1000, () -> {
+          loadCount.incrementAndGet();
+          maxLoading.accumulateAndGet(loading.incrementAndGet(), Math::max);
+          Thread.yield();
+          loading.decrementAndGet();
+          return createTables(200, false);
+        })));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // The builders of a key never overlap, even after one of them did not cache the table.
+    assertEquals(1, maxLoading.get());
+    assertEquals(201, loadCount.get());
+    assertEquals(0, cache.getLockCount());
+    assertEquals(1, cache.size());
+    assertEquals(900, cache.getTotalSize());
+
+    // Once there is room, the table is cached and counted once.
+    cache.release("query0");
+    cache.retrieve("key2", "query201", 1000, load(createTables(200, false), loadCount));
+    assertEquals(1, cache.size());
+    assertEquals(200, cache.getTotalSize());
+    cache.release("query201");
+    assertEquals(200, cache.purge());
+    assertEquals(0, cache.getTotalSize());
+  }
+}
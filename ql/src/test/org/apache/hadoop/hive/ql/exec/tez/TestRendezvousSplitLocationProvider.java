@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.tez;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.orc.OrcSplit;
+import org.apache.hadoop.mapred.FileSplit;
+import org.junit.Test;
+
+public class TestRendezvousSplitLocationProvider {
+
+  private static List<String> createLocations(int count) {
+    List<String> locations = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      locations.add("host" + i);
+    }
+    return locations;
+  }
+
+  private static FileSplit[] createSplits(int count) throws IOException {
+    FileSplit[] splits = new FileSplit[count];
+    for (int i = 0; i < count; ++i) {
+      splits[i] = createMockFileSplit("path" + (i / 10), (i % 10) * 1000, new String[] {});
+    }
+    return splits;
+  }
+
+  private static FileSplit createMockFileSplit(String path, long start, String[] locations)
+      throws IOException {
+    FileSplit fileSplit = mock(OrcSplit.class);
+    doReturn(start).when(fileSplit).getStart();
+    doReturn(1000L).when(fileSplit).getLength();
+    doReturn(new Path(path)).when(fileSplit).getPath();
+    doReturn(locations).when(fileSplit).getLocations();
+    return fileSplit;
+  }
+
+  private static String[] assign(RendezvousSplitLocationProvider lp, FileSplit[] splits)
+      throws IOException {
+    String[] result = new String[splits.length];
+    for (int i = 0; i < splits.length; ++i) {
+      String[] locations = lp.getLocations(splits[i]);
+      assertEquals(1, locations.length);
+      result[i] = locations[0];
+    }
+    return result;
+  }
+
+  @Test
+  public void testMinimalMovement() throws IOException {
+    final int LOC_COUNT = 10, SPLIT_COUNT = 1000;
+    List<String> locations = createLocations(LOC_COUNT);
+    FileSplit[] splits = createSplits(SPLIT_COUNT);
+    String[] before = assign(new RendezvousSplitLocationProvider(locations, 0), splits);
+
+    // Remove a node from the middle; only its splits move.
+    List<String> removed = new ArrayList<>(locations);
+    String removedNode = removed.remove(LOC_COUNT / 2);
+    String[] after = assign(new RendezvousSplitLocationProvider(removed, 0), splits);
+    int moved = 0;
+    for (int i = 0; i < SPLIT_COUNT; ++i) {
+      if (before[i].equals(removedNode)) {
+        assertNotEquals(removedNode, after[i]);
+        ++moved;
+      } else {
+        assertEquals(before[i], after[i]);
+      }
+    }
+    assertTrue("Moved " + moved, moved > 0 && moved < 2 * SPLIT_COUNT / LOC_COUNT);
+
+    // The order of the locations and the inactive slots don't matter.
+    List<String> reordered = new ArrayList<>(removed);
+    reordered.add(null);
+    Collections.reverse(reordered);
+    assertArrayEquals(after, assign(new RendezvousSplitLocationProvider(reordered, 0), splits));
+
+    // Adding the node back only takes its splits back.
+    assertArrayEquals(before, assign(new RendezvousSplitLocationProvider(locations, 0), splits));
+  }
+
+  @Test
+  public void testBoundedLoad() throws IOException {
+    final int LOC_COUNT = 8, SPLIT_COUNT = 800;
+    final float LOAD_FACTOR = 1.1f;
+    List<String> locations = createLocations(LOC_COUNT);
+    FileSplit[] splits = createSplits(SPLIT_COUNT);
+    RendezvousSplitLocationProvider lp = new RendezvousSplitLocationProvider(
+        locations, LOAD_FACTOR);
+    String[] assigned = assign(lp, splits);
+    Map<String, Integer> loads = new HashMap<>();
+    for (String location : assigned) {
+      Integer load = loads.get(location);
+      loads.put(location, load == null ? 1 : load + 1);
+    }
+    int maxLoad = (int) Math.ceil(LOAD_FACTOR * SPLIT_COUNT / LOC_COUNT);
+    for (Map.Entry<String, Integer> e : loads.entrySet()) {
+      assertTrue(e + " is over " + maxLoad, e.getValue() <= maxLoad);
+    }
+
+    // Most splits still go to their first choice.
+    String[] unbounded = assign(new RendezvousSplitLocationProvider(locations, 0), splits);
+    int same = 0;
+    for (int i = 0; i < SPLIT_COUNT; ++i) {
+      same += assigned[i].equals(unbounded[i]) ? 1 : 0;
+    }
+    assertTrue("Only " + same + " splits on the first choice", same > SPLIT_COUNT * 3 / 4);
+
+    // Asking again returns the same locations.
+    assertArrayEquals(assigned, assign(lp, splits));
+  }
+
+  @Test
+  public void testDFSLocalityAwareAffinity() throws IOException {
+    List<String> locations = createLocations(4);
+    RendezvousSplitLocationProvider lp = new RendezvousSplitLocationProvider(locations, 0);
+    FileSplit local = createMockFileSplit("path1", 0, new String[] { "dn1", "host2" });
+    FileSplit twoLocal = createMockFileSplit("path2", 0, new String[] { "host3", "host1" });
+    FileSplit remote = createMockFileSplit("path3", 0, new String[] { "dn1", "dn2" });
+
+    assertArrayEquals(new String[] { "host2" }, lp.getLocations(local));
+    assertTrue(Arrays.asList("host1", "host3").contains(lp.getLocations(twoLocal)[0]));
+    assertTrue(locations.contains(lp.getLocations(remote)[0]));
+  }
+}
@@ -19,24 +19,39 @@
 package org.apache.hadoop.hive.ql.exec.tez;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast.VectorMapJoinFastTableContainer;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.optimizer.ConvertJoinMapJoin;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
 import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.Statistics;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableImplementationType;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKind;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.VectorMapJoinVariation;
 import org.apache.hadoop.hive.serde2.ByteStream.Output;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.binarysortable.fast.BinarySortableSerializeWrite;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.BytesWritable;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -58,6 +73,83 @@ public void checkFast3estimations() throws Exception {
     runEstimationCheck(HashTableKeyType.MULTI_KEY);
   }
 
+  @Test
+  public void testAdaptiveHybridHashJoin() throws Exception {
+    MapJoinDesc desc = new MapJoinDesc();
+    Map<Byte, List<ExprNodeDesc>> keys = new HashMap<>();
+    keys.put((byte) 0, Collections.<ExprNodeDesc>singletonList(
+        new ExprNodeColumnDesc(TypeInfoFactory.longTypeInfo, "key", "a", false)));
+    desc.setKeys(keys);
+    desc.setConds(new JoinCondDesc[] { new JoinCondDesc(0, 1, JoinDesc.INNER_JOIN) });
+    VectorMapJoinDesc vectorDesc = new VectorMapJoinDesc();
+    vectorDesc.setHashTableKeyType(HashTableKeyType.LONG);
+    vectorDesc.setIsFastHashTableEnabled(true);
+    vectorDesc.setHashTableImplementationType(HashTableImplementationType.FAST);
+    vectorDesc.setHashTableKind(HashTableKind.HASH_MAP);
+    desc.setVectorDesc(vectorDesc);
+    HiveConf hconf = new HiveConf();
+
+    assertFalse(MapJoinOperator.isAdaptiveHybridHashJoin(desc, hconf));
+    assertFalse(new VectorMapJoinFastTableContainer(desc, hconf, 1000).isSpillEnabled());
+
+    hconf.setBoolVar(HiveConf.ConfVars.HIVEHYBRIDGRACEHASHJOINADAPTIVE, true);
+    assertTrue(MapJoinOperator.isAdaptiveHybridHashJoin(desc, hconf));
+    assertTrue(new VectorMapJoinFastTableContainer(desc, hconf, 1000).isSpillEnabled());
+
+    // A mapjoin planned as a Hybrid Grace Hash Join does not need to switch.
+    desc.setHybridHashJoin(true);
+    assertFalse(MapJoinOperator.isAdaptiveHybridHashJoin(desc, hconf));
+    desc.setHybridHashJoin(false);
+
+    desc.setConds(new JoinCondDesc[] { new JoinCondDesc(0, 1, JoinDesc.FULL_OUTER_JOIN) });
+    assertFalse(MapJoinOperator.isAdaptiveHybridHashJoin(desc, hconf));
+
+    desc.setConds(new JoinCondDesc[] { new JoinCondDesc(0, 1, JoinDesc.INNER_JOIN) });
+    keys.put((byte) 0, Collections.<ExprNodeDesc>emptyList());
+    assertFalse(MapJoinOperator.isAdaptiveHybridHashJoin(desc, hconf));
+  }
+
+  @Test
+  public void testBloomFilterOnlyForProbingJoins() throws Exception {
+    assertNotNull(buildSealedContainer(VectorMapJoinVariation.INNER, HashTableKeyType.LONG)
+        .vectorMapJoinHashTable().getBloomFilter());
+    assertNotNull(buildSealedContainer(VectorMapJoinVariation.LEFT_SEMI, HashTableKeyType.LONG)
+        .vectorMapJoinHashTable().getBloomFilter());
+    assertNull(buildSealedContainer(VectorMapJoinVariation.OUTER, HashTableKeyType.LONG)
+        .vectorMapJoinHashTable().getBloomFilter());
+    assertNull(buildSealedContainer(VectorMapJoinVariation.INNER, HashTableKeyType.MULTI_KEY)
+        .vectorMapJoinHashTable().getBloomFilter());
+  }
+
+  private VectorMapJoinFastTableContainer buildSealedContainer(
+      VectorMapJoinVariation variation, HashTableKeyType keyType) throws Exception {
+    MapJoinDesc desc = new MapJoinDesc();
+    VectorMapJoinDesc vectorDesc = new VectorMapJoinDesc();
+    vectorDesc.setHashTableKeyType(keyType);
+    vectorDesc.setVectorMapJoinVariation(variation);
+    vectorDesc.setIsFastHashTableEnabled(true);
+    vectorDesc.setHashTableImplementationType(HashTableImplementationType.FAST);
+    vectorDesc.setHashTableKind(HashTableKind.HASH_MAP);
+    desc.setVectorDesc(vectorDesc);
+    HiveConf hconf = new HiveConf();
+    hconf.setBoolVar(
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_ENABLED, true);
+    hconf.setLongVar(
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_MIN_KEYS, 0);
+    VectorMapJoinFastTableContainer container = new VectorMapJoinFastTableContainer(desc, hconf, 10);
+    container.setSerde(null, null);
+    BinarySortableSerializeWrite bsw = new BinarySortableSerializeWrite(1);
+    Output outp = new Output();
+    for (int i = 0; i < 10; i++) {
+      outp.reset();
+      bsw.set(outp);
+      bsw.writeLong(i);
+      container.putRow(new BytesWritable(outp.getData(), outp.getLength()), new BytesWritable());
+    }
+    container.seal();
+    return container;
+  }
+
   private void runEstimationCheck(HashTableKeyType l) throws SerDeException, IOException, HiveException {
     MapJoinDesc desc = new MapJoinDesc();
     VectorMapJoinDesc vectorDesc = new VectorMapJoinDesc();
@@ -21,6 +21,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.management.ManagementFactory;
@@ -440,6 +441,522 @@ public void remove() {
     }
   }
 
+  @Test
+  public void testSpillToDisk() throws HiveException {
+
+    List<String> mapColumnNames = new ArrayList<String>();
+    mapColumnNames.add("Key");
+    mapColumnNames.add("Value");
+    VectorizationContext ctx = new VectorizationContext("name", mapColumnNames);
+
+    Pair<GroupByDesc,VectorGroupByDesc> pair = buildKeyGroupByDesc (ctx, "sum",
+        "Value", TypeInfoFactory.longTypeInfo,
+        "Key", TypeInfoFactory.longTypeInfo);
+    GroupByDesc desc = pair.fst;
+    VectorGroupByDesc vectorDesc = pair.snd;
+
+    // Force memory pressure well before all the keys are in the hash table.
+    HiveConf spillConf = new HiveConf(hconf);
+    spillConf.setIntVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_MAXENTRIES, 500);
+    spillConf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_SPILL_ENABLED, true);
+    spillConf.setIntVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_SPILL_PARTITIONS, 8);
+
+    CompilationOpContext cCtx = new CompilationOpContext();
+
+    Operator<? extends OperatorDesc> groupByOp = OperatorFactory.get(cCtx, desc);
+
+    VectorGroupByOperator vgo =
+        (VectorGroupByOperator) Vectorizer.vectorizeGroupByOperator(groupByOp, ctx, vectorDesc);
+
+    FakeCaptureVectorToRowOutputOperator out = FakeCaptureVectorToRowOutputOperator.addCaptureOutputChild(cCtx, vgo);
+    vgo.initialize(spillConf, null);
+
+    final int keyCount = 3000;
+    final int repeatCount = 4;
+    List<Object> keys = new ArrayList<Object>();
+    List<Object> values = new ArrayList<Object>();
+    for (int i = 0; i < keyCount * repeatCount; i++) {
+      keys.add(Long.valueOf(i % keyCount));
+      values.add(Long.valueOf(1));
+    }
+
+    final Map<Long, Long> sums = new HashMap<Long, Long>();
+    out.setOutputInspector(new FakeCaptureVectorToRowOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        Object[] fields = (Object[]) row;
+        long key = ((LongWritable) fields[0]).get();
+        long sum = ((LongWritable) fields[1]).get();
+        assertTrue("Duplicate group " + key, sums.put(key, sum) == null);
+      }
+    });
+
+    FakeVectorRowBatchFromObjectIterables data = new FakeVectorRowBatchFromObjectIterables(
+        100,
+        new String[] {"long", "long"},
+        keys,
+        values);
+
+    for (VectorizedRowBatch unit: data) {
+      vgo.process(unit,  0);
+    }
+
+    // Nothing is emitted before close; the spilled partitions hold the groups.
+    assertEquals(0, sums.size());
+
+    vgo.close(false);
+
+    assertEquals(keyCount, sums.size());
+    for (long sum : sums.values()) {
+      assertEquals(repeatCount, sum);
+    }
+  }
+
+  private HiveConf buildSpillConf(int maxEntries, int spillPartitions) {
+    HiveConf spillConf = new HiveConf(hconf);
+    spillConf.setIntVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_MAXENTRIES, maxEntries);
+    spillConf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_SPILL_ENABLED, true);
+    spillConf.setIntVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_SPILL_PARTITIONS,
+        spillPartitions);
+    return spillConf;
+  }
+
+  /**
+   * Aggregates the sum of Value by Key in hash mode with spilling, and returns the sums of the
+   * emitted groups.
+   */
+  private Map<Long, Long> spillSumByKey(HiveConf spillConf, List<Object> keys,
+      List<Object> values, int[] spillCounts) throws HiveException {
+    List<String> mapColumnNames = new ArrayList<String>();
+    mapColumnNames.add("Key");
+    mapColumnNames.add("Value");
+    VectorizationContext ctx = new VectorizationContext("name", mapColumnNames);
+
+    Pair<GroupByDesc,VectorGroupByDesc> pair = buildKeyGroupByDesc (ctx, "sum",
+        "Value", TypeInfoFactory.longTypeInfo,
+        "Key", TypeInfoFactory.longTypeInfo);
+
+    CompilationOpContext cCtx = new CompilationOpContext();
+
+    Operator<? extends OperatorDesc> groupByOp = OperatorFactory.get(cCtx, pair.fst);
+
+    VectorGroupByOperator vgo =
+        (VectorGroupByOperator) Vectorizer.vectorizeGroupByOperator(groupByOp, ctx, pair.snd);
+
+    FakeCaptureVectorToRowOutputOperator out = FakeCaptureVectorToRowOutputOperator.addCaptureOutputChild(cCtx, vgo);
+    vgo.initialize(spillConf, null);
+
+    final Map<Long, Long> sums = new HashMap<Long, Long>();
+    out.setOutputInspector(new FakeCaptureVectorToRowOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        Object[] fields = (Object[]) row;
+        long key = ((LongWritable) fields[0]).get();
+        long sum = ((LongWritable) fields[1]).get();
+        assertTrue("Duplicate group " + key, sums.put(key, sum) == null);
+      }
+    });
+
+    FakeVectorRowBatchFromObjectIterables data = new FakeVectorRowBatchFromObjectIterables(
+        100,
+        new String[] {"long", "long"},
+        keys,
+        values);
+
+    for (VectorizedRowBatch unit: data) {
+      vgo.process(unit,  0);
+    }
+    vgo.close(false);
+
+    spillCounts[0] = vgo.getSpilledPartitionCount();
+    spillCounts[1] = vgo.getMaxSpillLevel();
+    return sums;
+  }
+
+  @Test
+  public void testSpillToDiskMultiplePartitions() throws HiveException {
+
+    List<String> mapColumnNames = new ArrayList<String>();
+    mapColumnNames.add("Key");
+    mapColumnNames.add("Value");
+    VectorizationContext ctx = new VectorizationContext("name", mapColumnNames);
+
+    // count(Value), min(Value), max(Value) group by a string Key.
+    String[] aggregates = new String[] {"count", "min", "max"};
+    ArrayList<AggregationDesc> aggs = new ArrayList<AggregationDesc>();
+    ArrayList<String> outputColumnNames = new ArrayList<String>();
+    for (int i = 0; i < aggregates.length; i++) {
+      aggs.add(buildAggregationDesc(ctx, aggregates[i], GenericUDAFEvaluator.Mode.PARTIAL1,
+          "Value", TypeInfoFactory.longTypeInfo));
+      outputColumnNames.add("_col" + i);
+    }
+    outputColumnNames.add("_col" + aggregates.length);
+    ArrayList<ExprNodeDesc> keysDesc = new ArrayList<ExprNodeDesc>();
+    keysDesc.add(buildColumnDesc(ctx, "Key", TypeInfoFactory.stringTypeInfo));
+
+    GroupByDesc desc = new GroupByDesc();
+    desc.setOutputColumnNames(outputColumnNames);
+    desc.setAggregators(aggs);
+    desc.setKeys(keysDesc);
+    VectorGroupByDesc vectorDesc = new VectorGroupByDesc();
+    vectorDesc.setProcessingMode(ProcessingMode.HASH);
+
+    CompilationOpContext cCtx = new CompilationOpContext();
+
+    Operator<? extends OperatorDesc> groupByOp = OperatorFactory.get(cCtx, desc);
+
+    VectorGroupByOperator vgo =
+        (VectorGroupByOperator) Vectorizer.vectorizeGroupByOperator(groupByOp, ctx, vectorDesc);
+
+    FakeCaptureVectorToRowOutputOperator out = FakeCaptureVectorToRowOutputOperator.addCaptureOutputChild(cCtx, vgo);
+    vgo.initialize(buildSpillConf(500, 8), null);
+
+    // Every 97th key is NULL, which makes one more group.
+    final int keyCount = 3000;
+    final int repeatCount = 4;
+    List<Object> keys = new ArrayList<Object>();
+    List<Object> values = new ArrayList<Object>();
+    final Map<String, long[]> expected = new HashMap<String, long[]>();
+    for (int i = 0; i < keyCount * repeatCount; i++) {
+      int k = i % keyCount;
+      String key = k % 97 == 0 ? null : "key" + k;
+      keys.add(key);
+      values.add(Long.valueOf(i));
+      long[] countMinMax = expected.get(key);
+      if (countMinMax == null) {
+        expected.put(key, new long[] {1, i, i});
+      } else {
+        countMinMax[0]++;
+        countMinMax[1] = Math.min(countMinMax[1], i);
+        countMinMax[2] = Math.max(countMinMax[2], i);
+      }
+    }
+
+    final Map<String, long[]> results = new HashMap<String, long[]>();
+    out.setOutputInspector(new FakeCaptureVectorToRowOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        Object[] fields = (Object[]) row;
+        String key = fields[0] == null ? null : fields[0].toString();
+        long[] countMinMax = new long[] {
+            ((LongWritable) fields[1]).get(),
+            ((LongWritable) fields[2]).get(),
+            ((LongWritable) fields[3]).get()};
+        assertFalse("Duplicate group " + key, results.containsKey(key));
+        results.put(key, countMinMax);
+      }
+    });
+
+    FakeVectorRowBatchFromObjectIterables data = new FakeVectorRowBatchFromObjectIterables(
+        100,
+        new String[] {"string", "long"},
+        keys,
+        values);
+
+    for (VectorizedRowBatch unit: data) {
+      vgo.process(unit,  0);
+    }
+    vgo.close(false);
+
+    assertTrue("Spilled partitions " + vgo.getSpilledPartitionCount(),
+        vgo.getSpilledPartitionCount() > 1);
+    assertEquals(0, vgo.getMaxSpillLevel());
+    assertEquals(expected.size(), results.size());
+    for (Map.Entry<String, long[]> entry : expected.entrySet()) {
+      assertTrue(Arrays.toString(results.get(entry.getKey())),
+          Arrays.equals(entry.getValue(), results.get(entry.getKey())));
+    }
+  }
+
+  @Test
+  public void testSpillToDiskRespillMergedPartitions() throws HiveException {
+    // With 2 partitions, a merged partition holds about half of the keys, far more than the
+    // hash table may hold, so it is spilled again at the next levels.
+    final int keyCount = 3000;
+    final int repeatCount = 4;
+    List<Object> keys = new ArrayList<Object>();
+    List<Object> values = new ArrayList<Object>();
+    for (int i = 0; i < keyCount * repeatCount; i++) {
+      keys.add(Long.valueOf(i % keyCount));
+      values.add(Long.valueOf(i % keyCount));
+    }
+
+    int[] spillCounts = new int[2];
+    Map<Long, Long> sums = spillSumByKey(buildSpillConf(50, 2), keys, values, spillCounts);
+
+    assertTrue("Max spill level " + spillCounts[1], spillCounts[1] > 0);
+    assertEquals(keyCount, sums.size());
+    for (Map.Entry<Long, Long> entry : sums.entrySet()) {
+      assertEquals(entry.getKey() * repeatCount, (long) entry.getValue());
+    }
+  }
+
+  /**
+   * The reduce side of a keyed aggregation runs in MERGE_PARTIAL mode over key-sorted input and
+   * keeps only the current group, so it has no hash table to spill.  This checks that it merges
+   * the partial results of two spilling map side aggregations into the right totals.
+   */
+  @Test
+  public void testSpillToDiskThenMergePartial() throws HiveException {
+    final int keyCount = 2000;
+    final int repeatCount = 3;
+    List<Object> keys = new ArrayList<Object>();
+    List<Object> values = new ArrayList<Object>();
+    for (int i = 0; i < keyCount * repeatCount; i++) {
+      keys.add(Long.valueOf(i % keyCount));
+      values.add(Long.valueOf(1));
+    }
+
+    // Two map tasks over the same input.
+    int[] spillCounts = new int[2];
+    Map<Long, Long> partials1 = spillSumByKey(buildSpillConf(300, 4), keys, values, spillCounts);
+    assertTrue(spillCounts[0] > 0);
+    Map<Long, Long> partials2 = spillSumByKey(buildSpillConf(300, 4), keys, values, spillCounts);
+    assertTrue(spillCounts[0] > 0);
+
+    // The shuffle: one group of two partial rows per key, in key order.
+    List<Object> reduceKeys = new ArrayList<Object>();
+    List<Object> reducePartials = new ArrayList<Object>();
+    for (long key = 0; key < keyCount; key++) {
+      reduceKeys.add(key);
+      reducePartials.add(partials1.get(key));
+      reduceKeys.add(key);
+      reducePartials.add(partials2.get(key));
+    }
+
+    List<String> mapColumnNames = new ArrayList<String>();
+    mapColumnNames.add("Key");
+    mapColumnNames.add("Value");
+    VectorizationContext ctx = new VectorizationContext("name", mapColumnNames);
+
+    Pair<GroupByDesc,VectorGroupByDesc> pair = buildGroupByDescType(ctx, "sum",
+        GenericUDAFEvaluator.Mode.FINAL, "Value", TypeInfoFactory.longTypeInfo);
+    GroupByDesc desc = pair.fst;
+    VectorGroupByDesc vectorDesc = pair.snd;
+    vectorDesc.setProcessingMode(ProcessingMode.MERGE_PARTIAL);
+    ArrayList<ExprNodeDesc> keysDesc = new ArrayList<ExprNodeDesc>();
+    keysDesc.add(buildColumnDesc(ctx, "Key", TypeInfoFactory.longTypeInfo));
+    desc.setKeys(keysDesc);
+    desc.getOutputColumnNames().add("_col1");
+
+    CompilationOpContext cCtx = new CompilationOpContext();
+
+    Operator<? extends OperatorDesc> groupByOp = OperatorFactory.get(cCtx, desc);
+
+    VectorGroupByOperator vgo =
+        (VectorGroupByOperator) Vectorizer.vectorizeGroupByOperator(groupByOp, ctx, vectorDesc);
+
+    FakeCaptureVectorToRowOutputOperator out = FakeCaptureVectorToRowOutputOperator.addCaptureOutputChild(cCtx, vgo);
+    vgo.initialize(buildSpillConf(300, 4), null);
+
+    final Map<Long, Long> totals = new HashMap<Long, Long>();
+    out.setOutputInspector(new FakeCaptureVectorToRowOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        Object[] fields = (Object[]) row;
+        long key = ((LongWritable) fields[0]).get();
+        long sum = ((LongWritable) fields[1]).get();
+        assertTrue("Duplicate group " + key, totals.put(key, sum) == null);
+      }
+    });
+
+    FakeVectorRowBatchFromObjectIterables data = new FakeVectorRowBatchFromObjectIterables(
+        2,
+        new String[] {"long", "long"},
+        reduceKeys,
+        reducePartials);
+
+    for (VectorizedRowBatch unit: data) {
+      vgo.setNextVectorBatchGroupStatus(true);
+      vgo.process(unit,  0);
+    }
+    vgo.close(false);
+
+    assertEquals(0, vgo.getSpilledPartitionCount());
+    assertEquals(keyCount, totals.size());
+    for (long total : totals.values()) {
+      assertEquals(2 * repeatCount, total);
+    }
+  }
+
+  @Test
+  public void testFastHashTableLongKey() throws HiveException {
+    List<Object> keys = new ArrayList<Object>();
+    for (int i = 0; i < 3000; i++) {
+      keys.add(i % 7 == 0 ? null : Long.valueOf(i * 31L - 40000L));
+    }
+    testFastHashTable("long", TypeInfoFactory.longTypeInfo, keys);
+  }
+
+  @Test
+  public void testFastHashTableStringKey() throws HiveException {
+    List<Object> keys = new ArrayList<Object>();
+    for (int i = 0; i < 3000; i++) {
+      keys.add(i % 7 == 0 ? null : (i % 11 == 0 ? "" : "key" + i));
+    }
+    testFastHashTable("string", TypeInfoFactory.stringTypeInfo, keys);
+  }
+
+  private void testFastHashTable(String keyType, TypeInfo keyTypeInfo, List<Object> distinctKeys)
+      throws HiveException {
+
+    List<String> mapColumnNames = new ArrayList<String>();
+    mapColumnNames.add("Key");
+    mapColumnNames.add("Value");
+    VectorizationContext ctx = new VectorizationContext("name", mapColumnNames);
+
+    Pair<GroupByDesc,VectorGroupByDesc> pair = buildKeyGroupByDesc (ctx, "sum",
+        "Value", TypeInfoFactory.longTypeInfo,
+        "Key", keyTypeInfo);
+    GroupByDesc desc = pair.fst;
+    VectorGroupByDesc vectorDesc = pair.snd;
+
+    // Flush a few times along the way.
+    HiveConf fastConf = new HiveConf(hconf);
+    fastConf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_FAST_HASHTABLE_ENABLED, true);
+    fastConf.setIntVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_MAXENTRIES, 1000);
+
+    CompilationOpContext cCtx = new CompilationOpContext();
+
+    Operator<? extends OperatorDesc> groupByOp = OperatorFactory.get(cCtx, desc);
+
+    VectorGroupByOperator vgo =
+        (VectorGroupByOperator) Vectorizer.vectorizeGroupByOperator(groupByOp, ctx, vectorDesc);
+
+    FakeCaptureVectorToRowOutputOperator out = FakeCaptureVectorToRowOutputOperator.addCaptureOutputChild(cCtx, vgo);
+    vgo.initialize(fastConf, null);
+
+    final int repeatCount = 3;
+    List<Object> keys = new ArrayList<Object>();
+    List<Object> values = new ArrayList<Object>();
+    for (int r = 0; r < repeatCount; r++) {
+      for (Object key : distinctKeys) {
+        keys.add(key);
+        values.add(Long.valueOf(1));
+      }
+    }
+    final Map<Object, Long> expected = new HashMap<Object, Long>();
+    for (Object key : keys) {
+      Long sum = expected.get(key);
+      expected.put(key, sum == null ? 1L : sum + 1L);
+    }
+
+    final Map<Object, Long> sums = new HashMap<Object, Long>();
+    out.setOutputInspector(new FakeCaptureVectorToRowOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        Object[] fields = (Object[]) row;
+        Object key = null;
+        if (fields[0] instanceof LongWritable) {
+          key = ((LongWritable) fields[0]).get();
+        } else if (fields[0] instanceof Text) {
+          key = fields[0].toString();
+        }
+        long sum = ((LongWritable) fields[1]).get();
+        Long previous = sums.get(key);
+        sums.put(key, previous == null ? sum : previous + sum);
+      }
+    });
+
+    FakeVectorRowBatchFromObjectIterables data = new FakeVectorRowBatchFromObjectIterables(
+        VectorizedRowBatch.DEFAULT_SIZE,
+        new String[] {keyType, "long"},
+        keys,
+        values);
+
+    for (VectorizedRowBatch unit: data) {
+      vgo.process(unit,  0);
+    }
+    vgo.close(false);
+
+    assertEquals(expected, sums);
+  }
+
+  @Test
+  public void testFastHashTableAggregations() throws HiveException {
+    List<Object> keys = new ArrayList<Object>();
+    List<Object> longValues = new ArrayList<Object>();
+    List<Object> doubleValues = new ArrayList<Object>();
+    for (int i = 0; i < 5000; i++) {
+      keys.add(i % 13 == 0 ? null : Long.valueOf(i % 400));
+      // Some groups only have null values.
+      boolean isNull = i % 5 == 0 || i % 400 == 7;
+      longValues.add(isNull ? null : Long.valueOf(i * 7L - 9000L));
+      doubleValues.add(isNull ? null : Double.valueOf(i * 0.25 - 300.0));
+    }
+    // avg is kept in aggregation buffer rows.
+    for (String aggregate : new String[] {"count", "sum", "min", "max", "avg"}) {
+      assertEquals(aggregate,
+          aggregateByLongKey(aggregate, "long", TypeInfoFactory.longTypeInfo, keys, longValues,
+              false),
+          aggregateByLongKey(aggregate, "long", TypeInfoFactory.longTypeInfo, keys, longValues,
+              true));
+      assertEquals(aggregate,
+          aggregateByLongKey(aggregate, "double", TypeInfoFactory.doubleTypeInfo, keys,
+              doubleValues, false),
+          aggregateByLongKey(aggregate, "double", TypeInfoFactory.doubleTypeInfo, keys,
+              doubleValues, true));
+    }
+  }
+
+  /**
+   * Returns the aggregate of each key, as a string.
+   */
+  private Map<Object, String> aggregateByLongKey(String aggregate, String valueType,
+      TypeInfo valueTypeInfo, List<Object> keys, List<Object> values,
+      boolean fastHashTableEnabled) throws HiveException {
+
+    List<String> mapColumnNames = new ArrayList<String>();
+    mapColumnNames.add("Key");
+    mapColumnNames.add("Value");
+    VectorizationContext ctx = new VectorizationContext("name", mapColumnNames);
+
+    Pair<GroupByDesc,VectorGroupByDesc> pair = buildKeyGroupByDesc (ctx, aggregate,
+        "Value", valueTypeInfo,
+        "Key", TypeInfoFactory.longTypeInfo);
+    GroupByDesc desc = pair.fst;
+    VectorGroupByDesc vectorDesc = pair.snd;
+
+    HiveConf fastConf = new HiveConf(hconf);
+    fastConf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_FAST_HASHTABLE_ENABLED,
+        fastHashTableEnabled);
+
+    CompilationOpContext cCtx = new CompilationOpContext();
+
+    Operator<? extends OperatorDesc> groupByOp = OperatorFactory.get(cCtx, desc);
+
+    VectorGroupByOperator vgo =
+        (VectorGroupByOperator) Vectorizer.vectorizeGroupByOperator(groupByOp, ctx, vectorDesc);
+
+    FakeCaptureVectorToRowOutputOperator out = FakeCaptureVectorToRowOutputOperator.addCaptureOutputChild(cCtx, vgo);
+    vgo.initialize(fastConf, null);
+
+    final Map<Object, String> results = new HashMap<Object, String>();
+    out.setOutputInspector(new FakeCaptureVectorToRowOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        Object[] fields = (Object[]) row;
+        Object key = fields[0] == null ? null : ((LongWritable) fields[0]).get();
+        String result = fields[1] instanceof Object[] ?
+            Arrays.deepToString((Object[]) fields[1]) : String.valueOf(fields[1]);
+        assertNull(results.put(key, result));
+      }
+    });
+
+    FakeVectorRowBatchFromObjectIterables data = new FakeVectorRowBatchFromObjectIterables(
+        VectorizedRowBatch.DEFAULT_SIZE,
+        new String[] {"long", valueType},
+        keys,
+        values);
+
+    for (VectorizedRowBatch unit: data) {
+      vgo.process(unit,  0);
+    }
+    vgo.close(false);
+
+    return results;
+  }
+
   @Test
   public void testMultiKeyIntStringInt() throws HiveException {
     testMultiKey(
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TestVectorGroupByFastHashTable {
+
+  @Test
+  public void testLongKeys() throws HiveException {
+    Random random = new Random(4332);
+    VectorGroupByFastLongHashTable hashTable = new VectorGroupByFastLongHashTable(0, 4, 0.75f);
+
+    Map<Long, Integer> expected = new HashMap<Long, Integer>();
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    LongColumnVector keyColVector = new LongColumnVector();
+    batch.cols[0] = keyColVector;
+    for (int b = 0; b < 20; b++) {
+      batch.reset();
+      keyColVector.noNulls = (b % 2 == 0);
+      for (int i = 0; i < VectorizedRowBatch.DEFAULT_SIZE; i++) {
+        boolean isNull = !keyColVector.noNulls && random.nextInt(10) == 0;
+        keyColVector.isNull[i] = isNull;
+        keyColVector.vector[i] = isNull ? 0 : random.nextInt(5000) - 2500;
+      }
+      batch.size = VectorizedRowBatch.DEFAULT_SIZE;
+      hashTable.findOrAddGroups(batch);
+      verifyGroups(hashTable, batch, expected, new KeyOf() {
+        @Override
+        public Object get(int batchIndex) {
+          return keyColVector.isNull[batchIndex] ? null : keyColVector.vector[batchIndex];
+        }
+      });
+    }
+    assertEquals(expected.size(), hashTable.size());
+
+    // Read the keys back.
+    VectorizedRowBatch outputBatch = new VectorizedRowBatch(1);
+    LongColumnVector outputColVector = new LongColumnVector();
+    outputBatch.cols[0] = outputColVector;
+    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+      hashTable.assignKeyRowColumns(outputBatch, 0, entry.getValue());
+      if (entry.getKey() == null) {
+        assertTrue(outputColVector.isNull[0]);
+      } else {
+        assertFalse(outputColVector.isNull[0]);
+        assertEquals(entry.getKey().longValue(), outputColVector.vector[0]);
+      }
+    }
+
+    hashTable.clear();
+    assertEquals(0, hashTable.size());
+  }
+
+  @Test
+  public void testLongKeyRepeating() throws HiveException {
+    VectorGroupByFastLongHashTable hashTable = new VectorGroupByFastLongHashTable(0,
+        VectorGroupByFastHashTable.DEFAULT_INITIAL_CAPACITY,
+        VectorGroupByFastHashTable.DEFAULT_LOAD_FACTOR);
+
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    LongColumnVector keyColVector = new LongColumnVector();
+    batch.cols[0] = keyColVector;
+    keyColVector.isRepeating = true;
+    keyColVector.vector[0] = 42;
+    batch.size = 100;
+    hashTable.findOrAddGroups(batch);
+    assertEquals(1, hashTable.size());
+    for (int i = 0; i < batch.size; i++) {
+      assertEquals(0, hashTable.getBatchGroupNums()[i]);
+    }
+  }
+
+  @Test
+  public void testTwoLongKeys() throws HiveException {
+    Random random = new Random(9921);
+    VectorGroupByFastTwoLongHashTable hashTable =
+        new VectorGroupByFastTwoLongHashTable(0, 1, 8, 0.75f);
+
+    Map<List<Long>, Integer> expected = new HashMap<List<Long>, Integer>();
+    VectorizedRowBatch batch = new VectorizedRowBatch(2);
+    LongColumnVector keyColVector0 = new LongColumnVector();
+    LongColumnVector keyColVector1 = new LongColumnVector();
+    batch.cols[0] = keyColVector0;
+    batch.cols[1] = keyColVector1;
+    for (int b = 0; b < 20; b++) {
+      batch.reset();
+      keyColVector0.noNulls = (b % 3 == 0);
+      keyColVector1.noNulls = (b % 2 == 0);
+      for (int i = 0; i < VectorizedRowBatch.DEFAULT_SIZE; i++) {
+        keyColVector0.isNull[i] = !keyColVector0.noNulls && random.nextInt(8) == 0;
+        keyColVector1.isNull[i] = !keyColVector1.noNulls && random.nextInt(8) == 0;
+        keyColVector0.vector[i] = keyColVector0.isNull[i] ? 0 : random.nextInt(60);
+        keyColVector1.vector[i] = keyColVector1.isNull[i] ? 0 : random.nextInt(60);
+      }
+      batch.size = VectorizedRowBatch.DEFAULT_SIZE;
+      hashTable.findOrAddGroups(batch);
+      verifyGroups(hashTable, batch, expected, new KeyOf() {
+        @Override
+        public Object get(int batchIndex) {
+          return Lists.newArrayList(
+              keyColVector0.isNull[batchIndex] ? null : keyColVector0.vector[batchIndex],
+              keyColVector1.isNull[batchIndex] ? null : keyColVector1.vector[batchIndex]);
+        }
+      });
+    }
+    assertEquals(expected.size(), hashTable.size());
+
+    VectorizedRowBatch outputBatch = new VectorizedRowBatch(2);
+    LongColumnVector outputColVector0 = new LongColumnVector();
+    LongColumnVector outputColVector1 = new LongColumnVector();
+    outputBatch.cols[0] = outputColVector0;
+    outputBatch.cols[1] = outputColVector1;
+    for (Map.Entry<List<Long>, Integer> entry : expected.entrySet()) {
+      hashTable.assignKeyRowColumns(outputBatch, 0, entry.getValue());
+      Long key0 = entry.getKey().get(0);
+      Long key1 = entry.getKey().get(1);
+      assertEquals(key0 == null, outputColVector0.isNull[0]);
+      assertEquals(key1 == null, outputColVector1.isNull[0]);
+      if (key0 != null) {
+        assertEquals(key0.longValue(), outputColVector0.vector[0]);
+      }
+      if (key1 != null) {
+        assertEquals(key1.longValue(), outputColVector1.vector[0]);
+      }
+    }
+  }
+
+  @Test
+  public void testBytesKeys() throws HiveException {
+    Random random = new Random(1288);
+    // Small write buffers so that keys straddle buffer boundaries.
+    VectorGroupByFastBytesHashTable hashTable =
+        new VectorGroupByFastBytesHashTable(0, 4, 0.75f, 64);
+
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    BytesColumnVector keyColVector = new BytesColumnVector();
+    batch.cols[0] = keyColVector;
+    for (int b = 0; b < 10; b++) {
+      batch.reset();
+      keyColVector.initBuffer();
+      keyColVector.noNulls = false;
+      for (int i = 0; i < VectorizedRowBatch.DEFAULT_SIZE; i++) {
+        int r = random.nextInt(3000);
+        if (r % 50 == 0) {
+          keyColVector.isNull[i] = true;
+          continue;
+        }
+        keyColVector.isNull[i] = false;
+        String key = (r % 45 == 0 ? "" : "k" + r + (r % 3 == 0 ? "-some-longer-suffix" : ""));
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        keyColVector.setVal(i, bytes, 0, bytes.length);
+      }
+      batch.size = VectorizedRowBatch.DEFAULT_SIZE;
+      hashTable.findOrAddGroups(batch);
+      verifyGroups(hashTable, batch, expected, new KeyOf() {
+        @Override
+        public Object get(int batchIndex) {
+          if (keyColVector.isNull[batchIndex]) {
+            return null;
+          }
+          return new String(keyColVector.vector[batchIndex], keyColVector.start[batchIndex],
+              keyColVector.length[batchIndex], StandardCharsets.UTF_8);
+        }
+      });
+    }
+    assertEquals(expected.size(), hashTable.size());
+
+    VectorizedRowBatch outputBatch = new VectorizedRowBatch(1);
+    BytesColumnVector outputColVector = new BytesColumnVector();
+    outputBatch.cols[0] = outputColVector;
+    outputColVector.initBuffer();
+    for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+      hashTable.assignKeyRowColumns(outputBatch, 0, entry.getValue());
+      if (entry.getKey() == null) {
+        assertTrue(outputColVector.isNull[0]);
+      } else {
+        assertFalse(outputColVector.isNull[0]);
+        assertEquals(entry.getKey(), new String(outputColVector.vector[0],
+            outputColVector.start[0], outputColVector.length[0], StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  private interface KeyOf {
+    Object get(int batchIndex);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K> void verifyGroups(VectorGroupByFastHashTable hashTable,
+      VectorizedRowBatch batch, Map<K, Integer> expected, KeyOf keyOf) {
+    final int[] batchGroupNums = hashTable.getBatchGroupNums();
+    for (int logical = 0; logical < batch.size; logical++) {
+      final int batchIndex = batch.selectedInUse ? batch.selected[logical] : logical;
+      K key = (K) keyOf.get(batchIndex);
+      Integer groupNum = expected.get(key);
+      if (groupNum == null) {
+        // New groups are numbered densely in order of arrival.
+        assertEquals(expected.size(), batchGroupNums[logical]);
+        expected.put(key, batchGroupNums[logical]);
+      } else {
+        assertEquals("key " + key, groupNum.intValue(), batchGroupNums[logical]);
+      }
+    }
+  }
+}
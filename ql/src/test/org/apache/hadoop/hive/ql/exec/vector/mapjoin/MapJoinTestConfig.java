@@ -792,6 +792,9 @@ private static void loadTableContainerData(MapJoinTestDescription testDesc, MapJ
           }
         }
       }
+      if (round == 0) {
+        spillToFit(testDesc, mapJoinTableContainer);
+      }
       if (testData.smallTableValues == null || !atLeastOneValueAdded) {
         break;
       }
@@ -801,6 +804,28 @@ private static void loadTableContainerData(MapJoinTestDescription testDesc, MapJ
     mapJoinTableContainer.seal();
   }
 
+  /*
+   * Like VectorMapJoinFastHashTableLoader, spill the partitions of a spilling fast hash table
+   * until it fits in the threshold. Called after the first value of each key has been added, so
+   * the later values of the spilled keys go to the sidefiles.
+   */
+  private static void spillToFit(MapJoinTestDescription testDesc,
+      MapJoinTableContainer mapJoinTableContainer) throws IOException {
+    if (!(mapJoinTableContainer instanceof VectorMapJoinFastTableContainer)) {
+      return;
+    }
+    VectorMapJoinFastTableContainer fastTableContainer =
+        (VectorMapJoinFastTableContainer) mapJoinTableContainer;
+    if (!fastTableContainer.isSpillEnabled()) {
+      return;
+    }
+    fastTableContainer.spillToFit(HiveConf.getLongVar(
+        testDesc.hiveConf, HiveConf.ConfVars.HIVECONVERTJOINNOCONDITIONALTASKTHRESHOLD));
+    if (!fastTableContainer.hasSpill()) {
+      throw new RuntimeException("Expected the fast hash table to spill");
+    }
+  }
+
   public static class CreateMapJoinResult {
     public final MapJoinOperator mapJoinOperator;
     public final MapJoinTableContainer mapJoinTableContainer;
@@ -902,6 +927,16 @@ public static CreateMapJoinResult createNativeVectorMapJoin(
 
     vectorDesc.setHashTableImplementationType(hashTableImplementationType);
 
+    if (hashTableImplementationType == HashTableImplementationType.FAST &&
+        HiveConf.getBoolVar(testDesc.hiveConf,
+            HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_SPILL_ENABLED)) {
+      // A Hybrid Grace Hash Join MapJoin, as the Vectorizer plans it with the spilling fast hash
+      // table.
+      mapJoinDesc.setHybridHashJoin(true);
+      vectorDesc.setIsHybridHashJoin(true);
+      vectorDesc.setIsFastHashTableSpillEnabled(true);
+    }
+
     VectorMapJoinInfo vectorMapJoinInfo = vectorDesc.getVectorMapJoinInfo();
 
     MapJoinTableContainer mapJoinTableContainer;
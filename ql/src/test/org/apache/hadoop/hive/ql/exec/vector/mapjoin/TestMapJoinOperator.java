@@ -146,12 +146,44 @@ private boolean addLongHiveConfVariation(int hiveConfVariation, HiveConf hiveCon
           hiveConf,
           HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_OVERFLOW_REPEATED_THRESHOLD, 5);
       break;
+    case 3:
+      addBloomFilterHiveConf(hiveConf);
+      break;
+    case 4:
+      addOffHeapHiveConf(hiveConf);
+      break;
     default:
       return false;
     }
     return true;
   }
 
+  private static void addBloomFilterHiveConf(HiveConf hiveConf) {
+    // Build the Bloom filter for any small table size.
+    HiveConf.setBoolVar(
+        hiveConf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_ENABLED, true);
+    HiveConf.setLongVar(
+        hiveConf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_BLOOM_FILTER_MIN_KEYS, 0);
+  }
+
+  private static void addOffHeapHiveConf(HiveConf hiveConf) {
+    HiveConf.setBoolVar(
+        hiveConf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_OFFHEAP_ENABLED, true);
+  }
+
+  private static void addSpillHiveConf(HiveConf hiveConf) {
+    HiveConf.setBoolVar(
+        hiveConf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_FAST_HASHTABLE_SPILL_ENABLED, true);
+    // Spill every partition with keys once the first value of each key has been loaded.
+    HiveConf.setLongVar(
+        hiveConf,
+        HiveConf.ConfVars.HIVECONVERTJOINNOCONDITIONALTASKTHRESHOLD, 1);
+  }
+
   private boolean goodTestVariation(MapJoinTestDescription testDesc) {
     final int smallTableValueSize = testDesc.smallTableRetainValueColumnNums.length;
 
@@ -897,12 +929,89 @@ private boolean addNonLongHiveConfVariation(int hiveConfVariation, HiveConf hive
          hiveConf,
          HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_OVERFLOW_REPEATED_THRESHOLD, 5);
       break;
+    case 2:
+      addBloomFilterHiveConf(hiveConf);
+      break;
+    case 3:
+      addOffHeapHiveConf(hiveConf);
+      break;
     default:
       return false;
     }
     return true;
   }
 
+  @Test
+  public void testLongSpill() throws Exception {
+    long seed = 7264L;
+    for (VectorMapJoinVariation vectorMapJoinVariation : SPILL_VARIATIONS) {
+      doTestSpill(seed++, TypeInfoFactory.longTypeInfo, vectorMapJoinVariation, "testLongSpill");
+    }
+  }
+
+  @Test
+  public void testStringSpill() throws Exception {
+    long seed = 8203L;
+    for (VectorMapJoinVariation vectorMapJoinVariation : SPILL_VARIATIONS) {
+      doTestSpill(seed++, TypeInfoFactory.stringTypeInfo, vectorMapJoinVariation,
+          "testStringSpill");
+    }
+  }
+
+  private static final VectorMapJoinVariation[] SPILL_VARIATIONS = new VectorMapJoinVariation[] {
+      VectorMapJoinVariation.INNER,
+      VectorMapJoinVariation.LEFT_SEMI,
+      VectorMapJoinVariation.OUTER};
+
+  /*
+   * The native fast hash table spills all of its partitions with keys while it is loaded, so each
+   * big table row is spilled to a matchfile and joined when its partition is reloaded at close.
+   */
+  private void doTestSpill(long seed, TypeInfo keyTypeInfo,
+      VectorMapJoinVariation vectorMapJoinVariation, String title) throws Exception {
+
+    HiveConf hiveConf = new HiveConf();
+    addSpillHiveConf(hiveConf);
+
+    // Big Table: key, long value; Small Table: no key retained, string value unless LEFT SEMI
+    TypeInfo[] bigTableTypeInfos =
+        new TypeInfo[] {
+            keyTypeInfo,
+            TypeInfoFactory.longTypeInfo};
+
+    int[] bigTableKeyColumnNums = new int[] {0};
+
+    int[] smallTableRetainKeyColumnNums = new int[] {};
+
+    TypeInfo[] smallTableValueTypeInfos =
+        (vectorMapJoinVariation == VectorMapJoinVariation.LEFT_SEMI ?
+            new TypeInfo[] {} : new TypeInfo[] {TypeInfoFactory.stringTypeInfo});
+
+    MapJoinTestDescription testDesc =
+        new MapJoinTestDescription(
+            hiveConf, vectorMapJoinVariation,
+            bigTableTypeInfos,
+            bigTableKeyColumnNums,
+            smallTableValueTypeInfos,
+            smallTableRetainKeyColumnNums,
+            new SmallTableGenerationParameters(),
+            MapJoinPlanVariation.DYNAMIC_PARTITION_HASH_JOIN);
+    Assert.assertTrue(goodTestVariation(testDesc));
+
+    MapJoinTestData testData =
+        new MapJoinTestData(1000, testDesc, seed);
+
+    RowTestObjectsMultiSet expectedTestRowMultiSet =
+        createExpectedTestRowMultiSet(testDesc, testData);
+
+    Assert.assertTrue(title + " " + vectorMapJoinVariation + " verify failed",
+        executeTestImplementation(
+            MapJoinTestImplementation.NATIVE_VECTOR_FAST,
+            testDesc, testData,
+            expectedTestRowMultiSet,
+            title));
+  }
+
   @Test
   public void testMultiKey0() throws Exception {
     long seed = 28322;
@@ -1942,7 +2051,10 @@ private void executeNativeVectorFast(
         title);
   }
 
-  private void executeTestImplementation(
+  /*
+   * @return Whether the output is the expected output.
+   */
+  private boolean executeTestImplementation(
       MapJoinTestImplementation mapJoinImplementation,
       MapJoinTestDescription testDesc, MapJoinTestData testData,
       RowTestObjectsMultiSet expectedTestRowMultiSet,
@@ -1990,7 +2102,7 @@ private void executeTestImplementation(
       if (mapJoinImplementation == MapJoinTestImplementation.ROW_MODE_HASH_MAP) {
 
         // Not supported.
-        return;
+        return true;
       }
 
       // Wire in FULL OUTER Intercept.
@@ -2044,10 +2156,12 @@ private void executeTestImplementation(
           " for implementation " + mapJoinImplementation +
           " variation " + testDesc.vectorMapJoinVariation + option);
       expectedTestRowMultiSet.displayDifferences(outputTestRowMultiSet, "expected", "actual");
+      return false;
     } else {
       System.out.println("*BENCHMARK* " + title + " verify succeeded " +
           " for implementation " + mapJoinImplementation +
           " variation " + testDesc.vectorMapJoinVariation + option);
+      return true;
     }
   }
 }
\ No newline at end of file
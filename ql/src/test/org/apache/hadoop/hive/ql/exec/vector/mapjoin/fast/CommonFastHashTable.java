@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
 
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
 import java.util.Random;
 
 public class CommonFastHashTable {
@@ -35,6 +37,18 @@ public class CommonFastHashTable {
 
   protected static final int MAX_VALUE_LENGTH = 1000;
 
+  /**
+   * @return the direct memory allocated by the JVM.
+   */
+  public static long getDirectMemoryUsed() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if (pool.getName().equals("direct")) {
+        return pool.getMemoryUsed();
+      }
+    }
+    throw new IllegalStateException("No direct buffer pool");
+  }
+
   public static int generateLargeCount() {
     int count = 0;
     if (random.nextInt(100) != 0) {
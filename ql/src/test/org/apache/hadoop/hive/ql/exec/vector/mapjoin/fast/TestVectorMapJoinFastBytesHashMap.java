@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -286,6 +287,29 @@ public void testLargeAndExpand() throws Exception {
     addAndVerifyMultipleKeyMultipleValue(keyCount, map, verifyTable);
   }
 
+  @Test
+  public void testOffHeapAndExpand() throws Exception {
+    random = new Random(4417);
+    final long directMemoryUsed = getDirectMemoryUsed();
+
+    // Slot arrays in direct memory; expansion must allocate the new slot array off heap too.
+    VectorMapJoinFastMultiKeyHashMap map =
+        new VectorMapJoinFastMultiKeyHashMap(
+            false, CAPACITY, LOAD_FACTOR, MODERATE_WB_SIZE, -1, /* isOffHeap */ true);
+
+    VerifyFastBytesHashMap verifyTable = new VerifyFastBytesHashMap();
+
+    int keyCount = 1000;
+    addAndVerifyMultipleKeyMultipleValue(keyCount, map, verifyTable);
+    assertTrue(map.getOffHeapMemorySize() > 0);
+    // The slot arrays replaced by the expansions were freed.
+    assertEquals(map.getOffHeapMemorySize(), getDirectMemoryUsed() - directMemoryUsed);
+
+    map.freeOffHeapMemory();
+    assertEquals(0, map.getOffHeapMemorySize());
+    assertEquals(directMemoryUsed, getDirectMemoryUsed());
+  }
+
   @Test
   public void testReallyBig() throws Exception {
     random = new Random(42662);
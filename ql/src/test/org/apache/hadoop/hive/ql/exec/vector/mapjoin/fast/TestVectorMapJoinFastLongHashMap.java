@@ -278,6 +278,81 @@ public void testLargeAndExpand() throws Exception {
     addAndVerifyMultipleKeyMultipleValue(keyCount, map, verifyTable);
   }
 
+  @Test
+  public void testOffHeapAndExpand() throws Exception {
+    random = new Random(31);
+    final long directMemoryUsed = getDirectMemoryUsed();
+
+    // Slot arrays in direct memory; expansion must allocate the new slot array off heap too.
+    VectorMapJoinFastLongHashMap map =
+        new VectorMapJoinFastLongHashMap(
+            false, false, HashTableKeyType.LONG, CAPACITY, LOAD_FACTOR, MODERATE_WB_SIZE, -1,
+            /* isOffHeap */ true);
+
+    VerifyFastLongHashMap verifyTable = new VerifyFastLongHashMap();
+
+    int keyCount = 1000;
+    addAndVerifyMultipleKeyMultipleValue(keyCount, map, verifyTable);
+    assertTrue(map.getOffHeapMemorySize() > 0);
+    // The slot arrays replaced by the expansions were freed.
+    assertEquals(map.getOffHeapMemorySize(), getDirectMemoryUsed() - directMemoryUsed);
+
+    map.freeOffHeapMemory();
+    assertEquals(0, map.getOffHeapMemorySize());
+    assertEquals(directMemoryUsed, getDirectMemoryUsed());
+  }
+
+  @Test
+  public void testDense() throws Exception {
+    random = new Random(4217);
+
+    VectorMapJoinFastLongHashMap map =
+        new VectorMapJoinFastLongHashMap(
+            false, false, HashTableKeyType.LONG, CAPACITY, LOAD_FACTOR, MODERATE_WB_SIZE, -1);
+
+    VerifyFastLongHashMap verifyTable = new VerifyFastLongHashMap();
+
+    // Surrogate keys with some gaps.
+    for (long key = 1000; key < 2000; key++) {
+      if (key == 1500 || random.nextInt(10) == 0) {
+        continue;
+      }
+      byte[] value = new byte[random.nextInt(MAX_VALUE_LENGTH)];
+      random.nextBytes(value);
+      map.testPutRow(key, value);
+      verifyTable.add(key, value);
+      if (random.nextBoolean()) {
+        // Another value.
+        map.testPutRow(key, value);
+        verifyTable.add(key, value);
+      }
+    }
+
+    // Too sparse, then a range that is too large.
+    assertFalse(map.buildDenseIndex(1000, 0.95f));
+    assertFalse(map.buildDenseIndex(999, 0.5f));
+    assertFalse(map.isDense());
+
+    assertTrue(map.buildDenseIndex(1000, 0.5f));
+    assertTrue(map.isDense());
+    assertTrue(map.useMinMax());
+    assertEquals(1000, map.min());
+    verifyTable.verify(map);
+
+    VectorMapJoinHashMapResult hashMapResult = map.createHashMapResult();
+    for (long key : new long[] { 1500, 999, 2000, Long.MIN_VALUE, Long.MAX_VALUE }) {
+      assertEquals(JoinUtil.JoinResult.NOMATCH, map.lookup(key, hashMapResult));
+      assertFalse(hashMapResult.hasRows());
+    }
+
+    // Adding a key drops the index.
+    byte[] value = new byte[] { 1 };
+    map.testPutRow(1500, value);
+    verifyTable.add(1500, value);
+    assertFalse(map.isDense());
+    verifyTable.verify(map);
+  }
+
   @Ignore
   @Test
   public void testOutOfBounds() throws Exception {
@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.hive.ql.exec.JoinUtil;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashMapResult;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashMultiSetResult;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashSetResult;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.binarysortable.fast.BinarySortableSerializeWrite;
+import org.apache.hadoop.io.BytesWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestVectorMapJoinFastPartitionedHashTable extends CommonFastHashTable {
+
+  private static BytesWritable serializeLongKey(Long key) throws Exception {
+    BinarySortableSerializeWrite serializeWrite = new BinarySortableSerializeWrite(1);
+    Output output = new Output();
+    serializeWrite.set(output);
+    if (key == null) {
+      serializeWrite.writeNull();
+    } else {
+      serializeWrite.writeLong(key);
+    }
+    return new BytesWritable(output.toByteArray());
+  }
+
+  private static BytesWritable serializeStringKey(byte[] key) throws Exception {
+    BinarySortableSerializeWrite serializeWrite = new BinarySortableSerializeWrite(1);
+    Output output = new Output();
+    serializeWrite.set(output);
+    serializeWrite.writeString(key, 0, key.length);
+    return new BytesWritable(output.toByteArray());
+  }
+
+  @Test
+  public void testLongHashMap() throws Exception {
+    random = new Random(4411);
+
+    VectorMapJoinFastPartitionedLongHashMap map =
+        new VectorMapJoinFastPartitionedLongHashMap(
+            true, HashTableKeyType.LONG, 4, CAPACITY, LOAD_FACTOR, WB_SIZE, -1, false);
+
+    Map<Long, List<byte[]>> expected = new HashMap<Long, List<byte[]>>();
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    try (VectorMapJoinFastPartitionedHashTableBuilder builder =
+        new VectorMapJoinFastPartitionedHashTableBuilder(map, "test")) {
+      // Enough rows to fill and recycle the batches of every partition.
+      for (int i = 0; i < 50000; i++) {
+        long key = random.nextInt(20000) - 10000;
+        byte[] value = new byte[random.nextInt(20)];
+        random.nextBytes(value);
+        builder.putRow(serializeLongKey(key), new BytesWritable(value));
+        List<byte[]> values = expected.get(key);
+        if (values == null) {
+          values = new ArrayList<byte[]>();
+          expected.put(key, values);
+        }
+        values.add(value);
+        min = Math.min(min, key);
+        max = Math.max(max, key);
+
+        if (i % 1000 == 0) {
+          // NULL keys are not stored.
+          builder.putRow(serializeLongKey(null), new BytesWritable(value));
+        }
+      }
+      // The published sizes can be read while the partitions are built.
+      assertTrue(builder.getEstimatedMemorySize() > 0);
+      builder.finish();
+
+      // Once built, the published sizes are those of the partitions after their last batch.
+      long heapSize = 0, offHeapSize = 0;
+      for (int partition = 0; partition < map.getNumPartitions(); partition++) {
+        heapSize += map.getPartitionHashTable(partition).getEstimatedMemorySize();
+        offHeapSize += map.getPartitionHashTable(partition).getOffHeapMemorySize();
+      }
+      assertEquals(heapSize, builder.getEstimatedMemorySize());
+      assertEquals(offHeapSize, builder.getOffHeapMemorySize());
+    }
+
+    assertEquals(expected.size(), map.size());
+    for (int partition = 0; partition < map.getNumPartitions(); partition++) {
+      assertTrue(map.getPartitionHashTable(partition).size() > 0);
+    }
+    assertTrue(map.useMinMax());
+    assertEquals(min, map.min());
+    assertEquals(max, map.max());
+
+    VectorMapJoinHashMapResult hashMapResult = map.createHashMapResult();
+    for (Map.Entry<Long, List<byte[]>> entry : expected.entrySet()) {
+      assertEquals(JoinUtil.JoinResult.MATCH, map.lookup(entry.getKey(), hashMapResult));
+      CheckFastHashTable.verifyHashMapValues(hashMapResult, entry.getValue());
+    }
+    assertEquals(JoinUtil.JoinResult.NOMATCH, map.lookup(10001, hashMapResult));
+  }
+
+  @Test
+  public void testLongHashMultiSetPutRow() throws Exception {
+    random = new Random(2209);
+
+    VectorMapJoinFastPartitionedLongHashMultiSet multiSet =
+        new VectorMapJoinFastPartitionedLongHashMultiSet(
+            false, HashTableKeyType.LONG, 8, CAPACITY, LOAD_FACTOR, WB_SIZE, 1000, false);
+
+    // The single-threaded putRow routes each row to its partition as well.
+    Map<Long, Long> expected = new HashMap<Long, Long>();
+    for (int i = 0; i < 5000; i++) {
+      long key = random.nextInt(1000);
+      multiSet.putRow(serializeLongKey(key), new BytesWritable());
+      Long count = expected.get(key);
+      expected.put(key, (count == null) ? 1 : count + 1);
+    }
+
+    assertEquals(expected.size(), multiSet.size());
+    VectorMapJoinHashMultiSetResult hashMultiSetResult = multiSet.createHashMultiSetResult();
+    for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+      assertEquals(JoinUtil.JoinResult.MATCH,
+          multiSet.contains(entry.getKey(), hashMultiSetResult));
+      assertEquals(entry.getValue().longValue(), hashMultiSetResult.count());
+    }
+    assertEquals(JoinUtil.JoinResult.NOMATCH, multiSet.contains(-1, hashMultiSetResult));
+  }
+
+  @Test
+  public void testStringHashMap() throws Exception {
+    random = new Random(7300);
+
+    VectorMapJoinFastPartitionedBytesHashMap map =
+        new VectorMapJoinFastPartitionedBytesHashMap(
+            HashTableKeyType.STRING, 2, CAPACITY, LOAD_FACTOR, WB_SIZE, -1, true);
+
+    Map<String, List<byte[]>> expected = new HashMap<String, List<byte[]>>();
+    try (VectorMapJoinFastPartitionedHashTableBuilder builder =
+        new VectorMapJoinFastPartitionedHashTableBuilder(map, "test")) {
+      for (int i = 0; i < 20000; i++) {
+        String key = "key" + random.nextInt(5000);
+        byte[] value = new byte[random.nextInt(MAX_VALUE_LENGTH)];
+        random.nextBytes(value);
+        builder.putRow(serializeStringKey(key.getBytes(StandardCharsets.UTF_8)),
+            new BytesWritable(value));
+        List<byte[]> values = expected.get(key);
+        if (values == null) {
+          values = new ArrayList<byte[]>();
+          expected.put(key, values);
+        }
+        values.add(value);
+      }
+      builder.finish();
+    }
+
+    assertEquals(expected.size(), map.size());
+    assertTrue(map.getOffHeapMemorySize() > 0);
+    VectorMapJoinHashMapResult hashMapResult = map.createHashMapResult();
+    for (Map.Entry<String, List<byte[]>> entry : expected.entrySet()) {
+      byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+      assertEquals(JoinUtil.JoinResult.MATCH, map.lookup(key, 0, key.length, hashMapResult));
+      CheckFastHashTable.verifyHashMapValues(hashMapResult, entry.getValue());
+    }
+    byte[] missingKey = "missing".getBytes(StandardCharsets.UTF_8);
+    assertEquals(JoinUtil.JoinResult.NOMATCH,
+        map.lookup(missingKey, 0, missingKey.length, hashMapResult));
+  }
+
+  @Test
+  public void testLongHashMapWideValues() throws Exception {
+    random = new Random(1337);
+
+    VectorMapJoinFastPartitionedLongHashMap map =
+        new VectorMapJoinFastPartitionedLongHashMap(
+            false, HashTableKeyType.LONG, 2, CAPACITY, LOAD_FACTOR, MODERATE_WB_SIZE, -1, false);
+
+    // Batches are handed over by bytes well before they hold BATCH_SIZE rows, and some values
+    // are wider than a whole batch.
+    Map<Long, List<byte[]>> expected = new HashMap<Long, List<byte[]>>();
+    try (VectorMapJoinFastPartitionedHashTableBuilder builder =
+        new VectorMapJoinFastPartitionedHashTableBuilder(map, "test")) {
+      for (int i = 0; i < 500; i++) {
+        long key = random.nextInt(100);
+        byte[] value = new byte[(i % 50 == 0) ? 300 * 1024 : random.nextInt(20 * 1024)];
+        random.nextBytes(value);
+        builder.putRow(serializeLongKey(key), new BytesWritable(value));
+        List<byte[]> values = expected.get(key);
+        if (values == null) {
+          values = new ArrayList<byte[]>();
+          expected.put(key, values);
+        }
+        values.add(value);
+      }
+      builder.finish();
+    }
+
+    assertEquals(expected.size(), map.size());
+    VectorMapJoinHashMapResult hashMapResult = map.createHashMapResult();
+    for (Map.Entry<Long, List<byte[]>> entry : expected.entrySet()) {
+      assertEquals(JoinUtil.JoinResult.MATCH, map.lookup(entry.getKey(), hashMapResult));
+      CheckFastHashTable.verifyHashMapValues(hashMapResult, entry.getValue());
+    }
+  }
+
+  @Test
+  public void testMultiKeyHashSet() throws Exception {
+    random = new Random(6610);
+
+    VectorMapJoinFastPartitionedBytesHashSet set =
+        new VectorMapJoinFastPartitionedBytesHashSet(
+            HashTableKeyType.MULTI_KEY, 4, CAPACITY, LOAD_FACTOR, WB_SIZE, -1, false);
+
+    // MULTI_KEY keys are stored and looked up as the serialized key bytes.
+    List<byte[]> keys = new ArrayList<byte[]>();
+    try (VectorMapJoinFastPartitionedHashTableBuilder builder =
+        new VectorMapJoinFastPartitionedHashTableBuilder(set, "test")) {
+      for (int i = 0; i < 10000; i++) {
+        byte[] key = new byte[8 + random.nextInt(MAX_KEY_LENGTH)];
+        random.nextBytes(key);
+        keys.add(key);
+        builder.putRow(new BytesWritable(key), new BytesWritable());
+      }
+      builder.finish();
+    }
+
+    assertEquals(keys.size(), set.size());
+    VectorMapJoinHashSetResult hashSetResult = set.createHashSetResult();
+    for (byte[] key : keys) {
+      assertEquals(JoinUtil.JoinResult.MATCH, set.contains(key, 0, key.length, hashSetResult));
+    }
+  }
+
+  @Test
+  public void testBloomFilter() throws Exception {
+    random = new Random(5091);
+
+    VectorMapJoinFastPartitionedLongHashSet longSet =
+        new VectorMapJoinFastPartitionedLongHashSet(
+            false, HashTableKeyType.LONG, 4, CAPACITY, LOAD_FACTOR, WB_SIZE, -1, false);
+    VectorMapJoinFastPartitionedBytesHashSet bytesSet =
+        new VectorMapJoinFastPartitionedBytesHashSet(
+            HashTableKeyType.STRING, 4, CAPACITY, LOAD_FACTOR, WB_SIZE, -1, false);
+    assertNull(longSet.getBloomFilter());
+
+    List<Long> keys = new ArrayList<Long>();
+    for (int i = 0; i < 10000; i++) {
+      long key = random.nextLong();
+      keys.add(key);
+      longSet.putRow(serializeLongKey(key), new BytesWritable());
+      bytesSet.putRow(
+          serializeStringKey(Long.toString(key).getBytes(StandardCharsets.UTF_8)),
+          new BytesWritable());
+    }
+    longSet.buildBloomFilter(0.01);
+    bytesSet.buildBloomFilter(0.01);
+
+    // No false negatives over the keys of all the partitions.
+    for (long key : keys) {
+      assertTrue(longSet.getBloomFilter().testLong(key));
+      byte[] keyBytes = Long.toString(key).getBytes(StandardCharsets.UTF_8);
+      assertTrue(bytesSet.getBloomFilter().testBytes(keyBytes, 0, keyBytes.length));
+    }
+
+    // The filter rules out most keys that are not in the hash table.
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (longSet.getBloomFilter().testLong(random.nextLong())) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < 500);
+  }
+
+  @Test
+  public void testLongHashMapSpill() throws Exception {
+    random = new Random(3187);
+
+    VectorMapJoinFastPartitionedLongHashMap map =
+        new VectorMapJoinFastPartitionedLongHashMap(
+            true, HashTableKeyType.LONG, 4, CAPACITY, LOAD_FACTOR, WB_SIZE, -1, false);
+    map.enableSpill(System.getProperty("java.io.tmpdir"));
+
+    // Spill in the middle of the load, so later rows of the spilled partition go to its sidefile.
+    Map<Long, List<byte[]>> expected = new HashMap<Long, List<byte[]>>();
+    for (int i = 0; i < 10000; i++) {
+      long key = random.nextInt(2000);
+      byte[] value = new byte[random.nextInt(20)];
+      random.nextBytes(value);
+      map.putRow(serializeLongKey(key), new BytesWritable(value));
+      List<byte[]> values = expected.get(key);
+      if (values == null) {
+        values = new ArrayList<byte[]>();
+        expected.put(key, values);
+      }
+      values.add(value);
+      if (i == 5000) {
+        assertTrue(map.spillLargestPartition());
+      }
+    }
+    assertTrue(map.hasSpill());
+    assertFalse(map.useMinMax());
+
+    // Keys of the spilled partition return SPILL with their partition.
+    Map<Integer, List<Long>> spilledKeys = new HashMap<Integer, List<Long>>();
+    VectorMapJoinHashMapResult hashMapResult = map.createHashMapResult();
+    for (Map.Entry<Long, List<byte[]>> entry : expected.entrySet()) {
+      JoinUtil.JoinResult joinResult = map.lookup(entry.getKey(), hashMapResult);
+      if (joinResult == JoinUtil.JoinResult.SPILL) {
+        int partition = hashMapResult.spillPartitionId();
+        assertTrue(map.isSpilled(partition));
+        List<Long> keys = spilledKeys.get(partition);
+        if (keys == null) {
+          keys = new ArrayList<Long>();
+          spilledKeys.put(partition, keys);
+        }
+        keys.add(entry.getKey());
+      } else {
+        assertEquals(JoinUtil.JoinResult.MATCH, joinResult);
+        CheckFastHashTable.verifyHashMapValues(hashMapResult, entry.getValue());
+      }
+    }
+    assertEquals(1, spilledKeys.size());
+
+    // A reloaded partition has the keys and values from before and after the spill.
+    map.clearInMemoryPartitions();
+    for (Map.Entry<Integer, List<Long>> entry : spilledKeys.entrySet()) {
+      VectorMapJoinFastLongHashMap partitionMap =
+          (VectorMapJoinFastLongHashMap) map.reloadPartition(entry.getKey());
+      assertFalse(map.isSpilled(entry.getKey()));
+      assertEquals(entry.getValue().size(), partitionMap.size());
+      for (long key : entry.getValue()) {
+        assertEquals(JoinUtil.JoinResult.MATCH, partitionMap.lookup(key, hashMapResult));
+        CheckFastHashTable.verifyHashMapValues(hashMapResult, expected.get(key));
+      }
+      map.clearPartition(entry.getKey());
+    }
+    assertFalse(map.hasSpill());
+  }
+
+  @Test
+  public void testStringHashSetSpill() throws Exception {
+    random = new Random(9002);
+
+    VectorMapJoinFastPartitionedBytesHashSet set =
+        new VectorMapJoinFastPartitionedBytesHashSet(
+            HashTableKeyType.STRING, 4, CAPACITY, LOAD_FACTOR, WB_SIZE, -1, false);
+    set.enableSpill(System.getProperty("java.io.tmpdir"));
+
+    List<byte[]> keys = new ArrayList<byte[]>();
+    for (int i = 0; i < 4000; i++) {
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      keys.add(key);
+      set.putRow(serializeStringKey(key), new BytesWritable());
+    }
+    long memorySize = set.getEstimatedMemorySize();
+    for (int partition = 0; partition < 2; partition++) {
+      set.spillPartition(partition);
+    }
+    assertTrue(set.getEstimatedMemorySize() < memorySize);
+    assertEquals(keys.size(), set.size());
+
+    VectorMapJoinHashSetResult hashSetResult = set.createHashSetResult();
+    int spilled = 0;
+    for (byte[] key : keys) {
+      JoinUtil.JoinResult joinResult = set.contains(key, 0, key.length, hashSetResult);
+      if (joinResult == JoinUtil.JoinResult.SPILL) {
+        assertTrue(hashSetResult.spillPartitionId() < 2);
+        spilled++;
+      } else {
+        assertEquals(JoinUtil.JoinResult.MATCH, joinResult);
+      }
+    }
+    assertTrue(spilled > 0 && spilled < keys.size());
+
+    // Spilling everything that is left, then removing the spill files.
+    while (set.spillLargestPartition()) {
+    }
+    for (int partition = 0; partition < set.getNumPartitions(); partition++) {
+      assertTrue(set.isSpilled(partition));
+    }
+    set.clearSpill();
+    assertFalse(set.hasSpill());
+  }
+
+  @Test
+  public void testRoundUpNumPartitions() {
+    assertEquals(1, VectorMapJoinFastPartitionedHashTable.roundUpNumPartitions(0));
+    assertEquals(1, VectorMapJoinFastPartitionedHashTable.roundUpNumPartitions(1));
+    assertEquals(2, VectorMapJoinFastPartitionedHashTable.roundUpNumPartitions(2));
+    assertEquals(4, VectorMapJoinFastPartitionedHashTable.roundUpNumPartitions(3));
+    assertEquals(8, VectorMapJoinFastPartitionedHashTable.roundUpNumPartitions(8));
+    assertEquals(16, VectorMapJoinFastPartitionedHashTable.roundUpNumPartitions(9));
+  }
+}
@@ -517,6 +517,20 @@ public void testPrimitiveRandomTimestamp() throws SerDeException {
     initAndSerializeAndDeserialize(schema, rows);
   }
 
+  @Test
+  public void testPrimitiveNegativeTimestampWithNanos() throws SerDeException {
+    String[][] schema = {
+        {"timestamp1", "timestamp"},
+    };
+
+    Object[][] rows = {
+        {new TimestampWritableV2(Timestamp.valueOf("1969-12-31 23:59:59.5"))},
+        {new TimestampWritableV2(Timestamp.valueOf("1960-06-30 12:00:00.000001"))},
+    };
+
+    initAndSerializeAndDeserialize(schema, rows);
+  }
+
   @Test
   public void testPrimitiveDecimal() throws SerDeException {
     String[][] schema = {
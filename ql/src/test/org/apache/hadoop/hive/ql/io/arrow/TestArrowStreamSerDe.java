@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.io.arrow;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestArrowStreamSerDe {
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = new Configuration();
+    // Two rows per Arrow batch, and at least five rows per stream
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVE_ARROW_BATCH_SIZE, 2);
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_DEFAULT_FETCH_SIZE, 5);
+  }
+
+  private ArrowStreamSerDe createSerDe(String columns, String columnTypes) throws SerDeException {
+    Properties tbl = new Properties();
+    tbl.setProperty(serdeConstants.LIST_COLUMNS, columns);
+    tbl.setProperty(serdeConstants.LIST_COLUMN_TYPES, columnTypes);
+    ArrowStreamSerDe serDe = new ArrowStreamSerDe();
+    serDe.initialize(conf, tbl);
+    return serDe;
+  }
+
+  /**
+   * @return the row counts of the batches of the stream
+   */
+  private static List<Integer> readStream(Writable blob, List<Object> values) throws IOException {
+    List<Integer> rowCounts = new ArrayList<>();
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        ArrowStreamReader reader = new ArrowStreamReader(
+            new ByteArrayInputStream(((BytesWritable) blob).copyBytes()), allocator)) {
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      while (reader.loadNextBatch()) {
+        rowCounts.add(root.getRowCount());
+        for (int i = 0; i < root.getRowCount(); ++i) {
+          for (int j = 0; j < root.getFieldVectors().size(); ++j) {
+            values.add(root.getFieldVectors().get(j).getObject(i));
+          }
+        }
+      }
+    }
+    return rowCounts;
+  }
+
+  @Test
+  public void testIsSupported() {
+    assertTrue(ArrowStreamSerDe.isSupported("int:string:decimal(10,2):timestamp:date:binary"));
+    assertFalse(ArrowStreamSerDe.isSupported("int:char(10)"));
+    assertFalse(ArrowStreamSerDe.isSupported("int:array<int>"));
+    assertFalse(ArrowStreamSerDe.isSupported("interval_day_time"));
+    assertFalse(ArrowStreamSerDe.isSupported(""));
+  }
+
+  @Test
+  public void testRows() throws Exception {
+    ArrowStreamSerDe serDe = createSerDe("i,s", "int:string");
+    StructObjectInspector oi = (StructObjectInspector) serDe.getObjectInspector();
+    List<Writable> blobs = new ArrayList<>();
+    for (int i = 0; i < 7; ++i) {
+      Object[] row = { new IntWritable(i), i % 3 == 0 ? null : new Text("s" + i) };
+      Writable blob = serDe.serialize(row, oi);
+      if (blob != null) {
+        // The blob is reused by the next stream.
+        blobs.add(new BytesWritable(((BytesWritable) blob).copyBytes()));
+      }
+    }
+    Writable last = serDe.serialize(null, oi);
+    assertNotNull(last);
+    blobs.add(last);
+    assertNull(serDe.serialize(null, oi));
+
+    assertEquals(2, blobs.size());
+    List<Object> values = new ArrayList<>();
+    List<Integer> rowCounts = readStream(blobs.get(0), values);
+    assertEquals(3, rowCounts.size());
+    assertEquals(Integer.valueOf(2), rowCounts.get(2));
+    assertEquals(1, readStream(blobs.get(1), values).size());
+    assertEquals(14, values.size());
+    for (int i = 0; i < 7; ++i) {
+      assertEquals(i, values.get(2 * i));
+      assertEquals(i % 3 == 0 ? null : "s" + i,
+          values.get(2 * i + 1) == null ? null : values.get(2 * i + 1).toString());
+    }
+  }
+
+  @Test
+  public void testNoRows() throws Exception {
+    ArrowStreamSerDe serDe = createSerDe("i", "int");
+    assertNull(serDe.serialize(null, serDe.getObjectInspector()));
+  }
+
+  @Test
+  public void testBatches() throws Exception {
+    ArrowStreamSerDe serDe = createSerDe("l", "bigint");
+    VectorizedRowBatch batch = new VectorizedRowBatch(1, 3);
+    LongColumnVector column = new LongColumnVector(3);
+    batch.cols[0] = column;
+    List<Object> values = new ArrayList<>();
+    long next = 0;
+    Writable blob = null;
+    while (blob == null) {
+      for (int i = 0; i < 3; ++i) {
+        column.vector[i] = next++;
+      }
+      batch.size = 3;
+      blob = serDe.serializeBatch(batch);
+    }
+    // The vectorized batches are not split into Arrow batches of hive.arrow.batch.size rows.
+    assertEquals(2, readStream(blob, values).size());
+    assertNull(serDe.serialize(null, serDe.getObjectInspector()));
+    assertEquals(6, values.size());
+    for (int i = 0; i < values.size(); ++i) {
+      assertEquals((long) i, values.get(i));
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.service.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.Types.MinorType;
+import org.apache.arrow.vector.util.TransferPair;
+import org.apache.hive.service.rpc.thrift.TRowSet;
+
+/**
+ * A row set sent as an Arrow IPC stream in the binary columns of a TRowSet, for the sessions that
+ * use the arrow result format (see hive.server2.thrift.resultset.format). The streams are written
+ * by ArrowStreamSerDe in the tasks, and sent as is by the server; this is the client side, that
+ * reads the values straight from the Arrow vectors with the typed getters.
+ *
+ * The getters return the same values as the JDBC driver returns for the TColumns. The set holds
+ * off-heap memory, and has to be closed.
+ */
+public class ArrowBasedSet implements RowSet, Closeable {
+  private static final BufferAllocator ALLOCATOR = new RootAllocator(Long.MAX_VALUE);
+  private static final int MICROS_PER_SECOND = 1_000_000;
+  private static final int NANOS_PER_MICRO = 1_000;
+
+  private final long startOffset;
+  private final int numColumns;
+  private final int numRows;
+  // The vectors of each record batch of the stream, and the row after the end of each batch
+  private final List<FieldVector[]> batches = new ArrayList<>();
+  private final int[] batchEnds;
+  private final MinorType[] types;
+
+  // The batch of the last row read; the rows are mostly read in order
+  private int batch = 0;
+  private int batchStart = 0;
+  private FieldVector[] vectors;
+
+  public ArrowBasedSet(TRowSet tRowSet) throws IOException {
+    startOffset = tRowSet.getStartRowOffset();
+    List<Integer> ends = new ArrayList<>();
+    int rows = 0;
+    try (ArrowStreamReader reader = new ArrowStreamReader(
+        new ByteArrayInputStream(tRowSet.getBinaryColumns()), ALLOCATOR)) {
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      List<FieldVector> fieldVectors = root.getFieldVectors();
+      numColumns = fieldVectors.size();
+      types = new MinorType[numColumns];
+      for (int i = 0; i < numColumns; ++i) {
+        types[i] = fieldVectors.get(i).getMinorType();
+      }
+      while (reader.loadNextBatch()) {
+        if (root.getRowCount() == 0) {
+          continue;
+        }
+        // Take the buffers over, since the reader reuses the vectors of its root.
+        FieldVector[] batchVectors = new FieldVector[numColumns];
+        batches.add(batchVectors);
+        for (int i = 0; i < numColumns; ++i) {
+          TransferPair transfer = fieldVectors.get(i).getTransferPair(ALLOCATOR);
+          transfer.transfer();
+          batchVectors[i] = (FieldVector) transfer.getTo();
+        }
+        rows += root.getRowCount();
+        ends.add(rows);
+      }
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+    numRows = rows;
+    batchEnds = new int[ends.size()];
+    for (int i = 0; i < batchEnds.length; ++i) {
+      batchEnds[i] = ends.get(i);
+    }
+    vectors = batches.isEmpty() ? null : batches.get(0);
+  }
+
+  /**
+   * @return the index of the row in its batch, whose vectors are set as the current ones.
+   */
+  private int seek(int row) {
+    if (row < batchStart || batch == batchEnds.length || row >= batchEnds[batch]) {
+      if (row < 0 || row >= numRows) {
+        throw new IndexOutOfBoundsException("Row " + row + " of " + numRows);
+      }
+      int index = Arrays.binarySearch(batchEnds, row);
+      batch = (index < 0) ? -index - 1 : index + 1;
+      batchStart = (batch == 0) ? 0 : batchEnds[batch - 1];
+      vectors = batches.get(batch);
+    }
+    return row - batchStart;
+  }
+
+  public boolean isNull(int row, int column) {
+    int index = seek(row);
+    return vectors[column].isNull(index);
+  }
+
+  /**
+   * @return whether the column holds numbers, that {@link #getLong} and {@link #getDouble} read.
+   */
+  public boolean isNumeric(int column) {
+    switch (types[column]) {
+    case BIT:
+    case TINYINT:
+    case SMALLINT:
+    case INT:
+    case BIGINT:
+    case FLOAT4:
+    case FLOAT8:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * @return the value of a numeric column, that is not null; the floating point values are
+   * truncated, like Number.longValue does.
+   */
+  public long getLong(int row, int column) {
+    int index = seek(row);
+    FieldVector vector = vectors[column];
+    switch (types[column]) {
+    case BIT:
+      return ((BitVector) vector).get(index);
+    case TINYINT:
+      return ((TinyIntVector) vector).get(index);
+    case SMALLINT:
+      return ((SmallIntVector) vector).get(index);
+    case INT:
+      return ((IntVector) vector).get(index);
+    case BIGINT:
+      return ((BigIntVector) vector).get(index);
+    case FLOAT4:
+    case FLOAT8:
+      return (long) getDouble(row, column);
+    default:
+      throw new IllegalArgumentException("Column " + column + " is not numeric: " + types[column]);
+    }
+  }
+
+  /**
+   * @return the value of a numeric column, that is not null.
+   */
+  public double getDouble(int row, int column) {
+    int index = seek(row);
+    switch (types[column]) {
+    case FLOAT4:
+      // The float values are sent as their decimal representation in TColumns.
+      return Double.parseDouble(Float.toString(((Float4Vector) vectors[column]).get(index)));
+    case FLOAT8:
+      return ((Float8Vector) vectors[column]).get(index);
+    default:
+      return getLong(row, column);
+    }
+  }
+
+  /**
+   * @return the value of the column as the JDBC driver returns it for the TColumns: the numbers
+   * as Boolean, Byte, Short, Integer, Long or Double, strings, byte arrays, java.sql.Date,
+   * java.sql.Timestamp and BigDecimal; or null.
+   */
+  public Object getObject(int row, int column) {
+    int index = seek(row);
+    FieldVector vector = vectors[column];
+    if (vector.isNull(index)) {
+      return null;
+    }
+    switch (types[column]) {
+    case BIT:
+      return ((BitVector) vector).get(index) != 0;
+    case TINYINT:
+      return ((TinyIntVector) vector).get(index);
+    case SMALLINT:
+      return ((SmallIntVector) vector).get(index);
+    case INT:
+      return ((IntVector) vector).get(index);
+    case BIGINT:
+      return ((BigIntVector) vector).get(index);
+    case FLOAT4:
+    case FLOAT8:
+      return getDouble(row, column);
+    case VARCHAR:
+      return new String(((VarCharVector) vector).get(index), StandardCharsets.UTF_8);
+    case VARBINARY:
+      return ((VarBinaryVector) vector).get(index);
+    case DATEDAY:
+      return Date.valueOf(LocalDate.ofEpochDay(((DateDayVector) vector).get(index)));
+    case TIMESTAMPMICROTZ:
+      // The local date and time, as microseconds since the epoch in UTC
+      long micros = ((TimeStampMicroTZVector) vector).get(index);
+      return Timestamp.valueOf(LocalDateTime.ofEpochSecond(
+          Math.floorDiv(micros, MICROS_PER_SECOND),
+          (int) Math.floorMod(micros, MICROS_PER_SECOND) * NANOS_PER_MICRO, ZoneOffset.UTC));
+    case DECIMAL:
+      return ((DecimalVector) vector).getObject(index);
+    default:
+      throw new IllegalArgumentException("Unexpected Arrow vector " + vector.getField());
+    }
+  }
+
+  @Override
+  public void close() {
+    for (FieldVector[] batchVectors : batches) {
+      for (FieldVector vector : batchVectors) {
+        if (vector != null) {
+          vector.close();
+        }
+      }
+    }
+    batches.clear();
+  }
+
+  @Override
+  public int numColumns() {
+    return numColumns;
+  }
+
+  @Override
+  public int numRows() {
+    return numRows;
+  }
+
+  @Override
+  public long getStartOffset() {
+    return startOffset;
+  }
+
+  /**
+   * Boxes the values of each row; the JDBC driver reads them with the typed getters instead.
+   */
+  @Override
+  public Iterator<Object[]> iterator() {
+    return new Iterator<Object[]>() {
+      private int index;
+      private final Object[] convey = new Object[numColumns()];
+
+      @Override
+      public boolean hasNext() {
+        return index < numRows;
+      }
+
+      @Override
+      public Object[] next() {
+        if (index >= numRows) {
+          throw new NoSuchElementException();
+        }
+        for (int i = 0; i < convey.length; i++) {
+          convey[i] = getObject(index, i);
+        }
+        index++;
+        return convey;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("remove");
+      }
+    };
+  }
+
+  @Override
+  public RowSet addRow(Object[] fields) {
+    throw new UnsupportedOperationException("Arrow based sets are read only");
+  }
+
+  @Override
+  public RowSet extractSubset(int maxRows) {
+    throw new UnsupportedOperationException("Arrow based sets are read only");
+  }
+
+  @Override
+  public void setStartOffset(long startOffset) {
+    throw new UnsupportedOperationException("Arrow based sets are read only");
+  }
+
+  @Override
+  public TRowSet toTRowSet() {
+    throw new UnsupportedOperationException("Arrow based sets are written by the tasks");
+  }
+}
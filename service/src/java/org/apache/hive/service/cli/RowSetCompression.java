@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.service.cli;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import org.apache.hive.service.rpc.thrift.TColumn;
+import org.apache.hive.service.rpc.thrift.TRow;
+import org.apache.hive.service.rpc.thrift.TRowSet;
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TException;
+import org.apache.thrift.TBaseHelper;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+
+/**
+ * Compression of the fetched row sets, for the sessions that use it (see
+ * hive.server2.thrift.resultset.compression). The whole TRowSet - the column buffers, the blob
+ * serialized by ThriftJDBCBinarySerDe in the tasks, or an Arrow stream - is serialized and
+ * compressed into the binary columns of a new TRowSet. The payload starts with the codec and the
+ * uncompressed length, so that the data that doesn't compress well can be sent as is.
+ */
+public final class RowSetCompression {
+  private static final int HEADER_SIZE = 5;
+
+  public enum Codec {
+    NONE, LZ4, ZLIB;
+
+    public static Codec fromString(String name) {
+      return (name == null || name.isEmpty()) ? NONE : valueOf(name.toUpperCase());
+    }
+  }
+
+  /** The sizes and the time of a compression, for the metrics. */
+  public static final class Stats {
+    private long uncompressedBytes, compressedBytes, timeNs;
+
+    public long getUncompressedBytes() {
+      return uncompressedBytes;
+    }
+
+    public long getCompressedBytes() {
+      return compressedBytes;
+    }
+
+    public long getTimeNs() {
+      return timeNs;
+    }
+  }
+
+  private RowSetCompression() {
+  }
+
+  /**
+   * Compresses the row set; used on the server side.
+   * @param stats if not null, receives the sizes and the time of the compression.
+   */
+  public static TRowSet compress(TRowSet rowSet, Codec codec, Stats stats) throws TException {
+    long startNs = System.nanoTime();
+    byte[] input = new TSerializer(new TCompactProtocol.Factory()).serialize(rowSet);
+    byte[] output = new byte[HEADER_SIZE + maxCompressedLength(codec, input.length)];
+    int length = compress(codec, input, output, HEADER_SIZE);
+    if (length < 0 || length >= input.length) {
+      // Not worth it; send the serialized row set as is.
+      codec = Codec.NONE;
+      length = input.length;
+      if (output.length < HEADER_SIZE + length) {
+        output = new byte[HEADER_SIZE + length];
+      }
+      System.arraycopy(input, 0, output, HEADER_SIZE, length);
+    }
+    ByteBuffer payload = ByteBuffer.wrap(output, 0, HEADER_SIZE + length);
+    payload.put((byte) codec.ordinal()).putInt(input.length).position(0);
+
+    TRowSet result = new TRowSet(rowSet.getStartRowOffset(), new ArrayList<TRow>());
+    result.setBinaryColumns(payload);
+    result.setColumnCount(rowSet.isSetColumnCount() ? rowSet.getColumnCount()
+        : (rowSet.isSetColumns() ? rowSet.getColumnsSize() : 0));
+    if (stats != null) {
+      stats.uncompressedBytes = input.length;
+      stats.compressedBytes = HEADER_SIZE + length;
+      stats.timeNs = System.nanoTime() - startNs;
+    }
+    return result;
+  }
+
+  /**
+   * Restores the row set compressed by {@link #compress}; used on the client side.
+   */
+  public static TRowSet decompress(TRowSet rowSet) throws TException {
+    ByteBuffer payload = rowSet.bufferForBinaryColumns();
+    if (payload == null || payload.remaining() < HEADER_SIZE) {
+      throw new TException("The row set is not compressed");
+    }
+    payload = payload.slice();
+    int codecId = payload.get(), length = payload.getInt();
+    if (codecId < 0 || codecId >= Codec.values().length || length < 0) {
+      throw new TException("Invalid compressed row set header");
+    }
+    byte[] input;
+    int offset;
+    if (payload.hasArray()) {
+      input = payload.array();
+      offset = payload.arrayOffset() + payload.position();
+    } else {
+      input = new byte[payload.remaining()];
+      payload.get(input);
+      offset = 0;
+    }
+    int inputLength = payload.limit() - HEADER_SIZE;
+    byte[] output;
+    Codec codec = Codec.values()[codecId];
+    if (codec == Codec.NONE) {
+      output = Arrays.copyOfRange(input, offset, offset + inputLength);
+    } else {
+      output = new byte[length];
+      decompress(codec, input, offset, inputLength, output);
+    }
+    TRowSet result = new TRowSet();
+    new TDeserializer(new TCompactProtocol.Factory()).deserialize(result, output);
+    if (result.isSetColumns()) {
+      for (TColumn column : result.getColumns()) {
+        if (column.isSetBinaryVal()) {
+          copyValues(column.getBinaryVal().getValues());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The deserialized binary values share the array of the whole row set, and the column buffers
+   * use the arrays of the values, so copy them.
+   */
+  private static void copyValues(List<ByteBuffer> values) {
+    for (int i = 0; i < values.size(); ++i) {
+      values.set(i, ByteBuffer.wrap(TBaseHelper.byteBufferToByteArray(values.get(i))));
+    }
+  }
+
+  private static int maxCompressedLength(Codec codec, int length) {
+    switch (codec) {
+    case LZ4:
+      return new Lz4Compressor().maxCompressedLength(length);
+    default:
+      return length; // Only keep the compressed data if it is smaller than the input.
+    }
+  }
+
+  /** @return the compressed length, or -1 if the output buffer is too small. */
+  private static int compress(Codec codec, byte[] input, byte[] output, int offset) {
+    switch (codec) {
+    case LZ4:
+      return new Lz4Compressor().compress(
+          input, 0, input.length, output, offset, output.length - offset);
+    case ZLIB:
+      Deflater deflater = new Deflater();
+      try {
+        deflater.setInput(input);
+        deflater.finish();
+        int length = deflater.deflate(output, offset, output.length - offset);
+        return deflater.finished() ? length : -1;
+      } finally {
+        deflater.end();
+      }
+    default:
+      return -1;
+    }
+  }
+
+  private static void decompress(Codec codec, byte[] input, int offset, int length, byte[] output)
+      throws TException {
+    try {
+      switch (codec) {
+      case LZ4:
+        int lz4Length = new Lz4Decompressor().decompress(
+            input, offset, length, output, 0, output.length);
+        if (lz4Length != output.length) {
+          throw new TException("Decompressed " + lz4Length + " bytes; expected " + output.length);
+        }
+        break;
+      case ZLIB:
+        Inflater inflater = new Inflater();
+        try {
+          inflater.setInput(input, offset, length);
+          int zlibLength = inflater.inflate(output);
+          if (zlibLength != output.length || !inflater.finished()) {
+            throw new TException(
+                "Decompressed " + zlibLength + " bytes; expected " + output.length);
+          }
+        } finally {
+          inflater.end();
+        }
+        break;
+      default:
+        throw new AssertionError("Unexpected codec " + codec);
+      }
+    } catch (DataFormatException | RuntimeException e) {
+      throw new TException("Failed to decompress the row set", e);
+    }
+  }
+}
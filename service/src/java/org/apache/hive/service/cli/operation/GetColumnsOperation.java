@@ -141,6 +141,21 @@ public void runInternal() throws HiveSQLException {
     setState(OperationState.RUNNING);
     LOG.info("Fetching column metadata");
     try {
+      String cmdStr = "catalog : " + catalogName + ", schemaPattern : " + schemaName
+          + ", tablePattern : " + tableName;
+      MetadataOperationCache.Key cacheKey =
+          getCacheKey(catalogName, schemaName, tableName, columnName);
+      MetadataOperationCache.Entry cached = getCachedEntry(cacheKey);
+      if (cached != null) {
+        if (isAuthV2Enabled()) {
+          authorizeMetaGets(HiveOperationType.GET_COLUMNS, cached.getPrivObjs(), cmdStr);
+        }
+        addCachedRows(rowSet, cached, 1, 2);
+        setState(OperationState.FINISHED);
+        LOG.info("Fetching column metadata has been successfully finished from the cache");
+        return;
+      }
+
       IMetaStoreClient metastoreClient = getParentSession().getMetaStoreClient();
       String schemaPattern = convertSchemaPattern(schemaName);
       String tablePattern = convertIdentifierPattern(tableName, true);
@@ -160,14 +175,13 @@ public void runInternal() throws HiveSQLException {
         db2Tabs.put(dbName, tableNames);
       }
 
+      List<HivePrivilegeObject> privObjs = getPrivObjs(db2Tabs);
       if (isAuthV2Enabled()) {
-        List<HivePrivilegeObject> privObjs = getPrivObjs(db2Tabs);
-        String cmdStr = "catalog : " + catalogName + ", schemaPattern : " + schemaName
-            + ", tablePattern : " + tableName;
         authorizeMetaGets(HiveOperationType.GET_COLUMNS, privObjs, cmdStr);
       }
 
       int maxBatchSize = SessionState.get().getConf().getIntVar(ConfVars.METASTORE_BATCH_RETRIEVE_MAX);
+      List<Object[]> rows = new ArrayList<>();
       for (Entry<String, List<String>> dbTabs : db2Tabs.entrySet()) {
         String dbName = dbTabs.getKey();
         List<String> tableNames = dbTabs.getValue();
@@ -212,6 +226,7 @@ public void runInternal() throws HiveSQLException {
                 "NO", // IS_AUTO_INCREMENT
             };
             rowSet.addRow(rowData);
+            rows.add(rowData);
 
             if (LOG.isDebugEnabled()) {
               String debugMessage = getDebugMessage("column", RESULT_SET_SCHEMA);
@@ -223,6 +238,7 @@ public void runInternal() throws HiveSQLException {
       if (LOG.isDebugEnabled() && rowSet.numRows() == 0) {
         LOG.debug("No column metadata has been returned.");
       }
+      cacheEntry(cacheKey, new MetadataOperationCache.Entry(rows, dbNames, privObjs));
       setState(OperationState.FINISHED);
       LOG.info("Fetching column metadata has been successfully finished");
     } catch (Exception e) {
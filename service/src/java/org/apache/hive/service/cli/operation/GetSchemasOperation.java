@@ -20,9 +20,12 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.hadoop.hive.metastore.IMetaStoreClient;
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HiveOperationType;
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject;
 import org.apache.hive.service.cli.FetchOrientation;
 import org.apache.hive.service.cli.HiveSQLException;
 import org.apache.hive.service.cli.OperationState;
@@ -70,10 +73,22 @@ public void runInternal() throws HiveSQLException {
       authorizeMetaGets(HiveOperationType.GET_SCHEMAS, null, cmdStr);
     }
     try {
+      MetadataOperationCache.Key cacheKey = getCacheKey(catalogName, schemaName);
+      MetadataOperationCache.Entry cached = getCachedEntry(cacheKey);
+      if (cached != null) {
+        addCachedRows(rowSet, cached, 0, -1);
+        setState(OperationState.FINISHED);
+        LOG.info("Fetching schema metadata has been successfully finished from the cache");
+        return;
+      }
+
       IMetaStoreClient metastoreClient = getParentSession().getMetaStoreClient();
       String schemaPattern = convertSchemaPattern(schemaName);
+      List<Object[]> rows = new ArrayList<>();
       for (String dbName : metastoreClient.getDatabases(schemaPattern)) {
-        rowSet.addRow(new Object[] {dbName, DEFAULT_HIVE_CATALOG});
+        Object[] rowData = new Object[] {dbName, DEFAULT_HIVE_CATALOG};
+        rowSet.addRow(rowData);
+        rows.add(rowData);
         if (LOG.isDebugEnabled()) {
           String debugMessage = getDebugMessage("schema", RESULT_SET_SCHEMA);
           LOG.debug(debugMessage, dbName, DEFAULT_HIVE_CATALOG);
@@ -82,6 +97,9 @@ public void runInternal() throws HiveSQLException {
       if (LOG.isDebugEnabled() && rowSet.numRows() == 0) {
         LOG.debug("No schema metadata has been returned.");
       }
+      // Only the database events change the databases, and they invalidate the whole cache.
+      cacheEntry(cacheKey, new MetadataOperationCache.Entry(rows,
+          Collections.<String>emptySet(), Collections.<HivePrivilegeObject>emptyList()));
       setState(OperationState.FINISHED);
       LOG.info("Fetching schema metadata has been successfully finished");
     } catch (Exception e) {
@@ -103,28 +103,44 @@ public void runInternal() throws HiveSQLException {
     setState(OperationState.RUNNING);
     LOG.info("Fetching table metadata");
     try {
+      String cmdStr = "catalog : " + catalogName + ", schemaPattern : " + schemaName;
+      MetadataOperationCache.Key cacheKey = getCacheKey(catalogName, schemaName, tableName,
+          tableTypeList, tableTypeMapping.getClass().getName());
+      MetadataOperationCache.Entry cached = getCachedEntry(cacheKey);
+      if (cached != null) {
+        if (isAuthV2Enabled()) {
+          authorizeMetaGets(HiveOperationType.GET_TABLES, cached.getPrivObjs(), cmdStr);
+        }
+        addCachedRows(rowSet, cached, 1, 2);
+        setState(OperationState.FINISHED);
+        LOG.info("Fetching table metadata has been successfully finished from the cache");
+        return;
+      }
+
       IMetaStoreClient metastoreClient = getParentSession().getMetaStoreClient();
       String schemaPattern = convertSchemaPattern(schemaName);
       List<String> matchingDbs = metastoreClient.getDatabases(schemaPattern);
+      List<HivePrivilegeObject> privObjs = HivePrivilegeObjectUtils.getHivePrivDbObjects(matchingDbs);
       if(isAuthV2Enabled()){
-        List<HivePrivilegeObject> privObjs = HivePrivilegeObjectUtils.getHivePrivDbObjects(matchingDbs);
-        String cmdStr = "catalog : " + catalogName + ", schemaPattern : " + schemaName;
         authorizeMetaGets(HiveOperationType.GET_TABLES, privObjs, cmdStr);
       }
 
       String tablePattern = convertIdentifierPattern(tableName, true);
-      for (String dbName : metastoreClient.getDatabases(schemaPattern)) {
+      List<Object[]> rows = new ArrayList<>();
+      for (String dbName : matchingDbs) {
         for (TableMeta tableMeta :
                 metastoreClient.getTableMeta(dbName, tablePattern, tableTypeList)) {
           String tableType = tableTypeMapping.mapToClientType(tableMeta.getTableType());
-          rowSet.addRow(new Object[]{
+          Object[] rowData = new Object[]{
                   DEFAULT_HIVE_CATALOG,
                   tableMeta.getDbName(),
                   tableMeta.getTableName(),
                   tableType,
                   tableMeta.getComments(),
                   null, null, null, null, null
-          });
+          };
+          rowSet.addRow(rowData);
+          rows.add(rowData);
 
           if (LOG.isDebugEnabled()) {
             String debugMessage = getDebugMessage("table", RESULT_SET_SCHEMA);
@@ -136,6 +152,7 @@ public void runInternal() throws HiveSQLException {
           LOG.debug("No table metadata has been returned.");
         }
       }
+      cacheEntry(cacheKey, new MetadataOperationCache.Entry(rows, matchingDbs, privObjs));
       setState(OperationState.FINISHED);
       LOG.info("Fetching table metadata has been successfully finished");
     } catch (Exception e) {
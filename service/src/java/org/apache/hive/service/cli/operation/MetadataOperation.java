@@ -18,7 +18,12 @@
 
 package org.apache.hive.service.cli.operation;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HiveAccessControlException;
@@ -26,11 +31,13 @@
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HiveAuthzPluginException;
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HiveOperationType;
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject;
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject.HivePrivilegeObjectType;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hive.service.cli.ColumnDescriptor;
 import org.apache.hive.service.cli.HiveSQLException;
 import org.apache.hive.service.cli.OperationState;
 import org.apache.hive.service.cli.OperationType;
+import org.apache.hive.service.cli.RowSet;
 import org.apache.hive.service.cli.TableSchema;
 import org.apache.hive.service.cli.session.HiveSession;
 
@@ -44,6 +51,9 @@ public abstract class MetadataOperation extends Operation {
   protected static TableSchema RESULT_SET_SCHEMA;
   private static final char SEARCH_STRING_ESCAPE = '\\';
 
+  /** The generation of the metadata operation cache when it was looked up, see cacheEntry. */
+  private long cacheGeneration;
+
   protected MetadataOperation(HiveSession parentSession, OperationType opType) {
     super(parentSession, opType);
     setHasResultSet(true);
@@ -135,18 +145,104 @@ protected void authorizeMetaGets(HiveOperationType opType, List<HivePrivilegeObj
   protected void authorizeMetaGets(HiveOperationType opType, List<HivePrivilegeObject> inpObjs,
       String cmdString) throws HiveSQLException {
     SessionState ss = SessionState.get();
-    HiveAuthzContext.Builder ctxBuilder = new HiveAuthzContext.Builder();
-    ctxBuilder.setUserIpAddress(ss.getUserIpAddress());
-    ctxBuilder.setForwardedAddresses(ss.getForwardedAddresses());
-    ctxBuilder.setCommandString(cmdString);
     try {
       ss.getAuthorizerV2().checkPrivileges(opType, inpObjs, null,
-          ctxBuilder.build());
+          buildAuthzContext(ss, cmdString));
     } catch (HiveAuthzPluginException | HiveAccessControlException e) {
       throw new HiveSQLException(e.getMessage(), e);
     }
   }
 
+  private static HiveAuthzContext buildAuthzContext(SessionState ss, String cmdString) {
+    HiveAuthzContext.Builder ctxBuilder = new HiveAuthzContext.Builder();
+    ctxBuilder.setUserIpAddress(ss.getUserIpAddress());
+    ctxBuilder.setForwardedAddresses(ss.getForwardedAddresses());
+    ctxBuilder.setCommandString(cmdString);
+    return ctxBuilder.build();
+  }
+
+  /**
+   * @return the key of this call in the metadata operation cache, or null if the cache is
+   * disabled.
+   */
+  protected MetadataOperationCache.Key getCacheKey(Object... params) {
+    if (MetadataOperationCache.getInstance() == null) {
+      return null;
+    }
+    return new MetadataOperationCache.Key(getType(), getParentSession().getUserName(), params);
+  }
+
+  /**
+   * Looks the call up in the metadata operation cache; on a miss, call it before reading the
+   * metastore, so that cacheEntry drops the rows if the cache is invalidated in the meantime.
+   */
+  protected MetadataOperationCache.Entry getCachedEntry(MetadataOperationCache.Key key) {
+    MetadataOperationCache cache = MetadataOperationCache.getInstance();
+    if (key == null || cache == null) {
+      return null;
+    }
+    cacheGeneration = cache.getGeneration();
+    return cache.get(key);
+  }
+
+  protected void cacheEntry(MetadataOperationCache.Key key, MetadataOperationCache.Entry entry) {
+    MetadataOperationCache cache = MetadataOperationCache.getInstance();
+    if (key != null && cache != null && !cache.put(key, entry, cacheGeneration)) {
+      LOG.debug("The metadata operation cache was invalidated during {}; not caching it", key);
+    }
+  }
+
+  /**
+   * Adds the cached rows to the row set. With the V2 authorization, the rows are filtered by
+   * {@link org.apache.hadoop.hive.ql.security.authorization.plugin.HiveAuthorizer#filterListCmdObjects}
+   * first, as the metastore client would on a cache miss.
+   * @param dbIx the index of the database name in the rows
+   * @param tableIx the index of the table name in the rows, or -1 for the database rows
+   */
+  protected void addCachedRows(RowSet rowSet, MetadataOperationCache.Entry entry, int dbIx,
+      int tableIx) throws HiveSQLException {
+    Set<String> allowed = null;
+    if (isAuthV2Enabled()) {
+      Map<String, HivePrivilegeObject> objs = new LinkedHashMap<>();
+      for (Object[] row : entry.getRows()) {
+        String dbName = (String) row[dbIx];
+        String tableName = (tableIx < 0) ? null : (String) row[tableIx];
+        String objKey = getObjectKey(dbName, tableName);
+        if (!objs.containsKey(objKey)) {
+          objs.put(objKey, new HivePrivilegeObject(tableName == null
+              ? HivePrivilegeObjectType.DATABASE : HivePrivilegeObjectType.TABLE_OR_VIEW,
+              dbName, tableName));
+        }
+      }
+      SessionState ss = SessionState.get();
+      List<HivePrivilegeObject> filtered;
+      try {
+        filtered = ss.getAuthorizerV2().filterListCmdObjects(
+            new ArrayList<>(objs.values()), buildAuthzContext(ss, null));
+      } catch (HiveAuthzPluginException | HiveAccessControlException e) {
+        throw new HiveSQLException(e.getMessage(), e);
+      }
+      allowed = new HashSet<>();
+      if (filtered != null) {
+        for (HivePrivilegeObject obj : filtered) {
+          allowed.add(getObjectKey(obj.getDbname(),
+              (tableIx < 0) ? null : obj.getObjectName()));
+        }
+      }
+    }
+    for (Object[] row : entry.getRows()) {
+      if (allowed == null || allowed.contains(getObjectKey(
+          (String) row[dbIx], (tableIx < 0) ? null : (String) row[tableIx]))) {
+        rowSet.addRow(row);
+      }
+    }
+  }
+
+  private static String getObjectKey(String dbName, String tableName) {
+    String key = String.valueOf(dbName).toLowerCase();
+    return (tableName == null) ? key : key + "." + tableName.toLowerCase();
+  }
+
   @Override
   public void cancel(OperationState stateAfterCancel) throws HiveSQLException {
     throw new UnsupportedOperationException("MetadataOperation.cancel()");
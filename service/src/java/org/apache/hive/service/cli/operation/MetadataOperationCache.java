@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.service.cli.operation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.common.metrics.common.Metrics;
+import org.apache.hadoop.hive.common.metrics.common.MetricsConstant;
+import org.apache.hadoop.hive.common.metrics.common.MetricsFactory;
+import org.apache.hadoop.hive.common.metrics.common.MetricsVariable;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.messaging.AlterTableMessage;
+import org.apache.hadoop.hive.metastore.messaging.MessageBuilder;
+import org.apache.hadoop.hive.metastore.messaging.MessageFactory;
+import org.apache.hadoop.hive.ql.metadata.events.EventConsumer;
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject;
+import org.apache.hive.service.cli.OperationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Cache of the results of the GetSchemas, GetTables and GetColumns operations, which BI tools call
+ * over and over again. The entries expire after hive.server2.metadata.cache.ttl, and are
+ * invalidated by the metastore notification events (see {@link InvalidationEventConsumer}).
+ *
+ * The rows are cached per user, since the metastore client filter hook filters them per user.
+ * The authorization checks of the operations are still done for every call, and with the V2
+ * authorization the cached rows are filtered again, so a revoked privilege is honored right away.
+ */
+public final class MetadataOperationCache {
+  private static final Logger LOG = LoggerFactory.getLogger(MetadataOperationCache.class);
+
+  /** The operation, the user and the arguments of a call. */
+  public static final class Key {
+    private final OperationType opType;
+    private final String userName;
+    private final List<Object> params;
+
+    public Key(OperationType opType, String userName, Object... params) {
+      this.opType = opType;
+      this.userName = userName;
+      this.params = Arrays.asList(params);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return opType == other.opType && Objects.equals(userName, other.userName)
+          && params.equals(other.params);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(opType, userName, params);
+    }
+
+    @Override
+    public String toString() {
+      return opType + " " + params + " for " + userName;
+    }
+  }
+
+  /** The rows of a call, with the databases and the privilege objects they came from. */
+  public static final class Entry {
+    private final List<Object[]> rows;
+    private final Set<String> dbNames;
+    private final List<HivePrivilegeObject> privObjs;
+
+    public Entry(List<Object[]> rows, Iterable<String> dbNames,
+        List<HivePrivilegeObject> privObjs) {
+      this.rows = Collections.unmodifiableList(rows);
+      Set<String> lowerDbNames = new HashSet<>();
+      for (String dbName : dbNames) {
+        lowerDbNames.add(dbName.toLowerCase());
+      }
+      this.dbNames = lowerDbNames;
+      this.privObjs = privObjs;
+    }
+
+    public List<Object[]> getRows() {
+      return rows;
+    }
+
+    public List<HivePrivilegeObject> getPrivObjs() {
+      return privObjs;
+    }
+  }
+
+  private static final AtomicBoolean inited = new AtomicBoolean(false);
+  private static MetadataOperationCache instance;
+
+  private final Cache<Key, Entry> cache;
+  /**
+   * Incremented by every invalidation, under the lock; an entry read from the metastore before an
+   * invalidation may be stale, so it is not cached.
+   */
+  private long generation = 0;
+
+  private MetadataOperationCache(long ttlMs, long maxRows) {
+    cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+        // Each segment gets a share of the maximum weight; keep one, so that the large results of
+        // GetColumns fit.
+        .concurrencyLevel(1)
+        .maximumWeight(maxRows)
+        .weigher(new Weigher<Key, Entry>() {
+          @Override
+          public int weigh(Key key, Entry entry) {
+            return Math.max(entry.rows.size(), 1);
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Creates the cache if hive.server2.metadata.cache.ttl is positive, and adds its event consumer
+   * to hive.notification.event.consumers; call before NotificationEventPoll.initialize.
+   */
+  public static void initialize(HiveConf conf) {
+    long ttlMs = HiveConf.getTimeVar(
+        conf, HiveConf.ConfVars.HIVE_SERVER2_METADATA_CACHE_TTL, TimeUnit.MILLISECONDS);
+    if (ttlMs <= 0 || inited.getAndSet(true)) {
+      return;
+    }
+    long maxRows = HiveConf.getLongVar(conf, HiveConf.ConfVars.HIVE_SERVER2_METADATA_CACHE_MAX_ROWS);
+    instance = new MetadataOperationCache(ttlMs, maxRows);
+
+    String consumersVar = HiveConf.ConfVars.HIVE_NOTFICATION_EVENT_CONSUMERS.varname;
+    Set<String> consumers = new LinkedHashSet<>(conf.getStringCollection(consumersVar));
+    if (consumers.add(InvalidationEventConsumer.class.getName())) {
+      conf.setStrings(consumersVar, consumers.toArray(new String[consumers.size()]));
+    }
+
+    Metrics metrics = MetricsFactory.getInstance();
+    if (metrics != null) {
+      final MetadataOperationCache cache = instance;
+      metrics.addGauge(MetricsConstant.HS2_METADATA_CACHE_ENTRIES, new MetricsVariable<Long>() {
+        @Override
+        public Long getValue() {
+          return cache.cache.size();
+        }
+      });
+    }
+    LOG.info("Metadata operation cache: ttl {}ms, maxRows {}", ttlMs, maxRows);
+  }
+
+  /** @return the cache, or null if it is disabled. */
+  public static MetadataOperationCache getInstance() {
+    return instance;
+  }
+
+  @VisibleForTesting
+  public static void cleanupInstance() {
+    if (inited.get()) {
+      instance.invalidateAll();
+      instance = null;
+      inited.set(false);
+    }
+  }
+
+  public Entry get(Key key) {
+    Entry entry = cache.getIfPresent(key);
+    incrementMetric(entry != null
+        ? MetricsConstant.HS2_METADATA_CACHE_HITS : MetricsConstant.HS2_METADATA_CACHE_MISSES);
+    return entry;
+  }
+
+  /** @return the generation to pass to {@link #put}; get it before reading the metastore. */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Caches the entry, unless the cache was invalidated since the generation was taken.
+   * @return whether the entry was cached
+   */
+  public synchronized boolean put(Key key, Entry entry, long generation) {
+    if (generation != this.generation) {
+      return false;
+    }
+    cache.put(key, entry);
+    return true;
+  }
+
+  /** Invalidates the entries with rows from the database. */
+  public synchronized void invalidateDatabase(String dbName) {
+    ++generation;
+    final String lowerDbName = dbName.toLowerCase();
+    cache.asMap().values().removeIf(entry -> entry.dbNames.contains(lowerDbName));
+  }
+
+  public synchronized void invalidateAll() {
+    ++generation;
+    cache.invalidateAll();
+  }
+
+  @VisibleForTesting
+  long size() {
+    cache.cleanUp();
+    return cache.size();
+  }
+
+  private static void incrementMetric(String name) {
+    Metrics metrics = MetricsFactory.getInstance();
+    if (metrics != null) {
+      metrics.incrementCounter(name);
+    }
+  }
+
+  /**
+   * Invalidates the cache entries on the metastore changes. A new or dropped database changes the
+   * results of any schema pattern, so the database events invalidate the whole cache; the table
+   * and constraint events only invalidate the entries with rows from the database of the table.
+   */
+  public static class InvalidationEventConsumer implements EventConsumer {
+    Configuration conf;
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+    }
+
+    @Override
+    public void accept(NotificationEvent event) {
+      MetadataOperationCache cache = MetadataOperationCache.getInstance();
+      if (cache == null) {
+        return;
+      }
+      switch (event.getEventType()) {
+      case MessageBuilder.CREATE_DATABASE_EVENT:
+      case MessageBuilder.ALTER_DATABASE_EVENT:
+      case MessageBuilder.DROP_DATABASE_EVENT:
+      case MessageBuilder.CREATE_CATALOG_EVENT:
+      case MessageBuilder.ALTER_CATALOG_EVENT:
+      case MessageBuilder.DROP_CATALOG_EVENT:
+        LOG.debug("Handling event {}; invalidating the metadata operation cache",
+            event.getEventType());
+        cache.invalidateAll();
+        break;
+      case MessageBuilder.ALTER_TABLE_EVENT:
+        // The event is on the database of the altered table; a rename across databases also
+        // changes the rows of the database the table was moved from.
+        String beforeDbName = getAlterTableBeforeDbName(event);
+        if (beforeDbName == null) {
+          cache.invalidateAll();
+          break;
+        }
+        if (event.getDbName() != null && !beforeDbName.equalsIgnoreCase(event.getDbName())) {
+          LOG.debug("Handling event {} on database {}", event.getEventType(), beforeDbName);
+          cache.invalidateDatabase(beforeDbName);
+        }
+        invalidateDatabase(cache, event);
+        break;
+      case MessageBuilder.CREATE_TABLE_EVENT:
+      case MessageBuilder.DROP_TABLE_EVENT:
+      case MessageBuilder.ADD_PRIMARYKEY_EVENT:
+      case MessageBuilder.ADD_FOREIGNKEY_EVENT:
+      case MessageBuilder.ADD_UNIQUECONSTRAINT_EVENT:
+      case MessageBuilder.ADD_NOTNULLCONSTRAINT_EVENT:
+      case MessageBuilder.DROP_CONSTRAINT_EVENT:
+        invalidateDatabase(cache, event);
+        break;
+      default:
+        break;
+      }
+    }
+
+    private static void invalidateDatabase(MetadataOperationCache cache, NotificationEvent event) {
+      if (event.getDbName() == null) {
+        LOG.info("Possibly malformed notification event, missing db name: {}", event);
+        cache.invalidateAll();
+      } else {
+        LOG.debug("Handling event {} on database {}", event.getEventType(), event.getDbName());
+        cache.invalidateDatabase(event.getDbName());
+      }
+    }
+
+    private static String getAlterTableBeforeDbName(NotificationEvent event) {
+      try {
+        AlterTableMessage message = MessageFactory.getInstance(event.getMessageFormat())
+            .getDeserializer().getAlterTableMessage(event.getMessage());
+        return message.getTableObjBefore().getDbName();
+      } catch (Exception e) {
+        LOG.info("Could not read the notification event {}; invalidating the metadata operation"
+            + " cache", event, e);
+        return null;
+      }
+    }
+  }
+}
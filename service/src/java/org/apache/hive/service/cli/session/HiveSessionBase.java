@@ -23,6 +23,7 @@
 
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hive.service.cli.RowSetCompression;
 import org.apache.hive.service.cli.SessionHandle;
 import org.apache.hive.service.cli.operation.OperationManager;
 import org.apache.hive.service.rpc.thrift.TProtocolVersion;
@@ -77,6 +78,18 @@ public interface HiveSessionBase {
 
   SessionState getSessionState();
 
+  /**
+   * @return the compression of the query results, as asked for by the client when opening the
+   * session
+   */
+  RowSetCompression.Codec getResultCompression();
+
+  /**
+   * @return whether the query results are written as Arrow streams, as asked for by the client
+   * when opening the session
+   */
+  boolean isArrowResultFormat();
+
   String getUserName();
 
   void setUserName(String userName);
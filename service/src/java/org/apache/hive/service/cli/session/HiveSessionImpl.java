@@ -60,6 +60,7 @@
 import org.apache.hive.service.cli.HiveSQLException;
 import org.apache.hive.service.cli.OperationHandle;
 import org.apache.hive.service.cli.RowSet;
+import org.apache.hive.service.cli.RowSetCompression;
 import org.apache.hive.service.cli.SessionHandle;
 import org.apache.hive.service.cli.TableSchema;
 import org.apache.hive.service.cli.operation.ExecuteStatementOperation;
@@ -103,6 +104,11 @@ public class HiveSessionImpl implements HiveSession {
   private SessionState sessionState;
   private String ipAddress;
   private List<String> forwardedAddresses;
+  // The compression of the results, if the client asked for it when opening the session
+  private RowSetCompression.Codec resultCompression = RowSetCompression.Codec.NONE;
+  // Whether the results are written as Arrow streams, if the client asked for it when opening
+  // the session
+  private boolean isArrowResultFormat = false;
 
   private static final String FETCH_WORK_SERDE_CLASS =
       "org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe";
@@ -196,6 +202,16 @@ public void open(Map<String, String> sessionConfMap) throws HiveSQLException {
 
     if (sessionConfMap != null) {
       configureSession(sessionConfMap);
+      if (isSetByClient(sessionConfMap, ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION)) {
+        resultCompression = RowSetCompression.Codec.fromString(
+            sessionConf.getVar(ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION));
+      }
+      if (isSetByClient(sessionConfMap, ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_FORMAT)) {
+        isArrowResultFormat = (8 <= getProtocolVersion().getValue()) && "arrow".equalsIgnoreCase(
+            sessionConf.getVar(ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_FORMAT));
+        sessionState.setIsUsingArrowResultFormat(isArrowResultFormat);
+        sessionState.setIsUsingThriftJDBCBinarySerDe(updateIsUsingThriftJDBCBinarySerDe());
+      }
     }
     lastAccessTime = System.currentTimeMillis();
   }
@@ -324,8 +340,18 @@ private void configureSession(Map<String, String> sessionConfMap) throws HiveSQL
     }
   }
 
+  /**
+   * The server side value of the variables that change the encoding of the results does not
+   * apply to the sessions, since the older clients cannot read them; only the clients that set
+   * them when opening the session get them.
+   */
+  private static boolean isSetByClient(Map<String, String> sessionConfMap, ConfVars var) {
+    return sessionConfMap.containsKey("set:hiveconf:" + var.varname)
+        || sessionConfMap.containsKey(var.varname);
+  }
+
   private boolean updateIsUsingThriftJDBCBinarySerDe() {
-	return (8 <= getProtocolVersion().getValue())
+	return !isArrowResultFormat && (8 <= getProtocolVersion().getValue())
       && sessionConf.getBoolVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_SERIALIZE_IN_TASKS);
   }
 
@@ -842,6 +868,16 @@ private void cleanupSessionLogDir() {
     }
   }
 
+  @Override
+  public RowSetCompression.Codec getResultCompression() {
+    return resultCompression;
+  }
+
+  @Override
+  public boolean isArrowResultFormat() {
+    return isArrowResultFormat;
+  }
+
   @Override
   public SessionState getSessionState() {
     return sessionState;
@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.service.cli.thrift;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TSaslServerTransport;
+import org.apache.thrift.transport.TServerSocket;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A Thrift server for the binary transport that, unlike TThreadPoolServer, does not keep a worker
+ * thread per connection. Between requests, idle connections are parked on a selector, and a
+ * worker thread is only used while a request is read and processed; so, the requests of one
+ * connection can run on different threads, like they do in the HTTP transport mode.
+ * The wire protocol is the same, so SASL and all the existing clients work as before. The server
+ * relies on the clients waiting for the response before sending the next request, like all the
+ * synchronous Thrift clients do. SSL server sockets cannot be used, since they have no channel.
+ */
+public class TThreadPoolSelectorServer extends TServer {
+  private static final Logger LOG = LoggerFactory.getLogger(TThreadPoolSelectorServer.class);
+  private static final long STOP_TIMEOUT_SEC = 60;
+  // TSaslTransport, the package private base of TSaslServerTransport, keeps the rest of the frame
+  // it has read in a private buffer, and does not report it through getBytesRemainingInBuffer().
+  // No public API tells how much of an unwrapped frame is left, so the field is read directly;
+  // TestTThreadPoolSelectorServer fails if a Thrift upgrade removes or changes it.
+  @VisibleForTesting
+  static final Field SASL_READ_BUFFER = getSaslReadBuffer();
+
+  private static Field getSaslReadBuffer() {
+    try {
+      Field field = TSaslServerTransport.class.getSuperclass().getDeclaredField("readBuffer");
+      field.setAccessible(true);
+      return field;
+    } catch (NoSuchFieldException | RuntimeException e) {
+      LOG.warn("Cannot find the SASL read buffer; pipelined SASL requests may wait", e);
+      return null;
+    }
+  }
+
+  public static class Args extends AbstractServerArgs<Args> {
+    private ExecutorService executorService;
+
+    public Args(ChannelServerSocket transport) {
+      super(transport);
+    }
+
+    /**
+     * @param executorService the worker pool; should queue the requests when all the workers are
+     *                        busy, since the parked connections cannot wait for a free worker.
+     */
+    public Args executorService(ExecutorService executorService) {
+      this.executorService = executorService;
+      return this;
+    }
+  }
+
+  /**
+   * A server socket backed by a channel, so that the accepted connections can be parked.
+   */
+  public static class ChannelServerSocket extends TServerSocket {
+    public ChannelServerSocket(InetSocketAddress address) throws TTransportException {
+      super(bind(address));
+    }
+
+    private static ServerSocket bind(InetSocketAddress address) throws TTransportException {
+      try {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.socket().setReuseAddress(true);
+        channel.socket().bind(address);
+        return channel.socket();
+      } catch (IOException e) {
+        throw new TTransportException("Could not create ServerSocket on address " + address, e);
+      }
+    }
+
+    @Override
+    protected ChannelSocket acceptImpl() throws TTransportException {
+      ServerSocket serverSocket = getServerSocket();
+      if (serverSocket == null) {
+        throw new TTransportException(TTransportException.NOT_OPEN, "No underlying server socket.");
+      }
+      try {
+        return new ChannelSocket(serverSocket.accept());
+      } catch (IOException e) {
+        throw new TTransportException(e);
+      }
+    }
+  }
+
+  static class ChannelSocket extends TSocket {
+    ChannelSocket(Socket socket) throws TTransportException {
+      super(socket);
+    }
+
+    SocketChannel getChannel() {
+      return getSocket().getChannel();
+    }
+
+    /** @return whether the socket input stream has read more data than it has returned. */
+    boolean hasBufferedInput() throws IOException {
+      // The channel's own stream always returns 0, so this is the stream buffer only.
+      return inputStream_ != null && inputStream_.available() > 0;
+    }
+  }
+
+  private final ExecutorService executorService;
+  private final Selector selector;
+  private final Queue<Connection> toPark = new ConcurrentLinkedQueue<>();
+
+  public TThreadPoolSelectorServer(Args args) throws IOException {
+    super(args);
+    this.executorService = args.executorService;
+    this.selector = Selector.open();
+  }
+
+  @Override
+  public void serve() {
+    try {
+      serverTransport_.listen();
+    } catch (TTransportException e) {
+      LOG.error("Error occurred during listening.", e);
+      return;
+    }
+    if (eventHandler_ != null) {
+      eventHandler_.preServe();
+    }
+    Thread selectorThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        runSelector();
+      }
+    }, "HiveServer2-Selector");
+    selectorThread.setDaemon(true);
+    selectorThread.start();
+
+    stopped_ = false;
+    setServing(true);
+    while (!stopped_) {
+      ChannelSocket client = null;
+      try {
+        client = (ChannelSocket) serverTransport_.accept();
+        executorService.execute(new Connection(client));
+      } catch (TTransportException e) {
+        if (!stopped_) {
+          LOG.warn("Transport error occurred during acceptance of message.", e);
+        }
+      } catch (RejectedExecutionException e) {
+        LOG.warn("Worker pool rejected a new connection", e);
+        client.close();
+      }
+    }
+
+    executorService.shutdown();
+    try {
+      executorService.awaitTermination(STOP_TIMEOUT_SEC, TimeUnit.SECONDS);
+      selector.wakeup();
+      selectorThread.join(TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_SEC));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    setServing(false);
+  }
+
+  @Override
+  public void stop() {
+    stopped_ = true;
+    serverTransport_.interrupt();
+    selector.wakeup();
+  }
+
+  private void runSelector() {
+    try {
+      while (!stopped_) {
+        selector.select();
+        Connection connection;
+        while ((connection = toPark.poll()) != null) {
+          try {
+            connection.client.getChannel().register(selector, SelectionKey.OP_READ, connection);
+          } catch (IOException e) {
+            connection.close();
+          }
+        }
+        if (selector.selectedKeys().isEmpty()) continue;
+        List<Connection> ready = new ArrayList<>(selector.selectedKeys().size());
+        for (SelectionKey key : selector.selectedKeys()) {
+          key.cancel();
+          ready.add((Connection) key.attachment());
+        }
+        selector.selectedKeys().clear();
+        // Deregister the cancelled keys, so that the channels can be made blocking again.
+        selector.selectNow();
+        for (Connection readyConnection : ready) {
+          readyConnection.unpark();
+        }
+      }
+    } catch (IOException e) {
+      LOG.error("Selector failed; closing the parked connections", e);
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        ((Connection) key.attachment()).close();
+      }
+      Connection connection;
+      while ((connection = toPark.poll()) != null) {
+        connection.close();
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close the selector", e);
+      }
+    }
+  }
+
+  /**
+   * The state of a single client connection. Only one thread at a time - a worker, or the selector
+   * thread while the connection is parked - uses the connection.
+   */
+  private final class Connection implements Runnable {
+    private final ChannelSocket client;
+    private TProcessor processor;
+    private TTransport inputTransport, outputTransport;
+    private TProtocol inputProtocol, outputProtocol;
+    private ServerContext context;
+    private boolean isOpen = false;
+
+    Connection(ChannelSocket client) {
+      this.client = client;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (!isOpen) {
+          open();
+        } else {
+          do {
+            if (eventHandler_ != null) {
+              eventHandler_.processContext(context, inputTransport, outputTransport);
+            }
+            if (stopped_ || !processor.process(inputProtocol, outputProtocol)) {
+              close();
+              return;
+            }
+          } while (hasBufferedInput());
+        }
+        park();
+      } catch (TTransportException e) {
+        // Assume the client has gone away.
+        close();
+      } catch (TException e) {
+        LOG.error("Thrift error occurred during processing of message.", e);
+        close();
+      } catch (Exception e) {
+        LOG.error("Error occurred during processing of message.", e);
+        close();
+      }
+    }
+
+    /** Same as what TThreadPoolServer does for a new connection, e.g. the SASL handshake. */
+    private void open() throws TException {
+      processor = processorFactory_.getProcessor(client);
+      inputTransport = inputTransportFactory_.getTransport(client);
+      outputTransport = outputTransportFactory_.getTransport(client);
+      inputProtocol = inputProtocolFactory_.getProtocol(inputTransport);
+      outputProtocol = outputProtocolFactory_.getProtocol(outputTransport);
+      if (eventHandler_ != null) {
+        context = eventHandler_.createContext(inputProtocol, outputProtocol);
+      }
+      isOpen = true;
+    }
+
+    /**
+     * @return whether the next request has already been read, by the socket stream or by the
+     *         transport, e.g. the rest of a SASL frame; the selector would not see it.
+     */
+    private boolean hasBufferedInput() throws IOException {
+      if (client.hasBufferedInput() || inputTransport.getBytesRemainingInBuffer() > 0) {
+        return true;
+      }
+      if (inputTransport instanceof TSaslServerTransport && SASL_READ_BUFFER != null) {
+        try {
+          TMemoryInputTransport readBuffer =
+              (TMemoryInputTransport) SASL_READ_BUFFER.get(inputTransport);
+          return readBuffer != null && readBuffer.getBytesRemainingInBuffer() > 0;
+        } catch (IllegalAccessException e) {
+          throw new IOException(e);
+        }
+      }
+      return false;
+    }
+
+    private void park() throws IOException {
+      if (stopped_) {
+        close();
+        return;
+      }
+      client.getChannel().configureBlocking(false);
+      toPark.add(this);
+      selector.wakeup();
+    }
+
+    private void unpark() {
+      try {
+        client.getChannel().configureBlocking(true);
+        executorService.execute(this);
+      } catch (IOException | RejectedExecutionException e) {
+        LOG.warn("Failed to resume a parked connection", e);
+        close();
+      }
+    }
+
+    private void close() {
+      if (isOpen && eventHandler_ != null) {
+        eventHandler_.deleteContext(context, inputProtocol, outputProtocol);
+      }
+      isOpen = false;
+      if (inputTransport != null) {
+        inputTransport.close();
+      }
+      if (outputTransport != null) {
+        outputTransport.close();
+      }
+      client.close();
+    }
+  }
+}
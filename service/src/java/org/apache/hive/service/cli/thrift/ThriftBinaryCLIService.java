@@ -18,9 +18,11 @@
 
 package org.apache.hive.service.cli.thrift;
 
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -61,11 +63,28 @@ public ThriftBinaryCLIService(CLIService cliService, Runnable oomHook) {
   @Override
   protected void initServer() {
     try {
+      boolean useSelector = "selector".equalsIgnoreCase(
+          hiveConf.getVar(ConfVars.HIVE_SERVER2_THRIFT_BINARY_SERVER));
+      if (useSelector && hiveConf.getBoolVar(ConfVars.HIVE_SERVER2_USE_SSL)) {
+        LOG.warn("The selector server is not supported with SSL; using the thread pool server");
+        useSelector = false;
+      }
       // Server thread pool
       String threadPoolName = "HiveServer2-Handler-Pool";
-      ExecutorService executorService = new ThreadPoolExecutorWithOomHook(minWorkerThreads, maxWorkerThreads,
-          workerKeepAliveTime, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
-          new ThreadFactoryWithGarbageCleanup(threadPoolName), oomHook);
+      ExecutorService executorService;
+      if (useSelector) {
+        // Only the requests being processed use the threads; the rest wait in the queue.
+        ThreadPoolExecutorWithOomHook executor = new ThreadPoolExecutorWithOomHook(maxWorkerThreads,
+            maxWorkerThreads, workerKeepAliveTime, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactoryWithGarbageCleanup(threadPoolName),
+            oomHook);
+        executor.allowCoreThreadTimeOut(true);
+        executorService = executor;
+      } else {
+        executorService = new ThreadPoolExecutorWithOomHook(minWorkerThreads, maxWorkerThreads,
+            workerKeepAliveTime, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new ThreadFactoryWithGarbageCleanup(threadPoolName), oomHook);
+      }
 
       // Thrift configs
       hiveAuthFactory = new HiveAuthFactory(hiveConf);
@@ -76,7 +95,11 @@ protected void initServer() {
       for (String sslVersion : hiveConf.getVar(ConfVars.HIVE_SSL_PROTOCOL_BLACKLIST).split(",")) {
         sslVersionBlacklist.add(sslVersion);
       }
-      if (!hiveConf.getBoolVar(ConfVars.HIVE_SERVER2_USE_SSL)) {
+      if (useSelector) {
+        serverSocket = new TThreadPoolSelectorServer.ChannelServerSocket(
+            (hiveHost == null || hiveHost.isEmpty())
+                ? new InetSocketAddress(portNum) : new InetSocketAddress(hiveHost, portNum));
+      } else if (!hiveConf.getBoolVar(ConfVars.HIVE_SERVER2_USE_SSL)) {
         serverSocket = HiveAuthUtils.getServerSocket(hiveHost, portNum);
       } else {
         String keyStorePath = hiveConf.getVar(ConfVars.HIVE_SERVER2_SSL_KEYSTORE_PATH).trim();
@@ -96,14 +119,24 @@ protected void initServer() {
           TimeUnit.SECONDS);
       int beBackoffSlotLength = (int) hiveConf
           .getTimeVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_LOGIN_BEBACKOFF_SLOT_LENGTH, TimeUnit.MILLISECONDS);
-      TThreadPoolServer.Args sargs = new TThreadPoolServer.Args(serverSocket).processorFactory(processorFactory)
-          .transportFactory(transportFactory).protocolFactory(new TBinaryProtocol.Factory())
-          .inputProtocolFactory(new TBinaryProtocol.Factory(true, true, maxMessageSize, maxMessageSize))
-          .requestTimeout(requestTimeout).requestTimeoutUnit(TimeUnit.SECONDS).beBackoffSlotLength(beBackoffSlotLength)
-          .beBackoffSlotLengthUnit(TimeUnit.MILLISECONDS).executorService(executorService);
-
-      // TCP Server
-      server = new TThreadPoolServer(sargs);
+      if (useSelector) {
+        TThreadPoolSelectorServer.Args sargs = new TThreadPoolSelectorServer.Args(
+            (TThreadPoolSelectorServer.ChannelServerSocket) serverSocket)
+            .processorFactory(processorFactory).transportFactory(transportFactory)
+            .protocolFactory(new TBinaryProtocol.Factory())
+            .inputProtocolFactory(new TBinaryProtocol.Factory(true, true, maxMessageSize, maxMessageSize))
+            .executorService(executorService);
+        server = new TThreadPoolSelectorServer(sargs);
+      } else {
+        TThreadPoolServer.Args sargs = new TThreadPoolServer.Args(serverSocket).processorFactory(processorFactory)
+            .transportFactory(transportFactory).protocolFactory(new TBinaryProtocol.Factory())
+            .inputProtocolFactory(new TBinaryProtocol.Factory(true, true, maxMessageSize, maxMessageSize))
+            .requestTimeout(requestTimeout).requestTimeoutUnit(TimeUnit.SECONDS).beBackoffSlotLength(beBackoffSlotLength)
+            .beBackoffSlotLengthUnit(TimeUnit.MILLISECONDS).executorService(executorService);
+
+        // TCP Server
+        server = new TThreadPoolServer(sargs);
+      }
       server.setServerEventHandler(new TServerEventHandler() {
         @Override
         public ServerContext createContext(TProtocol input, TProtocol output) {
@@ -156,7 +189,8 @@ public void processContext(ServerContext serverContext, TTransport input, TTrans
         }
       });
       String msg = "Starting " + ThriftBinaryCLIService.class.getSimpleName() + " on port " + portNum + " with "
-          + minWorkerThreads + "..." + maxWorkerThreads + " worker threads";
+          + (useSelector ? "selector and " + maxWorkerThreads : minWorkerThreads + "..." + maxWorkerThreads)
+          + " worker threads";
       LOG.info(msg);
     } catch (Exception e) {
       throw new RuntimeException("Failed to init thrift server", e);
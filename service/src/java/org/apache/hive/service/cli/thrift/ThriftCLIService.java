@@ -34,6 +34,9 @@
 import javax.security.auth.login.LoginException;
 import org.apache.hadoop.hive.common.ServerUtils;
 import org.apache.hadoop.hive.common.log.ProgressMonitor;
+import org.apache.hadoop.hive.common.metrics.common.Metrics;
+import org.apache.hadoop.hive.common.metrics.common.MetricsConstant;
+import org.apache.hadoop.hive.common.metrics.common.MetricsFactory;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
 import org.apache.hadoop.hive.ql.session.SessionState;
@@ -57,10 +60,12 @@
 import org.apache.hive.service.cli.OperationType;
 import org.apache.hive.service.cli.ProgressMonitorStatusMapper;
 import org.apache.hive.service.cli.RowSet;
+import org.apache.hive.service.cli.RowSetCompression;
 import org.apache.hive.service.cli.SessionHandle;
 import org.apache.hive.service.cli.TableSchema;
 import org.apache.hive.service.cli.TezProgressMonitorStatusMapper;
 import org.apache.hive.service.cli.operation.Operation;
+import org.apache.hive.service.cli.session.HiveSession;
 import org.apache.hive.service.cli.session.SessionManager;
 import org.apache.hive.service.rpc.thrift.TCLIService;
 import org.apache.hive.service.rpc.thrift.TCancelDelegationTokenReq;
@@ -110,6 +115,7 @@
 import org.apache.hive.service.rpc.thrift.TProtocolVersion;
 import org.apache.hive.service.rpc.thrift.TRenewDelegationTokenReq;
 import org.apache.hive.service.rpc.thrift.TRenewDelegationTokenResp;
+import org.apache.hive.service.rpc.thrift.TRowSet;
 import org.apache.hive.service.rpc.thrift.TStatus;
 import org.apache.hive.service.rpc.thrift.TStatusCode;
 import org.apache.hive.service.server.HiveServer2;
@@ -331,6 +337,13 @@ public TOpenSessionResp OpenSession(TOpenSessionReq req) throws TException {
         Integer.toString(sessionConf != null ?
           sessionConf.getIntVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_DEFAULT_FETCH_SIZE) :
           hiveConf.getIntVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_DEFAULT_FETCH_SIZE)));
+      // Confirm the result format and compression, so that the client knows they are supported;
+      // the sessions only get the ones their client asked for
+      HiveSession session = cliService.getSessionManager().getSession(sessionHandle);
+      configurationMap.put(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_FORMAT.varname,
+          session.isArrowResultFormat() ? "arrow" : "thrift");
+      configurationMap.put(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION.varname,
+          session.getResultCompression().name().toLowerCase());
       resp.setConfiguration(configurationMap);
       resp.setStatus(OK_STATUS);
       ThriftCLIServerContext context =
@@ -798,12 +811,22 @@ public TFetchResultsResp FetchResults(TFetchResultsReq req) throws TException {
       if (req.getMaxRows() > maxFetchSize) {
         req.setMaxRows(maxFetchSize);
       }
+      OperationHandle opHandle = new OperationHandle(req.getOperationHandle());
+      FetchType fetchType = FetchType.getFetchType(req.getFetchType());
       RowSet rowSet = cliService.fetchResults(
-          new OperationHandle(req.getOperationHandle()),
+          opHandle,
           FetchOrientation.getFetchOrientation(req.getOrientation()),
           req.getMaxRows(),
-          FetchType.getFetchType(req.getFetchType()));
-      resp.setResults(rowSet.toTRowSet());
+          fetchType);
+      TRowSet results = rowSet.toTRowSet();
+      RowSetCompression.Codec codec = fetchType == FetchType.QUERY_OUTPUT
+          ? cliService.getSessionManager().getOperationManager().getOperation(opHandle)
+              .getParentSession().getResultCompression()
+          : RowSetCompression.Codec.NONE;
+      if (codec != RowSetCompression.Codec.NONE) {
+        results = compressResults(results, codec);
+      }
+      resp.setResults(results);
       resp.setHasMoreRows(false);
       resp.setStatus(OK_STATUS);
     } catch (Exception e) {
@@ -813,6 +836,21 @@ public TFetchResultsResp FetchResults(TFetchResultsReq req) throws TException {
     return resp;
   }
 
+  private TRowSet compressResults(TRowSet results, RowSetCompression.Codec codec)
+      throws TException {
+    RowSetCompression.Stats stats = new RowSetCompression.Stats();
+    TRowSet compressed = RowSetCompression.compress(results, codec, stats);
+    Metrics metrics = MetricsFactory.getInstance();
+    if (metrics != null) {
+      metrics.incrementCounter(
+          MetricsConstant.HS2_FETCH_UNCOMPRESSED_BYTES, stats.getUncompressedBytes());
+      metrics.incrementCounter(
+          MetricsConstant.HS2_FETCH_COMPRESSED_BYTES, stats.getCompressedBytes());
+      metrics.incrementCounter(MetricsConstant.HS2_FETCH_COMPRESSION_TIME_NS, stats.getTimeNs());
+    }
+    return compressed;
+  }
+
   @Override
   public TGetPrimaryKeysResp GetPrimaryKeys(TGetPrimaryKeysReq req)
 		throws TException {
@@ -100,6 +100,7 @@
 import org.apache.hive.service.ServiceException;
 import org.apache.hive.service.cli.CLIService;
 import org.apache.hive.service.cli.HiveSQLException;
+import org.apache.hive.service.cli.operation.MetadataOperationCache;
 import org.apache.hive.service.cli.session.HiveSession;
 import org.apache.hive.service.cli.thrift.ThriftBinaryCLIService;
 import org.apache.hive.service.cli.thrift.ThriftCLIService;
@@ -265,6 +266,9 @@ public void run() {
       }
     }
 
+    // Adds the invalidation event consumer of the metadata operation cache if it is enabled.
+    MetadataOperationCache.initialize(hiveConf);
+
     try {
       NotificationEventPoll.initialize(hiveConf);
     } catch (Exception err) {
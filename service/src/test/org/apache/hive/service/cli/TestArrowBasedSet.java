@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.service.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Properties;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.io.arrow.ArrowStreamSerDe;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DateWritableV2;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.HiveDecimalWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.io.TimestampWritableV2;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hive.service.rpc.thrift.TRow;
+import org.apache.hive.service.rpc.thrift.TRowSet;
+import org.junit.Test;
+
+public class TestArrowBasedSet {
+  private static final String COLUMNS = "b,t,s,i,l,f,d,bin,str,dec,dt,ts";
+  private static final String COLUMN_TYPES =
+      "boolean:tinyint:smallint:int:bigint:float:double:binary:string:decimal(10,2):date:timestamp";
+
+  /**
+   * @return the rows written by ArrowStreamSerDe, in batches of two rows
+   */
+  private static TRowSet toTRowSet(Object[]... rows) throws Exception {
+    HiveConf conf = new HiveConf();
+    conf.setIntVar(HiveConf.ConfVars.HIVE_ARROW_BATCH_SIZE, 2);
+    Properties tbl = new Properties();
+    tbl.setProperty(serdeConstants.LIST_COLUMNS, COLUMNS);
+    tbl.setProperty(serdeConstants.LIST_COLUMN_TYPES, COLUMN_TYPES);
+    ArrowStreamSerDe serDe = new ArrowStreamSerDe();
+    serDe.initialize(conf, tbl);
+    ObjectInspector oi = serDe.getObjectInspector();
+    for (Object[] row : rows) {
+      assertNull(serDe.serialize(row, oi));
+    }
+    BytesWritable blob = (BytesWritable) serDe.serialize(null, oi);
+    TRowSet tRowSet = new TRowSet(42, new ArrayList<TRow>());
+    tRowSet.setBinaryColumns(blob.copyBytes());
+    return tRowSet;
+  }
+
+  private static Object[] row(boolean b, int i, String s, String ts) {
+    return new Object[] { new BooleanWritable(b), new ByteWritable((byte) i),
+        new ShortWritable((short) i), new IntWritable(i), new LongWritable(i),
+        new FloatWritable(i + 0.1f), new DoubleWritable(i + 0.1), new BytesWritable(s.getBytes()),
+        new Text(s), new HiveDecimalWritable(HiveDecimal.create(i + ".25")),
+        new DateWritableV2(org.apache.hadoop.hive.common.type.Date.valueOf(ts.substring(0, 10))),
+        new TimestampWritableV2(org.apache.hadoop.hive.common.type.Timestamp.valueOf(ts)) };
+  }
+
+  @Test
+  public void testTypedGetters() throws Exception {
+    TRowSet tRowSet = toTRowSet(
+        row(true, 1, "one", "2018-01-01 12:34:56.123456"),
+        new Object[12],
+        row(false, -3, "", "1969-12-31 23:59:59.5"));
+    try (ArrowBasedSet set = new ArrowBasedSet(tRowSet)) {
+      assertEquals(42, set.getStartOffset());
+      assertEquals(3, set.numRows());
+      assertEquals(12, set.numColumns());
+      for (int column = 0; column < 7; ++column) {
+        assertTrue(set.isNumeric(column));
+      }
+      assertFalse(set.isNumeric(7));
+
+      assertFalse(set.isNull(0, 0));
+      assertEquals(1, set.getLong(0, 0));
+      assertEquals(1, set.getLong(0, 3));
+      assertEquals(1, set.getLong(0, 5));
+      assertEquals(1.1, set.getDouble(0, 5), 0);
+      assertEquals(1.1, set.getDouble(0, 6), 0);
+      assertEquals(Boolean.TRUE, set.getObject(0, 0));
+      assertEquals(Byte.valueOf((byte) 1), set.getObject(0, 1));
+      assertEquals(Short.valueOf((short) 1), set.getObject(0, 2));
+      assertEquals(Integer.valueOf(1), set.getObject(0, 3));
+      assertEquals(Long.valueOf(1), set.getObject(0, 4));
+      assertEquals(Double.valueOf(1.1), set.getObject(0, 5));
+      assertArrayEquals("one".getBytes(), (byte[]) set.getObject(0, 7));
+      assertEquals("one", set.getObject(0, 8));
+      assertEquals(new BigDecimal("1.25"), set.getObject(0, 9));
+      assertEquals(Date.valueOf("2018-01-01"), set.getObject(0, 10));
+      assertEquals(Timestamp.valueOf("2018-01-01 12:34:56.123456"), set.getObject(0, 11));
+
+      for (int column = 0; column < 12; ++column) {
+        assertTrue(set.isNull(1, column));
+        assertNull(set.getObject(1, column));
+      }
+
+      // The third row is in the second batch.
+      assertEquals(-3, set.getLong(2, 4));
+      assertEquals(-2, set.getLong(2, 6));
+      assertEquals(Boolean.FALSE, set.getObject(2, 0));
+      assertEquals("", set.getObject(2, 8));
+      assertEquals(new BigDecimal("-3.25"), set.getObject(2, 9));
+      assertEquals(Date.valueOf("1969-12-31"), set.getObject(2, 10));
+      assertEquals(Timestamp.valueOf("1969-12-31 23:59:59.5"), set.getObject(2, 11));
+      // And back to the first batch
+      assertEquals("one", set.getObject(0, 8));
+
+      Iterator<Object[]> rows = set.iterator();
+      assertEquals(Integer.valueOf(1), rows.next()[3]);
+      assertNull(rows.next()[3]);
+      assertEquals(Integer.valueOf(-3), rows.next()[3]);
+      assertFalse(rows.hasNext());
+    }
+  }
+
+  @Test
+  public void testNoBatches() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Schema schema = new Schema(Collections.singletonList(Field.nullable(
+        "i", new ArrowType.Int(32, true))));
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+        ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+      writer.start();
+      writer.end();
+    }
+    TRowSet tRowSet = new TRowSet(0, new ArrayList<TRow>());
+    tRowSet.setBinaryColumns(out.toByteArray());
+    try (ArrowBasedSet set = new ArrowBasedSet(tRowSet)) {
+      assertEquals(0, set.numRows());
+      assertEquals(1, set.numColumns());
+      assertFalse(set.iterator().hasNext());
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testOutOfBounds() throws Exception {
+    TRowSet tRowSet = toTRowSet(row(true, 1, "one", "2018-01-01 00:00:00"));
+    try (ArrowBasedSet set = new ArrowBasedSet(tRowSet)) {
+      set.getObject(1, 0);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.service.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.io.arrow.ArrowStreamSerDe;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hive.service.rpc.thrift.TRow;
+import org.apache.hive.service.rpc.thrift.TRowSet;
+import org.junit.Test;
+
+public class TestRowSetCompression {
+
+  @Test
+  public void testCodecs() throws Exception {
+    ColumnBasedSet rowSet = new ColumnBasedSet(new TableSchema(Arrays.asList(
+        new FieldSchema("i", "int", null), new FieldSchema("s", "string", null))));
+    for (int i = 0; i < 1000; ++i) {
+      rowSet.addRow(new Object[] { i, (i % 10 == 0) ? null : "value " + (i % 7) });
+    }
+    rowSet.setStartOffset(100);
+    TRowSet expected = rowSet.toTRowSet();
+
+    for (RowSetCompression.Codec codec : RowSetCompression.Codec.values()) {
+      RowSetCompression.Stats stats = new RowSetCompression.Stats();
+      TRowSet compressed = RowSetCompression.compress(expected, codec, stats);
+      assertTrue(compressed.isSetBinaryColumns());
+      assertFalse(compressed.isSetColumns());
+      assertEquals(100, compressed.getStartRowOffset());
+      assertEquals(2, compressed.getColumnCount());
+      assertEquals(stats.getCompressedBytes(), compressed.getBinaryColumns().length);
+      if (codec != RowSetCompression.Codec.NONE) {
+        assertTrue(codec + " compressed to " + stats.getCompressedBytes(),
+            stats.getCompressedBytes() < stats.getUncompressedBytes() / 2);
+      }
+      assertEquals(expected, RowSetCompression.decompress(compressed));
+    }
+  }
+
+  @Test
+  public void testIncompressible() throws Exception {
+    // Random bytes, e.g. a blob that is already compressed, are sent as is.
+    byte[] blob = new byte[10000];
+    new Random(42).nextBytes(blob);
+    ColumnBasedSet rowSet = new ColumnBasedSet(new TableSchema(Arrays.asList(
+        new FieldSchema("b", "binary", null))));
+    rowSet.addRow(new Object[] { blob });
+    TRowSet expected = rowSet.toTRowSet();
+
+    for (RowSetCompression.Codec codec : RowSetCompression.Codec.values()) {
+      RowSetCompression.Stats stats = new RowSetCompression.Stats();
+      TRowSet compressed = RowSetCompression.compress(expected, codec, stats);
+      assertEquals(stats.getUncompressedBytes() + 5, stats.getCompressedBytes());
+      assertEquals(expected, RowSetCompression.decompress(compressed));
+    }
+  }
+
+  @Test
+  public void testBinaryValues() throws Exception {
+    ColumnBasedSet rowSet = new ColumnBasedSet(new TableSchema(Arrays.asList(
+        new FieldSchema("b", "binary", null))));
+    for (int i = 0; i < 100; ++i) {
+      rowSet.addRow(new Object[] { ("value " + i).getBytes() });
+    }
+    TRowSet decompressed = RowSetCompression.decompress(
+        RowSetCompression.compress(rowSet.toTRowSet(), RowSetCompression.Codec.LZ4, null));
+    int i = 0;
+    for (Object[] row : new ColumnBasedSet(decompressed)) {
+      assertArrayEquals(("value " + i++).getBytes(), (byte[]) row[0]);
+    }
+    assertEquals(100, i);
+  }
+
+  @Test
+  public void testArrow() throws Exception {
+    Properties tbl = new Properties();
+    tbl.setProperty(serdeConstants.LIST_COLUMNS, "l");
+    tbl.setProperty(serdeConstants.LIST_COLUMN_TYPES, "bigint");
+    ArrowStreamSerDe serDe = new ArrowStreamSerDe();
+    serDe.initialize(new HiveConf(), tbl);
+    ObjectInspector oi = serDe.getObjectInspector();
+    for (long i = 0; i < 100; ++i) {
+      serDe.serialize(new Object[] { new LongWritable(i) }, oi);
+    }
+    TRowSet arrow = new TRowSet(0, new ArrayList<TRow>());
+    arrow.setBinaryColumns(((BytesWritable) serDe.serialize(null, oi)).copyBytes());
+    TRowSet decompressed = RowSetCompression.decompress(
+        RowSetCompression.compress(arrow, RowSetCompression.Codec.LZ4, null));
+    try (ArrowBasedSet actual = new ArrowBasedSet(decompressed)) {
+      assertEquals(100, actual.numRows());
+      for (int i = 0; i < 100; ++i) {
+        assertEquals(i, actual.getLong(i, 0));
+      }
+    }
+  }
+}
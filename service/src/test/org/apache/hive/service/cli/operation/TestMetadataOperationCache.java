@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.service.cli.operation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.messaging.MessageBuilder;
+import org.apache.hadoop.hive.metastore.messaging.json.JSONMessageEncoder;
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject;
+import org.apache.hive.service.cli.OperationType;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestMetadataOperationCache {
+
+  @After
+  public void tearDown() {
+    MetadataOperationCache.cleanupInstance();
+  }
+
+  private static MetadataOperationCache createCache(long maxRows) {
+    HiveConf conf = new HiveConf();
+    conf.setTimeVar(HiveConf.ConfVars.HIVE_SERVER2_METADATA_CACHE_TTL, 1, TimeUnit.HOURS);
+    conf.setLongVar(HiveConf.ConfVars.HIVE_SERVER2_METADATA_CACHE_MAX_ROWS, maxRows);
+    MetadataOperationCache.initialize(conf);
+    assertTrue(conf.getStringCollection(HiveConf.ConfVars.HIVE_NOTFICATION_EVENT_CONSUMERS.varname)
+        .contains(MetadataOperationCache.InvalidationEventConsumer.class.getName()));
+    return MetadataOperationCache.getInstance();
+  }
+
+  private static MetadataOperationCache.Entry createEntry(int rows, String... dbNames) {
+    List<Object[]> rowList = new ArrayList<>();
+    for (int i = 0; i < rows; ++i) {
+      rowList.add(new Object[] { dbNames[i % dbNames.length], "t" + i });
+    }
+    return new MetadataOperationCache.Entry(
+        rowList, Arrays.asList(dbNames), Collections.<HivePrivilegeObject>emptyList());
+  }
+
+  private static MetadataOperationCache.Key tablesKey(String userName, String schemaPattern) {
+    return new MetadataOperationCache.Key(
+        OperationType.GET_TABLES, userName, null, schemaPattern, "%", null);
+  }
+
+  private static void put(MetadataOperationCache cache, MetadataOperationCache.Key key,
+      MetadataOperationCache.Entry entry) {
+    assertTrue(cache.put(key, entry, cache.getGeneration()));
+  }
+
+  private static NotificationEvent event(String eventType, String dbName) {
+    NotificationEvent event = new NotificationEvent(1, 0, eventType, "");
+    event.setDbName(dbName);
+    return event;
+  }
+
+  private static NotificationEvent alterTableEvent(String beforeDbName, String afterDbName) {
+    Table before = new Table();
+    before.setDbName(beforeDbName);
+    before.setTableName("t");
+    Table after = before.deepCopy();
+    after.setDbName(afterDbName);
+    // As DbNotificationListener.onAlterTable, the event is on the database of the new table.
+    NotificationEvent event = new NotificationEvent(1, 0, MessageBuilder.ALTER_TABLE_EVENT,
+        JSONMessageEncoder.getInstance().getSerializer().serialize(
+            MessageBuilder.getInstance().buildAlterTableMessage(before, after, false, null)));
+    event.setMessageFormat(JSONMessageEncoder.FORMAT);
+    event.setDbName(afterDbName);
+    return event;
+  }
+
+  @Test
+  public void testDisabled() {
+    MetadataOperationCache.initialize(new HiveConf());
+    assertNull(MetadataOperationCache.getInstance());
+  }
+
+  @Test
+  public void testKeys() {
+    MetadataOperationCache cache = createCache(1000);
+    MetadataOperationCache.Entry entry = createEntry(10, "db1");
+    put(cache, tablesKey("alice", "db%"), entry);
+    assertSame(entry, cache.get(tablesKey("alice", "db%")));
+    // The metastore filter hook filters per user, so the rows are not shared between users.
+    assertNull(cache.get(tablesKey("bob", "db%")));
+    assertNull(cache.get(tablesKey("alice", "db1")));
+    assertNull(cache.get(new MetadataOperationCache.Key(
+        OperationType.GET_COLUMNS, "alice", null, "db%", "%", null)));
+  }
+
+  @Test
+  public void testMaxRows() {
+    MetadataOperationCache cache = createCache(100);
+    for (int i = 0; i < 50; ++i) {
+      put(cache, tablesKey("alice", "db" + i), createEntry(10, "db" + i));
+    }
+    assertEquals(10, cache.size());
+    assertNotNull(cache.get(tablesKey("alice", "db49")));
+    // An entry as large as the whole cache still fits.
+    put(cache, tablesKey("alice", "%"), createEntry(100, "db0"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testInvalidation() {
+    MetadataOperationCache cache = createCache(1000);
+    MetadataOperationCache.InvalidationEventConsumer consumer =
+        new MetadataOperationCache.InvalidationEventConsumer();
+    put(cache, tablesKey("alice", "db1"), createEntry(10, "db1"));
+    put(cache, tablesKey("alice", "db%"), createEntry(10, "db1", "DB2"));
+    put(cache, tablesKey("alice", "db3"), createEntry(10, "db3"));
+
+    // The events on other objects don't change the cached results.
+    consumer.accept(event(MessageBuilder.ADD_PARTITION_EVENT, "db1"));
+    consumer.accept(event(MessageBuilder.CREATE_FUNCTION_EVENT, "db1"));
+    assertEquals(3, cache.size());
+
+    consumer.accept(event(MessageBuilder.CREATE_TABLE_EVENT, "db2"));
+    assertNotNull(cache.get(tablesKey("alice", "db1")));
+    assertNull(cache.get(tablesKey("alice", "db%")));
+    consumer.accept(alterTableEvent("db1", "db1"));
+    assertNull(cache.get(tablesKey("alice", "db1")));
+    assertNotNull(cache.get(tablesKey("alice", "db3")));
+
+    // An unreadable alter table event may have moved a table out of any database.
+    put(cache, tablesKey("alice", "db1"), createEntry(10, "db1"));
+    consumer.accept(event(MessageBuilder.ALTER_TABLE_EVENT, "db1"));
+    assertEquals(0, cache.size());
+
+    // A new database may match any schema pattern.
+    put(cache, tablesKey("alice", "db3"), createEntry(10, "db3"));
+    consumer.accept(event(MessageBuilder.CREATE_DATABASE_EVENT, "db4"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testRenameAcrossDatabases() {
+    MetadataOperationCache cache = createCache(1000);
+    MetadataOperationCache.InvalidationEventConsumer consumer =
+        new MetadataOperationCache.InvalidationEventConsumer();
+    put(cache, tablesKey("alice", "a"), createEntry(10, "a"));
+    put(cache, tablesKey("alice", "b"), createEntry(10, "b"));
+    put(cache, tablesKey("alice", "c"), createEntry(10, "c"));
+
+    // ALTER TABLE a.t RENAME TO b.t
+    consumer.accept(alterTableEvent("a", "b"));
+    assertNull(cache.get(tablesKey("alice", "a")));
+    assertNull(cache.get(tablesKey("alice", "b")));
+    assertNotNull(cache.get(tablesKey("alice", "c")));
+  }
+
+  @Test
+  public void testInvalidationDuringRead() {
+    MetadataOperationCache cache = createCache(1000);
+    MetadataOperationCache.InvalidationEventConsumer consumer =
+        new MetadataOperationCache.InvalidationEventConsumer();
+
+    // A miss takes the generation, then reads the metastore; the table is dropped meanwhile, and
+    // the event is handled before the rows read earlier are cached.
+    long generation = cache.getGeneration();
+    assertNull(cache.get(tablesKey("alice", "db1")));
+    consumer.accept(event(MessageBuilder.DROP_TABLE_EVENT, "db1"));
+    assertFalse(cache.put(tablesKey("alice", "db1"), createEntry(10, "db1"), generation));
+    assertNull(cache.get(tablesKey("alice", "db1")));
+
+    // The next miss reads the metastore after the event, so its rows are cached.
+    generation = cache.getGeneration();
+    assertTrue(cache.put(tablesKey("alice", "db1"), createEntry(9, "db1"), generation));
+    assertEquals(9, cache.get(tablesKey("alice", "db1")).getRows().size());
+  }
+}
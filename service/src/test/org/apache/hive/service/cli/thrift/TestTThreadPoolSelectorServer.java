@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hive.service.cli.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hive.service.auth.HiveAuthConstants;
+import org.apache.hive.service.auth.PlainSaslHelper;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.server.TServerEventHandler;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportFactory;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestTThreadPoolSelectorServer {
+  private static final int WORKER_THREADS = 2, CONNECTIONS = 500, LOAD_SESSIONS = 10000;
+
+  private final AtomicInteger openContexts = new AtomicInteger(0);
+  private TThreadPoolSelectorServer server;
+  private Thread serverThread;
+  private int port;
+
+  /** Returns the number it reads plus one. */
+  private static class IncrementProcessor implements TProcessor {
+    @Override
+    public boolean process(TProtocol in, TProtocol out) throws TException {
+      int value = in.readI32();
+      out.writeI32(value + 1);
+      out.getTransport().flush();
+      return true;
+    }
+  }
+
+  private void startServer(TTransportFactory transportFactory) throws Exception {
+    TThreadPoolSelectorServer.ChannelServerSocket serverSocket =
+        new TThreadPoolSelectorServer.ChannelServerSocket(new InetSocketAddress("localhost", 0));
+    port = serverSocket.getServerSocket().getLocalPort();
+    ExecutorService executor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    server = new TThreadPoolSelectorServer(new TThreadPoolSelectorServer.Args(serverSocket)
+        .processor(new IncrementProcessor()).protocolFactory(new TBinaryProtocol.Factory())
+        .transportFactory(transportFactory).executorService(executor));
+    server.setServerEventHandler(new TServerEventHandler() {
+      @Override
+      public void preServe() {
+      }
+
+      @Override
+      public ServerContext createContext(TProtocol input, TProtocol output) {
+        openContexts.incrementAndGet();
+        return null;
+      }
+
+      @Override
+      public void deleteContext(ServerContext context, TProtocol input, TProtocol output) {
+        openContexts.decrementAndGet();
+      }
+
+      @Override
+      public void processContext(ServerContext context, TTransport input, TTransport output) {
+      }
+    });
+    serverThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        server.serve();
+      }
+    });
+    serverThread.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (server != null) {
+      server.stop();
+      serverThread.join();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testIdleConnectionsDoNotHoldWorkers() throws Exception {
+    startServer(new TTransportFactory());
+    // Many more open connections than workers; with a thread per connection, most would hang.
+    List<TProtocol> clients = new ArrayList<>(CONNECTIONS);
+    for (int i = 0; i < CONNECTIONS; ++i) {
+      TSocket socket = new TSocket("localhost", port);
+      socket.open();
+      clients.add(new TBinaryProtocol(socket));
+    }
+    for (int round = 0; round < 3; ++round) {
+      for (int i = 0; i < CONNECTIONS; ++i) {
+        assertEquals(i + round + 1, call(clients.get(i), i + round));
+      }
+    }
+    waitForOpenContexts(CONNECTIONS);
+
+    // The closed connections are cleaned up while parked; the rest keep working.
+    for (int i = 0; i < CONNECTIONS / 2; ++i) {
+      clients.get(i).getTransport().close();
+    }
+    waitForOpenContexts(CONNECTIONS - CONNECTIONS / 2);
+    for (int i = CONNECTIONS / 2; i < CONNECTIONS; ++i) {
+      assertEquals(i + 1, call(clients.get(i), i));
+      clients.get(i).getTransport().close();
+    }
+    waitForOpenContexts(0);
+  }
+
+  @Test
+  public void testSaslReadBufferFound() {
+    // Without the field, the pipelined SASL requests below would hang instead of failing.
+    assertNotNull("TSaslTransport.readBuffer not found; check the Thrift version",
+        TThreadPoolSelectorServer.SASL_READ_BUFFER);
+    assertEquals(TMemoryInputTransport.class,
+        TThreadPoolSelectorServer.SASL_READ_BUFFER.getType());
+  }
+
+  @Test(timeout = 60000)
+  public void testPipelinedSaslRequests() throws Exception {
+    startServer(PlainSaslHelper.getPlainTransportFactory(
+        HiveAuthConstants.AuthTypes.NONE.getAuthName()));
+    TTransport transport = PlainSaslHelper.getPlainTransport(
+        "user", "password", new TSocket("localhost", port));
+    transport.open();
+    try {
+      // Both requests go in one SASL frame; the second one is only in the SASL read buffer once
+      // the first one has been read, so the connection must not be parked in between.
+      TProtocol client = new TBinaryProtocol(transport);
+      client.writeI32(1);
+      client.writeI32(5);
+      transport.flush();
+      assertEquals(2, client.readI32());
+      assertEquals(6, client.readI32());
+      assertEquals(11, call(client, 10));
+    } finally {
+      transport.close();
+    }
+    waitForOpenContexts(0);
+  }
+
+  @Test(timeout = 300000)
+  public void testManySessionsWithFewWorkers() throws Exception {
+    // Both ends of each session are in this JVM.
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    Assume.assumeTrue("Not enough file descriptors for " + LOAD_SESSIONS + " sessions",
+        os instanceof com.sun.management.UnixOperatingSystemMXBean
+        && ((com.sun.management.UnixOperatingSystemMXBean) os).getMaxFileDescriptorCount()
+            - ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount()
+            > 2 * LOAD_SESSIONS + 1000);
+    startServer(new TTransportFactory());
+    int threadsBefore = Thread.activeCount();
+    List<TProtocol> clients = new ArrayList<>(LOAD_SESSIONS);
+    try {
+      // Each session makes a call as soon as it is open, so that the accept backlog stays short.
+      for (int i = 0; i < LOAD_SESSIONS; ++i) {
+        TSocket socket = new TSocket("localhost", port);
+        socket.open();
+        TProtocol client = new TBinaryProtocol(socket);
+        clients.add(client);
+        assertEquals(i + 1, call(client, i));
+      }
+      waitForOpenContexts(LOAD_SESSIONS);
+      for (int i = LOAD_SESSIONS - 1; i >= 0; --i) {
+        assertEquals(i + 2, call(clients.get(i), i + 1));
+      }
+      // All the sessions are open and served, by the same few threads.
+      assertTrue(Thread.activeCount() <= threadsBefore + WORKER_THREADS + 2);
+    } finally {
+      for (TProtocol client : clients) {
+        client.getTransport().close();
+      }
+    }
+    waitForOpenContexts(0);
+  }
+
+  private static int call(TProtocol client, int value) throws TException {
+    client.writeI32(value);
+    client.getTransport().flush();
+    return client.readI32();
+  }
+
+  private void waitForOpenContexts(int expected) throws InterruptedException {
+    while (openContexts.get() != expected) {
+      assertTrue(openContexts.get() >= expected);
+      Thread.sleep(10);
+    }
+  }
+}
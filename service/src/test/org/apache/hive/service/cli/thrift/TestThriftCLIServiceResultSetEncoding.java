@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.service.cli.thrift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hive.service.cli.CLIService;
+import org.apache.hive.service.cli.RowSetCompression;
+import org.apache.hive.service.rpc.thrift.TCloseSessionReq;
+import org.apache.hive.service.rpc.thrift.TExecuteStatementReq;
+import org.apache.hive.service.rpc.thrift.TExecuteStatementResp;
+import org.apache.hive.service.rpc.thrift.TFetchOrientation;
+import org.apache.hive.service.rpc.thrift.TFetchResultsReq;
+import org.apache.hive.service.rpc.thrift.TFetchResultsResp;
+import org.apache.hive.service.rpc.thrift.TOpenSessionReq;
+import org.apache.hive.service.rpc.thrift.TOpenSessionResp;
+import org.apache.hive.service.rpc.thrift.TRowSet;
+import org.apache.hive.service.rpc.thrift.TSessionHandle;
+import org.apache.hive.service.rpc.thrift.TStatusCode;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the sessions only get the result set encoding their client asked for.
+ */
+public class TestThriftCLIServiceResultSetEncoding {
+
+  private static EmbeddedThriftBinaryCLIService service;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    HiveConf conf = new HiveConf();
+    conf.setVar(ConfVars.HIVE_AUTHORIZATION_MANAGER,
+        "org.apache.hadoop.hive.ql.security.authorization.plugin.sqlstd.SQLStdHiveAuthorizerFactory");
+    // The server side value must not reach the clients that did not ask for it.
+    conf.setVar(ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION, "lz4");
+    conf.setVar(ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_FORMAT, "arrow");
+    service = new EmbeddedThriftBinaryCLIService();
+    service.init(conf);
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    ((CLIService) service.getService()).stop();
+  }
+
+  private static TOpenSessionResp openSession(Map<String, String> sessionConf) throws Exception {
+    TOpenSessionReq req = new TOpenSessionReq();
+    req.setConfiguration(sessionConf);
+    TOpenSessionResp resp = service.OpenSession(req);
+    assertEquals(TStatusCode.SUCCESS_STATUS, resp.getStatus().getStatusCode());
+    return resp;
+  }
+
+  private static TRowSet fetchSetResult(TSessionHandle sessionHandle, String var)
+      throws Exception {
+    TExecuteStatementResp execResp =
+        service.ExecuteStatement(new TExecuteStatementReq(sessionHandle, "set " + var));
+    assertEquals(TStatusCode.SUCCESS_STATUS, execResp.getStatus().getStatusCode());
+    TFetchResultsResp fetchResp = service.FetchResults(new TFetchResultsReq(
+        execResp.getOperationHandle(), TFetchOrientation.FETCH_NEXT, 100));
+    assertEquals(TStatusCode.SUCCESS_STATUS, fetchResp.getStatus().getStatusCode());
+    return fetchResp.getResults();
+  }
+
+  @Test
+  public void testCompressionNotAsked() throws Exception {
+    TOpenSessionResp resp = openSession(Collections.<String, String>emptyMap());
+    assertEquals("none", resp.getConfiguration().get(
+        ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION.varname));
+    TRowSet results = fetchSetResult(resp.getSessionHandle(), "a");
+    assertFalse(results.isSetBinaryColumns());
+    assertEquals(1, results.getColumns().get(0).getStringVal().getValuesSize());
+    service.CloseSession(new TCloseSessionReq(resp.getSessionHandle()));
+  }
+
+  @Test
+  public void testCompressionAsked() throws Exception {
+    TOpenSessionResp resp = openSession(Collections.singletonMap(
+        "set:hiveconf:" + ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION.varname, "zlib"));
+    assertEquals("zlib", resp.getConfiguration().get(
+        ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_COMPRESSION.varname));
+    TRowSet results = fetchSetResult(resp.getSessionHandle(), "a");
+    assertTrue(results.isSetBinaryColumns());
+    results = RowSetCompression.decompress(results);
+    assertEquals(1, results.getColumns().get(0).getStringVal().getValuesSize());
+    service.CloseSession(new TCloseSessionReq(resp.getSessionHandle()));
+  }
+
+  @Test
+  public void testArrowNotAsked() throws Exception {
+    TOpenSessionResp resp = openSession(Collections.<String, String>emptyMap());
+    assertEquals("thrift", resp.getConfiguration().get(
+        ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_FORMAT.varname));
+    service.CloseSession(new TCloseSessionReq(resp.getSessionHandle()));
+  }
+
+  @Test
+  public void testArrowAsked() throws Exception {
+    TOpenSessionResp resp = openSession(Collections.singletonMap(
+        "set:hiveconf:" + ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_FORMAT.varname, "arrow"));
+    assertEquals("arrow", resp.getConfiguration().get(
+        ConfVars.HIVE_SERVER2_THRIFT_RESULTSET_FORMAT.varname));
+    // The results that are not written by the tasks are still sent as TColumns.
+    TRowSet results = fetchSetResult(resp.getSessionHandle(), "a");
+    assertFalse(results.isSetBinaryColumns());
+    assertEquals(1, results.getColumns().get(0).getStringVal().getValuesSize());
+    service.CloseSession(new TCloseSessionReq(resp.getSessionHandle()));
+  }
+}
@@ -43,6 +43,27 @@ public void testBloomIllegalArg1() {
     BloomKFilter bf = new BloomKFilter(0);
   }
 
+  @Test(expected = IllegalArgumentException.class)
+  public void testBloomIllegalArg2() {
+    BloomKFilter bf = new BloomKFilter(1000, 0.0);
+  }
+
+  @Test
+  public void testBloomKFilterFpp() {
+    BloomKFilter bf = new BloomKFilter(10000, 0.01);
+    assertTrue(bf.getBitSize() > new BloomKFilter(10000).getBitSize());
+    for (long i = 0; i < 10000; i++) {
+      bf.addLong(i);
+    }
+    int falsePositives = 0;
+    for (long i = 10000; i < 20000; i++) {
+      if (bf.testLong(i)) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives / 10000.0 < 0.01 + deltaError);
+  }
+
   @Test
   public void testBloomNumBits() {
     assertEquals(0, BloomKFilter.optimalNumOfBits(0, 0));
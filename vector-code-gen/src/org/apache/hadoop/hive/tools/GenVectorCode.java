@@ -1806,6 +1806,7 @@ private void generateVectorUDAFMinMax(String[] tdesc) throws Exception {
     String templateString = readFile(templateFile);
     templateString = templateString.replaceAll("<ClassName>", className);
     templateString = templateString.replaceAll("<ValueType>", valueType);
+    templateString = templateString.replaceAll("<CamelCaseValueType>", getCamelCaseType(valueType));
     templateString = templateString.replaceAll("<OperatorSymbol>", operatorSymbol);
     templateString = templateString.replaceAll("<InputColumnVectorType>", columnType);
     templateString = templateString.replaceAll("<UpperCaseColumnVectorType>", valueType.toUpperCase());
@@ -1884,6 +1885,7 @@ private void generateVectorUDAFSum(String[] tdesc) throws Exception {
     String templateString = readFile(templateFile);
     templateString = templateString.replaceAll("<ClassName>", className);
     templateString = templateString.replaceAll("<ValueType>", valueType);
+    templateString = templateString.replaceAll("<CamelCaseValueType>", getCamelCaseType(valueType));
     templateString = templateString.replaceAll("<UpperCaseColumnVectorType>", valueType.toUpperCase());
     templateString = templateString.replaceAll("<InputColumnVectorType>", columnType);
     templateString = templateString.replaceAll("<OutputType>", writableType);